@@ -1,5 +1,7 @@
 #!/bin/bash
 
+# With a matrix file, e.g "JVM_MATRIX=./input_data/jvm_matrix.txt ./build_run_all_awfy.sh", each generated program also gets
+# run under every JVM configuration of the matrix, with the results in ./jvm_matrix/<benchmark>/.
 AWFY_CT_DIR="./input_data/disl_awfy_calltraces"
 AWFY_OP_DIR="./input_data/disl_awfy_operations"
 NBR_FAILS=0
@@ -9,7 +11,12 @@ do
     echo "Running with CT file: $FILE"
     CT_NAME=`echo $FILE | sed -e 's/.*calltrace_\(.*\)\.txt/\1/'`
     ./gradlew run --args="--ct-file $FILE --op-file $AWFY_OP_DIR/operations_$CT_NAME.txt"
-    if [ $? -eq 1 ]; then ((NBR_FAILS++)); fi    
+    if [ $? -eq 1 ]; then ((NBR_FAILS++)); continue; fi
+
+    if [ -n "$JVM_MATRIX" ]; then
+        ./gradlew run --args="--jvm-matrix $JVM_MATRIX --matrix-output ./jvm_matrix/$CT_NAME"
+        if [ $? -eq 1 ]; then ((NBR_FAILS++)); fi
+    fi
 done
 
 echo "---$NBR_FAILS total number of build/run fails (out of `ls $AWFY_CT_DIR | wc -l` files)---"
@@ -0,0 +1,29 @@
+package com.github.octavelarose.bootleg.benchmarks;
+
+import com.github.javaparser.ast.type.Type;
+import com.github.octavelarose.bootleg.builders.BuildFailedException;
+import com.github.octavelarose.bootleg.builders.GenerationSession;
+import com.github.octavelarose.bootleg.builders.programs.calltraces.asm_types.ASMTypeParsingUtils;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing the parameters part of method descriptors, done once per generated method.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ASMTypeParsingBenchmark {
+    @Param({"I", "IDJZ", "Ljava/lang/String;", "ILjava/lang/String;[DLsom/Sieve;[Ljava/lang/Object;F"})
+    String paramsDescriptor;
+
+    // Object types are parsed with the session's types cache
+    private final GenerationSession session = new GenerationSession().setSeed(42);
+
+    @Benchmark
+    public List<Type> getTypesFromParametersStr() throws BuildFailedException {
+        return this.session.call(() -> ASMTypeParsingUtils.getTypesFromParametersStr(this.paramsDescriptor));
+    }
+}
@@ -0,0 +1,36 @@
+package com.github.octavelarose.bootleg.benchmarks;
+
+import com.github.octavelarose.bootleg.builders.BuildFailedException;
+import com.github.octavelarose.bootleg.builders.programs.calltraces.fileparsers.CTFileParser;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reading and splitting calltrace files.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class CTFileParserBenchmark {
+    @Param({"2000", "200000"})
+    int eventsNbr;
+
+    @Param({"10", "1000"})
+    int classesNbr;
+
+    private File traceFile;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, BuildFailedException {
+        this.traceFile = TraceFixtures.writeTrace(this.eventsNbr, this.classesNbr);
+    }
+
+    @Benchmark
+    public List<List<String>> parse() throws BuildFailedException {
+        return new CTFileParser(this.traceFile.getPath()).parse().getParsedCT();
+    }
+}
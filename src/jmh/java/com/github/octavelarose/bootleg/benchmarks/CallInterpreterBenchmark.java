@@ -0,0 +1,58 @@
+package com.github.octavelarose.bootleg.benchmarks;
+
+import com.github.javaparser.ast.body.CallableDeclaration;
+import com.github.javaparser.utils.Pair;
+import com.github.octavelarose.bootleg.builders.BuildFailedException;
+import com.github.octavelarose.bootleg.builders.GenerationSession;
+import com.github.octavelarose.bootleg.builders.programs.calltraces.CTMethodInfo;
+import com.github.octavelarose.bootleg.builders.programs.calltraces.CallInterpreter;
+import com.github.octavelarose.bootleg.builders.programs.calltraces.fileparsers.CTFileParser;
+import com.github.octavelarose.bootleg.builders.programs.classes.ClassBuilder;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Stack;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Replaying a recorded stream of calltrace events through the call interpreter, i.e building a whole program from it.
+ * The events are parsed beforehand, so only the code generation is measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class CallInterpreterBenchmark {
+    @Param({"2000", "20000"})
+    int eventsNbr;
+
+    @Param({"10", "1000"})
+    int classesNbr;
+
+    private List<List<String>> events;
+
+    // Kept across invocations, like the caches of a session generating a whole program
+    private final GenerationSession session = new GenerationSession().setSeed(42);
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, BuildFailedException {
+        this.events = new CTFileParser(TraceFixtures.writeTrace(this.eventsNbr, this.classesNbr).getPath())
+                .parse()
+                .getParsedCT();
+    }
+
+    @Benchmark
+    public HashMap<String, ClassBuilder> execute() throws BuildFailedException {
+        return this.session.call(() -> {
+            HashMap<String, ClassBuilder> classBuilders = new LinkedHashMap<>();
+            Stack<Pair<ClassBuilder, CallableDeclaration.Signature>> callStack = new Stack<>();
+
+            for (List<String> methodArr: this.events)
+                new CallInterpreter(new CTMethodInfo(methodArr), classBuilders, callStack).execute();
+
+            return classBuilders;
+        });
+    }
+}
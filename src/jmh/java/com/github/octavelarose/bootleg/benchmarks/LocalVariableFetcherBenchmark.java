@@ -0,0 +1,63 @@
+package com.github.octavelarose.bootleg.benchmarks;
+
+import com.github.javaparser.StaticJavaParser;
+import com.github.javaparser.ast.NodeList;
+import com.github.javaparser.ast.body.Parameter;
+import com.github.javaparser.ast.body.VariableDeclarator;
+import com.github.javaparser.ast.stmt.BlockStmt;
+import com.github.javaparser.ast.type.PrimitiveType;
+import com.github.octavelarose.bootleg.builders.BuildFailedException;
+import com.github.octavelarose.bootleg.builders.GenerationSession;
+import com.github.octavelarose.bootleg.builders.programs.classes.methods.bodies.variables.LocalVariableFetcher;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Looking up local variables to use as arguments, done for every parameter of every generated call.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class LocalVariableFetcherBenchmark {
+    private static final String[] LOCAL_VAR_TYPES = {"int", "double", "String", "som.Sieve"};
+
+    @Param({"10", "100", "1000"})
+    int localVarsNbr;
+
+    private LocalVariableFetcher fetcher;
+
+    // Variables get picked with the session's random numbers
+    private final GenerationSession session = new GenerationSession().setSeed(42);
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        BlockStmt body = new BlockStmt();
+        for (int i = 0; i < this.localVarsNbr; i++) {
+            String type = LOCAL_VAR_TYPES[i % LOCAL_VAR_TYPES.length];
+            body.addStatement(StaticJavaParser.parseStatement(type + " var" + i + " = " + (type.equals("int") || type.equals("double") ? "0" : "null") + ";"));
+            body.addStatement(StaticJavaParser.parseStatement("System.out.println(\"" + i + "\");"));
+        }
+
+        this.fetcher = new LocalVariableFetcher(body);
+        this.fetcher.setMethodParameters(new NodeList<>(
+                new Parameter(PrimitiveType.intType(), "param0"),
+                new Parameter(StaticJavaParser.parseType("som.Sieve"), "param1")));
+    }
+
+    @Benchmark
+    public Optional<VariableDeclarator> getPrimitive() throws BuildFailedException {
+        return this.session.call(() -> this.fetcher.getLocalVarOrParamOfType(PrimitiveType.intType()));
+    }
+
+    @Benchmark
+    public Optional<VariableDeclarator> getObjectFromStr() throws BuildFailedException {
+        return this.session.call(() -> this.fetcher.getLocalVarOrParamOfTypeObjFromStr("som.Sieve"));
+    }
+
+    @Benchmark
+    public Optional<VariableDeclarator> getMissing() throws BuildFailedException {
+        return this.session.call(() -> this.fetcher.getLocalVarOrParamOfType(PrimitiveType.longType()));
+    }
+}
@@ -0,0 +1,47 @@
+package com.github.octavelarose.bootleg.benchmarks;
+
+import com.github.octavelarose.bootleg.builders.BuildFailedException;
+import com.github.octavelarose.bootleg.builders.GenerationSession;
+import com.github.octavelarose.bootleg.builders.programs.SyntheticProgramBuilder;
+import com.github.octavelarose.bootleg.builders.programs.classes.ClassBuilder;
+import com.github.octavelarose.bootleg.export.ProgramExporter;
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pretty printing and writing a whole program to disk, to a temporary directory.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ProgramExporterBenchmark {
+    @Param({"10", "1000"})
+    int classesNbr;
+
+    private final GenerationSession session = new GenerationSession().setSeed(42);
+    private HashMap<String, ClassBuilder> classBuilders;
+    private Path outputDir;
+
+    @Setup(Level.Trial)
+    public void setUp() throws BuildFailedException, IOException {
+        this.classBuilders = this.session.build(new SyntheticProgramBuilder(this.classesNbr, Math.max(this.classesNbr / 20, 1), 5, 2));
+        this.outputDir = Files.createTempDirectory("bootleg_bench");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(this.outputDir.toFile());
+    }
+
+    @Benchmark
+    public void export() {
+        this.session.run(() -> new ProgramExporter(this.outputDir.resolve("main").toString(), this.outputDir.resolve("jmh").toString())
+                .export(this.classBuilders));
+    }
+}
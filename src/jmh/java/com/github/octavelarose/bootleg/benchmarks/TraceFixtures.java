@@ -0,0 +1,34 @@
+package com.github.octavelarose.bootleg.benchmarks;
+
+import com.github.octavelarose.bootleg.builders.BuildFailedException;
+import com.github.octavelarose.bootleg.builders.programs.calltraces.filewriters.SyntheticCalltraceWriter;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Writes synthetic calltraces for the benchmarks.
+ */
+final class TraceFixtures {
+    private static final int METHODS_PER_CLASS = 8;
+    private static final int MAX_DEPTH = 12;
+    private static final int FAN_OUT = 3;
+
+    private TraceFixtures() {}
+
+    /**
+     * @param eventsNbr  The number of events in the trace.
+     * @param classesNbr The number of classes the calls are spread over.
+     * @return A temporary file containing the trace, deleted when the JVM exits.
+     * @throws IOException If creating the file fails.
+     * @throws BuildFailedException If writing the trace fails.
+     */
+    static File writeTrace(long eventsNbr, int classesNbr) throws IOException, BuildFailedException {
+        File traceFile = File.createTempFile("calltrace_bench", ".txt");
+        traceFile.deleteOnExit();
+
+        new SyntheticCalltraceWriter(eventsNbr, classesNbr, METHODS_PER_CLASS, MAX_DEPTH, FAN_OUT)
+                .write(traceFile.getPath(), null);
+        return traceFile;
+    }
+}
@@ -1,13 +1,21 @@
 package com.github.octavelarose.bootleg;
 
 import com.github.octavelarose.bootleg.builders.BuildFailedException;
+import com.github.octavelarose.bootleg.builders.GenerationSession;
 import com.github.octavelarose.bootleg.builders.programs.ProgramBuilder;
+import com.github.octavelarose.bootleg.builders.programs.SyntheticProgramBuilder;
 import com.github.octavelarose.bootleg.builders.programs.TestProgramBuilder;
 import com.github.octavelarose.bootleg.builders.programs.calltraces.CTParserProgramBuilder;
+import com.github.octavelarose.bootleg.builders.programs.calltraces.filewriters.SyntheticCalltraceWriter;
 import com.github.octavelarose.bootleg.builders.programs.classes.ClassBuilder;
+import com.github.octavelarose.bootleg.export.ModularProgramExporter;
 import com.github.octavelarose.bootleg.export.ProgramExporter;
+import com.github.octavelarose.bootleg.export.ProgramScaler;
+import com.github.octavelarose.bootleg.metrics.JvmMatrixRunner;
+import com.github.octavelarose.bootleg.metrics.TraceComparator;
 import org.apache.commons.cli.*;
 
+import java.io.IOException;
 import java.util.HashMap;
 
 
@@ -15,6 +23,13 @@ import java.util.HashMap;
  * Main class for the code generator program.
  */
 public class Bootleg {
+    private static final String DEFAULT_TRACE_OUTPUT_PATH = "./input_data/synthetic";
+    private static final int MAX_COMPARED_METHODS_NBR = 30;
+    private static final String DEFAULT_MATRIX_OUTPUT_PATH = "./jvm_matrix";
+
+    // Each receiver type is a full copy of its class, so more than this would mostly make for a huge program.
+    private static final int MAX_POLYMORPHISM_DEGREE = 100;
+
     /**
      * Main function to generate a codebase.
      * @param args Unused args for now.
@@ -23,7 +38,11 @@ public class Bootleg {
         CommandLineParser parser = new DefaultParser();
         CommandLine cmd = parser.parse(Bootleg.getOptions(), args);
 
-        generateProgram(cmd);
+        GenerationSession session = new GenerationSession();
+        if (cmd.hasOption("seed"))
+            session.setSeed(Long.parseLong(cmd.getOptionValue("seed")));
+
+        session.run(() -> generateProgram(cmd));
     }
 
     private static Options getOptions() {
@@ -32,6 +51,34 @@ public class Bootleg {
         options.addOption("ct", "ct-file", true, "generates a program from a calltrace file");
         options.addOption("op", "op-file", true, "if a calltrace file has been provided, you can also provide a file detailing method operations");
         options.addOption("n", "no-print-method-names", false,"to disable printing each method's name when in scope");
+        options.addOption("p", "polymorphism", true, "number of receiver types at call sites, achieved by synthesizing class hierarchies");
+        options.addOption("tp", "type-profile", true, "file giving the number of receiver types (and their weights) at call sites of given classes");
+        options.addOption("mc", "method-counters", false, "makes generated methods count their calls instead of printing their names, and prints the counts on exit");
+        options.addOption("jfr", "jfr-events", false, "makes generated methods commit a JFR event carrying the name of their traced method on every call");
+        options.addOption("rec", "call-recorder", false, "makes the generated program record its calls, and write them to a calltrace on exit to compare it with the original one");
+        options.addOption("jr", "jit-resistant", false, "makes generated values opaque to the JIT and writes results to sinks, so the generated work can't be optimized away");
+        options.addOption("ms", "method-sizes", true, "relative amounts of methods under the JIT's MaxInlineSize, FreqInlineSize and HugeMethodLimit (ex: 0.3,0.5,0.2)");
+        options.addOption("ap", "alloc-profile", true, "file giving the allocations made by each method, which get replayed in the generated program");
+        options.addOption("rs", "retained-share", true, "share of the replayed allocations that stay reachable, between 0 and 1 (default: 0), over a run of the traced program and up to 65536 per class, past which only the most recent ones are kept");
+        options.addOption("po", "persistent-objects", false, "stores constructed objects in fields of their caller's class, and reuses them instead of instantiating new ones");
+        options.addOption("vt", "virtual-threads", false, "starts the threads of a multi-threaded calltrace as virtual threads (needs JDK 21+ to run the generated program)");
+        options.addOption("sb", "startup-benchmark", false, "also generates a StartupHarness entry point, timing the loading and initialization of all classes before running the program once");
+        options.addOption("jmh", "jmh-benchmarks", false, "also generates a JMH benchmark per root call of the calltrace, in code_output/src/jmh/java");
+        options.addOption("sy", "synthetic", true, "generates a synthetic program of a given size: classes, packages, methods per class and call fan-out (ex: 1000,50,10,2)");
+        options.addOption("pd", "package-depth", true, "for synthetic programs, how many levels each package has (default: 1)");
+        options.addOption("it", "iterations", true, "for synthetic programs, how many times the entry point runs the program by default, and for --jvm-matrix how many times each configuration does (default: 10)");
+        options.addOption("sf", "scale-factor", true, "also exports N - 1 perturbed copies of the generated program, calling each other, and a ScaledHarness entry point running them all");
+        options.addOption("tl", "target-loc", true, "like --scale-factor, with the number of copies chosen to reach a given number of lines of code");
+        options.addOption("mm", "modules", true, "exports the program as a multi-project Gradle build of at most N modules in code_output_modules/, to compile it in parallel");
+        options.addOption("gt", "generate-trace", true, "writes a synthetic calltrace and operations file instead of generating a program: events, classes, methods per class, max depth and fan-out (ex: 1000000,500,10,8,3)");
+        options.addOption("or", "overload-ratio", true, "for synthetic calltraces, the share of methods having an overload in the trace, between 0 and 1 (default: 0). Generated programs merge overloads");
+        options.addOption("rr", "recursion-ratio", true, "for synthetic calltraces, the share of calls being recursive in the trace, between 0 and 1 (default: 0). Generated programs don't make recursive calls");
+        options.addOption("to", "trace-output", true, "for synthetic calltraces, the directory to write them to (default: input_data/synthetic)");
+        options.addOption("cmp", "compare-traces", true, "compares an original calltrace with the one recorded by the program generated from it, instead of generating a program (ex: calltrace.txt,calltrace_recorded.txt)");
+        options.addOption("jm", "jvm-matrix", true, "runs the exported program under every combination of the JVM options of a matrix file instead of generating a program, and compares their runtimes, GC pauses and JIT compilations");
+        options.addOption("mo", "matrix-output", true, "for --jvm-matrix, the directory to write the results to (default: jvm_matrix)");
+        options.addOption("r", "report", true, "writes a JSON report of the program generation to the given file: time and allocations of each phase, and counts about the program");
+        options.addOption("sd", "seed", true, "seed of the random values of the generated program, so that the same calltrace and seed give the same program");
         options.addOption("t", "test", false, "generates a very basic proof of concept program");
         options.addOption("h", "help", false, "displays this message.");
 
@@ -41,21 +88,78 @@ public class Bootleg {
     private static void generateProgram(CommandLine cmd) {
         HashMap<String, ClassBuilder> builders;
         ProgramBuilder pb;
+        int scaleFactor = 1;
+        long targetLoc = 0;
 
         if (cmd.hasOption("help")) {
             new HelpFormatter().printHelp("bootleg", Bootleg.getOptions());
             return;
         }
 
+        if (cmd.hasOption("generate-trace")) {
+            generateTrace(cmd);
+            return;
+        }
+
+        if (cmd.hasOption("compare-traces")) {
+            compareTraces(cmd);
+            return;
+        }
+
+        if (cmd.hasOption("jvm-matrix")) {
+            runJvmMatrix(cmd);
+            return;
+        }
+
         try {
+            checkOptionsCompatibility(cmd);
+
+            // Checked before building, rather than failing once the program has been generated
+            if (cmd.hasOption("scale-factor"))
+                scaleFactor = (int) getLongOptionValue(cmd, "scale-factor", 1, Integer.MAX_VALUE);
+            if (cmd.hasOption("target-loc"))
+                targetLoc = getLongOptionValue(cmd, "target-loc", 1, Long.MAX_VALUE);
+
             if (cmd.hasOption("test"))
                 pb = new TestProgramBuilder();
-            else if (cmd.hasOption("ct-file")) {
+            else if (cmd.hasOption("synthetic")) {
+                pb = SyntheticProgramBuilder.fromParametersStr(cmd.getOptionValue("synthetic"));
+                if (cmd.hasOption("package-depth"))
+                    ((SyntheticProgramBuilder)pb).setPackageDepth(Integer.parseInt(cmd.getOptionValue("package-depth")));
+                if (cmd.hasOption("iterations"))
+                    ((SyntheticProgramBuilder)pb).setIterationsNbr(Integer.parseInt(cmd.getOptionValue("iterations")));
+            } else if (cmd.hasOption("ct-file")) {
                 pb = new CTParserProgramBuilder(cmd.getOptionValue("ct-file"));
                 if (cmd.hasOption("op-file"))
                     ((CTParserProgramBuilder)pb).setOperationsFileName(cmd.getOptionValue("op-file"));
                 if (cmd.hasOption("no-print-method-names"))
                     ((CTParserProgramBuilder)pb).shouldPrintMethodNames(false);
+                if (cmd.hasOption("method-counters"))
+                    ((CTParserProgramBuilder)pb).setMethodCounters(true);
+                if (cmd.hasOption("jfr-events"))
+                    ((CTParserProgramBuilder)pb).setJfrEvents(true);
+                if (cmd.hasOption("call-recorder"))
+                    ((CTParserProgramBuilder)pb).setCallRecorder(true);
+                if (cmd.hasOption("jit-resistant"))
+                    ((CTParserProgramBuilder)pb).setJitResistant(true);
+                if (cmd.hasOption("polymorphism"))
+                    ((CTParserProgramBuilder)pb).setPolymorphismDegree((int) getLongOptionValue(cmd, "polymorphism", 1, MAX_POLYMORPHISM_DEGREE));
+                if (cmd.hasOption("type-profile"))
+                    ((CTParserProgramBuilder)pb).setTypeProfileFileName(cmd.getOptionValue("type-profile"));
+                if (cmd.hasOption("method-sizes"))
+                    ((CTParserProgramBuilder)pb).setMethodSizeDistribution(cmd.getOptionValue("method-sizes"));
+                if (cmd.hasOption("persistent-objects"))
+                    ((CTParserProgramBuilder)pb).setPersistentObjects(true);
+                if (cmd.hasOption("virtual-threads"))
+                    ((CTParserProgramBuilder)pb).setUseVirtualThreads(true);
+                if (cmd.hasOption("startup-benchmark"))
+                    ((CTParserProgramBuilder)pb).setStartupBenchmark(true);
+                if (cmd.hasOption("jmh-benchmarks"))
+                    ((CTParserProgramBuilder)pb).setJmhBenchmarks(true);
+                if (cmd.hasOption("alloc-profile"))
+                    ((CTParserProgramBuilder)pb).setAllocationProfileFileName(cmd.getOptionValue("alloc-profile"));
+                if (cmd.hasOption("retained-share"))
+                    ((CTParserProgramBuilder)pb).setRetainedAllocationsShare(getDoubleOptionValue(cmd, "retained-share", 0, 1));
             } else {
                 new HelpFormatter().printHelp("bootleg", Bootleg.getOptions());
                 return;
@@ -67,6 +171,134 @@ public class Bootleg {
             return;
         }
 
-        new ProgramExporter().export(builders);
+        if (cmd.hasOption("report"))
+            GenerationSession.current().getMetrics().countProgram(builders);
+
+        if (cmd.hasOption("modules")) {
+            new ModularProgramExporter(Integer.parseInt(cmd.getOptionValue("modules"))).export(builders);
+        } else {
+            new ProgramExporter().export(builders);
+
+            // Copies are perturbed from the session's seed, so that --seed also makes scaled programs reproducible
+            long seed = GenerationSession.current().getSeed();
+            if (cmd.hasOption("scale-factor"))
+                new ProgramScaler(scaleFactor).setSeed(seed).export(builders);
+            else if (cmd.hasOption("target-loc"))
+                ProgramScaler.fromTargetLoc(targetLoc, builders).setSeed(seed).export(builders);
+        }
+
+        if (cmd.hasOption("report")) {
+            try {
+                GenerationSession.current().getMetrics().writeReport(cmd.getOptionValue("report"));
+            } catch (IOException e) {
+                System.err.println("Writing the build report failed: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Rejects the options that can't be combined, rather than ignoring some of them.
+     * @param cmd The parsed command line.
+     * @throws BuildFailedException If the command line has options that can't be combined.
+     */
+    private static void checkOptionsCompatibility(CommandLine cmd) throws BuildFailedException {
+        if (!cmd.hasOption("modules"))
+            return;
+
+        if (cmd.hasOption("scale-factor") || cmd.hasOption("target-loc"))
+            throw new BuildFailedException("Scaled programs can't be exported as modules yet, --modules can't be combined with --scale-factor or --target-loc");
+        if (cmd.hasOption("jmh-benchmarks"))
+            throw new BuildFailedException("JMH benchmarks can't be exported as modules yet, --modules can't be combined with --jmh-benchmarks");
+    }
+
+    /**
+     * @param cmd      The parsed command line.
+     * @param option   The long name of an option taking an integer.
+     * @param minValue The smallest value the option accepts.
+     * @param maxValue The largest value the option accepts.
+     * @return The value of the option.
+     * @throws BuildFailedException If the value isn't an integer, or is out of range.
+     */
+    private static long getLongOptionValue(CommandLine cmd, String option, long minValue, long maxValue) throws BuildFailedException {
+        String valueStr = cmd.getOptionValue(option);
+        long value;
+
+        try {
+            value = Long.parseLong(valueStr.trim());
+        } catch (NumberFormatException e) {
+            throw new BuildFailedException("Invalid value for --" + option + ", not an integer: " + valueStr);
+        }
+
+        if (value < minValue || value > maxValue) {
+            String rangeStr = maxValue == Long.MAX_VALUE ? "at least " + minValue : "between " + minValue + " and " + maxValue;
+            throw new BuildFailedException("Invalid value for --" + option + ", should be " + rangeStr + ": " + valueStr);
+        }
+        return value;
+    }
+
+    /**
+     * @param cmd      The parsed command line.
+     * @param option   The long name of an option taking a number.
+     * @param minValue The smallest value the option accepts.
+     * @param maxValue The largest value the option accepts.
+     * @return The value of the option.
+     * @throws BuildFailedException If the value isn't a number, or is out of range.
+     */
+    private static double getDoubleOptionValue(CommandLine cmd, String option, double minValue, double maxValue) throws BuildFailedException {
+        String valueStr = cmd.getOptionValue(option);
+        double value;
+
+        try {
+            value = Double.parseDouble(valueStr.trim());
+        } catch (NumberFormatException e) {
+            throw new BuildFailedException("Invalid value for --" + option + ", not a number: " + valueStr);
+        }
+
+        if (!(value >= minValue && value <= maxValue))
+            throw new BuildFailedException("Invalid value for --" + option + ", should be between " + minValue + " and " + maxValue + ": " + valueStr);
+        return value;
+    }
+
+    private static void generateTrace(CommandLine cmd) {
+        String outputDir = cmd.getOptionValue("trace-output", DEFAULT_TRACE_OUTPUT_PATH);
+
+        try {
+            SyntheticCalltraceWriter ctWriter = SyntheticCalltraceWriter.fromParametersStr(cmd.getOptionValue("generate-trace"));
+            if (cmd.hasOption("overload-ratio"))
+                ctWriter.setOverloadRatio(getDoubleOptionValue(cmd, "overload-ratio", 0, 1));
+            if (cmd.hasOption("recursion-ratio"))
+                ctWriter.setRecursionRatio(getDoubleOptionValue(cmd, "recursion-ratio", 0, 1));
+            ctWriter.write(outputDir + "/calltrace_synthetic.txt", outputDir + "/operations_synthetic.txt");
+        } catch (BuildFailedException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static void compareTraces(CommandLine cmd) {
+        String[] filenames = cmd.getOptionValue("compare-traces").split(",");
+        if (filenames.length != 2) {
+            System.err.println("--compare-traces needs two calltrace files, the original one and the recorded one (ex: calltrace.txt,calltrace_recorded.txt)");
+            return;
+        }
+
+        try {
+            new TraceComparator(filenames[0], filenames[1]).compare().printReport(MAX_COMPARED_METHODS_NBR);
+        } catch (BuildFailedException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static void runJvmMatrix(CommandLine cmd) {
+        JvmMatrixRunner runner = new JvmMatrixRunner(cmd.getOptionValue("jvm-matrix"),
+                GenerationSession.current().getOutputPath(),
+                cmd.getOptionValue("matrix-output", DEFAULT_MATRIX_OUTPUT_PATH));
+        if (cmd.hasOption("iterations"))
+            runner.setIterationsNbr(Integer.parseInt(cmd.getOptionValue("iterations")));
+
+        try {
+            runner.run();
+        } catch (BuildFailedException e) {
+            e.printStackTrace();
+        }
     }
 }
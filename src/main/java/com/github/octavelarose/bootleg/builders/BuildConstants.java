@@ -10,6 +10,21 @@ public class BuildConstants {
     // The name given to static init blocks, by the ASM library.
     public static String STATIC_INIT_NAME = "<clinit>";
 
+    // The name of the private method holding the code of a static init block, which the block calls.
+    public static String STATIC_INIT_METHOD_NAME = "staticInit";
+
+    // The name of the empty static method called where a class first gets initialized in the trace, to trigger its initialization.
+    public static String CLASS_INIT_TRIGGER_NAME = "ensureInitialized";
+
+    // The prefix javac gives to the synthetic methods holding the bodies of lambdas, like "lambda$main$0".
+    public static String LAMBDA_BODY_PREFIX = "lambda$";
+
+    // The prefix lambda bodies get renamed with, since javac would otherwise clash with them when compiling the lambdas calling them.
+    public static String RENAMED_LAMBDA_BODY_PREFIX = "lambdaBody$";
+
+    // What the names of the classes the JVM spins up to implement lambdas contain, like "som/Run$$Lambda$14".
+    public static String LAMBDA_PROXY_MARKER = "$$Lambda";
+
     // How a function entry is defined in our data
     public static String ENTRY_STR = ">";
 
@@ -18,4 +33,16 @@ public class BuildConstants {
 
     // The length of local variable names.
     public static final int LOCAL_VAR_NAME_LENGTH = 5;
+
+    // The name of the static field each class writes its results to, so that the JIT can't discard the work producing them.
+    public static final String SINK_FIELD_NAME = "sink";
+
+    // The name of the static volatile field opaque operand values are derived from, so that the JIT can't constant fold them.
+    public static final String OPAQUE_SEED_FIELD_NAME = "opaqueSeed";
+
+    // The name of the static field every replayed allocation is written to, so that it escapes and can't be optimized away.
+    public static final String ALLOC_SINK_FIELD_NAME = "allocSink";
+
+    // The name of the static ring buffer keeping a share of the replayed allocations reachable.
+    public static final String RETAINED_ALLOCS_FIELD_NAME = "retainedAllocs";
 }
@@ -0,0 +1,344 @@
+package com.github.octavelarose.bootleg.builders;
+
+import com.github.javaparser.ast.type.ClassOrInterfaceType;
+import com.github.octavelarose.bootleg.builders.programs.ProgramBuilder;
+import com.github.octavelarose.bootleg.builders.programs.calltraces.LockReplayer;
+import com.github.octavelarose.bootleg.builders.programs.classes.CallRecorderClassBuilder;
+import com.github.octavelarose.bootleg.builders.programs.classes.ClassBuilder;
+import com.github.octavelarose.bootleg.builders.programs.classes.MethodCountersClassBuilder;
+import com.github.octavelarose.bootleg.builders.programs.classes.methods.FunctionalInterfacesManager;
+import com.github.octavelarose.bootleg.builders.programs.classes.methods.JfrEventsWriter;
+import com.github.octavelarose.bootleg.builders.programs.classes.methods.bodies.allocations.AllocationReplayer;
+import com.github.octavelarose.bootleg.builders.programs.classes.methods.bodies.variables.PersistentInstancesManager;
+import com.github.octavelarose.bootleg.builders.programs.classes.methods.sizes.MethodSizeController;
+import com.github.octavelarose.bootleg.export.ProgramExporter;
+import com.github.octavelarose.bootleg.metrics.BuildMetrics;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Owns the state of one program generation: its configuration, random numbers, caches, metrics and output location.
+ * Builders and exporters get it from GenerationSession.current(), i.e the session the calling thread runs in, so
+ * several sessions can generate programs concurrently in the same JVM without sharing anything.
+ * There's no default session: generating code outside of one fails, rather than sharing state between unrelated builds.
+ * Usage: "HashMap<String, ClassBuilder> program = new GenerationSession().setSeed(42).build(programBuilder)".
+ */
+public class GenerationSession {
+    public static final String DEFAULT_OUTPUT_PATH = "./code_output/src/main/java";
+    public static final String DEFAULT_JMH_OUTPUT_PATH = "./code_output/src/jmh/java";
+    public static final String DEFAULT_MODULES_OUTPUT_PATH = "./code_output_modules";
+
+    private static final ThreadLocal<GenerationSession> currentSession = new ThreadLocal<>();
+
+    private long seed;
+    private Random random;
+
+    // The random numbers of the tasks run with callInStream() on each thread, which take precedence over the session's.
+    private final ThreadLocal<Random> streamRandom = new ThreadLocal<>();
+
+    private String outputPath = DEFAULT_OUTPUT_PATH;
+    private String jmhOutputPath = DEFAULT_JMH_OUTPUT_PATH;
+    private String modulesOutputPath = DEFAULT_MODULES_OUTPUT_PATH;
+
+    private final BuildMetrics metrics = new BuildMetrics(this);
+
+    // Parsed types by class name. The same few classes get parsed over and over, and parsing is far slower than cloning.
+    private final Map<String, ClassOrInterfaceType> classTypesCache = new ConcurrentHashMap<>();
+    private final LongAdder typeCacheHits = new LongAdder();
+    private final LongAdder typeCacheMisses = new LongAdder();
+
+    // Estimated bytecode sizes of raw expressions, by their text.
+    private final Map<String, Integer> rawExprsSizeCache = new ConcurrentHashMap<>();
+
+    // If true, primitive values are derived from the class' opaque seed field instead of being literal constants.
+    private boolean useOpaqueValues = false;
+
+    // Lengths of the arrays passed as parameters, by array type (ex: "int[]" -> 100). Arrays are empty if their type isn't in there.
+    private Map<String, Integer> arrayLengths = new HashMap<>();
+
+    private boolean printMethodNames = true;
+
+    // Keeps generated methods under their target bytecode sizes, if set.
+    private MethodSizeController sizeController = null;
+
+    // Replays the allocations of traced methods, if set.
+    private AllocationReplayer allocationReplayer = null;
+
+    // Keeps constructed objects in fields and reuses them, if set.
+    private PersistentInstancesManager persistentInstances = null;
+
+    // Replays lock events as critical sections on shared locks, if set.
+    private LockReplayer lockReplayer = null;
+
+    // Types the lambdas calling lambda bodies, if set.
+    private FunctionalInterfacesManager functionalInterfaces = null;
+
+    // Counts the calls to each method instead of printing their names, if set.
+    private MethodCountersClassBuilder methodCounters = null;
+
+    // Makes methods commit a JFR event named after their traced method on every call, if set.
+    private JfrEventsWriter jfrEvents = null;
+
+    // Makes methods record their calls, to compare them with the trace, if set.
+    private CallRecorderClassBuilder callRecorder = null;
+
+    /**
+     * A task run in a session.
+     */
+    @FunctionalInterface
+    public interface SessionTask<T> {
+        T run() throws BuildFailedException;
+    }
+
+    public GenerationSession() {
+        this.setSeed(System.nanoTime());
+    }
+
+    /**
+     * @return The session the current thread runs in.
+     * @throws IllegalStateException If the current thread doesn't run in a session.
+     */
+    public static GenerationSession current() {
+        GenerationSession session = currentSession.get();
+        if (session == null)
+            throw new IllegalStateException("Not running in a generation session, use GenerationSession.call() or build()");
+        return session;
+    }
+
+    /**
+     * Runs a task in this session, i.e with GenerationSession.current() returning it on the current thread.
+     * @param task The task to run.
+     * @return The result of the task.
+     * @throws BuildFailedException If the task fails.
+     */
+    public <T> T call(SessionTask<T> task) throws BuildFailedException {
+        GenerationSession previousSession = currentSession.get();
+        currentSession.set(this);
+        try {
+            return task.run();
+        } finally {
+            restore(previousSession);
+        }
+    }
+
+    /**
+     * @param task The task to run in this session.
+     */
+    public void run(Runnable task) {
+        GenerationSession previousSession = currentSession.get();
+        currentSession.set(this);
+        try {
+            task.run();
+        } finally {
+            restore(previousSession);
+        }
+    }
+
+    /**
+     * @param previousSession The session the current thread ran in before running a task in this one, or null.
+     */
+    private static void restore(GenerationSession previousSession) {
+        if (previousSession == null)
+            currentSession.remove();
+        else
+            currentSession.set(previousSession);
+    }
+
+    /**
+     * Runs a task in this session with random numbers of its own, derived from the seed of the session and a key naming
+     * the task. Tasks run concurrently then generate the same code whichever order they get scheduled in.
+     * @param streamKey The key of the task, like the name of the class it generates.
+     * @param task      The task to run.
+     * @return The result of the task.
+     * @throws BuildFailedException If the task fails.
+     */
+    public <T> T callInStream(String streamKey, SessionTask<T> task) throws BuildFailedException {
+        Random previousRandom = this.streamRandom.get();
+        this.streamRandom.set(new Random(this.seed ^ (streamKey.hashCode() * 0x9E3779B97F4A7C15L)));
+        try {
+            return this.call(task);
+        } finally {
+            if (previousRandom == null)
+                this.streamRandom.remove();
+            else
+                this.streamRandom.set(previousRandom);
+        }
+    }
+
+    /**
+     * @param programBuilder The builder of the program.
+     * @return The classes of the program, by name.
+     * @throws BuildFailedException If building the program fails.
+     */
+    public HashMap<String, ClassBuilder> build(ProgramBuilder programBuilder) throws BuildFailedException {
+        return this.call(programBuilder::build);
+    }
+
+    /**
+     * Exports a program to the output location of this session.
+     * @param classBuilders The classes of the program.
+     */
+    public void export(HashMap<String, ClassBuilder> classBuilders) {
+        this.run(() -> new ProgramExporter(this.outputPath, this.jmhOutputPath).export(classBuilders));
+    }
+
+    /**
+     * @param seed The seed of the random numbers of the session, so that the same seed generates the same program.
+     */
+    public GenerationSession setSeed(long seed) {
+        this.seed = seed;
+        this.random = new Random(seed);
+        return this;
+    }
+
+    public long getSeed() {
+        return this.seed;
+    }
+
+    public Random getRandom() {
+        Random streamRandom = this.streamRandom.get();
+        return streamRandom != null ? streamRandom : this.random;
+    }
+
+    /**
+     * @param outputPath    The directory to export the program to.
+     * @param jmhOutputPath The directory to export the JMH benchmarks to.
+     */
+    public GenerationSession setOutputPaths(String outputPath, String jmhOutputPath) {
+        this.outputPath = outputPath;
+        this.jmhOutputPath = jmhOutputPath;
+        return this;
+    }
+
+    /**
+     * @param modulesOutputPath The directory to export the program to when exporting it as modules.
+     */
+    public GenerationSession setModulesOutputPath(String modulesOutputPath) {
+        this.modulesOutputPath = modulesOutputPath;
+        return this;
+    }
+
+    public String getOutputPath() {
+        return this.outputPath;
+    }
+
+    public String getJmhOutputPath() {
+        return this.jmhOutputPath;
+    }
+
+    public String getModulesOutputPath() {
+        return this.modulesOutputPath;
+    }
+
+    public BuildMetrics getMetrics() {
+        return this.metrics;
+    }
+
+    public Map<String, ClassOrInterfaceType> getClassTypesCache() {
+        return this.classTypesCache;
+    }
+
+    public LongAdder getTypeCacheHits() {
+        return this.typeCacheHits;
+    }
+
+    public LongAdder getTypeCacheMisses() {
+        return this.typeCacheMisses;
+    }
+
+    public Map<String, Integer> getRawExprsSizeCache() {
+        return this.rawExprsSizeCache;
+    }
+
+    public boolean isUsingOpaqueValues() {
+        return this.useOpaqueValues;
+    }
+
+    public void setUseOpaqueValues(boolean useOpaqueValues) {
+        this.useOpaqueValues = useOpaqueValues;
+    }
+
+    public Map<String, Integer> getArrayLengths() {
+        return this.arrayLengths;
+    }
+
+    public void setArrayLengths(Map<String, Integer> arrayLengths) {
+        this.arrayLengths = arrayLengths;
+    }
+
+    public boolean shouldPrintMethodNames() {
+        return this.printMethodNames;
+    }
+
+    public void setPrintMethodNames(boolean printMethodNames) {
+        this.printMethodNames = printMethodNames;
+    }
+
+    public MethodSizeController getSizeController() {
+        return this.sizeController;
+    }
+
+    public void setSizeController(MethodSizeController sizeController) {
+        this.sizeController = sizeController;
+    }
+
+    public AllocationReplayer getAllocationReplayer() {
+        return this.allocationReplayer;
+    }
+
+    public void setAllocationReplayer(AllocationReplayer allocationReplayer) {
+        this.allocationReplayer = allocationReplayer;
+    }
+
+    public PersistentInstancesManager getPersistentInstances() {
+        return this.persistentInstances;
+    }
+
+    public void setPersistentInstances(PersistentInstancesManager persistentInstances) {
+        this.persistentInstances = persistentInstances;
+    }
+
+    public LockReplayer getLockReplayer() {
+        return this.lockReplayer;
+    }
+
+    public void setLockReplayer(LockReplayer lockReplayer) {
+        this.lockReplayer = lockReplayer;
+    }
+
+    public FunctionalInterfacesManager getFunctionalInterfaces() {
+        return this.functionalInterfaces;
+    }
+
+    public void setFunctionalInterfaces(FunctionalInterfacesManager functionalInterfaces) {
+        this.functionalInterfaces = functionalInterfaces;
+    }
+
+    public MethodCountersClassBuilder getMethodCounters() {
+        return this.methodCounters;
+    }
+
+    public void setMethodCounters(MethodCountersClassBuilder methodCounters) {
+        this.methodCounters = methodCounters;
+    }
+
+    public JfrEventsWriter getJfrEvents() {
+        return this.jfrEvents;
+    }
+
+    public void setJfrEvents(JfrEventsWriter jfrEvents) {
+        this.jfrEvents = jfrEvents;
+    }
+
+    public CallRecorderClassBuilder getCallRecorder() {
+        return this.callRecorder;
+    }
+
+    public void setCallRecorder(CallRecorderClassBuilder callRecorder) {
+        this.callRecorder = callRecorder;
+    }
+}
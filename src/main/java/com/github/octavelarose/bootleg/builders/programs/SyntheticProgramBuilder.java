@@ -0,0 +1,231 @@
+package com.github.octavelarose.bootleg.builders.programs;
+
+import com.github.javaparser.ast.Modifier;
+import com.github.javaparser.ast.NodeList;
+import com.github.javaparser.ast.body.Parameter;
+import com.github.javaparser.ast.stmt.BlockStmt;
+import com.github.javaparser.ast.type.PrimitiveType;
+import com.github.octavelarose.bootleg.builders.BuildFailedException;
+import com.github.octavelarose.bootleg.builders.programs.classes.BasicClassBuilder;
+import com.github.octavelarose.bootleg.builders.programs.classes.ClassBuilder;
+import com.github.octavelarose.bootleg.builders.programs.classes.EntryPointBuilder;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * Builds a synthetic program of a chosen size, to measure how class loading, verification and JIT warmup scale with it.
+ * Classes are spread over packages, and call the methods of their children in a call tree with a given fan-out.
+ * The entry point calls the methods of the tree roots in order, several times, printing how long each iteration took.
+ * Everything is deterministic, so that programs of different sizes only differ by their size.
+ */
+public class SyntheticProgramBuilder implements ProgramBuilder {
+    private static final String ROOT_PKG_NAME = "synth";
+    private static final String CLASS_NAME_PREFIX = "Synth";
+    private static final String METHOD_NAME_PREFIX = "m";
+    private static final String ENTRY_POINT_NAME = "Harness";
+
+    // Calls to chain children are cut after this many, so that a fan-out of 1 doesn't overflow the stack.
+    private static final int MAX_CHAIN_LENGTH = 64;
+
+    // How many root calls a single method of the entry point makes, to stay well under the JVM's method size limit.
+    private static final int MAX_CALLS_PER_RUN_METHOD = 500;
+
+    private final int classesNbr;
+    private final int packagesNbr;
+    private final int methodsPerClass;
+    private final int fanOut;
+    private int packageDepth = 1;
+    private int iterationsNbr = 10;
+
+    /**
+     * @param classesNbr      The number of classes to generate.
+     * @param packagesNbr     The number of packages the classes are spread over.
+     * @param methodsPerClass The number of methods in each class.
+     * @param fanOut          How many other classes each method calls.
+     * @throws BuildFailedException If one of the values is out of range.
+     */
+    public SyntheticProgramBuilder(int classesNbr, int packagesNbr, int methodsPerClass, int fanOut) throws BuildFailedException {
+        if (classesNbr < 1 || packagesNbr < 1 || methodsPerClass < 1 || fanOut < 0)
+            throw new BuildFailedException("Invalid synthetic program parameters: " + classesNbr + " classes, "
+                    + packagesNbr + " packages, " + methodsPerClass + " methods per class, fan-out of " + fanOut);
+
+        this.classesNbr = classesNbr;
+        this.packagesNbr = Math.min(packagesNbr, classesNbr);
+        this.methodsPerClass = methodsPerClass;
+        this.fanOut = fanOut;
+    }
+
+    /**
+     * @param str The parameters as a string, like "1000,50,10,2" (classes, packages, methods per class, fan-out).
+     * @return A new SyntheticProgramBuilder object.
+     * @throws BuildFailedException If the string is invalid.
+     */
+    public static SyntheticProgramBuilder fromParametersStr(String str) throws BuildFailedException {
+        String[] splitStr = str.split(",");
+        if (splitStr.length != 4)
+            throw new BuildFailedException("Synthetic program parameters should have 4 values, not: " + str);
+
+        try {
+            return new SyntheticProgramBuilder(Integer.parseInt(splitStr[0].trim()),
+                    Integer.parseInt(splitStr[1].trim()),
+                    Integer.parseInt(splitStr[2].trim()),
+                    Integer.parseInt(splitStr[3].trim()));
+        } catch (NumberFormatException e) {
+            throw new BuildFailedException("Invalid synthetic program parameters: " + str);
+        }
+    }
+
+    /**
+     * @param packageDepth How many levels each package has under the root package, like 3 for "synth.p0.d1.d2".
+     */
+    public void setPackageDepth(int packageDepth) {
+        this.packageDepth = Math.max(packageDepth, 1);
+    }
+
+    /**
+     * @param iterationsNbr How many times the entry point calls the tree roots by default.
+     */
+    public void setIterationsNbr(int iterationsNbr) {
+        this.iterationsNbr = Math.max(iterationsNbr, 1);
+    }
+
+    public HashMap<String, ClassBuilder> build() throws BuildFailedException {
+        System.out.println("Generating a synthetic program: " + this.classesNbr + " classes, " + this.packagesNbr
+                + " packages, " + this.methodsPerClass + " methods per class, fan-out of " + this.fanOut);
+
+        HashMap<String, ClassBuilder> classBuilders = new LinkedHashMap<>();
+        List<ClassBuilder> classes = new ArrayList<>();
+
+        for (int classIdx = 0; classIdx < this.classesNbr; classIdx++) {
+            BasicClassBuilder classCb = new BasicClassBuilder(CLASS_NAME_PREFIX + classIdx);
+            classCb.setPackageDeclaration(this.getPackageName(classIdx % this.packagesNbr));
+            classes.add(classCb);
+            classBuilders.put(classCb.getImportStr().replace(".", "/"), classCb);
+        }
+
+        for (int classIdx = 0; classIdx < this.classesNbr; classIdx++) {
+            for (int methodIdx = 0; methodIdx < this.methodsPerClass; methodIdx++)
+                this.addMethod(classes, classIdx, methodIdx);
+        }
+
+        classBuilders.put(ENTRY_POINT_NAME, this.getEntryPoint(classes));
+        return classBuilders;
+    }
+
+    /**
+     * @param pkgIdx The index of the package.
+     * @return The name of the package, like "synth.p3.d1.d2" for a depth of 3.
+     */
+    private String getPackageName(int pkgIdx) {
+        StringBuilder pkgName = new StringBuilder(ROOT_PKG_NAME).append(".p").append(pkgIdx);
+        for (int depth = 1; depth < this.packageDepth; depth++)
+            pkgName.append(".d").append(depth);
+        return pkgName.toString();
+    }
+
+    /**
+     * The classes form a forest: with a fan-out of F, the children of class i are classes i*F+1 to i*F+F.
+     * With a fan-out of 1 they'd form one long chain, which is cut every MAX_CHAIN_LENGTH classes instead.
+     * @param classIdx The index of the class.
+     * @return The indexes of the classes the methods of the class call.
+     */
+    private List<Integer> getChildren(int classIdx) {
+        List<Integer> children = new ArrayList<>();
+
+        if (this.fanOut == 1) {
+            if ((classIdx + 1) % MAX_CHAIN_LENGTH != 0 && classIdx + 1 < this.classesNbr)
+                children.add(classIdx + 1);
+            return children;
+        }
+
+        for (int i = 1; i <= this.fanOut && (long) classIdx * this.fanOut + i < this.classesNbr; i++)
+            children.add(classIdx * this.fanOut + i);
+        return children;
+    }
+
+    /**
+     * @return The indexes of the classes no other class calls, i.e the ones the entry point needs to call.
+     */
+    private List<Integer> getRoots() {
+        List<Integer> roots = new ArrayList<>();
+
+        if (this.fanOut == 0) {
+            for (int classIdx = 0; classIdx < this.classesNbr; classIdx++)
+                roots.add(classIdx);
+        } else if (this.fanOut == 1) {
+            for (int classIdx = 0; classIdx < this.classesNbr; classIdx += MAX_CHAIN_LENGTH)
+                roots.add(classIdx);
+        } else {
+            roots.add(0);
+        }
+
+        return roots;
+    }
+
+    /**
+     * Adds a static method doing a bit of arithmetic, and calling the method with the same index in each child class.
+     * @param classes   All the classes.
+     * @param classIdx  The index of the class to add the method to.
+     * @param methodIdx The index of the method.
+     */
+    private void addMethod(List<ClassBuilder> classes, int classIdx, int methodIdx) {
+        BlockStmt body = new BlockStmt()
+                .addStatement("int r = x * 31 + " + (classIdx * this.methodsPerClass + methodIdx) + ";")
+                .addStatement("r ^= r >>> " + (methodIdx % 16 + 1) + ";");
+
+        for (int childIdx: this.getChildren(classIdx))
+            body.addStatement("r += " + classes.get(childIdx).getImportStr() + "." + METHOD_NAME_PREFIX + methodIdx + "(r);");
+
+        body.addStatement("return r;");
+
+        classes.get(classIdx).addMethod(METHOD_NAME_PREFIX + methodIdx,
+                PrimitiveType.intType(),
+                new NodeList<>(new Parameter(PrimitiveType.intType(), "x")),
+                body,
+                new NodeList<>(Modifier.publicModifier(), Modifier.staticModifier()));
+    }
+
+    /**
+     * @param classes All the classes.
+     * @return An entry point calling every method of the tree roots in order, several times, and timing each iteration.
+     * The number of iterations can be given as the program's first argument.
+     */
+    private EntryPointBuilder getEntryPoint(List<ClassBuilder> classes) {
+        List<String> rootCalls = new ArrayList<>();
+        for (int rootIdx: this.getRoots()) {
+            for (int methodIdx = 0; methodIdx < this.methodsPerClass; methodIdx++)
+                rootCalls.add(classes.get(rootIdx).getImportStr() + "." + METHOD_NAME_PREFIX + methodIdx);
+        }
+
+        BlockStmt mainBody = new BlockStmt()
+                .addStatement("int iterations = args.length > 0 ? Integer.parseInt(args[0]) : " + this.iterationsNbr + ";")
+                .addStatement("int result = 0;");
+
+        BlockStmt loopBody = new BlockStmt().addStatement("long startNs = System.nanoTime();");
+        List<BlockStmt> runMethodsBodies = new ArrayList<>();
+        for (int i = 0; i < rootCalls.size(); i++) {
+            if (i % MAX_CALLS_PER_RUN_METHOD == 0) {
+                runMethodsBodies.add(new BlockStmt().addStatement("int r = x;"));
+                loopBody.addStatement("result = run" + (runMethodsBodies.size() - 1) + "(result);");
+            }
+            runMethodsBodies.get(runMethodsBodies.size() - 1).addStatement("r += " + rootCalls.get(i) + "(r);");
+        }
+        loopBody.addStatement("System.out.println(\"Iteration \" + i + \" (us): \" + (System.nanoTime() - startNs) / 1000);");
+
+        mainBody.addStatement("for (int i = 0; i < iterations; i++) " + loopBody);
+        mainBody.addStatement("System.out.println(\"Result: \" + result);");
+
+        EntryPointBuilder entryPoint = new EntryPointBuilder(ENTRY_POINT_NAME, null, mainBody);
+        for (int i = 0; i < runMethodsBodies.size(); i++)
+            entryPoint.addMethod("run" + i,
+                    PrimitiveType.intType(),
+                    new NodeList<>(new Parameter(PrimitiveType.intType(), "x")),
+                    runMethodsBodies.get(i).addStatement("return r;"),
+                    new NodeList<>(Modifier.privateModifier(), Modifier.staticModifier()));
+
+        return entryPoint;
+    }
+}
@@ -11,6 +11,9 @@ import static com.github.octavelarose.bootleg.builders.BuildConstants.STATIC_INI
 /**
  * Used to wrap a call definition, which is given as a list of strings describing the method.
  * Format example: "< pub/con (Lcd/CallSign;Lcd/Vector3D;)V cd/Aircraft.<init> (54562ns)"
+ * Calls from multi-threaded programs end with the id of their thread: "... cd/Aircraft.<init> (54562ns) t=12"
+ * Lock events also give the id of their lock, like "l=5f3a": either calls to java.util.concurrent.locks classes,
+ * or monitor enters (">") and exits ("<"), like "> mon ()V som/Sieve.<monitor> (54562ns) t=12 l=5f3a".
  */
 public class CTMethodInfo {
     public static int DIRECTION = 0;
@@ -18,6 +21,18 @@ public class CTMethodInfo {
     public static int DESCRIPTOR = 2;
     public static int FULLNAME = 3;
     public static int TIME = 4;
+    public static int THREAD = 5;
+
+    // The thread of calls whose thread isn't given, i.e all of them in single-threaded traces.
+    public static final String DEFAULT_THREAD_ID = "main";
+
+    private static final String THREAD_PREFIX = "t=";
+    private static final String LOCK_PREFIX = "l=";
+
+    // The method name of monitor enter/exit events, i.e of synchronized blocks and methods.
+    public static final String MONITOR_NAME = "<monitor>";
+
+    private static final String LOCKS_PKG_PREFIX = "java/util/concurrent/locks/";
 
     private final List<String> methodArr;
 
@@ -40,6 +55,68 @@ public class CTMethodInfo {
         return splitFullName[0];
     }
 
+    /**
+     * @return The id of the thread the call was made from, or the default thread id if the trace doesn't give one.
+     */
+    public String getThreadId() {
+        String threadId = this.getAnnotation(THREAD_PREFIX);
+        return (threadId != null) ? threadId : DEFAULT_THREAD_ID;
+    }
+
+    /**
+     * @return The id of the lock of a lock event, or the name of the class if the trace doesn't give one.
+     */
+    public String getLockId() {
+        String lockId = this.getAnnotation(LOCK_PREFIX);
+        return (lockId != null) ? lockId : this.getClassName();
+    }
+
+    /**
+     * @param prefix The prefix of the annotation, like "t=".
+     * @return The value of an annotation following the time of the call, or null if there's none with that prefix.
+     */
+    private String getAnnotation(String prefix) {
+        for (int i = THREAD; i < methodArr.size(); i++) {
+            if (methodArr.get(i).startsWith(prefix))
+                return methodArr.get(i).substring(prefix.length());
+        }
+        return null;
+    }
+
+    /**
+     * @return The time of the call in nanoseconds, like 54562 for "(54562ns)". 0 if it can't be parsed.
+     */
+    public long getTimeNs() {
+        if (methodArr.size() <= TIME)
+            return 0;
+        try {
+            return Long.parseLong(methodArr.get(TIME).replaceAll("[^0-9]", ""));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * @return true if it's a monitor enter or exit, false otherwise.
+     */
+    public boolean isMonitorEvent() {
+        return this.getMethodName().equals(MONITOR_NAME);
+    }
+
+    /**
+     * @return true if it's a call to a java.util.concurrent.locks class, false otherwise.
+     */
+    public boolean isLockPackageCall() {
+        return this.getClassName().startsWith(LOCKS_PKG_PREFIX);
+    }
+
+    /**
+     * @return true if the call is related to locking, and should be replayed as such instead of being generated.
+     */
+    public boolean isLockEvent() {
+        return this.isMonitorEvent() || this.isLockPackageCall();
+    }
+
     public String getMethodName() {
         String[] splitFullName = methodArr.get(FULLNAME).split("\\.");
         return splitFullName[1];
@@ -77,21 +154,43 @@ public class CTMethodInfo {
     }
 
     /**
-     * @return true if the method is a lambda, false otherwise.
+     * @return true if it's a call to a class generated by the JVM to implement a lambda, which forwards it to the lambda body.
+     */
+    public boolean isLambdaProxy() {
+        return this.getClassName().contains(BuildConstants.LAMBDA_PROXY_MARKER);
+    }
+
+    /**
+     * @return true if it's the synthetic method holding the body of a lambda, like "som/Run.lambda$main$0".
+     */
+    public boolean isLambdaBody() {
+        return this.getMethodName().startsWith(BuildConstants.LAMBDA_BODY_PREFIX);
+    }
+
+    /**
+     * Lambda bodies get renamed, since javac generates a method with the same name for the lambda calling them.
+     */
+    public void modifyIfLambdaBody() {
+        if (this.isLambdaBody())
+            methodArr.set(FULLNAME, this.getClassName() + "."
+                    + BuildConstants.RENAMED_LAMBDA_BODY_PREFIX + this.getMethodName().substring(BuildConstants.LAMBDA_BODY_PREFIX.length()));
+    }
+
+    /**
+     * @return true if it's a static initializer, whether it's been renamed by modifyIfStaticInit() or not.
      */
-    public boolean isLambda() {
-        // Some lambda function names are capitalized and some aren't
-        return methodArr.get(FULLNAME).contains("Lambda") || methodArr.get(FULLNAME).contains("lambda");
+    public boolean isStaticInit() {
+        return this.getMethodName().equals(STATIC_INIT_NAME) || this.getMethodName().equals(BuildConstants.STATIC_INIT_METHOD_NAME);
     }
 
     /**
-     * Static initializers, defined by <clinit>, are NOT handled so we pretend it's a regular public method.
-     * TODO remove and handle static initializers instead (the method addStaticInitializer() exists for class instances)
+     * Static initializers, defined by <clinit>, are turned into a private static method, which the static init block
+     * of the class then calls. Generating its code as a regular method lets us edit it like any other.
      */
     public void modifyIfStaticInit() {
         if (this.getMethodName().equals(STATIC_INIT_NAME)) {
-            methodArr.set(FULLNAME, methodArr.get(FULLNAME).replace(this.getMethodName(), "staticInit"));
-            methodArr.set(SCOPE, methodArr.get(SCOPE).concat("/pub"));
+            methodArr.set(FULLNAME, methodArr.get(FULLNAME).replace(this.getMethodName(), BuildConstants.STATIC_INIT_METHOD_NAME));
+            methodArr.set(SCOPE, "pri/sta");
         }
     }
 
@@ -2,14 +2,42 @@ package com.github.octavelarose.bootleg.builders.programs.calltraces;
 
 import com.github.javaparser.ast.body.CallableDeclaration;
 import com.github.javaparser.utils.Pair;
+import com.github.octavelarose.bootleg.builders.BuildConstants;
 import com.github.octavelarose.bootleg.builders.BuildFailedException;
+import com.github.octavelarose.bootleg.builders.GenerationSession;
 import com.github.octavelarose.bootleg.builders.programs.ProgramBuilder;
+import com.github.octavelarose.bootleg.builders.programs.calltraces.fileparsers.AllocationProfileFileParser;
 import com.github.octavelarose.bootleg.builders.programs.calltraces.fileparsers.ArithmeticOperationsFileParser;
 import com.github.octavelarose.bootleg.builders.programs.calltraces.fileparsers.CTFileParser;
+import com.github.octavelarose.bootleg.builders.programs.calltraces.fileparsers.TypeProfileFileParser;
+import com.github.octavelarose.bootleg.builders.programs.classes.BenchmarkRootsBuilder;
+import com.github.octavelarose.bootleg.builders.programs.classes.BootlegHarnessBuilder;
+import com.github.octavelarose.bootleg.builders.programs.classes.CallRecorderClassBuilder;
 import com.github.octavelarose.bootleg.builders.programs.classes.ClassBuilder;
+import com.github.octavelarose.bootleg.builders.programs.classes.JmhBenchmarkBuilder;
+import com.github.octavelarose.bootleg.builders.programs.classes.MethodCountersClassBuilder;
+import com.github.octavelarose.bootleg.builders.programs.classes.StartupHarnessBuilder;
+import com.github.octavelarose.bootleg.builders.programs.classes.hierarchies.HierarchySynthesizer;
+import com.github.octavelarose.bootleg.builders.programs.classes.methods.FunctionalInterfacesManager;
+import com.github.octavelarose.bootleg.builders.programs.classes.methods.JfrEventsWriter;
+import com.github.octavelarose.bootleg.builders.programs.classes.methods.SinkConsumptionWriter;
+import com.github.octavelarose.bootleg.builders.programs.classes.methods.TracedThreadsWriter;
+import com.github.octavelarose.bootleg.builders.programs.classes.methods.bodies.BodyFinalizer;
+import com.github.octavelarose.bootleg.builders.programs.classes.methods.bodies.allocations.AllocationReplayer;
+import com.github.octavelarose.bootleg.builders.programs.classes.methods.bodies.allocations.AllocationSite;
+import com.github.octavelarose.bootleg.builders.programs.classes.methods.bodies.variables.PersistentInstancesManager;
+import com.github.octavelarose.bootleg.builders.programs.classes.methods.sizes.MethodSizeController;
+import com.github.octavelarose.bootleg.metrics.BuildMetrics;
+import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.lang3.StringUtils;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.Stack;
 
 /**
@@ -17,12 +45,34 @@ import java.util.Stack;
  * Generates a program from a calltrace file of a format I defined myself.
  */
 public class CTParserProgramBuilder implements ProgramBuilder {
+    // Calltrace files are named like "calltrace_Sieve.txt", the benchmark's name being the last part.
+    private static final String CT_FILE_NAME_PREFIX = "calltrace_";
+
     private final List<List<String>> callFileLines;
+    private final String benchmarkName;
     private HashMap<String, List<String>> methodOperations;
+    private HashMap<String, List<Integer>> typeProfile = new HashMap<>();
+    private int polymorphismDegree = 1;
+    private HashMap<String, List<AllocationSite>> allocationSites;
+    private double retainedAllocsShare = 0;
+    private boolean hasPersistentObjects = false;
+    private boolean useVirtualThreads = false;
+    private boolean isStartupBenchmark = false;
+    private boolean hasJmhBenchmarks = false;
+    private boolean hasMethodCounters = false;
+    private boolean hasJfrEvents = false;
+    private boolean hasCallRecorder = false;
+    private boolean shouldPrintMethodNames = true;
+    private boolean isJitResistant = false;
+    private MethodSizeController sizeController = null;
 
     public CTParserProgramBuilder(String ctFileName) throws BuildFailedException {
         System.out.println("Generating a program from the calltrace file: " + ctFileName);
-        this.callFileLines = new CTFileParser(ctFileName).parse().getParsedCT();
+        try (BuildMetrics.Phase parsePhase = GenerationSession.current().getMetrics().startPhase("parse")) {
+            this.callFileLines = new CTFileParser(ctFileName).parse().getParsedCT();
+            parsePhase.setEventsNbr(this.callFileLines.size());
+        }
+        this.benchmarkName = FilenameUtils.getBaseName(ctFileName).replaceFirst("^" + CT_FILE_NAME_PREFIX, "");
     }
 
     /**
@@ -35,26 +85,348 @@ public class CTParserProgramBuilder implements ProgramBuilder {
         this.methodOperations = new ArithmeticOperationsFileParser(opsFileName).parse().getParsedArithmeticOps();
     }
 
+    /**
+     * Provide an optional file describing how many receiver types are wanted at call sites of given classes.
+     * @param typeProfileFileName The name of the type profile file
+     * @throws BuildFailedException If parsing the type profile file fails.
+     */
+    public void setTypeProfileFileName(String typeProfileFileName) throws BuildFailedException {
+        System.out.println("Optional type profile file provided: " + typeProfileFileName);
+        this.typeProfile = new TypeProfileFileParser(typeProfileFileName).parse().getParsedReceiverWeights();
+    }
+
+    /**
+     * @param polymorphismDegree The number of receiver types at call sites of classes that aren't in the type profile.
+     */
+    public void setPolymorphismDegree(int polymorphismDegree) {
+        this.polymorphismDegree = polymorphismDegree;
+    }
+
     /**
      * @param shouldPrintMethodNames Represents whether the method names should be printed when entering each method.
      */
     public void shouldPrintMethodNames(boolean shouldPrintMethodNames) {
-        CallInterpreter.setShouldPrintMethodNames(shouldPrintMethodNames);
+        this.shouldPrintMethodNames = shouldPrintMethodNames;
     }
 
-    public HashMap<String, ClassBuilder> build() throws BuildFailedException {
-        HashMap<String, ClassBuilder> classBuilders = new HashMap<>();
-        Stack<Pair<ClassBuilder, CallableDeclaration.Signature>> callStack = new Stack<>();
+    /**
+     * @param isJitResistant Whether generated values should be opaque to the JIT, and results written to sinks.
+     */
+    public void setJitResistant(boolean isJitResistant) {
+        this.isJitResistant = isJitResistant;
+    }
+
+    /**
+     * @param sizeDistributionStr How many methods should fit under MaxInlineSize, FreqInlineSize and HugeMethodLimit,
+     *                            as relative weights (ex: "0.3,0.5,0.2").
+     * @throws BuildFailedException If the distribution string is invalid.
+     */
+    public void setMethodSizeDistribution(String sizeDistributionStr) throws BuildFailedException {
+        System.out.println("Method sizes distribution: " + sizeDistributionStr);
+        this.sizeController = MethodSizeController.fromDistributionStr(sizeDistributionStr);
+    }
+
+    /**
+     * Provide an optional file describing the allocations made by each method.
+     * @param allocProfileFileName The name of the allocation profile file
+     * @throws BuildFailedException If parsing the allocation profile file fails.
+     */
+    public void setAllocationProfileFileName(String allocProfileFileName) throws BuildFailedException {
+        System.out.println("Optional allocation profile file provided: " + allocProfileFileName);
+        this.allocationSites = new AllocationProfileFileParser(allocProfileFileName).parse().getParsedAllocationSites();
+    }
+
+    /**
+     * @param retainedAllocsShare The share of the replayed allocations that stay reachable, between 0 and 1.
+     */
+    public void setRetainedAllocationsShare(double retainedAllocsShare) {
+        this.retainedAllocsShare = retainedAllocsShare;
+    }
+
+    /**
+     * @param hasPersistentObjects Whether constructed objects should be stored in fields and reused by later calls.
+     */
+    public void setPersistentObjects(boolean hasPersistentObjects) {
+        this.hasPersistentObjects = hasPersistentObjects;
+    }
+
+    /**
+     * @param useVirtualThreads Whether the threads of the trace should be started as virtual threads (needs JDK 21+).
+     */
+    public void setUseVirtualThreads(boolean useVirtualThreads) {
+        this.useVirtualThreads = useVirtualThreads;
+    }
+
+    /**
+     * @param isStartupBenchmark Whether a StartupHarness entry point timing class loading and initialization should be generated.
+     */
+    public void setStartupBenchmark(boolean isStartupBenchmark) {
+        this.isStartupBenchmark = isStartupBenchmark;
+    }
+
+    /**
+     * @param hasJmhBenchmarks Whether a JMH benchmark should be generated for each root call of the trace.
+     */
+    public void setJmhBenchmarks(boolean hasJmhBenchmarks) {
+        this.hasJmhBenchmarks = hasJmhBenchmarks;
+    }
+
+    /**
+     * @param hasMethodCounters Whether generated methods should count their calls instead of printing their names.
+     */
+    public void setMethodCounters(boolean hasMethodCounters) {
+        this.hasMethodCounters = hasMethodCounters;
+    }
+
+    /**
+     * @param hasJfrEvents Whether generated methods should commit a JFR event named after their traced method on every call.
+     */
+    public void setJfrEvents(boolean hasJfrEvents) {
+        this.hasJfrEvents = hasJfrEvents;
+    }
+
+    /**
+     * @param hasCallRecorder Whether generated methods should record their calls, and write them to a calltrace on exit.
+     */
+    public void setCallRecorder(boolean hasCallRecorder) {
+        this.hasCallRecorder = hasCallRecorder;
+    }
+
+    /**
+     * @return How many times each class constructs each other class in the calltrace, by PersistentInstancesManager relation key.
+     */
+    private HashMap<String, Integer> getConstructionsCounts() {
+        HashMap<String, Integer> constructionsCounts = new HashMap<>();
+        Map<String, Stack<String>> classNamesStacks = new HashMap<>();
+
+        for (List<String> methodArr: this.callFileLines) {
+            CTMethodInfo ctMethodInfo = new CTMethodInfo(methodArr);
+            if (ctMethodInfo.isLambdaProxy() || ctMethodInfo.isLockEvent())
+                continue;
+
+            Stack<String> classNamesStack = classNamesStacks.computeIfAbsent(ctMethodInfo.getThreadId(), k -> new Stack<>());
+
+            if (!ctMethodInfo.isFunctionEntry()) {
+                if (!classNamesStack.empty())
+                    classNamesStack.pop();
+                continue;
+            }
+
+            if (!classNamesStack.empty() && ctMethodInfo.getMethodName().equals(BuildConstants.CONSTRUCTOR_NAME))
+                constructionsCounts.merge(PersistentInstancesManager.getRelationKey(classNamesStack.peek(), ctMethodInfo.getClassName()), 1, Integer::sum);
+
+            classNamesStack.push(ctMethodInfo.getClassName());
+        }
+
+        return constructionsCounts;
+    }
+
+    /**
+     * @return How many times each method gets called in the calltrace, by method full name (ex: "som/Sieve.sieve").
+     */
+    private HashMap<String, Long> getCallsCounts() {
+        HashMap<String, Long> callsCounts = new HashMap<>();
 
         for (List<String> methodArr: this.callFileLines) {
             CTMethodInfo ctMethodInfo = new CTMethodInfo(methodArr);
-            if (this.methodOperations != null)
-                ctMethodInfo.setMethodOperations(this.methodOperations.get(ctMethodInfo.get(CTMethodInfo.FULLNAME)));
+            if (ctMethodInfo.isFunctionEntry())
+                callsCounts.merge(ctMethodInfo.get(CTMethodInfo.FULLNAME), 1L, Long::sum);
+        }
+
+        return callsCounts;
+    }
+
+    /**
+     * @return Whether the calltrace has events from more than one thread, which then run concurrently in the generated program.
+     */
+    private boolean hasSeveralThreads() {
+        String firstThreadId = null;
+
+        for (List<String> methodArr: this.callFileLines) {
+            String threadId = new CTMethodInfo(methodArr).getThreadId();
+            if (firstThreadId == null)
+                firstThreadId = threadId;
+            else if (!firstThreadId.equals(threadId))
+                return true;
+        }
+
+        return false;
+    }
+
+    public HashMap<String, ClassBuilder> build() throws BuildFailedException {
+        GenerationSession session = GenerationSession.current();
+        session.setPrintMethodNames(this.shouldPrintMethodNames);
+        session.setUseOpaqueValues(this.isJitResistant);
+        session.setSizeController(this.sizeController);
+
+        if (this.hasPersistentObjects)
+            session.setPersistentInstances(new PersistentInstancesManager(this.getConstructionsCounts())
+                    .setConcurrent(this.hasSeveralThreads()));
+
+        if (this.allocationSites != null) {
+            AllocationReplayer allocationReplayer = new AllocationReplayer(this.allocationSites, this.retainedAllocsShare)
+                    .setCallsCounts(this.getCallsCounts());
+            session.setArrayLengths(allocationReplayer.getMostCommonArrayLengths());
+            session.setAllocationReplayer(allocationReplayer);
+        }
+
+        session.setLockReplayer(new LockReplayer(this.sizeController));
+        session.setFunctionalInterfaces(new FunctionalInterfacesManager());
+
+        MethodCountersClassBuilder methodCounters = this.hasMethodCounters ? new MethodCountersClassBuilder() : null;
+        session.setMethodCounters(methodCounters);
+
+        JfrEventsWriter jfrEvents = this.hasJfrEvents ? new JfrEventsWriter() : null;
+        session.setJfrEvents(jfrEvents);
+
+        CallRecorderClassBuilder callRecorder = this.hasCallRecorder ? new CallRecorderClassBuilder() : null;
+        session.setCallRecorder(callRecorder);
 
-            CallInterpreter ctInterpreter = new CallInterpreter(ctMethodInfo, classBuilders, callStack);
-            ctInterpreter.execute();
+        // Classes and methods get declared in parallel first, so that interpreting calls mostly comes down to wiring them
+        ProgramDiscoverer discoveredProgram;
+        try (BuildMetrics.Phase discoverPhase = session.getMetrics().startPhase("discover")) {
+            discoverPhase.setEventsNbr(this.callFileLines.size());
+            discoveredProgram = new ProgramDiscoverer(this.callFileLines)
+                    .setMethodOperations(this.methodOperations)
+                    .discover();
+        }
+
+        // Kept in order of first use, which is the order classes get loaded in
+        HashMap<String, ClassBuilder> classBuilders = new LinkedHashMap<>();
+        Map<String, Stack<Pair<ClassBuilder, CallableDeclaration.Signature>>> callStacks = new HashMap<>();
+        Map<String, List<Pair<ClassBuilder, CallableDeclaration.Signature>>> threadsRootCalls = new LinkedHashMap<>();
+        Pair<ClassBuilder, CallableDeclaration.Signature> entryPoint = null;
+        String entryThreadId = null;
+
+        // Return statements and call arguments only depend on the class they're in, so they're left for later, in parallel
+        BodyFinalizer bodyFinalizer = new BodyFinalizer();
+
+        try (BuildMetrics.Phase interpretPhase = session.getMetrics().startPhase("interpret")) {
+            interpretPhase.setEventsNbr(this.callFileLines.size());
+
+            for (List<String> methodArr: this.callFileLines) {
+                CTMethodInfo ctMethodInfo = new CTMethodInfo(methodArr);
+                if (this.methodOperations != null)
+                    ctMethodInfo.setMethodOperations(this.methodOperations.get(ctMethodInfo.get(CTMethodInfo.FULLNAME)));
+
+                // Each thread has its own call stack, since the calls of different threads are interleaved in the trace
+                String threadId = ctMethodInfo.getThreadId();
+                Stack<Pair<ClassBuilder, CallableDeclaration.Signature>> callStack = callStacks.computeIfAbsent(threadId, k -> new Stack<>());
+                boolean isRootCall = callStack.empty();
+
+                CallInterpreter ctInterpreter = new CallInterpreter(ctMethodInfo, classBuilders, callStack)
+                        .setDiscoveredProgram(discoveredProgram)
+                        .setBodyFinalizer(bodyFinalizer);
+                ctInterpreter.execute();
+
+                // Static initializers run as part of the class' initialization, so they're never the root call of a thread
+                if (!isRootCall || callStack.empty() || ctMethodInfo.isStaticInit())
+                    continue;
+
+                if (entryPoint == null) {
+                    entryPoint = callStack.firstElement();
+                    entryThreadId = threadId;
+                } else if (!threadId.equals(entryThreadId)) {
+                    threadsRootCalls.computeIfAbsent(threadId, k -> new ArrayList<>()).add(callStack.firstElement());
+                }
+            }
+        }
+
+        try (BuildMetrics.Phase bodiesPhase = session.getMetrics().startPhase("bodies")) {
+            bodiesPhase.setEventsNbr(bodyFinalizer.getStepsNbr());
+            bodyFinalizer.finalizeBodies();
+        }
+
+        try (BuildMetrics.Phase finalizePhase = session.getMetrics().startPhase("finalize")) {
+            if (entryPoint != null)
+                new TracedThreadsWriter()
+                        .setUseVirtualThreads(this.useVirtualThreads)
+                        .setSizeController(session.getSizeController())
+                        .setPersistentInstances(session.getPersistentInstances())
+                        .writeThreads(entryPoint.a, entryPoint.b, threadsRootCalls, classBuilders);
+
+            // Before synthesizing hierarchies, so that the copies of classes commit events and record their calls too
+            if (jfrEvents != null)
+                jfrEvents.writeEvents(classBuilders);
+            if (callRecorder != null) {
+                callRecorder.writeRecorder();
+                classBuilders.put(callRecorder.getImportStr().replace(".", "/"), callRecorder);
+            }
+
+            if (this.polymorphismDegree > 1 || !this.typeProfile.isEmpty())
+                new HierarchySynthesizer(classBuilders)
+                        .setDefaultReceiverTypesNbr(this.polymorphismDegree)
+                        .setTypeProfile(this.typeProfile)
+                        .synthesize();
+
+            // After synthesizing hierarchies, so that the variants' own sinks get consumed too
+            if (session.isUsingOpaqueValues() && entryPoint != null)
+                new SinkConsumptionWriter()
+                        .setSizeController(session.getSizeController())
+                        .writeSinksConsumption(entryPoint.a, entryPoint.b, classBuilders.values());
+
+            if (this.isStartupBenchmark && entryPoint != null) {
+                StartupHarnessBuilder startupHarness = new StartupHarnessBuilder(new ArrayList<>(classBuilders.values()));
+                startupHarness.writeEntryPointCall(entryPoint.a, entryPoint.b, classBuilders);
+                classBuilders.put(StartupHarnessBuilder.CLASS_NAME, startupHarness);
+            }
+
+            if (entryPoint != null) {
+                BootlegHarnessBuilder harness = new BootlegHarnessBuilder(this.benchmarkName);
+                harness.writeEntryPointCall(entryPoint.a, entryPoint.b, classBuilders);
+                classBuilders.put(BootlegHarnessBuilder.CLASS_NAME, harness);
+                System.out.println("Benchmark harness: " + BootlegHarnessBuilder.CLASS_NAME);
+            }
+
+            if (this.hasJmhBenchmarks && entryPoint != null) {
+                List<Pair<ClassBuilder, CallableDeclaration.Signature>> rootCalls = new ArrayList<>();
+                rootCalls.add(entryPoint);
+                threadsRootCalls.values().forEach(rootCalls::addAll);
+                this.addJmhBenchmarks(rootCalls, classBuilders);
+            }
+
+            if (methodCounters != null) {
+                methodCounters.writeCounters();
+                classBuilders.put(methodCounters.getImportStr().replace(".", "/"), methodCounters);
+            }
         }
 
         return classBuilders;
     }
+
+    /**
+     * Adds a JMH benchmark per distinct root call, and the BootlegRoots class they run the root calls through.
+     * @param rootCalls     The root calls of all threads, the entry point first.
+     * @param classBuilders All the classes in the program, to which the benchmarks get added.
+     * @throws BuildFailedException If writing the root calls fails.
+     */
+    private void addJmhBenchmarks(List<Pair<ClassBuilder, CallableDeclaration.Signature>> rootCalls,
+                                  HashMap<String, ClassBuilder> classBuilders) throws BuildFailedException {
+        BenchmarkRootsBuilder benchmarkRoots = new BenchmarkRootsBuilder();
+        Set<String> benchmarkedRoots = new HashSet<>();
+        Set<String> benchmarkNames = new HashSet<>();
+
+        for (Pair<ClassBuilder, CallableDeclaration.Signature> rootCall: rootCalls) {
+            if (!benchmarkedRoots.add(rootCall.a.getImportStr() + "." + rootCall.b))
+                continue;
+
+            CallableDeclaration<?> rootMethod = rootCall.a.getMethodFromSignature(rootCall.b);
+            String methodName = rootMethod.isConstructorDeclaration() ? "New" : rootMethod.getNameAsString();
+            String baseName = StringUtils.capitalize(rootCall.a.getName())
+                    + StringUtils.capitalize(methodName.replaceAll("[^A-Za-z0-9]", ""));
+            String benchmarkName = baseName;
+            for (int i = 1; !benchmarkNames.add(benchmarkName); i++)
+                benchmarkName = baseName + i;
+
+            String rootMethodName = benchmarkRoots.addRoot(rootCall.a, rootCall.b, classBuilders);
+            boolean isRootVoid = rootMethod.isMethodDeclaration() && rootMethod.asMethodDeclaration().getType().isVoidType();
+
+            JmhBenchmarkBuilder benchmark = new JmhBenchmarkBuilder(benchmarkName + "Benchmark",
+                    rootCall.a.getImportStr(), rootMethodName, isRootVoid);
+            classBuilders.put(benchmark.getImportStr().replace(".", "/"), benchmark);
+        }
+
+        classBuilders.put(BenchmarkRootsBuilder.CLASS_NAME, benchmarkRoots);
+        System.out.println("Generated " + benchmarkNames.size() + " JMH benchmarks.");
+    }
 }
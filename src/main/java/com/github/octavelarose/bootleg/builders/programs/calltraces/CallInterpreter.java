@@ -3,21 +3,36 @@ package com.github.octavelarose.bootleg.builders.programs.calltraces;
 import com.github.javaparser.ast.Modifier;
 import com.github.javaparser.ast.NodeList;
 import com.github.javaparser.ast.body.CallableDeclaration;
+import com.github.javaparser.ast.body.MethodDeclaration;
 import com.github.javaparser.ast.body.Parameter;
+import com.github.javaparser.ast.expr.IntegerLiteralExpr;
+import com.github.javaparser.ast.expr.MethodCallExpr;
+import com.github.javaparser.ast.expr.NameExpr;
 import com.github.javaparser.ast.expr.NullLiteralExpr;
 import com.github.javaparser.ast.stmt.BlockStmt;
+import com.github.javaparser.ast.stmt.ExpressionStmt;
 import com.github.javaparser.ast.stmt.ReturnStmt;
+import com.github.javaparser.ast.type.PrimitiveType;
 import com.github.javaparser.ast.type.Type;
+import com.github.javaparser.ast.type.VoidType;
 import com.github.javaparser.utils.Pair;
 import com.github.octavelarose.bootleg.builders.BuildConstants;
 import com.github.octavelarose.bootleg.builders.BuildFailedException;
+import com.github.octavelarose.bootleg.builders.GenerationSession;
 import com.github.octavelarose.bootleg.builders.programs.calltraces.asm_types.ASMParsingException;
 import com.github.octavelarose.bootleg.builders.programs.calltraces.asm_types.ASMTypeParsingUtils;
 import com.github.octavelarose.bootleg.builders.programs.classes.BasicClassBuilder;
 import com.github.octavelarose.bootleg.builders.programs.classes.ClassBuilder;
 import com.github.octavelarose.bootleg.builders.programs.classes.methods.MethodCallInstructionWriter;
+import com.github.octavelarose.bootleg.builders.programs.classes.methods.bodies.BodyFinalizer;
 import com.github.octavelarose.bootleg.builders.programs.classes.methods.bodies.CallableMethodBodyEditor;
 import com.github.octavelarose.bootleg.builders.programs.classes.methods.bodies.SimpleMethodBodyCreator;
+import com.github.octavelarose.bootleg.builders.programs.classes.methods.bodies.allocations.AllocationSite;
+import com.github.octavelarose.bootleg.builders.programs.classes.methods.bodies.operations.OperationKernel;
+import com.github.octavelarose.bootleg.builders.programs.classes.methods.bodies.operations.OperationSequenceCompressor;
+import com.github.octavelarose.bootleg.builders.programs.classes.methods.bodies.variables.DummyValueCreator;
+import com.github.octavelarose.bootleg.builders.programs.classes.methods.sizes.BytecodeSizeEstimator;
+import com.github.octavelarose.bootleg.builders.programs.classes.methods.sizes.MethodSizeController;
 import com.github.octavelarose.bootleg.builders.programs.utils.RandomUtils;
 
 import java.util.Arrays;
@@ -35,7 +50,14 @@ public class CallInterpreter {
     final HashMap<String, ClassBuilder> classBuilders;
     final Stack<Pair<ClassBuilder, CallableDeclaration.Signature>> callStack;
 
-    static boolean shouldPrintMethodNames = true;
+    // The session of the generation, holding the features the generated code uses.
+    final GenerationSession session;
+
+    // The classes and methods declared ahead of the interpretation, if the trace went through discovery first.
+    private ProgramDiscoverer discoveredProgram = null;
+
+    // Sets return statements and resolves call arguments once the whole trace has been interpreted, if set.
+    private BodyFinalizer bodyFinalizer = null;
 
     private ClassBuilder classCb;
 
@@ -45,10 +67,25 @@ public class CallInterpreter {
         this.ctMethodInfo = ctMethodInfo;
         this.classBuilders = classBuilders;
         this.callStack = callStack;
+        this.session = GenerationSession.current();
     }
 
-    public static void setShouldPrintMethodNames(boolean shouldPrintMethodNames) {
-        CallInterpreter.shouldPrintMethodNames = shouldPrintMethodNames;
+    /**
+     * @param discoveredProgram The classes and methods declared by a ProgramDiscoverer, which the interpretation then only
+     *                          needs to wire calls between. Classes and methods are created as they're called otherwise.
+     */
+    public CallInterpreter setDiscoveredProgram(ProgramDiscoverer discoveredProgram) {
+        this.discoveredProgram = discoveredProgram;
+        return this;
+    }
+
+    /**
+     * @param bodyFinalizer The body finalizer the return statements and call arguments are left to, so that they get
+     *                      generated in parallel across classes. They're generated during the interpretation otherwise.
+     */
+    public CallInterpreter setBodyFinalizer(BodyFinalizer bodyFinalizer) {
+        this.bodyFinalizer = bodyFinalizer;
+        return this;
     }
 
     /**
@@ -56,12 +93,29 @@ public class CallInterpreter {
      * @throws BuildFailedException If something goes wrong in the program building during operations related to the current method call.
      */
     public void execute() throws BuildFailedException {
-        // We ignore lambda calls for now.
-        if (ctMethodInfo.isLambda())
+        // Calls to the classes implementing lambdas are ignored, as they only forward them to the lambda bodies.
+        // The lambda bodies get generated like regular methods, but are called through lambdas.
+        if (ctMethodInfo.isLambdaProxy())
+            return;
+
+        // Lock events aren't generated as methods, but turn the code of the method holding the lock into a critical section.
+        if (ctMethodInfo.isLockEvent()) {
+            if (session.getLockReplayer() != null)
+                session.getLockReplayer().processLockEvent(ctMethodInfo, callStack, classBuilders);
             return;
+        }
 
+        if (session.getLockReplayer() != null)
+            session.getLockReplayer().processCall(ctMethodInfo);
+
+        // As in the trace, before static initializers and lambda bodies get renamed
+        String tracedFullName = ctMethodInfo.get(CTMethodInfo.FULLNAME);
+        String tracedCall = ctMethodInfo.get(CTMethodInfo.SCOPE) + " " + ctMethodInfo.get(CTMethodInfo.DESCRIPTOR) + " " + tracedFullName;
         ctMethodInfo.modifyIfStaticInit();
 
+        boolean isLambdaBody = ctMethodInfo.isLambdaBody();
+        ctMethodInfo.modifyIfLambdaBody();
+
         this.classCb = getOrCreateClassBuilder(classBuilders, ctMethodInfo.getClassName());
 
         // If it's a method exit, we add a return statement and we go to the next one.
@@ -71,22 +125,36 @@ public class CallInterpreter {
             return;
         }
 
-        // If the method already exists, we don't need to generate it and just modify the call stack.
+        // If the method was already called, we don't need to generate it and just modify the call stack.
+        // Discovered methods exist before their first call, but only get handed over on it.
         String methodName = ctMethodInfo.getMethodName();
-        if (classCb.hasMethod(methodName)) {
-            callStack.push(new Pair<>(classCb, classCb.getMethodFromName(methodName).getSignature()));
-            return;
+        CallableDeclaration<?> methodNode = discoveredProgram != null ? discoveredProgram.takeMethod(tracedFullName) : null;
+        if (methodNode == null) {
+            if (classCb.hasMethod(methodName)) {
+                callStack.push(new Pair<>(classCb, classCb.getMethodFromName(methodName).getSignature()));
+                return;
+            }
+            methodNode = this.addNewMethodToClassFromCTInfo(ctMethodInfo, classCb);
         }
 
-        CallableDeclaration<?> methodNode = this.addNewMethodToClassFromCTInfo(ctMethodInfo, classCb);
+        if (session.getJfrEvents() != null)
+            session.getJfrEvents().addMethod(classCb, methodNode, tracedFullName);
+        if (session.getCallRecorder() != null)
+            session.getCallRecorder().addRecordedMethod(methodNode, tracedCall);
 
-        if (callStack.empty()) {
+        if (ctMethodInfo.isStaticInit()) {
+            this.addStaticInitializer(methodNode);
+        } else if (callStack.empty()) {
             System.out.println("Entry point: " + ctMethodInfo.get(CTMethodInfo.FULLNAME));
         } else {
             MethodCallInstructionWriter mciw = new MethodCallInstructionWriter()
                     .setCaller(callStack.lastElement().a, callStack.lastElement().b)
                     .setCallee(classCb, methodNode.getSignature())
-                    .setOtherClassesContext(classBuilders);
+                    .setOtherClassesContext(classBuilders)
+                    .setSizeController(session.getSizeController())
+                    .setPersistentInstances(session.getPersistentInstances())
+                    .setFunctionalInterfaces(isLambdaBody ? session.getFunctionalInterfaces() : null)
+                    .setBodyFinalizer(bodyFinalizer);
             mciw.writeMethodCallInCaller();
         }
 
@@ -94,17 +162,62 @@ public class CallInterpreter {
     }
 
     /**
-     * Adds a return statement at the end of the method body.
+     * Makes the static init block of the class call its static initializer method, and triggers the initialization
+     * of the class in the caller, since that's where the class first got used in the trace.
+     * @param staticInitMethod The static initializer method.
+     * @throws BuildFailedException If something goes wrong when modifying the caller's body.
+     */
+    private void addStaticInitializer(CallableDeclaration<?> staticInitMethod) throws BuildFailedException {
+        classCb.addStaticInitializer().addStatement(new MethodCallExpr(staticInitMethod.getNameAsString()));
+
+        // Classes initialized before any traced call, like the entry point's class, get initialized by the JVM all the same
+        if (callStack.empty() || callStack.lastElement().a == classCb)
+            return;
+
+        MethodDeclaration trigger = classCb.addMethod(BuildConstants.CLASS_INIT_TRIGGER_NAME,
+                new VoidType(),
+                new NodeList<>(),
+                new BlockStmt(),
+                new NodeList<>(Modifier.publicModifier(), Modifier.staticModifier()));
+
+        ClassBuilder callerClass = callStack.lastElement().a;
+        CallableDeclaration<?> callerMethod = callerClass.getMethodFromSignature(callStack.lastElement().b);
+        if (session.getSizeController() != null)
+            callerMethod = session.getSizeController().getMethodToWriteTo(callerClass, callerMethod, BytecodeSizeEstimator.estimateCallSize(trigger));
+
+        CallableMethodBodyEditor cmbe = new CallableMethodBodyEditor(callerMethod, callerClass);
+        cmbe.addStatement(new ExpressionStmt(new MethodCallExpr(new NameExpr(classCb.getImportStr()), trigger.getNameAsString())));
+        cmbe.setBodyToCallable();
+    }
+
+    /**
+     * Adds a return statement at the end of the method body, or leaves it to the body finalizer if there's one.
      * @throws BuildFailedException If something goes wrong when modifying the method body.
      */
     private void addReturnStatement() throws BuildFailedException {
-        CallableMethodBodyEditor cmbe = new CallableMethodBodyEditor(classCb.getMethodFromName(ctMethodInfo.getMethodName()), classCb);
         Type methodReturnType = ASMTypeParsingUtils.getTypeFromStr(ctMethodInfo.getReturnTypeStr());
 
-        if (methodReturnType.isVoidType() || cmbe.hasReturnStatement())
+        if (methodReturnType.isVoidType())
             return;
 
-        if (!cmbe.setReturnStatementFromLocalVar(methodReturnType)) {
+        CallableDeclaration<?> method = classCb.getMethodFromName(ctMethodInfo.getMethodName());
+        if (bodyFinalizer != null)
+            bodyFinalizer.addReturnStep(classCb, method, () -> this.setReturnStatement(method, methodReturnType));
+        else
+            this.setReturnStatement(method, methodReturnType);
+    }
+
+    /**
+     * Sets the return statement of a method, if it doesn't have one: a local variable of the right type if there's one.
+     * @param method           The method.
+     * @param methodReturnType The return type of the method.
+     * @throws BuildFailedException If something goes wrong when modifying the method body.
+     */
+    private void setReturnStatement(CallableDeclaration<?> method, Type methodReturnType) throws BuildFailedException {
+        // The editor takes ownership of the body's statements, so the body always needs to be set back afterwards
+        CallableMethodBodyEditor cmbe = new CallableMethodBodyEditor(method, classCb);
+
+        if (!cmbe.hasReturnStatement() && !cmbe.setReturnStatementFromLocalVar(methodReturnType)) {
             String className = ctMethodInfo.getReturnTypeStr().substring(1, ctMethodInfo.getReturnTypeStr().length() - 1);
             if (className.startsWith("java/"))
                 cmbe.setReturnStatement(new ReturnStmt(new NullLiteralExpr()));
@@ -117,47 +230,78 @@ public class CallInterpreter {
 
     /**
      * Fetches a ClassBuilder with a given name from the already instantiated ClassBuilder list, or creates it accordingly
+     * (or takes it from the discovered ones), so that classes get added to the list in order of first use.
      * @param classBuilders The HashMap containing the ClassBuilders
      * @param className The name of the class wrapped in the ClassBuilder
      * @return The already existing, or newly created ClassBuilder object
      */
     private ClassBuilder getOrCreateClassBuilder(HashMap<String, ClassBuilder> classBuilders, String className) {
-        ClassBuilder classCb;
+        ClassBuilder classCb = classBuilders.get(className);
 
-        if (classBuilders.containsKey(className)) {
-            classCb = classBuilders.get(className);
-        } else {
-            if (!className.contains("/"))
-                classCb = new BasicClassBuilder(className);
-            else {
-                List<String> splitClassPath = Arrays.asList(className.split("/"));
-                String pkgPath = String.join(".", splitClassPath.subList(0, splitClassPath.size() - 1));
-                classCb = new BasicClassBuilder(splitClassPath.get(splitClassPath.size() - 1), 0, 0, pkgPath);
-            }
+        if (classCb == null) {
+            classCb = discoveredProgram != null ? discoveredProgram.takeClass(className) : null;
+            if (classCb == null)
+                classCb = createClassBuilder(className);
             classBuilders.put(className, classCb);
         }
 
         return classCb;
     }
 
+    /**
+     * @param className The name of the class, like "som/Sieve".
+     * @return A new ClassBuilder for the class, in its package.
+     */
+    static ClassBuilder createClassBuilder(String className) {
+        ClassBuilder classCb;
+
+        if (!className.contains("/"))
+            classCb = new BasicClassBuilder(className);
+        else {
+            List<String> splitClassPath = Arrays.asList(className.split("/"));
+            String pkgPath = String.join(".", splitClassPath.subList(0, splitClassPath.size() - 1));
+            classCb = new BasicClassBuilder(splitClassPath.get(splitClassPath.size() - 1), 0, 0, pkgPath);
+        }
+        if (DummyValueCreator.isUsingOpaqueValues())
+            addOpaqueValuesFields(classCb);
+
+        return classCb;
+    }
+
+    /**
+     * Adds the fields needed by JIT resistant code: the seed opaque values are computed from, and the sink results are written to.
+     * @param classCb The class(builder) to which they need to be added.
+     */
+    private static void addOpaqueValuesFields(ClassBuilder classCb) {
+        classCb.addField(BuildConstants.OPAQUE_SEED_FIELD_NAME,
+                PrimitiveType.intType(),
+                new IntegerLiteralExpr("1"),
+                Modifier.Keyword.PRIVATE, Modifier.Keyword.STATIC, Modifier.Keyword.VOLATILE);
+        classCb.addField(BuildConstants.SINK_FIELD_NAME,
+                PrimitiveType.longType(),
+                Modifier.Keyword.PUBLIC, Modifier.Keyword.STATIC);
+    }
 
     /**
      * Adds a new method to a class, setting adequate parameters beforehand.
      * @param ctMethodInfo The class wrapping the CT call info / method info.
      * @param classCb The class(builder) to which it needs to be added.
      */
-    private CallableDeclaration<?> addNewMethodToClassFromCTInfo(CTMethodInfo ctMethodInfo,
+    CallableDeclaration<?> addNewMethodToClassFromCTInfo(CTMethodInfo ctMethodInfo,
                                                                  ClassBuilder classCb) throws BuildFailedException {
         String methodName = ctMethodInfo.getMethodName();
         Type returnType = ASMTypeParsingUtils.getTypeFromStr(ctMethodInfo.getReturnTypeStr());
         NodeList<Parameter> parameters = this.getParameters();
-        BlockStmt methodBody = this.getInitialMethodBody(parameters);
         NodeList<Modifier> modifiers = ctMethodInfo.getScopeModifiersList();
+        CallableDeclaration<?> method;
 
         if (methodName.equals(BuildConstants.CONSTRUCTOR_NAME))
-            return classCb.addConstructor(parameters, methodBody, modifiers);
+            method = classCb.addConstructor(parameters, new BlockStmt(), modifiers);
         else
-            return classCb.addMethod(methodName, returnType, parameters, methodBody, modifiers);
+            method = classCb.addMethod(methodName, returnType, parameters, new BlockStmt(), modifiers);
+
+        this.setInitialMethodBody(method, classCb);
+        return method;
     }
 
     /**
@@ -176,22 +320,56 @@ public class CallInterpreter {
     }
 
     /**
-     * Generates an initial method body, which usually only contains a print operation with the method's name.
-     * @param parameters The method parameters, which may need to be used by the method body generator.
-     * @return A series of instructions corresponding to the method's body
+     * Generates an initial method body, which usually only contains a print operation with the method's name
+     * (or the increment of its call counter),
+     * and the method's allocations if an allocation profile was provided.
+     * If the method's operations make it go over its target size, the remaining ones are put in continuation methods.
+     * @param method  The method, which needs to have been added to its class beforehand.
+     * @param classCb The class of the method.
      * @throws BuildFailedException If the format of the operations are invalid.
      */
-    private BlockStmt getInitialMethodBody(NodeList<Parameter> parameters) throws BuildFailedException {
+    private void setInitialMethodBody(CallableDeclaration<?> method, ClassBuilder classCb) throws BuildFailedException {
         SimpleMethodBodyCreator smbc = new SimpleMethodBodyCreator();
 
-        if (shouldPrintMethodNames)
+        if (session.getMethodCounters() != null)
+            smbc.addStatement(session.getMethodCounters().getIncrementStmt(ctMethodInfo.get(CTMethodInfo.FULLNAME)));
+        else if (session.shouldPrintMethodNames())
             smbc.addDefaultStatements(ctMethodInfo.get(CTMethodInfo.FULLNAME));
 
-        if (ctMethodInfo.hasMethodOperations()) {
-            smbc.setMethodParameters(parameters);
-            smbc.processOperationStatements(ctMethodInfo.getMethodOperations());
+        if (session.getAllocationReplayer() != null) {
+            for (AllocationSite site: session.getAllocationReplayer().getMethodAllocationSites(ctMethodInfo.get(CTMethodInfo.FULLNAME)))
+                smbc.addStatement(session.getAllocationReplayer().getAllocationStatement(classCb, ctMethodInfo.getClassName(), site));
         }
 
-        return smbc.getMethodBody();
+        if (!ctMethodInfo.hasMethodOperations()) {
+            CallableMethodBodyEditor.setBodyOfCallable(method, smbc.getMethodBody());
+            return;
+        }
+
+        smbc.setMethodParameters(method.getParameters());
+
+        // Without a size controller, operations still get split past HugeMethodLimit, since the JIT wouldn't compile the method
+        MethodSizeController sizeController = session.getSizeController();
+        int targetSize = MethodSizeController.HUGE_METHOD_LIMIT;
+        if (sizeController != null)
+            targetSize = sizeController.getTargetSize(method);
+        else
+            sizeController = new MethodSizeController(0, 0, 1);
+
+        // Every part but the last one ends with the call to the next one
+        targetSize -= sizeController.getContinuationCallSize(method);
+        List<OperationKernel> kernels = OperationSequenceCompressor.compress(ctMethodInfo.getMethodOperations());
+        kernels = smbc.processOperationKernels(kernels, targetSize);
+        CallableMethodBodyEditor.setBodyOfCallable(method, smbc.getMethodBody());
+
+        CallableDeclaration<?> lastPart = method;
+        while (!kernels.isEmpty()) {
+            MethodDeclaration continuation = sizeController.addContinuation(classCb, lastPart);
+            SimpleMethodBodyCreator continuationSmbc = new SimpleMethodBodyCreator();
+            continuationSmbc.setMethodParameters(continuation.getParameters());
+            kernels = continuationSmbc.processOperationKernels(kernels, targetSize);
+            continuation.setBody(continuationSmbc.getMethodBody());
+            lastPart = continuation;
+        }
     }
 }
@@ -0,0 +1,242 @@
+package com.github.octavelarose.bootleg.builders.programs.calltraces;
+
+import com.github.javaparser.StaticJavaParser;
+import com.github.javaparser.ast.NodeList;
+import com.github.javaparser.ast.body.CallableDeclaration;
+import com.github.javaparser.ast.body.VariableDeclarator;
+import com.github.javaparser.ast.expr.AssignExpr;
+import com.github.javaparser.ast.expr.NameExpr;
+import com.github.javaparser.ast.expr.VariableDeclarationExpr;
+import com.github.javaparser.ast.stmt.BlockStmt;
+import com.github.javaparser.ast.stmt.ExpressionStmt;
+import com.github.javaparser.ast.stmt.Statement;
+import com.github.javaparser.ast.stmt.SynchronizedStmt;
+import com.github.javaparser.ast.stmt.TryStmt;
+import com.github.javaparser.utils.Pair;
+import com.github.octavelarose.bootleg.builders.BuildFailedException;
+import com.github.octavelarose.bootleg.builders.programs.classes.ClassBuilder;
+import com.github.octavelarose.bootleg.builders.programs.classes.SharedLocksClassBuilder;
+import com.github.octavelarose.bootleg.builders.programs.classes.methods.bodies.CallableMethodBodyEditor;
+import com.github.octavelarose.bootleg.builders.programs.classes.methods.sizes.MethodSizeController;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Stack;
+
+/**
+ * Replays the lock events of a calltrace: monitor enters/exits, and acquiring/releasing java.util.concurrent locks.
+ * The code generated in a method while it holds a lock gets wrapped in a critical section on a lock shared by the
+ * whole program, which is then held for about as long as in the trace, so that generated threads contend similarly.
+ * Only the lock's self time gets replayed by waiting, since the calls made while holding it are generated as calls.
+ * All java.util.concurrent locks are replayed as ReentrantLocks, since read/write and stamped locks can't be told apart
+ * from their call sites alone.
+ */
+public class LockReplayer {
+    // Hold times are capped so that a single slow critical section in the trace can't stall the generated program.
+    private static final long MAX_HOLD_NANOS = 1_000_000;
+
+    private static final String SHARED_LOCKS_KEY = SharedLocksClassBuilder.PKG_NAME + "/" + SharedLocksClassBuilder.CLASS_NAME;
+
+    private static final List<String> LOCK_ACQUIRE_METHODS = List.of("lock", "lockInterruptibly", "tryLock");
+    private static final String LOCK_RELEASE_METHOD = "unlock";
+
+    /**
+     * A lock held by a generated method.
+     */
+    private static class HeldLock {
+        final String lockId;
+        final boolean isMonitor;
+        final ClassBuilder methodClass;
+        final CallableDeclaration<?> method;
+        final int firstStmtIdx;
+        final long acquireTimeNs;
+
+        // The time spent in the calls made while holding the lock, and how many of them are ongoing.
+        long calleesTimeNs = 0;
+        int openCallsNbr = 0;
+        long callEntryTimeNs = 0;
+
+        HeldLock(String lockId, boolean isMonitor, ClassBuilder methodClass, CallableDeclaration<?> method,
+                 int firstStmtIdx, long acquireTimeNs) {
+            this.lockId = lockId;
+            this.isMonitor = isMonitor;
+            this.methodClass = methodClass;
+            this.method = method;
+            this.firstStmtIdx = firstStmtIdx;
+            this.acquireTimeNs = acquireTimeNs;
+        }
+    }
+
+    // The locks currently held, by thread id, the last acquired first.
+    private final Map<String, Deque<HeldLock>> heldLocks = new HashMap<>();
+
+    // The locks each method already has a critical section for, since methods are only generated once.
+    private final Map<CallableDeclaration<?>, Set<String>> replayedLocks = new IdentityHashMap<>();
+
+    private SharedLocksClassBuilder sharedLocks = null;
+
+    private final MethodSizeController sizeController;
+
+    /**
+     * @param sizeController The controller of method sizes, or null. Needed to find which part of a method is being written to.
+     */
+    public LockReplayer(MethodSizeController sizeController) {
+        this.sizeController = sizeController;
+    }
+
+    /**
+     * Handles a lock event, which doesn't get generated as a method of its own.
+     * @param ctMethodInfo  The lock event.
+     * @param callStack     The call stack of the thread the event happened in.
+     * @param classBuilders All the classes in the program, to which the shared locks class gets added if needed.
+     * @throws BuildFailedException If the method holding the lock can't be modified.
+     */
+    public void processLockEvent(CTMethodInfo ctMethodInfo,
+                                 Stack<Pair<ClassBuilder, CallableDeclaration.Signature>> callStack,
+                                 HashMap<String, ClassBuilder> classBuilders) throws BuildFailedException {
+        // A lock taken outside any traced method has no generated code to protect
+        if (callStack.empty())
+            return;
+
+        boolean isMonitor = ctMethodInfo.isMonitorEvent();
+        String methodName = ctMethodInfo.getMethodName();
+
+        if (isMonitor ? ctMethodInfo.isFunctionEntry()
+                : (!ctMethodInfo.isFunctionEntry() && LOCK_ACQUIRE_METHODS.contains(methodName)))
+            this.acquire(ctMethodInfo, isMonitor, callStack.lastElement());
+        else if (isMonitor || (ctMethodInfo.isFunctionEntry() && methodName.equals(LOCK_RELEASE_METHOD)))
+            this.release(ctMethodInfo, isMonitor, classBuilders);
+    }
+
+    /**
+     * Keeps track of the time spent in calls made while holding locks, which doesn't need to be replayed by waiting.
+     * @param ctMethodInfo A call entry or exit, that gets generated.
+     */
+    public void processCall(CTMethodInfo ctMethodInfo) {
+        Deque<HeldLock> threadLocks = this.heldLocks.get(ctMethodInfo.getThreadId());
+        if (threadLocks == null)
+            return;
+
+        // Only the outermost calls count, since the time of nested ones is already part of theirs
+        for (HeldLock heldLock: threadLocks) {
+            if (ctMethodInfo.isFunctionEntry()) {
+                if (heldLock.openCallsNbr++ == 0)
+                    heldLock.callEntryTimeNs = ctMethodInfo.getTimeNs();
+            } else if (heldLock.openCallsNbr > 0 && --heldLock.openCallsNbr == 0) {
+                heldLock.calleesTimeNs += Math.max(0, ctMethodInfo.getTimeNs() - heldLock.callEntryTimeNs);
+            }
+        }
+    }
+
+    private void acquire(CTMethodInfo ctMethodInfo,
+                         boolean isMonitor,
+                         Pair<ClassBuilder, CallableDeclaration.Signature> caller) throws BuildFailedException {
+        CallableDeclaration<?> method = caller.a.getMethodFromSignature(caller.b);
+        if (this.sizeController != null)
+            method = this.sizeController.getLastPart(method);
+
+        CallableMethodBodyEditor cmbe = new CallableMethodBodyEditor(method, caller.a);
+        int stmtsCount = cmbe.getStatementsCount();
+        cmbe.setBodyToCallable();
+
+        this.heldLocks.computeIfAbsent(ctMethodInfo.getThreadId(), k -> new ArrayDeque<>())
+                .push(new HeldLock(ctMethodInfo.getLockId(), isMonitor, caller.a, method, stmtsCount, ctMethodInfo.getTimeNs()));
+    }
+
+    private void release(CTMethodInfo ctMethodInfo,
+                         boolean isMonitor,
+                         HashMap<String, ClassBuilder> classBuilders) throws BuildFailedException {
+        Deque<HeldLock> threadLocks = this.heldLocks.get(ctMethodInfo.getThreadId());
+        if (threadLocks == null)
+            return;
+
+        // Locks aren't necessarily released in the reverse order they were acquired in
+        HeldLock heldLock = null;
+        for (Iterator<HeldLock> it = threadLocks.iterator(); it.hasNext(); ) {
+            HeldLock hl = it.next();
+            if (hl.isMonitor == isMonitor && hl.lockId.equals(ctMethodInfo.getLockId())) {
+                heldLock = hl;
+                it.remove();
+                break;
+            }
+        }
+
+        if (heldLock == null)
+            return;
+
+        if (!this.replayedLocks.computeIfAbsent(heldLock.method, k -> new HashSet<>()).add(heldLock.lockId))
+            return;
+
+        if (this.sharedLocks == null) {
+            this.sharedLocks = new SharedLocksClassBuilder();
+            classBuilders.put(SHARED_LOCKS_KEY, this.sharedLocks);
+        }
+
+        long selfTimeNs = ctMethodInfo.getTimeNs() - heldLock.acquireTimeNs - heldLock.calleesTimeNs;
+        long holdNanos = Math.max(0, Math.min(selfTimeNs, MAX_HOLD_NANOS));
+
+        CallableMethodBodyEditor cmbe = new CallableMethodBodyEditor(heldLock.method, heldLock.methodClass);
+        BlockStmt criticalSection = new BlockStmt(cmbe.extractStatementsFrom(heldLock.firstStmtIdx));
+        criticalSection.addStatement(this.sharedLocks.getHoldStr(holdNanos) + ";");
+
+        for (Statement stmt: hoistDeclarations(criticalSection))
+            cmbe.addStatement(stmt);
+        for (Statement stmt: this.getLockingStatements(heldLock, criticalSection))
+            cmbe.addStatement(stmt);
+        cmbe.setBodyToCallable();
+    }
+
+    /**
+     * Moves the declarations of local variables out of a critical section, turning their initializations into
+     * assignments, since the code following the section may use them.
+     * @param criticalSection The critical section.
+     * @return The declarations, without initializers.
+     */
+    private static NodeList<Statement> hoistDeclarations(BlockStmt criticalSection) {
+        NodeList<Statement> declarations = new NodeList<>();
+
+        for (Statement stmt: criticalSection.getStatements()) {
+            if (!stmt.isExpressionStmt() || !stmt.asExpressionStmt().getExpression().isVariableDeclarationExpr())
+                continue;
+
+            VariableDeclarationExpr varDeclExpr = stmt.asExpressionStmt().getExpression().asVariableDeclarationExpr();
+            // Array initializers can't be assigned as is, and multiple declarators never get generated
+            if (varDeclExpr.getVariables().size() != 1)
+                continue;
+            VariableDeclarator varDecl = varDeclExpr.getVariable(0);
+            if (varDecl.getInitializer().isEmpty() || varDecl.getInitializer().get().isArrayInitializerExpr())
+                continue;
+
+            // The initializer is moved rather than cloned, since the body finalizer may still need to resolve its arguments
+            declarations.add(new ExpressionStmt(new VariableDeclarationExpr(varDecl.getType().clone(), varDecl.getNameAsString())));
+            stmt.asExpressionStmt().setExpression(new AssignExpr(new NameExpr(varDecl.getNameAsString()),
+                    varDecl.getInitializer().get(), AssignExpr.Operator.ASSIGN));
+        }
+
+        return declarations;
+    }
+
+    /**
+     * @param heldLock        The lock.
+     * @param criticalSection The code executed while holding it.
+     * @return The statements acquiring the lock, executing the critical section and releasing the lock.
+     */
+    private NodeList<Statement> getLockingStatements(HeldLock heldLock, BlockStmt criticalSection) {
+        if (heldLock.isMonitor)
+            return new NodeList<>(new SynchronizedStmt(
+                    StaticJavaParser.parseExpression(this.sharedLocks.getMonitorStr(heldLock.lockId)),
+                    criticalSection));
+
+        String lockStr = this.sharedLocks.getLockStr(heldLock.lockId);
+        return new NodeList<>(
+                StaticJavaParser.parseStatement(lockStr + ".lock();"),
+                new TryStmt(criticalSection, new NodeList<>(), StaticJavaParser.parseBlock("{" + lockStr + ".unlock();}")));
+    }
+}
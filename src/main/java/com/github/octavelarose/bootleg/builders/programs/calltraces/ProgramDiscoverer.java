@@ -0,0 +1,177 @@
+package com.github.octavelarose.bootleg.builders.programs.calltraces;
+
+import com.github.javaparser.ast.body.CallableDeclaration;
+import com.github.javaparser.utils.Pair;
+import com.github.octavelarose.bootleg.builders.BuildFailedException;
+import com.github.octavelarose.bootleg.builders.GenerationSession;
+import com.github.octavelarose.bootleg.builders.programs.classes.ClassBuilder;
+import com.github.octavelarose.bootleg.builders.programs.utils.ParallelUtils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * First phase of the generation of a program from a calltrace: discovers all of its classes and methods, and declares
+ * them (parameters and initial bodies) ahead of the interpretation of the calls, which then only needs to wire them.
+ * The trace is scanned for the first call to each method in chunks, concurrently, then each class gets declared by
+ * a task of its own. Each class' task gets random numbers derived from the seed and the class' name, so that the
+ * generated program doesn't depend on how the tasks get scheduled.
+ * Usage: "new CallInterpreter(...).setDiscoveredProgram(new ProgramDiscoverer(callFileLines).discover())".
+ */
+public class ProgramDiscoverer {
+    // Chunks of the trace smaller than this aren't worth scanning in a task of their own.
+    private static final int MIN_CHUNK_SIZE = 10000;
+
+    private final List<List<String>> callFileLines;
+    private HashMap<String, List<String>> methodOperations;
+
+    // Declared classes and methods (by traced full name), until the interpretation takes them on their first call.
+    private final Map<String, ClassBuilder> classes = new ConcurrentHashMap<>();
+    private final Map<String, CallableDeclaration<?>> methods = new ConcurrentHashMap<>();
+
+    /**
+     * @param callFileLines The lines of the calltrace.
+     */
+    public ProgramDiscoverer(List<List<String>> callFileLines) {
+        this.callFileLines = callFileLines;
+    }
+
+    /**
+     * @param methodOperations The operations of each method, by method full name, if an operations file was provided.
+     */
+    public ProgramDiscoverer setMethodOperations(HashMap<String, List<String>> methodOperations) {
+        this.methodOperations = methodOperations;
+        return this;
+    }
+
+    /**
+     * Declares all the classes and methods called in the calltrace.
+     * @return The instance of the ProgramDiscoverer calling.
+     * @throws BuildFailedException If declaring a method fails.
+     */
+    public ProgramDiscoverer discover() throws BuildFailedException {
+        GenerationSession session = GenerationSession.current();
+
+        // Methods grouped by class, in order of first call, so that declaring a class always goes the same way
+        Map<String, List<Pair<String, CTMethodInfo>>> classesFirstCalls = new LinkedHashMap<>();
+        for (List<String> methodArr: this.findFirstCalls()) {
+            // Copied, since renaming static initializers and lambda bodies modifies it
+            CTMethodInfo ctMethodInfo = new CTMethodInfo(new ArrayList<>(methodArr));
+            String tracedFullName = ctMethodInfo.get(CTMethodInfo.FULLNAME);
+            if (this.methodOperations != null)
+                ctMethodInfo.setMethodOperations(this.methodOperations.get(tracedFullName));
+            ctMethodInfo.modifyIfStaticInit();
+            ctMethodInfo.modifyIfLambdaBody();
+
+            // Counters are indexed in order of first call, as when they're added during the interpretation
+            if (session.getMethodCounters() != null)
+                session.getMethodCounters().registerMethod(ctMethodInfo.get(CTMethodInfo.FULLNAME));
+
+            classesFirstCalls.computeIfAbsent(ctMethodInfo.getClassName(), k -> new ArrayList<>())
+                    .add(new Pair<>(tracedFullName, ctMethodInfo));
+        }
+
+        List<Callable<Void>> classTasks = new ArrayList<>();
+        for (Map.Entry<String, List<Pair<String, CTMethodInfo>>> classFirstCalls: classesFirstCalls.entrySet()) {
+            classTasks.add(() -> session.callInStream(classFirstCalls.getKey(),
+                    () -> this.declareClass(classFirstCalls.getKey(), classFirstCalls.getValue())));
+        }
+        ParallelUtils.invokeAll(classTasks);
+
+        System.out.println("Discovered " + this.classes.size() + " classes and " + this.methods.size() + " methods.");
+        return this;
+    }
+
+    /**
+     * @return The lines of the first call to each method, in trace order.
+     * @throws BuildFailedException If scanning a chunk of the trace fails.
+     */
+    private List<List<String>> findFirstCalls() throws BuildFailedException {
+        int linesNbr = this.callFileLines.size();
+        int chunkSize = Math.max(MIN_CHUNK_SIZE, linesNbr / (ParallelUtils.getParallelism() * 4) + 1);
+
+        List<Callable<Map<String, Integer>>> chunkTasks = new ArrayList<>();
+        for (int chunkStart = 0; chunkStart < linesNbr; chunkStart += chunkSize) {
+            int from = chunkStart;
+            int to = Math.min(linesNbr, chunkStart + chunkSize);
+            chunkTasks.add(() -> this.findFirstCalls(from, to));
+        }
+
+        // Chunks are merged in trace order, so the first index found for a method is its first call
+        Map<String, Integer> firstCallsIdx = new HashMap<>();
+        for (Map<String, Integer> chunkFirstCallsIdx: ParallelUtils.invokeAll(chunkTasks))
+            chunkFirstCallsIdx.forEach(firstCallsIdx::putIfAbsent);
+
+        List<List<String>> firstCalls = new ArrayList<>(firstCallsIdx.size());
+        firstCallsIdx.values().stream().sorted().forEach(idx -> firstCalls.add(this.callFileLines.get(idx)));
+        return firstCalls;
+    }
+
+    /**
+     * @param from The index of the first line of the chunk.
+     * @param to   The index following the last line of the chunk.
+     * @return The index of the first call to each method called in the chunk, by traced full name.
+     */
+    private Map<String, Integer> findFirstCalls(int from, int to) {
+        Map<String, Integer> firstCallsIdx = new HashMap<>();
+
+        for (int i = from; i < to; i++) {
+            CTMethodInfo ctMethodInfo = new CTMethodInfo(this.callFileLines.get(i));
+
+            // Neither are generated as methods
+            if (!ctMethodInfo.isFunctionEntry() || ctMethodInfo.isLambdaProxy() || ctMethodInfo.isLockEvent())
+                continue;
+
+            firstCallsIdx.putIfAbsent(ctMethodInfo.get(CTMethodInfo.FULLNAME), i);
+        }
+
+        return firstCallsIdx;
+    }
+
+    /**
+     * Declares a class and its methods. Only the task declaring a class ever modifies it.
+     * @param className  The name of the class.
+     * @param firstCalls The first call to each of its methods, with the traced full name of the method, in trace order.
+     * @return Nothing, to be run as a session task.
+     * @throws BuildFailedException If declaring a method fails.
+     */
+    private Void declareClass(String className, List<Pair<String, CTMethodInfo>> firstCalls) throws BuildFailedException {
+        ClassBuilder classCb = CallInterpreter.createClassBuilder(className);
+
+        for (Pair<String, CTMethodInfo> firstCall: firstCalls) {
+            CTMethodInfo ctMethodInfo = firstCall.b;
+
+            // Methods are looked up by name during the interpretation, so renamed methods sharing one get merged all the same
+            if (classCb.hasMethod(ctMethodInfo.getMethodName()))
+                continue;
+
+            CallableDeclaration<?> method = new CallInterpreter(ctMethodInfo, null, null)
+                    .addNewMethodToClassFromCTInfo(ctMethodInfo, classCb);
+            this.methods.put(firstCall.a, method);
+        }
+
+        this.classes.put(className, classCb);
+        return null;
+    }
+
+    /**
+     * @param className The name of a class.
+     * @return The declared class, the first time it gets taken. null afterwards, or if it wasn't discovered.
+     */
+    ClassBuilder takeClass(String className) {
+        return this.classes.remove(className);
+    }
+
+    /**
+     * @param tracedFullName The full name of a method, as in the trace.
+     * @return The declared method, the first time it gets taken, i.e on its first call. null afterwards, or if it wasn't discovered.
+     */
+    CallableDeclaration<?> takeMethod(String tracedFullName) {
+        return this.methods.remove(tracedFullName);
+    }
+}
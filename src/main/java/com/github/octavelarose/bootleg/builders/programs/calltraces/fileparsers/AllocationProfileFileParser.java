@@ -0,0 +1,83 @@
+package com.github.octavelarose.bootleg.builders.programs.calltraces.fileparsers;
+
+import com.github.javaparser.ast.type.ArrayType;
+import com.github.javaparser.ast.type.Type;
+import com.github.octavelarose.bootleg.builders.BuildFailedException;
+import com.github.octavelarose.bootleg.builders.programs.calltraces.asm_types.ASMParsingException;
+import com.github.octavelarose.bootleg.builders.programs.calltraces.asm_types.ASMTypeParsingUtils;
+import com.github.octavelarose.bootleg.builders.programs.classes.methods.bodies.allocations.AllocationSite;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Reads and parses an allocation profile file, which gives the allocations made by each method on every call.
+ * Format of a line: "METHOD_FULLNAME TYPE_DESCRIPTOR COUNT [SIZE_OR_LENGTH]", ex: "som/Sieve.sieve [Z 1 5001".
+ * The last value is the length for arrays, and the size in bytes for objects.
+ */
+public class AllocationProfileFileParser {
+    private final String filename;
+    private HashMap<String, List<AllocationSite>> allocationSites;
+
+    public AllocationProfileFileParser(String filename) { this.filename = filename; }
+
+    /**
+     * Parses an allocation profile file.
+     * @return The instance of the AllocationProfileFileParser calling.
+     * @throws BuildFailedException If there was an I/O error related to the file, or if its format is invalid.
+     */
+    public AllocationProfileFileParser parse() throws BuildFailedException {
+        try {
+            File profileFile = new File(filename);
+            BufferedReader br = new BufferedReader(new FileReader(profileFile));
+
+            this.allocationSites = new HashMap<>();
+
+            String line;
+            while ((line = br.readLine()) != null) {
+                if (line.isBlank())
+                    continue;
+                String[] splitLine = line.trim().split(" ");
+                if (splitLine.length < 3)
+                    throw new BuildFailedException("Invalid allocation profile line: " + line);
+
+                AllocationSite site = new AllocationSite(getTypeFromDescriptor(splitLine[1]),
+                        Long.parseLong(splitLine[2]),
+                        (splitLine.length > 3) ? Integer.parseInt(splitLine[3]) : 0);
+                this.allocationSites.computeIfAbsent(splitLine[0], k -> new ArrayList<>()).add(site);
+            }
+
+            return this;
+        } catch (IOException e) {
+            throw new BuildFailedException("Couldn't read file content: " + e.getMessage());
+        } catch (NumberFormatException | ASMParsingException e) {
+            throw new BuildFailedException("Invalid allocation profile format: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Parses a type descriptor, which unlike in method descriptors can be a multidimensional array (ex: "[[D").
+     * @param descriptor The type descriptor.
+     * @return The corresponding type.
+     * @throws BuildFailedException If the descriptor is invalid.
+     */
+    private static Type getTypeFromDescriptor(String descriptor) throws BuildFailedException {
+        int dimensions = 0;
+        while (dimensions < descriptor.length() && descriptor.charAt(dimensions) == '[')
+            dimensions++;
+        if (dimensions == descriptor.length())
+            throw new BuildFailedException("Invalid allocation profile format: no type in descriptor " + descriptor);
+
+        Type type = ASMTypeParsingUtils.getTypeFromStr(descriptor.substring(dimensions));
+        for (int i = 0; i < dimensions; i++)
+            type = new ArrayType(type);
+        return type;
+    }
+
+    public HashMap<String, List<AllocationSite>> getParsedAllocationSites() { return this.allocationSites; }
+}
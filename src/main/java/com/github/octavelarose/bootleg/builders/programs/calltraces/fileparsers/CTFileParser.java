@@ -12,6 +12,7 @@ import java.util.List;
 
 /**
  * Reads and parses a calltrace file. Encapsulates the format used in them.
+ * Lines may end with the id of the thread the call was made from, like "t=12": see CTMethodInfo.
  */
 public class CTFileParser {
     private final String filename;
@@ -32,8 +33,10 @@ public class CTFileParser {
             this.fileLines = new ArrayList<>();
 
             String line;
-            while ((line = br.readLine()) != null)
-                fileLines.add(Arrays.asList(line.split(" ")));
+            while ((line = br.readLine()) != null) {
+                if (!line.isBlank())
+                    fileLines.add(Arrays.asList(line.trim().split(" ")));
+            }
 
             return this;
         } catch (IOException e) {
@@ -0,0 +1,79 @@
+package com.github.octavelarose.bootleg.builders.programs.calltraces.fileparsers;
+
+import com.github.octavelarose.bootleg.builders.BuildFailedException;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Reads and parses a type profile file, which gives the number of receiver types wanted at call sites of a class.
+ * Format of a line: "pkg/ClassName NBR_RECEIVER_TYPES [WEIGHT1,WEIGHT2,...]", ex: "som/Sieve 3 70,20,10".
+ * Without weights, all the receiver types are equally as likely.
+ */
+public class TypeProfileFileParser {
+    private final String filename;
+    private HashMap<String, List<Integer>> receiverWeights;
+
+    public TypeProfileFileParser(String filename) { this.filename = filename; }
+
+    /**
+     * Parses a type profile file.
+     * @return The instance of the TypeProfileFileParser calling.
+     * @throws BuildFailedException If there was an I/O error related to the file, or if its format is invalid.
+     */
+    public TypeProfileFileParser parse() throws BuildFailedException {
+        try {
+            File profileFile = new File(filename);
+            BufferedReader br = new BufferedReader(new FileReader(profileFile));
+
+            this.receiverWeights = new HashMap<>();
+
+            String line;
+            while ((line = br.readLine()) != null) {
+                if (line.isBlank())
+                    continue;
+                String[] splitLine = line.trim().split(" ");
+                if (splitLine.length < 2)
+                    throw new BuildFailedException("Invalid type profile line: " + line);
+                receiverWeights.put(splitLine[0], this.parseWeights(splitLine));
+            }
+
+            return this;
+        } catch (IOException e) {
+            throw new BuildFailedException("Couldn't read file content: " + e.getMessage());
+        } catch (NumberFormatException e) {
+            throw new BuildFailedException("Invalid type profile format: " + e.getMessage());
+        }
+    }
+
+    /**
+     * @param splitLine A line of the file, split on spaces.
+     * @return The weight of each receiver type.
+     * @throws BuildFailedException If there are no receiver types, or if the number of weights doesn't match it.
+     */
+    private List<Integer> parseWeights(String[] splitLine) throws BuildFailedException {
+        int receiverTypesNbr = Integer.parseInt(splitLine[1]);
+        if (receiverTypesNbr < 1)
+            throw new BuildFailedException("Invalid type profile for " + splitLine[0] + ": needs at least one receiver type");
+
+        if (splitLine.length < 3)
+            return Collections.nCopies(receiverTypesNbr, 1);
+
+        List<Integer> weights = new ArrayList<>();
+        for (String weightStr: splitLine[2].split(","))
+            weights.add(Integer.parseInt(weightStr));
+
+        if (weights.size() != receiverTypesNbr)
+            throw new BuildFailedException("Invalid type profile for " + splitLine[0] + ": "
+                    + receiverTypesNbr + " receiver types but " + weights.size() + " weights");
+        return weights;
+    }
+
+    public HashMap<String, List<Integer>> getParsedReceiverWeights() { return this.receiverWeights; }
+}
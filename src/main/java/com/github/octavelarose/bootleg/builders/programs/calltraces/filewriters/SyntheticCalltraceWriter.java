@@ -0,0 +1,325 @@
+package com.github.octavelarose.bootleg.builders.programs.calltraces.filewriters;
+
+import com.github.octavelarose.bootleg.builders.BuildConstants;
+import com.github.octavelarose.bootleg.builders.BuildFailedException;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.SplittableRandom;
+
+/**
+ * Writes a synthetic calltrace file, and the matching operations file, to load test the program building on inputs
+ * of any size. The trace is written as it gets generated, with only the current call stack kept in memory, so it can
+ * have billions of events: its calls form a tree of a chosen depth and fan-out, the entry point calling new subtrees
+ * until the trace has as many events as asked for. Classes only call classes with a higher index than theirs,
+ * so that the programs built from the trace don't recurse endlessly.
+ * Methods are picked at random among a set number of classes and methods, with their descriptors derived from their
+ * indexes. Everything is deterministic given a seed, so that the same parameters always give the same trace.
+ */
+public class SyntheticCalltraceWriter {
+    private static final String ENTRY_POINT_CALL = "pub/sta ([Ljava/lang/String;)V Harness.main";
+    private static final String PKG_NAME_PREFIX = "pkg";
+    private static final String CLASS_NAME_PREFIX = "Class";
+    private static final String METHOD_NAME_PREFIX = "method";
+
+    private static final String[] PARAM_TYPES = {"I", "J", "D", "Z", "Ljava/lang/String;", "[I", "[D"};
+    private static final String[] RETURN_TYPES = {"V", "V", "I", "J", "D", "Ljava/lang/String;"};
+    private static final String[] OPERATIONS = {"IADD", "ISUB", "IMUL", "LADD", "LMUL", "FADD", "FMUL", "DADD", "DSUB", "DMUL", "DDIV"};
+    private static final int MAX_PARAMS_NBR = 3;
+    private static final int MAX_OPERATIONS_NBR = 8;
+
+    private static final long PROGRESS_EVENTS_INTERVAL = 100_000_000L;
+
+    private final long eventsNbr;
+    private final int classesNbr;
+    private final int methodsPerClass;
+    private final int maxDepth;
+    private final int fanOut;
+    private int packagesNbr;
+    private double overloadRatio = 0;
+    private double recursionRatio = 0;
+    private long seed = 42;
+
+    /**
+     * A call that hasn't exited yet.
+     */
+    private static class Frame {
+        final int classIdx;
+        final int methodIdx;
+        final int overloadIdx;
+        final String call;
+        long childrenLeft;
+
+        Frame(int classIdx, int methodIdx, int overloadIdx, String call, long childrenLeft) {
+            this.classIdx = classIdx;
+            this.methodIdx = methodIdx;
+            this.overloadIdx = overloadIdx;
+            this.call = call;
+            this.childrenLeft = childrenLeft;
+        }
+    }
+
+    /**
+     * @param eventsNbr       The number of events in the trace, i.e twice its number of calls.
+     * @param classesNbr      The number of classes the methods are spread over.
+     * @param methodsPerClass The number of methods in each class, not counting the constructor.
+     * @param maxDepth        How deep the call tree of the trace can get, not counting the entry point.
+     * @param fanOut          How many calls each method can make at most.
+     * @throws BuildFailedException If one of the values is out of range.
+     */
+    public SyntheticCalltraceWriter(long eventsNbr, int classesNbr, int methodsPerClass, int maxDepth, int fanOut) throws BuildFailedException {
+        if (eventsNbr < 2 || classesNbr < 1 || methodsPerClass < 1 || maxDepth < 1 || fanOut < 1)
+            throw new BuildFailedException("Invalid synthetic calltrace parameters: " + eventsNbr + " events, "
+                    + classesNbr + " classes, " + methodsPerClass + " methods per class, max depth of " + maxDepth
+                    + ", fan-out of " + fanOut);
+
+        this.eventsNbr = eventsNbr;
+        this.classesNbr = classesNbr;
+        this.methodsPerClass = methodsPerClass;
+        this.maxDepth = maxDepth;
+        this.fanOut = fanOut;
+        this.packagesNbr = Math.max(classesNbr / 10, 1);
+    }
+
+    /**
+     * @param str The parameters as a string, like "1000000,500,10,8,3" (events, classes, methods per class, max depth, fan-out).
+     * @return A new SyntheticCalltraceWriter object.
+     * @throws BuildFailedException If the string is invalid.
+     */
+    public static SyntheticCalltraceWriter fromParametersStr(String str) throws BuildFailedException {
+        String[] splitStr = str.split(",");
+        if (splitStr.length != 5)
+            throw new BuildFailedException("Synthetic calltrace parameters should have 5 values, not: " + str);
+
+        try {
+            return new SyntheticCalltraceWriter(Long.parseLong(splitStr[0].trim()),
+                    Integer.parseInt(splitStr[1].trim()),
+                    Integer.parseInt(splitStr[2].trim()),
+                    Integer.parseInt(splitStr[3].trim()),
+                    Integer.parseInt(splitStr[4].trim()));
+        } catch (NumberFormatException e) {
+            throw new BuildFailedException("Invalid synthetic calltrace parameters: " + str);
+        }
+    }
+
+    /**
+     * @param packagesNbr The number of packages the classes are spread over. Defaults to one per 10 classes.
+     */
+    public void setPackagesNbr(int packagesNbr) {
+        this.packagesNbr = Math.max(Math.min(packagesNbr, this.classesNbr), 1);
+    }
+
+    /**
+     * Overloads only shape the trace, to load test parsing it and discovering its methods: the program built from it
+     * has a single method per name, overloads being merged into the first one called.
+     * @param overloadRatio The share of methods having an overload, with a different descriptor, between 0 and 1.
+     */
+    public void setOverloadRatio(double overloadRatio) {
+        this.overloadRatio = Math.max(Math.min(overloadRatio, 1), 0);
+    }
+
+    /**
+     * Recursive calls only shape the trace, to load test parsing it and interpreting deep call stacks: the program built
+     * from it doesn't make them, since calls get written when their callee is first generated.
+     * @param recursionRatio The share of calls that call the method they're made from again, between 0 and 1.
+     */
+    public void setRecursionRatio(double recursionRatio) {
+        this.recursionRatio = Math.max(Math.min(recursionRatio, 1), 0);
+    }
+
+    /**
+     * @param seed The seed all the random choices derive from.
+     */
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * Writes the calltrace file, then the operations file.
+     * @param ctFilename The name of the calltrace file to write.
+     * @param opFilename The name of the operations file to write, or null to only write the calltrace.
+     * @throws BuildFailedException If writing one of the files fails.
+     */
+    public void write(String ctFilename, String opFilename) throws BuildFailedException {
+        System.out.println("Generating a synthetic calltrace: " + this.eventsNbr + " events, " + this.classesNbr
+                + " classes, " + this.methodsPerClass + " methods per class, max depth of " + this.maxDepth
+                + ", fan-out of " + this.fanOut);
+
+        this.writeCalltrace(new File(ctFilename));
+        if (opFilename != null)
+            this.writeOperations(new File(opFilename));
+
+        System.out.println("Wrote synthetic calltrace to " + ctFilename
+                + (opFilename != null ? ", and its operations to " + opFilename : ""));
+    }
+
+    private void writeCalltrace(File ctFile) throws BuildFailedException {
+        createParentDirs(ctFile);
+        SplittableRandom random = new SplittableRandom(this.seed);
+        Deque<Frame> callStack = new ArrayDeque<>();
+        BitSet constructedClasses = new BitSet(this.classesNbr);
+        long eventsWritten = 0;
+        long timeNs = 0;
+
+        try (Writer writer = new BufferedWriter(new FileWriter(ctFile), 1 << 16)) {
+            // The entry point calls new subtrees for as long as there are events left
+            callStack.push(new Frame(-1, -1, 0, ENTRY_POINT_CALL, Long.MAX_VALUE));
+            writeEvent(writer, true, ENTRY_POINT_CALL, timeNs);
+            eventsWritten++;
+
+            while (!callStack.isEmpty()) {
+                Frame caller = callStack.peek();
+                timeNs += 1 + random.nextInt(100);
+
+                // Every call on the stack still needs its exit event, on top of the two events of a new call
+                boolean canCall = caller.childrenLeft > 0
+                        && caller.classIdx < this.classesNbr - 1
+                        && callStack.size() <= this.maxDepth
+                        && this.eventsNbr - eventsWritten >= callStack.size() + 2;
+
+                if (canCall) {
+                    caller.childrenLeft--;
+                    Frame callee = this.getNextCallee(caller, random, constructedClasses);
+                    callStack.push(callee);
+                    writeEvent(writer, true, callee.call, timeNs);
+                } else {
+                    writeEvent(writer, false, callStack.pop().call, timeNs);
+                }
+
+                if (++eventsWritten % PROGRESS_EVENTS_INTERVAL == 0)
+                    System.out.println("Wrote " + eventsWritten + " events.");
+            }
+        } catch (IOException e) {
+            throw new BuildFailedException("Couldn't write calltrace file: " + e.getMessage());
+        }
+    }
+
+    /**
+     * @param caller             The call the new call is made from.
+     * @param random             The random number generator of the trace.
+     * @param constructedClasses The classes that got constructed so far, whose instance methods can be called.
+     * @return The new call, not yet on the call stack.
+     */
+    private Frame getNextCallee(Frame caller, SplittableRandom random, BitSet constructedClasses) {
+        int childrenNbr = random.nextInt(this.fanOut + 1);
+
+        // Recursive calls are to the caller itself, which the entry point can't be
+        if (caller.classIdx >= 0 && random.nextDouble() < this.recursionRatio)
+            return new Frame(caller.classIdx, caller.methodIdx, caller.overloadIdx, caller.call, childrenNbr);
+
+        // Methods only call classes after their own, so that the calls in the generated program can't loop.
+        // Any call can make the generated code instantiate the callee's class, which calls the callee's constructor.
+        int classIdx = caller.classIdx + 1 + random.nextInt(this.classesNbr - caller.classIdx - 1);
+        int methodIdx = random.nextInt(this.methodsPerClass + 1);
+
+        // Like in real traces, instance methods only get called once their class has been constructed
+        if (methodIdx < this.methodsPerClass && !this.isStatic(classIdx, methodIdx) && !constructedClasses.get(classIdx))
+            methodIdx = this.methodsPerClass;
+
+        if (methodIdx == this.methodsPerClass) {
+            constructedClasses.set(classIdx);
+            return new Frame(classIdx, methodIdx, 0,
+                    "pub/con " + this.getDescriptor(classIdx, methodIdx, 0) + " " + this.getFullName(classIdx, methodIdx),
+                    childrenNbr);
+        }
+
+        int overloadIdx = this.isOverloaded(classIdx, methodIdx) ? random.nextInt(2) : 0;
+        String scope = this.isStatic(classIdx, methodIdx) ? "pub/sta" : "pub";
+        return new Frame(classIdx, methodIdx, overloadIdx,
+                scope + " " + this.getDescriptor(classIdx, methodIdx, overloadIdx) + " " + this.getFullName(classIdx, methodIdx),
+                childrenNbr);
+    }
+
+    private void writeOperations(File opFile) throws BuildFailedException {
+        createParentDirs(opFile);
+
+        try (Writer writer = new BufferedWriter(new FileWriter(opFile), 1 << 16)) {
+            for (int classIdx = 0; classIdx < this.classesNbr; classIdx++) {
+                for (int methodIdx = 0; methodIdx <= this.methodsPerClass; methodIdx++) {
+                    SplittableRandom random = this.getMethodRandom(classIdx, methodIdx, 1);
+                    int opsNbr = 1 + random.nextInt(MAX_OPERATIONS_NBR);
+
+                    StringBuilder opsLine = new StringBuilder();
+                    for (int i = 0; i < opsNbr; i++)
+                        opsLine.append(i == 0 ? "" : " ").append(OPERATIONS[random.nextInt(OPERATIONS.length)]);
+
+                    writer.write(this.getFullName(classIdx, methodIdx) + "\n" + opsLine + "\n");
+                }
+            }
+        } catch (IOException e) {
+            throw new BuildFailedException("Couldn't write operations file: " + e.getMessage());
+        }
+    }
+
+    /**
+     * @param classIdx  The index of the class.
+     * @param methodIdx The index of the method, the constructor's being the number of methods per class.
+     * @return The full name of the method, like "pkg3/Class12.method4".
+     */
+    private String getFullName(int classIdx, int methodIdx) {
+        return PKG_NAME_PREFIX + (classIdx % this.packagesNbr) + "/" + CLASS_NAME_PREFIX + classIdx + "."
+                + (methodIdx == this.methodsPerClass ? BuildConstants.CONSTRUCTOR_NAME : METHOD_NAME_PREFIX + methodIdx);
+    }
+
+    /**
+     * @param classIdx    The index of the class.
+     * @param methodIdx   The index of the method.
+     * @param overloadIdx Which overload of the method it is, 0 or 1.
+     * @return The descriptor of the method, like "(IJ)V". Constructors always return void.
+     */
+    private String getDescriptor(int classIdx, int methodIdx, int overloadIdx) {
+        SplittableRandom random = this.getMethodRandom(classIdx, methodIdx, 0);
+        StringBuilder descriptor = new StringBuilder("(");
+
+        int paramsNbr = random.nextInt(MAX_PARAMS_NBR + 1);
+        for (int i = 0; i < paramsNbr; i++)
+            descriptor.append(PARAM_TYPES[random.nextInt(PARAM_TYPES.length)]);
+
+        String returnType = RETURN_TYPES[random.nextInt(RETURN_TYPES.length)];
+
+        // Overloads have one more parameter than the original method, so that their descriptors always differ
+        if (overloadIdx == 1)
+            descriptor.append(PARAM_TYPES[random.nextInt(PARAM_TYPES.length)]);
+
+        return descriptor.append(")").append(methodIdx == this.methodsPerClass ? "V" : returnType).toString();
+    }
+
+    private boolean isStatic(int classIdx, int methodIdx) {
+        return this.getMethodRandom(classIdx, methodIdx, 2).nextInt(3) == 0;
+    }
+
+    private boolean isOverloaded(int classIdx, int methodIdx) {
+        return this.getMethodRandom(classIdx, methodIdx, 3).nextDouble() < this.overloadRatio;
+    }
+
+    /**
+     * Properties of methods derive from their own generator rather than being stored, so that memory use
+     * doesn't depend on the number of methods.
+     * @param classIdx  The index of the class.
+     * @param methodIdx The index of the method.
+     * @param property  Which property of the method the generator is for.
+     * @return A random number generator specific to the method and the property.
+     */
+    private SplittableRandom getMethodRandom(int classIdx, int methodIdx, int property) {
+        long methodKey = ((long) classIdx * (this.methodsPerClass + 1) + methodIdx) * 4 + property;
+        return new SplittableRandom(this.seed ^ (methodKey * 0x9E3779B97F4A7C15L));
+    }
+
+    private static void writeEvent(Writer writer, boolean isEntry, String call, long timeNs) throws IOException {
+        writer.write(isEntry ? "> " : "< ");
+        writer.write(call);
+        writer.write(" (" + timeNs + "ns)\n");
+    }
+
+    private static void createParentDirs(File file) throws BuildFailedException {
+        File parentDir = file.getAbsoluteFile().getParentFile();
+        if (!parentDir.isDirectory() && !parentDir.mkdirs())
+            throw new BuildFailedException("Couldn't create directory " + parentDir);
+    }
+}
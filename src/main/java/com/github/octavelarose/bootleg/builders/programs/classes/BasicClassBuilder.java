@@ -19,7 +19,6 @@ import org.apache.commons.lang3.StringUtils;
 
 import java.util.List;
 import java.util.Optional;
-import java.util.Random;
 
 /**
  * Builds a basic class, mostly to try out the API and generate basic codebases.
@@ -49,7 +48,7 @@ public class BasicClassBuilder extends ClassBuilder {
      */
     public void addBasicField(String name) {
         PrimitiveType.Primitive[] primitives = PrimitiveType.Primitive.values();
-        PrimitiveType fieldType = new PrimitiveType(primitives[new Random().nextInt(primitives.length)]);
+        PrimitiveType fieldType = new PrimitiveType(primitives[RandomUtils.generateRandomInt(primitives.length)]);
 
         this.addField(name, fieldType, Modifier.Keyword.PRIVATE);
 //        this.addField(name, fieldType, new IntegerLiteralExpr("0"), Modifier.Keyword.PRIVATE);
@@ -66,7 +65,7 @@ public class BasicClassBuilder extends ClassBuilder {
         List<FieldDeclaration> classFields = this.outputClass.getFields();
         if (classFields.size() > 0) {
             // Gets a FieldDeclaration ("private int abcd") and gets the variable name.
-            int randomFieldId = new Random().nextInt(classFields.size());
+            int randomFieldId = RandomUtils.generateRandomInt(classFields.size());
             if (classFields.get(randomFieldId).getVariable(0).getType().toString().equals("int")) {
                 String randomFieldName = StringUtils.removeEnd(classFields.get(randomFieldId).toString().split(" ")[2], ";");
                 FieldAccessExpr fieldAccessExpr = new FieldAccessExpr(new ThisExpr(), randomFieldName);
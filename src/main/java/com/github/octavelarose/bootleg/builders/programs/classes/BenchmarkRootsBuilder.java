@@ -0,0 +1,55 @@
+package com.github.octavelarose.bootleg.builders.programs.classes;
+
+import com.github.javaparser.ParseException;
+import com.github.javaparser.ast.Modifier;
+import com.github.javaparser.ast.body.CallableDeclaration;
+import com.github.javaparser.ast.body.MethodDeclaration;
+import com.github.javaparser.ast.type.Type;
+import com.github.octavelarose.bootleg.builders.BuildFailedException;
+import com.github.octavelarose.bootleg.builders.programs.utils.JPTypeUtils;
+
+import java.util.HashMap;
+
+/**
+ * Builds a class with one public static method per root call of the calltrace, returning the result of the call, for
+ * benchmarks that can't call the roots directly: JMH benchmarks can't be in the default package, and so can't refer to
+ * the classes in it, which most entry points are.
+ */
+public class BenchmarkRootsBuilder extends HarnessBuilder {
+    public static final String CLASS_NAME = "BootlegRoots";
+
+    private static final String ROOT_METHOD_PREFIX = "runRoot";
+
+    private int rootsNbr = 0;
+
+    public BenchmarkRootsBuilder() {
+        super(CLASS_NAME);
+    }
+
+    /**
+     * @param rootClass     The class of the root call.
+     * @param rootSignature The signature of the root call.
+     * @param classBuilders All the classes in the program, in case the call needs to instantiate some.
+     * @return The name of the method running the root call, like "runRoot0".
+     * @throws BuildFailedException If writing the call fails.
+     */
+    public String addRoot(ClassBuilder rootClass,
+                          CallableDeclaration.Signature rootSignature,
+                          HashMap<String, ClassBuilder> classBuilders) throws BuildFailedException {
+        CallableDeclaration<?> rootMethod = rootClass.getMethodFromSignature(rootSignature);
+
+        // Constructors return the object they construct, so that benchmarks can consume it
+        Type returnType;
+        try {
+            returnType = rootMethod instanceof MethodDeclaration
+                    ? ((MethodDeclaration) rootMethod).getType().clone()
+                    : JPTypeUtils.getClassTypeFromName(rootClass.getImportStr());
+        } catch (ParseException e) {
+            throw new BuildFailedException("Couldn't parse the type of class " + rootClass.getImportStr());
+        }
+
+        String methodName = ROOT_METHOD_PREFIX + this.rootsNbr++;
+        this.writeRootCall(methodName, returnType, Modifier.publicModifier(), rootClass, rootSignature, classBuilders);
+        return methodName;
+    }
+}
@@ -0,0 +1,71 @@
+package com.github.octavelarose.bootleg.builders.programs.classes;
+
+import com.github.javaparser.StaticJavaParser;
+import com.github.javaparser.ast.Modifier;
+import com.github.javaparser.ast.NodeList;
+import com.github.javaparser.ast.body.Parameter;
+import com.github.javaparser.ast.stmt.BlockStmt;
+import com.github.javaparser.ast.type.ArrayType;
+import com.github.javaparser.ast.type.ClassOrInterfaceType;
+import com.github.javaparser.ast.type.PrimitiveType;
+import com.github.javaparser.ast.type.VoidType;
+
+/**
+ * Builds the benchmark harness of a generated program, in the style of the AWFY benchmarks' Harness and Run classes.
+ * It runs the original entry point for a number of warmup iterations, then for a number of measured iterations,
+ * each running it a number of inner iterations, and prints the runtime of each measured iteration and their average.
+ * Usage: "java BootlegHarness [iterations] [warmupIterations] [innerIterations]".
+ */
+public class BootlegHarnessBuilder extends HarnessBuilder {
+    public static final String CLASS_NAME = "BootlegHarness";
+
+    private static final String INNER_LOOP_METHOD_NAME = "innerBenchmarkLoop";
+
+    private static final int DEFAULT_ITERATIONS = 10;
+    private static final int DEFAULT_WARMUP_ITERATIONS = 5;
+    private static final int DEFAULT_INNER_ITERATIONS = 1;
+
+    /**
+     * @param benchmarkName The name the runtimes get printed with, like "Sieve".
+     */
+    public BootlegHarnessBuilder(String benchmarkName) {
+        super(CLASS_NAME);
+
+        this.addMethod("main",
+                new VoidType(),
+                new NodeList<>(new Parameter(new ArrayType(new ClassOrInterfaceType(null, "String")), "args")),
+                this.getMainBody(benchmarkName),
+                new NodeList<>(Modifier.publicModifier(), Modifier.staticModifier()));
+
+        this.addMethod(INNER_LOOP_METHOD_NAME,
+                new VoidType(),
+                new NodeList<>(new Parameter(PrimitiveType.intType(), "innerIterations")),
+                StaticJavaParser.parseBlock("{for (int i = 0; i < innerIterations; i++) " + RUN_METHOD_NAME + "();}"),
+                new NodeList<>(Modifier.privateModifier(), Modifier.staticModifier()));
+    }
+
+    /**
+     * @param benchmarkName The name the runtimes get printed with.
+     * @return The body of the main method, which prints runtimes in the same format as AWFY's harness.
+     */
+    private BlockStmt getMainBody(String benchmarkName) {
+        String printPrefix = "\"" + benchmarkName.replace("\"", "") + ": iterations=";
+
+        return StaticJavaParser.parseBlock("{"
+                + "int iterations = args.length > 0 ? Integer.parseInt(args[0]) : " + DEFAULT_ITERATIONS + ";"
+                + "int warmupIterations = args.length > 1 ? Integer.parseInt(args[1]) : " + DEFAULT_WARMUP_ITERATIONS + ";"
+                + "int innerIterations = args.length > 2 ? Integer.parseInt(args[2]) : " + DEFAULT_INNER_ITERATIONS + ";"
+                + "for (int i = 0; i < warmupIterations; i++) " + INNER_LOOP_METHOD_NAME + "(innerIterations);"
+                + "long totalUs = 0;"
+                + "for (int i = 0; i < iterations; i++) {"
+                + "    long startNs = System.nanoTime();"
+                + "    " + INNER_LOOP_METHOD_NAME + "(innerIterations);"
+                + "    long runtimeUs = (System.nanoTime() - startNs) / 1000;"
+                + "    totalUs += runtimeUs;"
+                + "    System.out.println(" + printPrefix + "1 runtime: \" + runtimeUs + \"us\");"
+                + "}"
+                + "if (iterations > 0) System.out.println(" + printPrefix + "\" + iterations"
+                + "    + \" average: \" + totalUs / iterations + \"us total: \" + totalUs + \"us\");"
+                + "}");
+    }
+}
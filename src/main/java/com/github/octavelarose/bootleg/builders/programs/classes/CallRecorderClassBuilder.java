@@ -0,0 +1,130 @@
+package com.github.octavelarose.bootleg.builders.programs.classes;
+
+import com.github.javaparser.StaticJavaParser;
+import com.github.javaparser.ast.Modifier;
+import com.github.javaparser.ast.NodeList;
+import com.github.javaparser.ast.body.CallableDeclaration;
+import com.github.javaparser.ast.body.Parameter;
+import com.github.javaparser.ast.stmt.BlockStmt;
+import com.github.javaparser.ast.type.PrimitiveType;
+import com.github.javaparser.ast.type.VoidType;
+import com.github.javaparser.utils.Pair;
+import com.github.octavelarose.bootleg.builders.BuildFailedException;
+import com.github.octavelarose.bootleg.builders.programs.classes.methods.bodies.CallableMethodBodyEditor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Builds the class recording the calls of the generated program, to compare them with the trace it was generated from.
+ * Generated methods record their entries and exits in a preallocated ring buffer, which gets written on exit in the
+ * calltrace format, each method appearing under the name, scope and descriptor it had in the original trace.
+ * Only the last events are kept if the buffer fills up, its capacity being set with "-Dbootleg.recordCapacity=N".
+ * The file is "calltrace_recorded.txt" by default, and can be set with "-Dbootleg.recordFile=FILENAME".
+ */
+public class CallRecorderClassBuilder extends MethodNamesClassBuilder {
+    public static final String CLASS_NAME = "CallRecorder";
+
+    private static final String ENTER_METHOD_NAME = "enter";
+    private static final String EXIT_METHOD_NAME = "exit";
+    private static final String DUMP_METHOD_NAME = "dump";
+
+    private static final int DEFAULT_CAPACITY = 1 << 20;
+    private static final String DEFAULT_RECORD_FILE = "calltrace_recorded.txt";
+
+    // The methods to record, with the call they correspond to in the trace.
+    private final List<Pair<CallableDeclaration<?>, String>> recordedMethods = new ArrayList<>();
+
+    public CallRecorderClassBuilder() {
+        super(CLASS_NAME);
+    }
+
+    /**
+     * @param method     A generated method, whose calls should be recorded.
+     * @param tracedCall The call of the method in the trace, without its direction and time, like "pub (I)V som/Sieve.sieve".
+     */
+    public void addRecordedMethod(CallableDeclaration<?> method, String tracedCall) {
+        this.recordedMethods.add(new Pair<>(method, tracedCall));
+    }
+
+    /**
+     * Makes all the added methods record their calls, and adds the recorder itself.
+     * Done once the program is done, since code appended to a body after it got wrapped would follow its return statement.
+     * @throws BuildFailedException If the body of a method can't be modified.
+     */
+    public void writeRecorder() throws BuildFailedException {
+        for (Pair<CallableDeclaration<?>, String> recordedMethod: this.recordedMethods) {
+            int methodIdx = this.getMethodIdx(recordedMethod.b);
+            CallableMethodBodyEditor.wrapBodyOfCallable(recordedMethod.a,
+                    Collections.singletonList(StaticJavaParser.parseStatement(
+                            this.getImportStr() + "." + ENTER_METHOD_NAME + "(" + methodIdx + ");")),
+                    StaticJavaParser.parseBlock("{" + this.getImportStr() + "." + EXIT_METHOD_NAME + "(" + methodIdx + ");}"));
+        }
+
+        String atomicLongType = "java.util.concurrent.atomic.AtomicLong";
+        this.addField("CAPACITY", PrimitiveType.intType(),
+                StaticJavaParser.parseExpression("Integer.highestOneBit(Math.max(Integer.getInteger(\"bootleg.recordCapacity\", "
+                        + DEFAULT_CAPACITY + "), 2))"),
+                Modifier.Keyword.PRIVATE, Modifier.Keyword.STATIC, Modifier.Keyword.FINAL);
+        // Even events are entries, odd ones exits, of the method of index event / 2
+        this.addField("EVENTS", StaticJavaParser.parseType("int[]"), StaticJavaParser.parseExpression("new int[CAPACITY]"),
+                Modifier.Keyword.PRIVATE, Modifier.Keyword.STATIC, Modifier.Keyword.FINAL);
+        this.addField("TIMES", StaticJavaParser.parseType("long[]"), StaticJavaParser.parseExpression("new long[CAPACITY]"),
+                Modifier.Keyword.PRIVATE, Modifier.Keyword.STATIC, Modifier.Keyword.FINAL);
+        this.addField("THREADS", StaticJavaParser.parseType("long[]"), StaticJavaParser.parseExpression("new long[CAPACITY]"),
+                Modifier.Keyword.PRIVATE, Modifier.Keyword.STATIC, Modifier.Keyword.FINAL);
+        this.addField("NEXT_EVENT", StaticJavaParser.parseType(atomicLongType),
+                StaticJavaParser.parseExpression("new " + atomicLongType + "()"),
+                Modifier.Keyword.PRIVATE, Modifier.Keyword.STATIC, Modifier.Keyword.FINAL);
+
+        BlockStmt staticInit = this.writeNames();
+        staticInit.addStatement(StaticJavaParser.parseStatement(
+                "Runtime.getRuntime().addShutdownHook(new Thread(" + CLASS_NAME + "::" + DUMP_METHOD_NAME + "));"));
+
+        this.addRecordMethod(ENTER_METHOD_NAME, "methodIdx * 2");
+        this.addRecordMethod(EXIT_METHOD_NAME, "methodIdx * 2 + 1");
+
+        // Threads still running during the dump may overwrite the oldest events, which only garbles these
+        this.addMethod(DUMP_METHOD_NAME,
+                new VoidType(),
+                new NodeList<>(),
+                StaticJavaParser.parseBlock("{"
+                        + "long eventsNbr = NEXT_EVENT.get();"
+                        + "long firstEvent = Math.max(0, eventsNbr - CAPACITY);"
+                        + "if (firstEvent > 0)"
+                        + "    System.err.println(\"" + CLASS_NAME + ": only the last \" + CAPACITY + \" of \" + eventsNbr + \" events were kept.\");"
+                        + "String fileName = System.getProperty(\"bootleg.recordFile\", \"" + DEFAULT_RECORD_FILE + "\");"
+                        + "long startTime = TIMES[(int) (firstEvent & (CAPACITY - 1))];"
+                        + "try (java.io.PrintWriter writer = new java.io.PrintWriter(new java.io.BufferedWriter(new java.io.FileWriter(fileName)))) {"
+                        + "    for (long i = firstEvent; i < eventsNbr; i++) {"
+                        + "        int slot = (int) (i & (CAPACITY - 1));"
+                        + "        writer.println(((EVENTS[slot] & 1) == 0 ? \"> \" : \"< \") + " + NAMES_FIELD_NAME + "[EVENTS[slot] >> 1]"
+                        + "            + \" (\" + (TIMES[slot] - startTime) + \"ns) t=\" + THREADS[slot]);"
+                        + "    }"
+                        + "} catch (java.io.IOException e) {"
+                        + "    System.err.println(\"" + CLASS_NAME + ": couldn't write \" + fileName + \": \" + e.getMessage());"
+                        + "}"
+                        + "}"),
+                new NodeList<>(Modifier.publicModifier(), Modifier.staticModifier()));
+
+        System.out.println("Recording the calls of " + this.getMethodsNbr() + " methods.");
+    }
+
+    /**
+     * @param name      The name of the method.
+     * @param eventExpr The expression of the event to record, from the index of the method.
+     */
+    private void addRecordMethod(String name, String eventExpr) {
+        this.addMethod(name,
+                new VoidType(),
+                new NodeList<>(new Parameter(PrimitiveType.intType(), "methodIdx")),
+                StaticJavaParser.parseBlock("{"
+                        + "int slot = (int) (NEXT_EVENT.getAndIncrement() & (CAPACITY - 1));"
+                        + "EVENTS[slot] = " + eventExpr + ";"
+                        + "TIMES[slot] = System.nanoTime();"
+                        + "THREADS[slot] = Thread.currentThread().getId();"
+                        + "}"),
+                new NodeList<>(Modifier.publicModifier(), Modifier.staticModifier()));
+    }
+}
@@ -14,6 +14,9 @@ import java.util.List;
 
 /**
  * Builds a class: returns a JavaParser CompilationUnit that contains the class itself.
+ * Members get added and looked up under the class' lock, since classes get declared and finalized concurrently, and
+ * the task of a class reads the members of others (see ProgramDiscoverer and BodyFinalizer). The members themselves,
+ * like method bodies, aren't locked: only the task of their own class ever modifies them.
  */
 public abstract class ClassBuilder {
     protected final CompilationUnit cu;
@@ -31,9 +34,9 @@ public abstract class ClassBuilder {
      * @param modifiers  The constructor's modifiers (public, protected, static...)
      * @return The constructor object.
      */
-    public ConstructorDeclaration addConstructor(NodeList<Parameter> parameters,
-                                                 BlockStmt methodBody,
-                                                 NodeList<Modifier> modifiers) {
+    public synchronized ConstructorDeclaration addConstructor(NodeList<Parameter> parameters,
+                                                              BlockStmt methodBody,
+                                                              NodeList<Modifier> modifiers) {
         ConstructorDeclaration cs = this.outputClass.addConstructor();
         cs.setModifiers(modifiers);
         cs.setBody(methodBody);
@@ -50,11 +53,11 @@ public abstract class ClassBuilder {
      * @param modifiers  The method's modifiers (public, protected, static...)
      * @return The method object.
      */
-    public MethodDeclaration addMethod(String name,
-                                         Type returnType,
-                                         NodeList<Parameter> parameters,
-                                         BlockStmt methodBody,
-                                         NodeList<Modifier> modifiers) {
+    public synchronized MethodDeclaration addMethod(String name,
+                                                      Type returnType,
+                                                      NodeList<Parameter> parameters,
+                                                      BlockStmt methodBody,
+                                                      NodeList<Modifier> modifiers) {
         MethodDeclaration method = this.outputClass.addMethod(name);
         method.setModifiers(modifiers);
         method.setBody(methodBody);
@@ -67,21 +70,82 @@ public abstract class ClassBuilder {
         this.outputClass.setModifiers(modifiers);
     }
 
-    public List<MethodDeclaration> getMethods() {
+    /**
+     * Makes the class extend another class.
+     * @param typeName The full name of the parent class.
+     */
+    public void addExtendedType(String typeName) {
+        this.outputClass.addExtendedType(typeName);
+    }
+
+    /**
+     * Makes the class implement an interface.
+     * @param typeName The full name of the interface.
+     */
+    public void addImplementedType(String typeName) {
+        this.outputClass.addImplementedType(typeName);
+    }
+
+    /**
+     * Copies all the members (fields, constructors, methods...) of another class into this one.
+     * Constructors are renamed to match this class' name.
+     * @param otherClass The class to copy the members of.
+     */
+    public synchronized void copyMembersFrom(ClassBuilder otherClass) {
+        for (BodyDeclaration<?> member: otherClass.outputClass.getMembers()) {
+            BodyDeclaration<?> memberCopy = member.clone();
+            if (memberCopy instanceof ConstructorDeclaration)
+                ((ConstructorDeclaration) memberCopy).setName(this.outputClass.getName().clone());
+            this.outputClass.addMember(memberCopy);
+        }
+    }
+
+    public synchronized List<MethodDeclaration> getMethods() {
         return this.outputClass.getMethods();
     }
 
-    public void addField(String name,
-                         Type fieldType,
-                         Modifier.Keyword... modifiers) {
-        this.outputClass.addField(fieldType, name, modifiers);
+    public synchronized FieldDeclaration addField(String name,
+                                                  Type fieldType,
+                                                  Modifier.Keyword... modifiers) {
+        return this.outputClass.addField(fieldType, name, modifiers);
+    }
+
+    public synchronized FieldDeclaration addField(String name,
+                                                  Type fieldType,
+                                                  Expression initializer,
+                                                  Modifier.Keyword... modifiers) {
+        return this.outputClass.addFieldWithInitializer(fieldType, name, initializer, modifiers);
     }
 
-    public void addField(String name,
-                         Type fieldType,
-                         Expression initializer,
-                         Modifier.Keyword... modifiers) {
-        this.outputClass.addFieldWithInitializer(fieldType, name, initializer, modifiers);
+    /**
+     * @return The class' fields.
+     */
+    public synchronized List<FieldDeclaration> getFields() {
+        return this.outputClass.getFields();
+    }
+
+    /**
+     * @param fieldName The name of the field to look for.
+     * @return true if the class has a field with this name, false otherwise.
+     */
+    public synchronized boolean hasField(String fieldName) {
+        return this.outputClass.getFieldByName(fieldName).isPresent();
+    }
+
+    /**
+     * Adds a static init block to the class, executed by the JVM when the class gets initialized.
+     * @return The body of the static init block, empty.
+     */
+    public synchronized BlockStmt addStaticInitializer() {
+        return this.outputClass.addStaticInitializer();
+    }
+
+    /**
+     * @return true if the class has a static init block, false otherwise.
+     */
+    public synchronized boolean hasStaticInitializer() {
+        return this.outputClass.getMembers().stream()
+                .anyMatch(m -> m instanceof InitializerDeclaration && ((InitializerDeclaration) m).isStatic());
     }
 
     /**
@@ -125,7 +189,7 @@ public abstract class ClassBuilder {
      * @param methodName The name of the method to look for.
      * @return true if the method is present in the class, false otherwise.
      */
-    public boolean hasMethod(String methodName) {
+    public synchronized boolean hasMethod(String methodName) {
         // TODO: In practice, we'd need to check the method name + the parameters, to account for overloading
         // Might be better to feed the DiSL (ASM) method signature format to it as a string and have it parse it?
         if (methodName.equals(BuildConstants.CONSTRUCTOR_NAME))
@@ -141,7 +205,7 @@ public abstract class ClassBuilder {
     /**
      * @return The class' constructors.
      */
-    public List<ConstructorDeclaration> getConstructors() {
+    public synchronized List<ConstructorDeclaration> getConstructors() {
         return this.outputClass.getConstructors();
     }
 
@@ -149,7 +213,7 @@ public abstract class ClassBuilder {
      * @param sig The signature of the method to be fetched from the class.
      * @return A ConstructorDeclaration or MethodDeclaration, null if nothing was found.
      */
-    public CallableDeclaration<?> getMethodFromSignature(CallableDeclaration.Signature sig) {
+    public synchronized CallableDeclaration<?> getMethodFromSignature(CallableDeclaration.Signature sig) {
         // TODO figure out whatever is going on there with the signature objects not matching
         // Basically matching signature objects doesn't always work even when they seem virtually identical, so I compare the string versions instead
         for (ConstructorDeclaration m: this.outputClass.getConstructors()) {
@@ -173,7 +237,7 @@ public abstract class ClassBuilder {
      * @param methodName The name of the method.
      * @return The method with the given name
      */
-    public CallableDeclaration<?> getMethodFromName(String methodName) {
+    public synchronized CallableDeclaration<?> getMethodFromName(String methodName) {
         if (methodName.equals("<init>")) {
             if (this.outputClass.getConstructors().isEmpty())
                 return null;
@@ -19,16 +19,40 @@ import java.util.List;
 public class EntryPointBuilder extends ClassBuilder {
     List<ClassBuilder> classesToInvoke;
 
+    /**
+     * An entry point calling the methods of a test program's TestClass and HelperClass classes.
+     * @param name              The name of the class.
+     * @param pkgDeclarationStr The package of the class.
+     * @param classesToInvoke   The TestClass and HelperClass classes.
+     */
     public EntryPointBuilder(String name, String pkgDeclarationStr, List<ClassBuilder> classesToInvoke) {
         super(name);
         this.classesToInvoke = classesToInvoke;
 
         this.setPackageDeclaration(pkgDeclarationStr);
-        this.generateEntryPointFunction();
+        this.generateEntryPointFunction(this.getMainFunctionBody());
+
+        for (ClassBuilder cb : this.classesToInvoke) {
+            this.addImport(cb.getImportStr());
+        }
+    }
+
+    /**
+     * An entry point with a given main function body.
+     * @param name              The name of the class.
+     * @param pkgDeclarationStr The package of the class, or null for the default package.
+     * @param mainFunctionBody  The body of the main function, which can use its "args" parameter.
+     */
+    public EntryPointBuilder(String name, String pkgDeclarationStr, BlockStmt mainFunctionBody) {
+        super(name);
+        this.setModifiers(new NodeList<>(Modifier.publicModifier()));
+
+        if (pkgDeclarationStr != null)
+            this.setPackageDeclaration(pkgDeclarationStr);
+        this.generateEntryPointFunction(mainFunctionBody);
     }
 
-    private void generateEntryPointFunction() {
-        BlockStmt methodBody = getMainFunctionBody();
+    private void generateEntryPointFunction(BlockStmt methodBody) {
         ClassOrInterfaceType stringType;
 
         try {
@@ -50,10 +74,6 @@ public class EntryPointBuilder extends ClassBuilder {
                 methodBody,
                 new NodeList<>(Modifier.publicModifier(), Modifier.staticModifier())
         );
-
-        for (ClassBuilder cb : this.classesToInvoke) {
-            this.addImport(cb.getImportStr());
-        }
     }
 
     private BlockStmt getMainFunctionBody() {
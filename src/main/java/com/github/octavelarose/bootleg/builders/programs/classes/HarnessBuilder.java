@@ -0,0 +1,95 @@
+package com.github.octavelarose.bootleg.builders.programs.classes;
+
+import com.github.javaparser.ast.Modifier;
+import com.github.javaparser.ast.NodeList;
+import com.github.javaparser.ast.body.CallableDeclaration;
+import com.github.javaparser.ast.body.MethodDeclaration;
+import com.github.javaparser.ast.expr.IntegerLiteralExpr;
+import com.github.javaparser.ast.expr.NullLiteralExpr;
+import com.github.javaparser.ast.stmt.BlockStmt;
+import com.github.javaparser.ast.stmt.ReturnStmt;
+import com.github.javaparser.ast.type.PrimitiveType;
+import com.github.javaparser.ast.type.Type;
+import com.github.javaparser.ast.type.VoidType;
+import com.github.octavelarose.bootleg.builders.BuildConstants;
+import com.github.octavelarose.bootleg.builders.BuildFailedException;
+import com.github.octavelarose.bootleg.builders.programs.classes.methods.MethodCallInstructionWriter;
+import com.github.octavelarose.bootleg.builders.programs.classes.methods.bodies.CallableMethodBodyEditor;
+import com.github.octavelarose.bootleg.builders.programs.classes.methods.bodies.variables.DummyValueCreator;
+
+import java.util.HashMap;
+
+/**
+ * A class running root calls of the calltrace, like an alternative entry point running the original one
+ * in a "runEntryPoint" method.
+ */
+public abstract class HarnessBuilder extends ClassBuilder {
+    protected static final String RUN_METHOD_NAME = "runEntryPoint";
+
+    /**
+     * @param name The name of the class.
+     */
+    public HarnessBuilder(String name) {
+        super(name);
+        this.setModifiers(new NodeList<>(Modifier.publicModifier(), Modifier.finalModifier()));
+
+        // The entry point call can need opaque values, which are derived from this field
+        if (DummyValueCreator.isUsingOpaqueValues())
+            this.addField(BuildConstants.OPAQUE_SEED_FIELD_NAME,
+                    PrimitiveType.intType(),
+                    new IntegerLiteralExpr("1"),
+                    Modifier.Keyword.PRIVATE, Modifier.Keyword.STATIC, Modifier.Keyword.VOLATILE);
+    }
+
+    /**
+     * Writes the call to the original entry point, in the method the harness runs it from.
+     * @param entryClass     The class of the entry point.
+     * @param entrySignature The signature of the entry point method.
+     * @param classBuilders  All the classes in the program, in case the call needs to instantiate some.
+     * @throws BuildFailedException If writing the call fails.
+     */
+    public void writeEntryPointCall(ClassBuilder entryClass,
+                                    CallableDeclaration.Signature entrySignature,
+                                    HashMap<String, ClassBuilder> classBuilders) throws BuildFailedException {
+        this.writeRootCall(RUN_METHOD_NAME, new VoidType(), Modifier.privateModifier(), entryClass, entrySignature, classBuilders);
+    }
+
+    /**
+     * Adds a static method calling a root call of the calltrace, and returning its result if it has one.
+     * @param methodName     The name of the method to add.
+     * @param returnType     The return type of the method, void to ignore the result of the call.
+     * @param accessModifier The access modifier of the method.
+     * @param rootClass      The class of the root call.
+     * @param rootSignature  The signature of the root call.
+     * @param classBuilders  All the classes in the program, in case the call needs to instantiate some.
+     * @return The added method.
+     * @throws BuildFailedException If writing the call fails.
+     */
+    protected MethodDeclaration writeRootCall(String methodName,
+                                              Type returnType,
+                                              Modifier accessModifier,
+                                              ClassBuilder rootClass,
+                                              CallableDeclaration.Signature rootSignature,
+                                              HashMap<String, ClassBuilder> classBuilders) throws BuildFailedException {
+        MethodDeclaration runMethod = this.addMethod(methodName,
+                returnType,
+                new NodeList<>(),
+                new BlockStmt(),
+                new NodeList<>(accessModifier, Modifier.staticModifier()));
+
+        new MethodCallInstructionWriter()
+                .setCaller(this, runMethod.getSignature())
+                .setCallee(rootClass, rootSignature)
+                .setOtherClassesContext(classBuilders)
+                .writeMethodCallInCaller();
+
+        if (!returnType.isVoidType()) {
+            CallableMethodBodyEditor cmbe = new CallableMethodBodyEditor(runMethod, this);
+            if (!cmbe.setReturnStatementFromLocalVar(returnType))
+                cmbe.setReturnStatement(new ReturnStmt(new NullLiteralExpr()));
+            cmbe.setBodyToCallable();
+        }
+
+        return runMethod;
+    }
+}
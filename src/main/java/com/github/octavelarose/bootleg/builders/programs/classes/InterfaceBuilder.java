@@ -0,0 +1,45 @@
+package com.github.octavelarose.bootleg.builders.programs.classes;
+
+import com.github.javaparser.ast.Modifier;
+import com.github.javaparser.ast.NodeList;
+import com.github.javaparser.ast.body.MethodDeclaration;
+import com.github.javaparser.ast.body.Parameter;
+import com.github.javaparser.ast.type.Type;
+
+/**
+ * Builds an interface, which only declares methods without bodies.
+ */
+public class InterfaceBuilder extends ClassBuilder {
+
+    public InterfaceBuilder(String name, String pkgDeclaration) {
+        super(name);
+
+        this.outputClass.setInterface(true);
+        this.setModifiers(new NodeList<>(Modifier.publicModifier()));
+        if (pkgDeclaration != null)
+            this.setPackageDeclaration(pkgDeclaration);
+    }
+
+    /**
+     * Marks the interface as functional, which the compiler checks by making sure it only declares one abstract method.
+     */
+    public void setFunctional() {
+        this.outputClass.addMarkerAnnotation("FunctionalInterface");
+    }
+
+    /**
+     * Declares a method in the interface. Interface methods are implicitly public and abstract.
+     * @param name       The method's name.
+     * @param returnType The method's return value type.
+     * @param parameters The method's parameters.
+     * @return The method object.
+     */
+    public MethodDeclaration addMethodDeclaration(String name, Type returnType, NodeList<Parameter> parameters) {
+        MethodDeclaration method = this.outputClass.addMethod(name);
+        method.setModifiers(new NodeList<>());
+        method.setType(returnType);
+        method.setParameters(parameters);
+        method.removeBody();
+        return method;
+    }
+}
@@ -0,0 +1,37 @@
+package com.github.octavelarose.bootleg.builders.programs.classes;
+
+import com.github.javaparser.ast.Modifier;
+import com.github.javaparser.ast.NodeList;
+import com.github.javaparser.ast.expr.BooleanLiteralExpr;
+import com.github.javaparser.ast.expr.StringLiteralExpr;
+import com.github.javaparser.ast.type.ClassOrInterfaceType;
+
+/**
+ * Builds the JFR event of a package of the generated program, which its methods commit on every call with the name of the
+ * traced method they were generated from, so that profiles of the generated program map back to the original one.
+ * JFR only instruments event classes while recording them, so the events cost next to nothing otherwise.
+ */
+public class JfrEventClassBuilder extends ClassBuilder {
+    public static final String CLASS_NAME = "BootlegMethodEvent";
+    public static final String TRACED_METHOD_FIELD_NAME = "tracedMethod";
+
+    /**
+     * @param pkgName The package of the event, or an empty string for the default package.
+     */
+    public JfrEventClassBuilder(String pkgName) {
+        super(CLASS_NAME);
+        this.setModifiers(new NodeList<>(Modifier.publicModifier(), Modifier.finalModifier()));
+        if (!pkgName.isEmpty())
+            this.setPackageDeclaration(pkgName);
+
+        this.outputClass.setExtendedTypes(new NodeList<>(new ClassOrInterfaceType(null, "jdk.jfr.Event")));
+        this.outputClass.addSingleMemberAnnotation("jdk.jfr.Label", new StringLiteralExpr("Generated Method"));
+        this.outputClass.addSingleMemberAnnotation("jdk.jfr.Category",
+                new StringLiteralExpr(pkgName.isEmpty() ? "Bootleg" : "Bootleg." + pkgName));
+        // Stack traces would cost more than the call itself, and the traced method name already tells where it's from
+        this.outputClass.addSingleMemberAnnotation("jdk.jfr.StackTrace", new BooleanLiteralExpr(false));
+
+        this.addField(TRACED_METHOD_FIELD_NAME, new ClassOrInterfaceType(null, "String"), Modifier.Keyword.PUBLIC)
+                .addSingleMemberAnnotation("jdk.jfr.Label", new StringLiteralExpr("Traced Method"));
+    }
+}
@@ -0,0 +1,77 @@
+package com.github.octavelarose.bootleg.builders.programs.classes;
+
+import com.github.javaparser.StaticJavaParser;
+import com.github.javaparser.ast.Modifier;
+import com.github.javaparser.ast.NodeList;
+import com.github.javaparser.ast.body.Parameter;
+import com.github.javaparser.ast.type.ClassOrInterfaceType;
+import com.github.javaparser.ast.type.VoidType;
+
+/**
+ * Builds a JMH benchmark running one root call of the calltrace, and consuming its result with a Blackhole.
+ * Benchmarks are exported to the JMH source set rather than with the rest of the program.
+ * The root call goes through the method of the BootlegRoots class running it, which a static final MethodHandle points to:
+ * the JIT treats it as a constant, so the call gets compiled (and possibly inlined) like a direct one.
+ */
+public class JmhBenchmarkBuilder extends ClassBuilder {
+    public static final String PKG_NAME = "bootleg.jmh";
+
+    private static final String ROOT_FIELD_NAME = "ROOT";
+
+    /**
+     * @param name           The name of the benchmark class.
+     * @param rootClassName  The full name of the class of the root call, initialized before the measurements.
+     * @param rootMethodName The name of the BootlegRoots method running the root call.
+     * @param isRootVoid     Whether the root call has no result to consume.
+     */
+    public JmhBenchmarkBuilder(String name, String rootClassName, String rootMethodName, boolean isRootVoid) {
+        super(name);
+        this.setPackageDeclaration(PKG_NAME);
+        this.setModifiers(new NodeList<>(Modifier.publicModifier()));
+
+        this.addImport("java.lang.invoke.MethodHandle");
+        this.addImport("java.lang.invoke.MethodHandles");
+        this.addImport("java.lang.invoke.MethodType");
+        this.addImport("java.util.concurrent.TimeUnit");
+        this.addImport("org.openjdk.jmh.annotations.*");
+        this.addImport("org.openjdk.jmh.infra.Blackhole");
+
+        this.outputClass.addSingleMemberAnnotation("State", "Scope.Benchmark");
+        this.outputClass.addSingleMemberAnnotation("BenchmarkMode", "Mode.AverageTime");
+        this.outputClass.addSingleMemberAnnotation("OutputTimeUnit", "TimeUnit.MICROSECONDS");
+
+        this.addField(ROOT_FIELD_NAME,
+                new ClassOrInterfaceType(null, "MethodHandle"),
+                Modifier.Keyword.PRIVATE, Modifier.Keyword.STATIC, Modifier.Keyword.FINAL);
+
+        // Results are boxed to an Object, since their type may be a class of the default package
+        this.addStaticInitializer().addStatement(StaticJavaParser.parseStatement("try {"
+                + ROOT_FIELD_NAME + " = MethodHandles.publicLookup()"
+                + "    .unreflect(Class.forName(\"" + BenchmarkRootsBuilder.CLASS_NAME + "\").getMethod(\"" + rootMethodName + "\"))"
+                + (isRootVoid ? "" : "    .asType(MethodType.methodType(Object.class))") + ";"
+                + "} catch (ReflectiveOperationException e) {"
+                + "    throw new ExceptionInInitializerError(e);"
+                + "}"));
+
+        this.addMethod("setUp",
+                new VoidType(),
+                new NodeList<>(),
+                StaticJavaParser.parseBlock("{"
+                        + "// The root's class gets initialized outside of the measurements\n"
+                        + "Class.forName(\"" + rootClassName + "\");"
+                        + "}"),
+                new NodeList<>(Modifier.publicModifier()))
+                .addThrownException(new ClassOrInterfaceType(null, "ClassNotFoundException"))
+                .addSingleMemberAnnotation("Setup", "Level.Trial");
+
+        this.addMethod("run",
+                new VoidType(),
+                new NodeList<>(new Parameter(new ClassOrInterfaceType(null, "Blackhole"), "bh")),
+                StaticJavaParser.parseBlock(isRootVoid
+                        ? "{" + ROOT_FIELD_NAME + ".invokeExact();}"
+                        : "{bh.consume((Object) " + ROOT_FIELD_NAME + ".invokeExact());}"),
+                new NodeList<>(Modifier.publicModifier()))
+                .addThrownException(new ClassOrInterfaceType(null, "Throwable"))
+                .addMarkerAnnotation("Benchmark");
+    }
+}
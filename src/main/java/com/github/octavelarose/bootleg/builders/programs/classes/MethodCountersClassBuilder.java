@@ -0,0 +1,66 @@
+package com.github.octavelarose.bootleg.builders.programs.classes;
+
+import com.github.javaparser.StaticJavaParser;
+import com.github.javaparser.ast.Modifier;
+import com.github.javaparser.ast.NodeList;
+import com.github.javaparser.ast.expr.NameExpr;
+import com.github.javaparser.ast.stmt.BlockStmt;
+import com.github.javaparser.ast.stmt.Statement;
+import com.github.javaparser.ast.type.ArrayType;
+import com.github.javaparser.ast.type.ClassOrInterfaceType;
+import com.github.javaparser.ast.type.VoidType;
+
+/**
+ * Builds the class counting the calls to each generated method, as a cheaper alternative to printing their names:
+ * each method increments its own LongAdder, which doesn't serialize threads like printing does, and the counts get
+ * printed once the program exits, in the order the methods were first called in the trace.
+ */
+public class MethodCountersClassBuilder extends MethodNamesClassBuilder {
+    public static final String CLASS_NAME = "MethodCounters";
+
+    private static final String COUNTS_FIELD_NAME = "COUNTS";
+    private static final String DUMP_METHOD_NAME = "dump";
+
+    public MethodCountersClassBuilder() {
+        super(CLASS_NAME);
+    }
+
+    /**
+     * @param methodFullName The full name of the method in the trace, like "som/Sieve.sieve".
+     * @return The statement incrementing the counter of the method, like "bootleg.MethodCounters.COUNTS[3].increment();".
+     */
+    public Statement getIncrementStmt(String methodFullName) {
+        return StaticJavaParser.parseStatement(this.getImportStr() + "." + COUNTS_FIELD_NAME
+                + "[" + this.getMethodIdx(methodFullName) + "].increment();");
+    }
+
+    /**
+     * Adds the counters of all the methods, once they've all been generated, and the code printing them on exit.
+     */
+    public void writeCounters() {
+        String adderType = "java.util.concurrent.atomic.LongAdder";
+
+        this.addField(COUNTS_FIELD_NAME, new ArrayType(new ClassOrInterfaceType(null, adderType)),
+                new NameExpr("new " + adderType + "[" + this.getMethodsNbr() + "]"),
+                Modifier.Keyword.PUBLIC, Modifier.Keyword.STATIC, Modifier.Keyword.FINAL);
+
+        BlockStmt staticInit = this.writeNames();
+        staticInit.addStatement(StaticJavaParser.parseStatement(
+                "for (int i = 0; i < " + COUNTS_FIELD_NAME + ".length; i++) " + COUNTS_FIELD_NAME + "[i] = new " + adderType + "();"));
+
+        // Printed on exit rather than at the end of the entry point, so that harnesses running it several times print it once
+        staticInit.addStatement(StaticJavaParser.parseStatement(
+                "Runtime.getRuntime().addShutdownHook(new Thread(" + CLASS_NAME + "::" + DUMP_METHOD_NAME + "));"));
+
+        this.addMethod(DUMP_METHOD_NAME,
+                new VoidType(),
+                new NodeList<>(),
+                StaticJavaParser.parseBlock("{"
+                        + "StringBuilder sb = new StringBuilder(\"Method call counts:\\n\");"
+                        + "for (int i = 0; i < " + COUNTS_FIELD_NAME + ".length; i++)"
+                        + "    sb.append(" + NAMES_FIELD_NAME + "[i]).append(' ').append(" + COUNTS_FIELD_NAME + "[i].sum()).append('\\n');"
+                        + "System.out.print(sb);"
+                        + "}"),
+                new NodeList<>(Modifier.publicModifier(), Modifier.staticModifier()));
+    }
+}
@@ -0,0 +1,95 @@
+package com.github.octavelarose.bootleg.builders.programs.classes;
+
+import com.github.javaparser.StaticJavaParser;
+import com.github.javaparser.ast.Modifier;
+import com.github.javaparser.ast.NodeList;
+import com.github.javaparser.ast.expr.NameExpr;
+import com.github.javaparser.ast.stmt.BlockStmt;
+import com.github.javaparser.ast.type.ArrayType;
+import com.github.javaparser.ast.type.ClassOrInterfaceType;
+import com.github.javaparser.ast.type.VoidType;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A class of the "bootleg" package holding per-method data about the generated program at runtime, like call counts.
+ * Methods get an index in the order they're added, and their names are kept in a NAMES array to print that data.
+ */
+public abstract class MethodNamesClassBuilder extends ClassBuilder {
+    public static final String PKG_NAME = "bootleg";
+
+    protected static final String NAMES_FIELD_NAME = "NAMES";
+
+    // The names are set by several methods, so that none of them goes over the JVM's method size limit.
+    private static final int NAMES_PER_METHOD = 1000;
+
+    private final Map<String, Integer> methodIndexes = new HashMap<>();
+    private final List<String> methodNames = new ArrayList<>();
+
+    /**
+     * @param name The name of the class.
+     */
+    protected MethodNamesClassBuilder(String name) {
+        super(name);
+        this.setModifiers(new NodeList<>(Modifier.publicModifier(), Modifier.finalModifier()));
+        this.setPackageDeclaration(PKG_NAME);
+    }
+
+    /**
+     * @param methodName The name of the method, as it should be printed.
+     * @return The index of the method, added if needed.
+     */
+    protected synchronized int getMethodIdx(String methodName) {
+        return this.methodIndexes.computeIfAbsent(methodName, k -> {
+            this.methodNames.add(k);
+            return this.methodNames.size() - 1;
+        });
+    }
+
+    /**
+     * Gives a method its index ahead of time, so that indexes follow the order methods get registered in, even when
+     * their code then gets generated concurrently.
+     * @param methodName The name of the method, as it should be printed.
+     */
+    public void registerMethod(String methodName) {
+        this.getMethodIdx(methodName);
+    }
+
+    /**
+     * @return The number of methods added so far.
+     */
+    protected int getMethodsNbr() {
+        return this.methodNames.size();
+    }
+
+    /**
+     * Adds the NAMES array, once all the methods have been added, and the static initializer filling it.
+     * Since static fields get initialized in the order they're declared, other fields need to be added beforehand.
+     * @return The static initializer, to which more statements can be added.
+     */
+    protected BlockStmt writeNames() {
+        int methodsNbr = this.methodNames.size();
+
+        this.addField(NAMES_FIELD_NAME, new ArrayType(new ClassOrInterfaceType(null, "String")),
+                new NameExpr("new String[" + methodsNbr + "]"),
+                Modifier.Keyword.PRIVATE, Modifier.Keyword.STATIC, Modifier.Keyword.FINAL);
+        BlockStmt staticInit = this.addStaticInitializer();
+
+        for (int firstIdx = 0; firstIdx < methodsNbr; firstIdx += NAMES_PER_METHOD) {
+            String methodName = "setNames" + firstIdx / NAMES_PER_METHOD;
+            BlockStmt namesBody = new BlockStmt();
+            for (int i = firstIdx; i < Math.min(firstIdx + NAMES_PER_METHOD, methodsNbr); i++)
+                namesBody.addStatement(StaticJavaParser.parseStatement(
+                        NAMES_FIELD_NAME + "[" + i + "] = \"" + this.methodNames.get(i).replace("\"", "") + "\";"));
+
+            this.addMethod(methodName, new VoidType(), new NodeList<>(), namesBody,
+                    new NodeList<>(Modifier.privateModifier(), Modifier.staticModifier()));
+            staticInit.addStatement(methodName + "();");
+        }
+
+        return staticInit;
+    }
+}
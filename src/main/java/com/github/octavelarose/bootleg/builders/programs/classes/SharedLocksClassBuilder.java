@@ -0,0 +1,81 @@
+package com.github.octavelarose.bootleg.builders.programs.classes;
+
+import com.github.javaparser.StaticJavaParser;
+import com.github.javaparser.ast.Modifier;
+import com.github.javaparser.ast.NodeList;
+import com.github.javaparser.ast.body.Parameter;
+import com.github.javaparser.ast.expr.NameExpr;
+import com.github.javaparser.ast.type.ClassOrInterfaceType;
+import com.github.javaparser.ast.type.PrimitiveType;
+import com.github.javaparser.ast.type.VoidType;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Builds the class holding the locks shared by the whole generated program, so that threads contend on the same locks
+ * as in the traced program. Each lock of the trace gets its own field, either a plain object used as a monitor,
+ * or a ReentrantLock for locks from java.util.concurrent.
+ */
+public class SharedLocksClassBuilder extends ClassBuilder {
+    public static final String CLASS_NAME = "SharedLocks";
+    public static final String PKG_NAME = "bootleg";
+
+    private static final String HOLD_METHOD_NAME = "hold";
+    private static final String LOCK_TYPE = "java.util.concurrent.locks.ReentrantLock";
+
+    // The names of the fields of the locks already added, by lock id.
+    private final Map<String, String> monitorFields = new HashMap<>();
+    private final Map<String, String> lockFields = new HashMap<>();
+
+    public SharedLocksClassBuilder() {
+        super(CLASS_NAME);
+        this.setModifiers(new NodeList<>(Modifier.publicModifier(), Modifier.finalModifier()));
+        this.setPackageDeclaration(PKG_NAME);
+
+        // Busy waits rather than sleeping, since a thread holding a lock in the original program was most likely working
+        this.addMethod(HOLD_METHOD_NAME,
+                new VoidType(),
+                new NodeList<>(new Parameter(PrimitiveType.longType(), "nanos")),
+                StaticJavaParser.parseBlock("{"
+                        + "long end = System.nanoTime() + nanos;"
+                        + "while (System.nanoTime() < end) {}"
+                        + "}"),
+                new NodeList<>(Modifier.publicModifier(), Modifier.staticModifier()));
+    }
+
+    /**
+     * @param lockId The id of the lock in the trace.
+     * @return The full name of the object used as the lock's monitor, added to the class if needed.
+     */
+    public String getMonitorStr(String lockId) {
+        return this.getImportStr() + "." + this.monitorFields.computeIfAbsent(lockId, k -> {
+            String fieldName = "MONITOR_" + this.monitorFields.size();
+            ClassOrInterfaceType objectType = new ClassOrInterfaceType(null, "Object");
+            this.addField(fieldName, objectType, new NameExpr("new Object()"),
+                    Modifier.Keyword.PUBLIC, Modifier.Keyword.STATIC, Modifier.Keyword.FINAL);
+            return fieldName;
+        });
+    }
+
+    /**
+     * @param lockId The id of the lock in the trace.
+     * @return The full name of the ReentrantLock object, added to the class if needed.
+     */
+    public String getLockStr(String lockId) {
+        return this.getImportStr() + "." + this.lockFields.computeIfAbsent(lockId, k -> {
+            String fieldName = "LOCK_" + this.lockFields.size();
+            this.addField(fieldName, new ClassOrInterfaceType(null, LOCK_TYPE), new NameExpr("new " + LOCK_TYPE + "()"),
+                    Modifier.Keyword.PUBLIC, Modifier.Keyword.STATIC, Modifier.Keyword.FINAL);
+            return fieldName;
+        });
+    }
+
+    /**
+     * @param nanos How long the lock should be held for.
+     * @return The code holding the lock for that time, like "bootleg.SharedLocks.hold(1000L)".
+     */
+    public String getHoldStr(long nanos) {
+        return this.getImportStr() + "." + HOLD_METHOD_NAME + "(" + nanos + "L)";
+    }
+}
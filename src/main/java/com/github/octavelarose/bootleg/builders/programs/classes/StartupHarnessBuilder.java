@@ -0,0 +1,67 @@
+package com.github.octavelarose.bootleg.builders.programs.classes;
+
+import com.github.javaparser.StaticJavaParser;
+import com.github.javaparser.ast.Modifier;
+import com.github.javaparser.ast.NodeList;
+import com.github.javaparser.ast.body.Parameter;
+import com.github.javaparser.ast.stmt.BlockStmt;
+import com.github.javaparser.ast.type.ArrayType;
+import com.github.javaparser.ast.type.ClassOrInterfaceType;
+import com.github.javaparser.ast.type.VoidType;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Builds an alternative entry point for startup benchmarks. It loads then initializes every generated class in the order
+ * they were first used in the trace, runs the original entry point once, and reports how long each step took.
+ * Meant to compare startup settings, like CDS archives or tiered compilation flags.
+ */
+public class StartupHarnessBuilder extends HarnessBuilder {
+    public static final String CLASS_NAME = "StartupHarness";
+
+    private static final String CLASSES_FIELD_NAME = "CLASSES";
+
+    /**
+     * @param classesInInitOrder The classes to load and initialize, in the order they were first used in the trace.
+     */
+    public StartupHarnessBuilder(List<ClassBuilder> classesInInitOrder) {
+        super(CLASS_NAME);
+
+        String classNamesStr = classesInInitOrder.stream()
+                .map(cb -> "\"" + cb.getImportStr() + "\"")
+                .collect(Collectors.joining(", "));
+        this.addField(CLASSES_FIELD_NAME,
+                new ArrayType(new ClassOrInterfaceType(null, "String")),
+                StaticJavaParser.parseExpression("new String[]{" + classNamesStr + "}"),
+                Modifier.Keyword.PRIVATE, Modifier.Keyword.STATIC, Modifier.Keyword.FINAL);
+
+        this.addMethod("main",
+                new VoidType(),
+                new NodeList<>(new Parameter(new ArrayType(new ClassOrInterfaceType(null, "String")), "args")),
+                this.getMainBody(),
+                new NodeList<>(Modifier.publicModifier(), Modifier.staticModifier()))
+                .addThrownException(new ClassOrInterfaceType(null, "ClassNotFoundException"));
+    }
+
+    /**
+     * @return The body of the main method, timing class loading, class initialization and the first run separately.
+     */
+    private BlockStmt getMainBody() {
+        return StaticJavaParser.parseBlock("{"
+                + "ClassLoader loader = " + CLASS_NAME + ".class.getClassLoader();"
+                + "long startNs = System.nanoTime();"
+                + "for (String className: " + CLASSES_FIELD_NAME + ") Class.forName(className, false, loader);"
+                + "long loadedNs = System.nanoTime();"
+                + "for (String className: " + CLASSES_FIELD_NAME + ") Class.forName(className, true, loader);"
+                + "long initializedNs = System.nanoTime();"
+                + RUN_METHOD_NAME + "();"
+                + "long endNs = System.nanoTime();"
+                + "System.out.println(\"Classes: \" + " + CLASSES_FIELD_NAME + ".length);"
+                + "System.out.println(\"Class loading (us): \" + (loadedNs - startNs) / 1000);"
+                + "System.out.println(\"Class initialization (us): \" + (initializedNs - loadedNs) / 1000);"
+                + "System.out.println(\"First run (us): \" + (endNs - initializedNs) / 1000);"
+                + "System.out.println(\"JVM uptime (ms): \" + java.lang.management.ManagementFactory.getRuntimeMXBean().getUptime());"
+                + "}");
+    }
+}
@@ -0,0 +1,356 @@
+package com.github.octavelarose.bootleg.builders.programs.classes.hierarchies;
+
+import com.github.javaparser.ParseException;
+import com.github.javaparser.ast.Modifier;
+import com.github.javaparser.ast.NodeList;
+import com.github.javaparser.ast.PackageDeclaration;
+import com.github.javaparser.ast.body.CallableDeclaration;
+import com.github.javaparser.ast.body.ConstructorDeclaration;
+import com.github.javaparser.ast.body.MethodDeclaration;
+import com.github.javaparser.ast.body.Parameter;
+import com.github.javaparser.ast.body.VariableDeclarator;
+import com.github.javaparser.ast.expr.ArrayInitializerExpr;
+import com.github.javaparser.ast.expr.Expression;
+import com.github.javaparser.ast.expr.IntegerLiteralExpr;
+import com.github.javaparser.ast.expr.MethodCallExpr;
+import com.github.javaparser.ast.expr.NameExpr;
+import com.github.javaparser.ast.expr.ObjectCreationExpr;
+import com.github.javaparser.ast.stmt.BlockStmt;
+import com.github.javaparser.ast.type.ArrayType;
+import com.github.javaparser.ast.type.ClassOrInterfaceType;
+import com.github.javaparser.ast.type.PrimitiveType;
+import com.github.octavelarose.bootleg.builders.BuildFailedException;
+import com.github.octavelarose.bootleg.builders.programs.classes.BasicClassBuilder;
+import com.github.octavelarose.bootleg.builders.programs.classes.ClassBuilder;
+import com.github.octavelarose.bootleg.builders.programs.classes.InterfaceBuilder;
+import com.github.octavelarose.bootleg.builders.programs.utils.JPTypeUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+/**
+ * Synthesizes class hierarchies, so that call sites in the generated program see several receiver types.
+ * Since every callee would otherwise be a concrete class with a single implementation, every call site would be monomorphic.
+ * <p>
+ * For a class Foo with N receiver types, this generates an interface IFoo declaring Foo's public instance methods,
+ * an abstract base AbstractFoo implementing it, and N - 1 copies of Foo (FooVariant1, ...) which, like Foo, extend AbstractFoo.
+ * Local variables instantiating Foo that are only used to call its methods are then typed as IFoo,
+ * and created by AbstractFoo.create(), which instantiates each of the variants in turn following the wanted type profile.
+ */
+public class HierarchySynthesizer {
+    // The name of the factory method in the abstract bases.
+    private static final String FACTORY_METHOD_NAME = "create";
+
+    // The type of the factory's position in the schedule.
+    private static final String CURSOR_TYPE = "java.util.concurrent.atomic.AtomicInteger";
+
+    // The maximum size of the variants schedule. Weights that add up to more than this get scaled down.
+    private static final int MAX_SCHEDULE_LENGTH = 100;
+
+    private final HashMap<String, ClassBuilder> classBuilders;
+
+    // The number of receiver types for classes that aren't in the type profile.
+    private int defaultReceiverTypesNbr = 1;
+
+    // The weights of each receiver type, by class name.
+    private Map<String, List<Integer>> typeProfile = new HashMap<>();
+
+    public HierarchySynthesizer(HashMap<String, ClassBuilder> classBuilders) {
+        this.classBuilders = classBuilders;
+    }
+
+    public HierarchySynthesizer setDefaultReceiverTypesNbr(int defaultReceiverTypesNbr) {
+        this.defaultReceiverTypesNbr = defaultReceiverTypesNbr;
+        return this;
+    }
+
+    public HierarchySynthesizer setTypeProfile(Map<String, List<Integer>> typeProfile) {
+        this.typeProfile = typeProfile;
+        return this;
+    }
+
+    /**
+     * Synthesizes the hierarchies of all the eligible classes, and adds the new classes to the class builders.
+     * @throws BuildFailedException If one of the generated types can't be parsed.
+     */
+    public void synthesize() throws BuildFailedException {
+        Map<String, ClassHierarchy> hierarchies = new LinkedHashMap<>();
+
+        for (Map.Entry<String, ClassBuilder> cbEntry: this.classBuilders.entrySet()) {
+            List<Integer> weights = this.typeProfile.getOrDefault(cbEntry.getKey(),
+                    Collections.nCopies(this.defaultReceiverTypesNbr, 1));
+            if (weights.size() >= 2 && this.isEligible(cbEntry.getValue()))
+                hierarchies.put(cbEntry.getKey(), new ClassHierarchy(cbEntry.getKey(), cbEntry.getValue(), weights));
+        }
+
+        // Call sites are rewritten before any class gets copied, so that the variants get the polymorphic call sites too
+        for (ClassBuilder cb: this.classBuilders.values()) {
+            for (ClassHierarchy hierarchy: hierarchies.values())
+                this.rewriteCallSites(cb, hierarchy);
+        }
+
+        for (ClassHierarchy hierarchy: hierarchies.values())
+            this.generateHierarchy(hierarchy);
+
+        System.out.println("Synthesized class hierarchies for " + hierarchies.size() + " classes.");
+    }
+
+    /**
+     * @param cb The class.
+     * @return true if a hierarchy can be generated for the class: it needs a constructor and public instance methods,
+     * and the names of the generated classes can't already be taken.
+     */
+    private boolean isEligible(ClassBuilder cb) {
+        if (cb.getConstructors().isEmpty() || getPublicInstanceMethods(cb).isEmpty())
+            return false;
+
+        String className = cb.getName();
+        for (ClassBuilder otherCb: this.classBuilders.values()) {
+            String otherName = otherCb.getName();
+            if (otherName.equals("I" + className) || otherName.equals("Abstract" + className)
+                    || otherName.startsWith(className + "Variant"))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * @param cb The class.
+     * @return The public, non-static methods of the class. One per name, since call sites are matched by name.
+     */
+    private static List<MethodDeclaration> getPublicInstanceMethods(ClassBuilder cb) {
+        Map<String, MethodDeclaration> methods = new LinkedHashMap<>();
+        for (MethodDeclaration md: cb.getMethods()) {
+            if (md.isPublic() && !md.isStatic())
+                methods.putIfAbsent(md.getNameAsString(), md);
+        }
+        return new ArrayList<>(methods.values());
+    }
+
+    /**
+     * Makes the call sites of a class polymorphic: local variables holding a new instance of the class,
+     * which are only used as receivers of its public instance methods, are typed as the interface
+     * and instantiated by the abstract base's factory method.
+     * @param cb        The class in which call sites are rewritten.
+     * @param hierarchy The hierarchy of the callee class.
+     */
+    private void rewriteCallSites(ClassBuilder cb, ClassHierarchy hierarchy) throws BuildFailedException {
+        List<CallableDeclaration<?>> callables = new ArrayList<>(cb.getConstructors());
+        callables.addAll(cb.getMethods());
+
+        for (CallableDeclaration<?> callable: callables) {
+            for (VariableDeclarator varDeclarator: callable.findAll(VariableDeclarator.class)) {
+                Optional<Expression> initializer = varDeclarator.getInitializer();
+
+                if (!varDeclarator.getType().asString().equals(hierarchy.baseClassFullName)
+                        || initializer.isEmpty()
+                        || !initializer.get().isObjectCreationExpr()
+                        || !this.isOnlyUsedAsReceiver(callable, varDeclarator.getNameAsString(), hierarchy))
+                    continue;
+
+                ObjectCreationExpr objCreationExpr = initializer.get().asObjectCreationExpr();
+                try {
+                    varDeclarator.setType(JPTypeUtils.getClassTypeFromName(hierarchy.interfaceFullName));
+                } catch (ParseException e) {
+                    throw new BuildFailedException(e.getMessage());
+                }
+                varDeclarator.setInitializer(new MethodCallExpr(new NameExpr(hierarchy.abstractBaseFullName),
+                        FACTORY_METHOD_NAME,
+                        objCreationExpr.getArguments()));
+            }
+        }
+    }
+
+    /**
+     * @return true if every use of the variable in the callable is as the receiver of a method of the hierarchy's interface.
+     */
+    private boolean isOnlyUsedAsReceiver(CallableDeclaration<?> callable, String varName, ClassHierarchy hierarchy) {
+        for (NameExpr nameExpr: callable.findAll(NameExpr.class, n -> n.getNameAsString().equals(varName))) {
+            Optional<MethodCallExpr> parentCall = nameExpr.getParentNode()
+                    .filter(p -> p instanceof MethodCallExpr)
+                    .map(p -> (MethodCallExpr) p);
+
+            if (parentCall.isEmpty()
+                    || parentCall.get().getScope().filter(scope -> scope == nameExpr).isEmpty()
+                    || !hierarchy.interfaceMethodNames.contains(parentCall.get().getNameAsString()))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Generates the interface, abstract base and variants of a class, and adds them to the class builders.
+     * @param hierarchy The hierarchy to generate.
+     * @throws BuildFailedException If the interface's type can't be parsed.
+     */
+    private void generateHierarchy(ClassHierarchy hierarchy) throws BuildFailedException {
+        ClassBuilder baseClass = hierarchy.baseClass;
+        String className = baseClass.getName();
+
+        InterfaceBuilder interfaceBuilder = new InterfaceBuilder("I" + className, hierarchy.pkgDeclaration);
+        for (MethodDeclaration md: getPublicInstanceMethods(baseClass))
+            interfaceBuilder.addMethodDeclaration(md.getNameAsString(), md.getType().clone(), cloneParameters(md.getParameters()));
+        this.classBuilders.put(hierarchy.getClassKey("I" + className), interfaceBuilder);
+
+        BasicClassBuilder abstractBase = new BasicClassBuilder("Abstract" + className);
+        if (hierarchy.pkgDeclaration != null)
+            abstractBase.setPackageDeclaration(hierarchy.pkgDeclaration);
+        abstractBase.setModifiers(new NodeList<>(Modifier.publicModifier(), Modifier.abstractModifier()));
+        abstractBase.addImplementedType(hierarchy.interfaceFullName);
+        this.addFactoryMethod(abstractBase, hierarchy);
+        this.classBuilders.put(hierarchy.getClassKey("Abstract" + className), abstractBase);
+
+        // Static calls are qualified with the base class' name, so the variants' copies of them need access to its static methods
+        for (MethodDeclaration md: baseClass.getMethods()) {
+            if (md.isStatic() && md.isPrivate())
+                md.setPrivate(false);
+        }
+
+        for (int i = 1; i < hierarchy.weights.size(); i++) {
+            BasicClassBuilder variant = new BasicClassBuilder(className + "Variant" + i);
+            if (hierarchy.pkgDeclaration != null)
+                variant.setPackageDeclaration(hierarchy.pkgDeclaration);
+            variant.copyMembersFrom(baseClass);
+            variant.addExtendedType(hierarchy.abstractBaseFullName);
+            this.classBuilders.put(hierarchy.getClassKey(variant.getName()), variant);
+        }
+
+        baseClass.addExtendedType(hierarchy.abstractBaseFullName);
+    }
+
+    /**
+     * Adds the factory method to the abstract base, which instantiates a different variant at each call following a fixed schedule.
+     * The schedule's cursor is atomic, since the threads of the generated program may all instantiate the same classes.
+     * @param abstractBase The abstract base class.
+     * @param hierarchy    The hierarchy the abstract base belongs to.
+     * @throws BuildFailedException If the interface's type can't be parsed.
+     */
+    private void addFactoryMethod(ClassBuilder abstractBase, ClassHierarchy hierarchy) throws BuildFailedException {
+        ConstructorDeclaration baseConstructor = hierarchy.baseClass.getConstructors().get(0);
+        NodeList<Parameter> parameters = cloneParameters(baseConstructor.getParameters());
+        String argsStr = parameters.stream().map(Parameter::getNameAsString).collect(Collectors.joining(", "));
+
+        NodeList<Expression> schedule = new NodeList<>();
+        for (int variantIdx: getSchedule(hierarchy.weights))
+            schedule.add(new IntegerLiteralExpr(String.valueOf(variantIdx)));
+
+        abstractBase.addField("SCHEDULE", new ArrayType(PrimitiveType.intType()), new ArrayInitializerExpr(schedule),
+                Modifier.Keyword.PRIVATE, Modifier.Keyword.STATIC, Modifier.Keyword.FINAL);
+        abstractBase.addField("CURSOR", new ClassOrInterfaceType(null, CURSOR_TYPE),
+                new ObjectCreationExpr().setType(CURSOR_TYPE),
+                Modifier.Keyword.PRIVATE, Modifier.Keyword.STATIC, Modifier.Keyword.FINAL);
+
+        StringBuilder switchStr = new StringBuilder("switch (variant) {");
+        for (int i = 1; i < hierarchy.weights.size(); i++)
+            switchStr.append("case ").append(i).append(": return new ")
+                    .append(hierarchy.getClassFullName(hierarchy.baseClass.getName() + "Variant" + i))
+                    .append("(").append(argsStr).append(");");
+        switchStr.append("default: return new ").append(hierarchy.baseClassFullName).append("(").append(argsStr).append(");}");
+
+        BlockStmt factoryBody = new BlockStmt()
+                .addStatement("int variant = SCHEDULE[Math.floorMod(CURSOR.getAndIncrement(), SCHEDULE.length)];")
+                .addStatement(switchStr.toString());
+
+        try {
+            abstractBase.addMethod(FACTORY_METHOD_NAME,
+                    JPTypeUtils.getClassTypeFromName(hierarchy.interfaceFullName),
+                    parameters,
+                    factoryBody,
+                    new NodeList<>(Modifier.publicModifier(), Modifier.staticModifier()));
+        } catch (ParseException e) {
+            throw new BuildFailedException(e.getMessage());
+        }
+    }
+
+    /**
+     * Spreads the receiver types over a schedule, in proportion to their weights, interleaving them as evenly as possible.
+     * Uses a smooth weighted round-robin, so that the type profile is the same over any window of the schedule.
+     * @param weights The weight of each receiver type, 0 being the base class.
+     * @return The variant indexes, in the order they should be instantiated.
+     */
+    static List<Integer> getSchedule(List<Integer> weights) {
+        int totalWeight = weights.stream().mapToInt(Integer::intValue).sum();
+        List<Integer> scaledWeights = new ArrayList<>();
+
+        for (int weight: weights) {
+            if (totalWeight <= MAX_SCHEDULE_LENGTH)
+                scaledWeights.add(Math.max(weight, 1));
+            else
+                scaledWeights.add(Math.max(weight * MAX_SCHEDULE_LENGTH / totalWeight, 1));
+        }
+
+        int scheduleLength = scaledWeights.stream().mapToInt(Integer::intValue).sum();
+        int[] currentWeights = new int[scaledWeights.size()];
+        List<Integer> schedule = new ArrayList<>();
+
+        for (int slot = 0; slot < scheduleLength; slot++) {
+            int bestIdx = 0;
+            for (int i = 0; i < currentWeights.length; i++) {
+                currentWeights[i] += scaledWeights.get(i);
+                if (currentWeights[i] > currentWeights[bestIdx])
+                    bestIdx = i;
+            }
+            currentWeights[bestIdx] -= scheduleLength;
+            schedule.add(bestIdx);
+        }
+
+        return schedule;
+    }
+
+    private static NodeList<Parameter> cloneParameters(NodeList<Parameter> parameters) {
+        NodeList<Parameter> clonedParameters = new NodeList<>();
+        for (Parameter param: parameters)
+            clonedParameters.add(param.clone());
+        return clonedParameters;
+    }
+
+    /**
+     * The information needed to synthesize the hierarchy of a single class.
+     */
+    private static class ClassHierarchy {
+        final String classKey;
+        final ClassBuilder baseClass;
+        final List<Integer> weights;
+        final String pkgDeclaration;
+        final String baseClassFullName;
+        final String interfaceFullName;
+        final String abstractBaseFullName;
+        final List<String> interfaceMethodNames;
+
+        ClassHierarchy(String classKey, ClassBuilder baseClass, List<Integer> weights) {
+            this.classKey = classKey;
+            this.baseClass = baseClass;
+            this.weights = weights;
+            this.pkgDeclaration = baseClass.getCompilationUnit().getPackageDeclaration()
+                    .map(PackageDeclaration::getNameAsString)
+                    .orElse(null);
+            this.baseClassFullName = baseClass.getImportStr();
+            this.interfaceFullName = this.getClassFullName("I" + baseClass.getName());
+            this.abstractBaseFullName = this.getClassFullName("Abstract" + baseClass.getName());
+            this.interfaceMethodNames = getPublicInstanceMethods(baseClass).stream()
+                    .map(MethodDeclaration::getNameAsString)
+                    .collect(Collectors.toList());
+        }
+
+        /**
+         * @return The full name of a class in the same package as the base class.
+         */
+        String getClassFullName(String className) {
+            return this.pkgDeclaration == null ? className : this.pkgDeclaration + "." + className;
+        }
+
+        /**
+         * @return The key of a class in the same package as the base class, in the class builders' format ("pkg/Class").
+         */
+        String getClassKey(String className) {
+            int lastSlashIdx = this.classKey.lastIndexOf('/');
+            return lastSlashIdx == -1 ? className : this.classKey.substring(0, lastSlashIdx + 1) + className;
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.github.octavelarose.bootleg.builders.programs.classes.methods;
+
+import com.github.javaparser.ast.NodeList;
+import com.github.javaparser.ast.body.MethodDeclaration;
+import com.github.javaparser.ast.body.Parameter;
+import com.github.octavelarose.bootleg.builders.programs.classes.ClassBuilder;
+import com.github.octavelarose.bootleg.builders.programs.classes.InterfaceBuilder;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Generates the functional interfaces lambdas get typed with, one per distinct lambda body signature.
+ * They're all put in the same package, and named Lambda0, Lambda1, etc.
+ */
+public class FunctionalInterfacesManager {
+    public static final String PKG_NAME = "bootleg";
+
+    private static final String INTERFACE_NAME_PREFIX = "Lambda";
+
+    // The name of the single abstract method of every functional interface.
+    public static final String METHOD_NAME = "apply";
+
+    // The full names of the functional interfaces already generated, by signature of the lambda body.
+    private final Map<String, String> interfaceNames = new HashMap<>();
+
+    /**
+     * @param lambdaBody    The method holding the lambda's body.
+     * @param classBuilders All the classes in the program, to which the functional interface gets added if needed.
+     * @return The full name of a functional interface with the same parameter and return types as the lambda body.
+     */
+    public String getInterfaceFor(MethodDeclaration lambdaBody, HashMap<String, ClassBuilder> classBuilders) {
+        StringBuilder signatureStr = new StringBuilder(lambdaBody.getType().asString()).append("(");
+        for (Parameter param: lambdaBody.getParameters())
+            signatureStr.append(param.getType().asString()).append(",");
+        signatureStr.append(")");
+
+        return this.interfaceNames.computeIfAbsent(signatureStr.toString(), k -> {
+            String interfaceName = INTERFACE_NAME_PREFIX + this.interfaceNames.size();
+
+            InterfaceBuilder interfaceBuilder = new InterfaceBuilder(interfaceName, PKG_NAME);
+            NodeList<Parameter> parameters = new NodeList<>();
+            for (Parameter param: lambdaBody.getParameters())
+                parameters.add(param.clone());
+            interfaceBuilder.addMethodDeclaration(METHOD_NAME, lambdaBody.getType().clone(), parameters);
+            interfaceBuilder.setFunctional();
+
+            classBuilders.put(PKG_NAME + "/" + interfaceName, interfaceBuilder);
+            return interfaceBuilder.getImportStr();
+        });
+    }
+}
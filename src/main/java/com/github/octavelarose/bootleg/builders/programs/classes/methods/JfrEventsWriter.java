@@ -0,0 +1,92 @@
+package com.github.octavelarose.bootleg.builders.programs.classes.methods;
+
+import com.github.javaparser.StaticJavaParser;
+import com.github.javaparser.ast.PackageDeclaration;
+import com.github.javaparser.ast.body.CallableDeclaration;
+import com.github.octavelarose.bootleg.builders.BuildFailedException;
+import com.github.octavelarose.bootleg.builders.programs.classes.ClassBuilder;
+import com.github.octavelarose.bootleg.builders.programs.classes.JfrEventClassBuilder;
+import com.github.octavelarose.bootleg.builders.programs.classes.methods.bodies.CallableMethodBodyEditor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Makes generated methods commit a JFR event on every call, carrying the full name of the traced method they were
+ * generated from. Each package gets its own event class, so that recordings can be filtered by package.
+ * Method bodies get wrapped once the program is done, since code appended to a body after it got wrapped would follow
+ * its return statement.
+ */
+public class JfrEventsWriter {
+    private static final String EVENT_VAR_NAME = "jfrEvent";
+
+    /**
+     * A generated method, with the name of the traced method it was generated from.
+     */
+    private static class TracedMethod {
+        final ClassBuilder classCb;
+        final CallableDeclaration<?> method;
+        final String tracedName;
+
+        TracedMethod(ClassBuilder classCb, CallableDeclaration<?> method, String tracedName) {
+            this.classCb = classCb;
+            this.method = method;
+            this.tracedName = tracedName;
+        }
+    }
+
+    private final List<TracedMethod> tracedMethods = new ArrayList<>();
+
+    /**
+     * @param classCb    The class of the generated method.
+     * @param method     The generated method.
+     * @param tracedName The full name of the method in the trace, like "som/Sieve.<init>".
+     */
+    public void addMethod(ClassBuilder classCb, CallableDeclaration<?> method, String tracedName) {
+        this.tracedMethods.add(new TracedMethod(classCb, method, tracedName));
+    }
+
+    /**
+     * Wraps the bodies of all the added methods so that they commit an event, and adds the event classes.
+     * @param classBuilders All the classes in the program, to which the event classes get added.
+     * @throws BuildFailedException If the body of a method can't be modified.
+     */
+    public void writeEvents(HashMap<String, ClassBuilder> classBuilders) throws BuildFailedException {
+        HashMap<String, JfrEventClassBuilder> eventClasses = new HashMap<>();
+
+        for (TracedMethod tracedMethod: this.tracedMethods) {
+            String pkgName = tracedMethod.classCb.getCompilationUnit().getPackageDeclaration()
+                    .map(PackageDeclaration::getNameAsString)
+                    .orElse("");
+            JfrEventClassBuilder eventClass = eventClasses.computeIfAbsent(pkgName, JfrEventClassBuilder::new);
+            this.wrapBody(tracedMethod, eventClass.getImportStr());
+        }
+
+        for (JfrEventClassBuilder eventClass: eventClasses.values())
+            classBuilders.put(eventClass.getImportStr().replace(".", "/"), eventClass);
+
+        System.out.println("Added JFR events to " + this.tracedMethods.size() + " methods, in " + eventClasses.size() + " packages.");
+    }
+
+    /**
+     * Turns the body of a method into a try block, the event being created before it and committed in its finally block.
+     * @param tracedMethod   The method to wrap.
+     * @param eventClassName The full name of the event class of the method's package.
+     * @throws BuildFailedException If the method's body can't be modified.
+     */
+    private void wrapBody(TracedMethod tracedMethod, String eventClassName) throws BuildFailedException {
+        CallableMethodBodyEditor.wrapBodyOfCallable(tracedMethod.method,
+                Arrays.asList(
+                        StaticJavaParser.parseStatement(eventClassName + " " + EVENT_VAR_NAME + " = new " + eventClassName + "();"),
+                        StaticJavaParser.parseStatement(EVENT_VAR_NAME + ".begin();")),
+                StaticJavaParser.parseBlock("{"
+                        + "if (" + EVENT_VAR_NAME + ".shouldCommit()) {"
+                        + "    " + EVENT_VAR_NAME + "." + JfrEventClassBuilder.TRACED_METHOD_FIELD_NAME
+                        + " = \"" + tracedMethod.tracedName.replace("\"", "") + "\";"
+                        + "    " + EVENT_VAR_NAME + ".commit();"
+                        + "}"
+                        + "}"));
+    }
+}
@@ -6,9 +6,14 @@ import com.github.javaparser.ast.body.ConstructorDeclaration;
 import com.github.javaparser.ast.body.MethodDeclaration;
 import com.github.octavelarose.bootleg.builders.BuildFailedException;
 import com.github.octavelarose.bootleg.builders.programs.classes.ClassBuilder;
+import com.github.octavelarose.bootleg.builders.programs.classes.methods.bodies.BodyFinalizer;
 import com.github.octavelarose.bootleg.builders.programs.classes.methods.bodies.CallableMethodBodyEditor;
+import com.github.octavelarose.bootleg.builders.programs.classes.methods.bodies.variables.PersistentInstancesManager;
 import com.github.octavelarose.bootleg.builders.programs.classes.methods.bodies.variables.visitors.ConstructorCallResultInstVisitor;
 import com.github.octavelarose.bootleg.builders.programs.classes.methods.bodies.variables.visitors.MethodCallResultInstVisitor;
+import com.github.octavelarose.bootleg.builders.programs.classes.methods.bodies.variables.visitors.VarInstantiatorVisitor;
+import com.github.octavelarose.bootleg.builders.programs.classes.methods.sizes.BytecodeSizeEstimator;
+import com.github.octavelarose.bootleg.builders.programs.classes.methods.sizes.MethodSizeController;
 
 import java.util.HashMap;
 
@@ -26,6 +31,18 @@ public class MethodCallInstructionWriter {
     // ...hence they need to be instantiated. Which requires their constructors, which requires access to the class instances.
     HashMap<String, ClassBuilder> classesContext;
 
+    // Moves the call to a continuation of the caller if it'd otherwise go over its target size. Optional.
+    MethodSizeController sizeController;
+
+    // Stores constructed instances in the caller class' fields, and reuses them instead of instantiating new ones. Optional.
+    PersistentInstancesManager persistentInstances;
+
+    // Makes the call go through a lambda, if the callee holds the body of one. Optional.
+    FunctionalInterfacesManager functionalInterfaces;
+
+    // Resolves the arguments of the call once the whole trace has been interpreted. Optional.
+    BodyFinalizer bodyFinalizer;
+
     /**
      * @param callerClass The caller class.
      * @param callerMethodSignature The caller method signature.
@@ -58,6 +75,46 @@ public class MethodCallInstructionWriter {
         return this;
     }
 
+    /**
+     * Sets the method size controller, so that callers are kept under their target sizes.
+     * @param sizeController The method size controller, or null if method sizes shouldn't be controlled.
+     * @return A this instance.
+     */
+    public MethodCallInstructionWriter setSizeController(MethodSizeController sizeController) {
+        this.sizeController = sizeController;
+        return this;
+    }
+
+    /**
+     * Sets the persistent instances manager, so that objects are kept in fields and reused.
+     * @param persistentInstances The persistent instances manager, or null if objects should only be local variables.
+     * @return A this instance.
+     */
+    public MethodCallInstructionWriter setPersistentInstances(PersistentInstancesManager persistentInstances) {
+        this.persistentInstances = persistentInstances;
+        return this;
+    }
+
+    /**
+     * Makes the callee get called through a lambda, for callees holding the body of a lambda in the original program.
+     * @param functionalInterfaces The functional interfaces manager, or null if the callee should be called directly.
+     * @return A this instance.
+     */
+    public MethodCallInstructionWriter setFunctionalInterfaces(FunctionalInterfacesManager functionalInterfaces) {
+        this.functionalInterfaces = functionalInterfaces;
+        return this;
+    }
+
+    /**
+     * Defers the resolution of the call's arguments to a body finalizer, so that it runs in parallel with other classes'.
+     * @param bodyFinalizer The body finalizer, or null if the arguments should be resolved right away.
+     * @return A this instance.
+     */
+    public MethodCallInstructionWriter setBodyFinalizer(BodyFinalizer bodyFinalizer) {
+        this.bodyFinalizer = bodyFinalizer;
+        return this;
+    }
+
     /**
      * @throws BuildFailedException If one of the input values (calle(r/e) classes/methods) are null.
      */
@@ -76,26 +133,48 @@ public class MethodCallInstructionWriter {
     public void writeMethodCallInCaller() throws BuildFailedException {
         checkCallerAndCalleeValues();
 
+        if (this.sizeController != null)
+            this.callerMethod = this.sizeController.getMethodToWriteTo(callerClass, callerMethod,
+                    BytecodeSizeEstimator.estimateCallSize(calleeMethod));
+
         CallableMethodBodyEditor cmbe = new CallableMethodBodyEditor(callerMethod, callerClass);
 
         boolean isCalleeMethodStatic = calleeMethod.getModifiers()
                 .stream()
                 .anyMatch(s -> s.getKeyword() == Modifier.Keyword.STATIC);
 
+        VarInstantiatorVisitor visitor;
         if (calleeMethod instanceof ConstructorDeclaration) {
-            cmbe.accept(new ConstructorCallResultInstVisitor()
+            visitor = new ConstructorCallResultInstVisitor()
                     .setCallerClass(calleeClass)
                     .setParameters(calleeMethod.getParameters())
-                    .setClassesContext(classesContext));
+                    .setClassesContext(classesContext);
         } else {
-            cmbe.accept(new MethodCallResultInstVisitor()
+            MethodCallResultInstVisitor methodVisitor = new MethodCallResultInstVisitor()
                     .setCalleeMethod((MethodDeclaration)calleeMethod)
                     .setMethodClass(calleeClass)
-                    .setIsLocalMethodCall(callerClass.getName().equals(calleeClass.getName()))
+                    // Static methods have no "this" to call the instance methods of their own class on
+                    .setIsLocalMethodCall(callerClass.getName().equals(calleeClass.getName()) && !callerMethod.isStatic())
                     .setIsMethodStatic(isCalleeMethodStatic)
-                    .setClassesContext(classesContext));
+                    .setClassesContext(classesContext);
+
+            if (this.functionalInterfaces != null) {
+                // The lambda is created in the caller, which may not be the class that defined it in the original program
+                if (calleeMethod.isPrivate() && callerClass != calleeClass)
+                    calleeMethod.setPrivate(false).setPublic(true);
+                methodVisitor.setFunctionalInterface(this.functionalInterfaces.getInterfaceFor((MethodDeclaration) calleeMethod, classesContext));
+            }
+
+            visitor = methodVisitor;
         }
 
+        if (this.persistentInstances != null)
+            visitor.setPersistentInstances(this.persistentInstances, callerClass, callerMethod.isStatic());
+        if (this.bodyFinalizer != null)
+            visitor.setBodyFinalizer(this.bodyFinalizer, callerClass);
+
+        cmbe.accept(visitor);
+
         cmbe.setBodyToCallable();
     }
 }
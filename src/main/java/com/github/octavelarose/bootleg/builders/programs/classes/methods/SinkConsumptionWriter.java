@@ -0,0 +1,101 @@
+package com.github.octavelarose.bootleg.builders.programs.classes.methods;
+
+import com.github.javaparser.ast.Modifier;
+import com.github.javaparser.ast.NodeList;
+import com.github.javaparser.ast.body.CallableDeclaration;
+import com.github.javaparser.ast.expr.BinaryExpr;
+import com.github.javaparser.ast.expr.Expression;
+import com.github.javaparser.ast.expr.MethodCallExpr;
+import com.github.javaparser.ast.expr.NameExpr;
+import com.github.javaparser.ast.stmt.BlockStmt;
+import com.github.javaparser.ast.stmt.ExpressionStmt;
+import com.github.javaparser.ast.type.PrimitiveType;
+import com.github.octavelarose.bootleg.builders.BuildConstants;
+import com.github.octavelarose.bootleg.builders.BuildFailedException;
+import com.github.octavelarose.bootleg.builders.programs.classes.ClassBuilder;
+import com.github.octavelarose.bootleg.builders.programs.classes.methods.bodies.CallableMethodBodyEditor;
+import com.github.octavelarose.bootleg.builders.programs.classes.methods.sizes.BytecodeSizeEstimator;
+import com.github.octavelarose.bootleg.builders.programs.classes.methods.sizes.MethodSizeController;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Makes the entry point of a program read every class' sink field and print the result,
+ * so that none of the work whose results flow into the sinks can be discarded by the JIT.
+ */
+public class SinkConsumptionWriter {
+    // How many sink fields are read by a single generated method, to keep methods a reasonable size.
+    private static final int MAX_SINKS_PER_METHOD = 500;
+
+    private static final String COLLECT_METHOD_NAME = "collectSinks";
+
+    private MethodSizeController sizeController;
+
+    public SinkConsumptionWriter setSizeController(MethodSizeController sizeController) {
+        this.sizeController = sizeController;
+        return this;
+    }
+
+    /**
+     * Adds the consumption of all the sinks at the end of the entry point method.
+     * @param entryClass     The class of the entry point.
+     * @param entrySignature The signature of the entry point method.
+     * @param classBuilders  All the classes in the program. Those without a sink field are skipped.
+     * @throws BuildFailedException If the entry point method can't be modified.
+     */
+    public void writeSinksConsumption(ClassBuilder entryClass,
+                                      CallableDeclaration.Signature entrySignature,
+                                      Collection<ClassBuilder> classBuilders) throws BuildFailedException {
+        List<ClassBuilder> classesList = new ArrayList<>();
+        for (ClassBuilder cb: classBuilders) {
+            if (cb.hasField(BuildConstants.SINK_FIELD_NAME))
+                classesList.add(cb);
+        }
+        Expression sinksXor = null;
+
+        for (int i = 0; i * MAX_SINKS_PER_METHOD < classesList.size(); i++) {
+            List<ClassBuilder> chunk = classesList.subList(i * MAX_SINKS_PER_METHOD,
+                    Math.min((i + 1) * MAX_SINKS_PER_METHOD, classesList.size()));
+            String methodName = COLLECT_METHOD_NAME + i;
+
+            entryClass.addMethod(methodName,
+                    PrimitiveType.longType(),
+                    new NodeList<>(),
+                    this.getCollectMethodBody(chunk),
+                    new NodeList<>(Modifier.privateModifier(), Modifier.staticModifier()));
+
+            MethodCallExpr collectCall = new MethodCallExpr(methodName);
+            sinksXor = (sinksXor == null) ? collectCall : new BinaryExpr(sinksXor, collectCall, BinaryExpr.Operator.XOR);
+        }
+
+        if (sinksXor == null)
+            return;
+
+        ExpressionStmt printStmt = new ExpressionStmt(new MethodCallExpr(new NameExpr("System.out"), "println",
+                new NodeList<>(new BinaryExpr(new NameExpr("\"Sink: \""), sinksXor, BinaryExpr.Operator.PLUS))));
+
+        // At the very end of the entry point, which is its last continuation if it was split
+        CallableDeclaration<?> entryMethod = entryClass.getMethodFromSignature(entrySignature);
+        if (this.sizeController != null)
+            entryMethod = this.sizeController.getMethodToWriteTo(entryClass, entryMethod, BytecodeSizeEstimator.estimate(printStmt));
+
+        CallableMethodBodyEditor cmbe = new CallableMethodBodyEditor(entryMethod, entryClass);
+        cmbe.addStatement(printStmt);
+        cmbe.setBodyToCallable();
+    }
+
+    /**
+     * @param classesChunk The classes whose sinks should be read.
+     * @return A method body XORing all the sinks together and returning the result.
+     */
+    private BlockStmt getCollectMethodBody(List<ClassBuilder> classesChunk) {
+        BlockStmt body = new BlockStmt().addStatement("long sinks = 0;");
+
+        for (ClassBuilder cb: classesChunk)
+            body.addStatement("sinks ^= " + cb.getImportStr() + "." + BuildConstants.SINK_FIELD_NAME + ";");
+
+        return body.addStatement("return sinks;");
+    }
+}
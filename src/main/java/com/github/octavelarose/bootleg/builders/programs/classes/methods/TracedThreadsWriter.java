@@ -0,0 +1,154 @@
+package com.github.octavelarose.bootleg.builders.programs.classes.methods;
+
+import com.github.javaparser.StaticJavaParser;
+import com.github.javaparser.ast.Modifier;
+import com.github.javaparser.ast.NodeList;
+import com.github.javaparser.ast.body.CallableDeclaration;
+import com.github.javaparser.ast.body.MethodDeclaration;
+import com.github.javaparser.ast.expr.MethodCallExpr;
+import com.github.javaparser.ast.stmt.BlockStmt;
+import com.github.javaparser.ast.stmt.ExpressionStmt;
+import com.github.javaparser.ast.type.ArrayType;
+import com.github.javaparser.ast.type.ClassOrInterfaceType;
+import com.github.javaparser.ast.type.VoidType;
+import com.github.javaparser.utils.Pair;
+import com.github.octavelarose.bootleg.builders.BuildFailedException;
+import com.github.octavelarose.bootleg.builders.programs.classes.ClassBuilder;
+import com.github.octavelarose.bootleg.builders.programs.classes.methods.bodies.CallableMethodBodyEditor;
+import com.github.octavelarose.bootleg.builders.programs.classes.methods.bodies.variables.PersistentInstancesManager;
+import com.github.octavelarose.bootleg.builders.programs.classes.methods.sizes.BytecodeSizeEstimator;
+import com.github.octavelarose.bootleg.builders.programs.classes.methods.sizes.MethodSizeController;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Makes the entry point of a program start one thread per thread of the calltrace (the entry point's own excepted),
+ * each running the root calls of its traced thread, and wait for all of them to be done before returning.
+ * If the entry point runs again before the threads it started are done, it waits for them before starting new ones,
+ * since they're only referenced by a static field.
+ */
+public class TracedThreadsWriter {
+    private static final String RUN_METHOD_NAME = "runThread";
+    private static final String START_METHOD_NAME = "startTracedThreads";
+    private static final String JOIN_METHOD_NAME = "joinTracedThreads";
+    private static final String THREADS_FIELD_NAME = "tracedThreads";
+
+    // Whether to start virtual threads (JDK 21+) instead of platform threads.
+    private boolean useVirtualThreads = false;
+
+    private MethodSizeController sizeController;
+    private PersistentInstancesManager persistentInstances;
+
+    public TracedThreadsWriter setUseVirtualThreads(boolean useVirtualThreads) {
+        this.useVirtualThreads = useVirtualThreads;
+        return this;
+    }
+
+    public TracedThreadsWriter setSizeController(MethodSizeController sizeController) {
+        this.sizeController = sizeController;
+        return this;
+    }
+
+    public TracedThreadsWriter setPersistentInstances(PersistentInstancesManager persistentInstances) {
+        this.persistentInstances = persistentInstances;
+        return this;
+    }
+
+    /**
+     * Adds the methods running each thread's root calls, and the starting and joining of the threads in the entry point.
+     * @param entryClass       The class of the entry point.
+     * @param entrySignature   The signature of the entry point method.
+     * @param threadsRootCalls The root calls of each thread, by thread id, in order of appearance.
+     * @param classBuilders    All the classes in the program.
+     * @throws BuildFailedException If writing the calls or modifying the entry point fails.
+     */
+    public void writeThreads(ClassBuilder entryClass,
+                             CallableDeclaration.Signature entrySignature,
+                             Map<String, List<Pair<ClassBuilder, CallableDeclaration.Signature>>> threadsRootCalls,
+                             HashMap<String, ClassBuilder> classBuilders) throws BuildFailedException {
+        if (threadsRootCalls.isEmpty())
+            return;
+
+        List<String> threadCreations = new ArrayList<>();
+        int threadIdx = 0;
+
+        for (Map.Entry<String, List<Pair<ClassBuilder, CallableDeclaration.Signature>>> threadRootCalls: threadsRootCalls.entrySet()) {
+            MethodDeclaration runMethod = entryClass.addMethod(RUN_METHOD_NAME + threadIdx,
+                    new VoidType(),
+                    new NodeList<>(),
+                    new BlockStmt(),
+                    new NodeList<>(Modifier.privateModifier(), Modifier.staticModifier()));
+
+            for (Pair<ClassBuilder, CallableDeclaration.Signature> rootCall: threadRootCalls.getValue()) {
+                new MethodCallInstructionWriter()
+                        .setCaller(entryClass, runMethod.getSignature())
+                        .setCallee(rootCall.a, rootCall.b)
+                        .setOtherClassesContext(classBuilders)
+                        .setSizeController(this.sizeController)
+                        .setPersistentInstances(this.persistentInstances)
+                        .writeMethodCallInCaller();
+            }
+
+            threadCreations.add(this.getThreadCreationStr(entryClass.getImportStr() + "::" + runMethod.getNameAsString(),
+                    threadRootCalls.getKey()));
+            threadIdx++;
+        }
+
+        entryClass.addField(THREADS_FIELD_NAME,
+                new ArrayType(new ClassOrInterfaceType(null, "Thread")),
+                Modifier.Keyword.PRIVATE, Modifier.Keyword.STATIC);
+
+        entryClass.addMethod(START_METHOD_NAME,
+                new VoidType(),
+                new NodeList<>(),
+                StaticJavaParser.parseBlock("{"
+                        + JOIN_METHOD_NAME + "();"
+                        + THREADS_FIELD_NAME + " = new Thread[]{" + String.join(", ", threadCreations) + "};"
+                        + "for (Thread thread: " + THREADS_FIELD_NAME + ") thread.start();"
+                        + "}"),
+                new NodeList<>(Modifier.privateModifier(), Modifier.staticModifier()));
+
+        entryClass.addMethod(JOIN_METHOD_NAME,
+                new VoidType(),
+                new NodeList<>(),
+                StaticJavaParser.parseBlock("{"
+                        + "if (" + THREADS_FIELD_NAME + " == null) return;"
+                        + "try {"
+                        + "for (Thread thread: " + THREADS_FIELD_NAME + ") thread.join();"
+                        + "} catch (InterruptedException e) {"
+                        + "Thread.currentThread().interrupt();"
+                        + "}"
+                        + "}"),
+                new NodeList<>(Modifier.privateModifier(), Modifier.staticModifier()));
+
+        CallableDeclaration<?> entryMethod = entryClass.getMethodFromSignature(entrySignature);
+        CallableMethodBodyEditor cmbe = new CallableMethodBodyEditor(entryMethod, entryClass);
+        cmbe.addStatementFirst(new ExpressionStmt(new MethodCallExpr(START_METHOD_NAME)));
+        cmbe.setBodyToCallable();
+
+        // At the very end of the entry point, which is its last continuation if it was split
+        ExpressionStmt joinStmt = new ExpressionStmt(new MethodCallExpr(JOIN_METHOD_NAME));
+        if (this.sizeController != null)
+            entryMethod = this.sizeController.getMethodToWriteTo(entryClass, entryMethod, BytecodeSizeEstimator.estimate(joinStmt));
+        cmbe = new CallableMethodBodyEditor(entryMethod, entryClass);
+        cmbe.addStatement(joinStmt);
+        cmbe.setBodyToCallable();
+
+        System.out.println("Starting " + threadsRootCalls.size() + " traced threads from the entry point.");
+    }
+
+    /**
+     * @param runnableStr The code of the Runnable the thread runs, like "Harness::runThread0".
+     * @param threadId    The id of the thread in the trace, used as its name.
+     * @return The code creating an unstarted thread.
+     */
+    private String getThreadCreationStr(String runnableStr, String threadId) {
+        String threadName = "\"t=" + threadId + "\"";
+        if (this.useVirtualThreads)
+            return "Thread.ofVirtual().name(" + threadName + ").unstarted(" + runnableStr + ")";
+        return "new Thread(" + runnableStr + ", " + threadName + ")";
+    }
+}
@@ -0,0 +1,90 @@
+package com.github.octavelarose.bootleg.builders.programs.classes.methods.bodies;
+
+import com.github.javaparser.ast.body.CallableDeclaration;
+import com.github.octavelarose.bootleg.builders.BuildFailedException;
+import com.github.octavelarose.bootleg.builders.GenerationSession;
+import com.github.octavelarose.bootleg.builders.programs.classes.ClassBuilder;
+import com.github.octavelarose.bootleg.builders.programs.utils.ParallelUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+
+/**
+ * Finalizes method bodies once all the calls of the trace have been interpreted: resolves the arguments of the calls
+ * written during the interpretation, and gives methods their return statements. Steps only modify the class they were
+ * added for, so classes get finalized in parallel, each with random numbers derived from the seed and the class' name.
+ * The steps of a class run in the order they were added, so that the program doesn't depend on how tasks get scheduled.
+ */
+public class BodyFinalizer {
+    // Prefix of the random streams of the classes, so that they differ from the ones used to declare them.
+    private static final String STREAM_PREFIX = "finalize:";
+
+    // The steps of each class, in the order classes and steps were added.
+    private final Map<ClassBuilder, List<FinalizationStep>> classesSteps = new LinkedHashMap<>();
+
+    // The methods which already have a return step, since a method's return statement comes from its first exit.
+    private final Set<CallableDeclaration<?>> methodsWithReturnStep = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    private int stepsNbr = 0;
+
+    /**
+     * A finalization step, modifying the body of a method of its class.
+     */
+    @FunctionalInterface
+    public interface FinalizationStep {
+        void run() throws BuildFailedException;
+    }
+
+    /**
+     * @param classCb The class the step modifies.
+     * @param step    The step.
+     */
+    public void addStep(ClassBuilder classCb, FinalizationStep step) {
+        this.classesSteps.computeIfAbsent(classCb, k -> new ArrayList<>()).add(step);
+        this.stepsNbr++;
+    }
+
+    /**
+     * @param classCb The class of the method.
+     * @param method  The method the step sets the return statement of.
+     * @param step    The step, ignored if the method already has one.
+     */
+    public void addReturnStep(ClassBuilder classCb, CallableDeclaration<?> method, FinalizationStep step) {
+        if (this.methodsWithReturnStep.add(method))
+            this.addStep(classCb, step);
+    }
+
+    /**
+     * @return The number of steps added so far.
+     */
+    public int getStepsNbr() {
+        return this.stepsNbr;
+    }
+
+    /**
+     * Runs the steps of all classes, in parallel across classes.
+     * @throws BuildFailedException If a step fails.
+     */
+    public void finalizeBodies() throws BuildFailedException {
+        GenerationSession session = GenerationSession.current();
+
+        List<Callable<Void>> classTasks = new ArrayList<>();
+        for (Map.Entry<ClassBuilder, List<FinalizationStep>> classSteps: this.classesSteps.entrySet()) {
+            classTasks.add(() -> session.callInStream(STREAM_PREFIX + classSteps.getKey().getImportStr(), () -> {
+                for (FinalizationStep step: classSteps.getValue())
+                    step.run();
+                return null;
+            }));
+        }
+        ParallelUtils.invokeAll(classTasks);
+
+        this.classesSteps.clear();
+        this.methodsWithReturnStep.clear();
+    }
+}
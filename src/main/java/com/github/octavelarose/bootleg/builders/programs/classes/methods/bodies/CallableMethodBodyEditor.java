@@ -1,14 +1,18 @@
 package com.github.octavelarose.bootleg.builders.programs.classes.methods.bodies;
 
+import com.github.javaparser.ast.NodeList;
 import com.github.javaparser.ast.body.CallableDeclaration;
 import com.github.javaparser.ast.body.ConstructorDeclaration;
 import com.github.javaparser.ast.body.MethodDeclaration;
 import com.github.javaparser.ast.stmt.BlockStmt;
 import com.github.javaparser.ast.stmt.ReturnStmt;
 import com.github.javaparser.ast.stmt.Statement;
+import com.github.javaparser.ast.stmt.TryStmt;
 import com.github.octavelarose.bootleg.builders.BuildFailedException;
 import com.github.octavelarose.bootleg.builders.programs.classes.ClassBuilder;
 
+import java.util.List;
+
 /**
  * Method body editor tailored to callable instances (i.e methods and constructors).
  */
@@ -63,12 +67,47 @@ public class CallableMethodBodyEditor extends MethodBodyEditor {
      * Sets the fabricated body to the wrapped callable.
      */
     public void setBodyToCallable() throws BuildFailedException {
-        if (this.method instanceof ConstructorDeclaration) {
-            ((ConstructorDeclaration) this.method).setBody(this.generateMethodBody());
-        }
-        else if (this.method instanceof MethodDeclaration)
-            ((MethodDeclaration) this.method).setBody(this.generateMethodBody());
+        setBodyOfCallable(this.method, this.generateMethodBody());
+    }
+
+    /**
+     * Sets the body of a method or a constructor.
+     * @param method The callable.
+     * @param body   Its new body.
+     * @throws BuildFailedException If the callable is neither a method nor a constructor.
+     */
+    public static void setBodyOfCallable(CallableDeclaration<?> method, BlockStmt body) throws BuildFailedException {
+        if (method instanceof ConstructorDeclaration)
+            ((ConstructorDeclaration) method).setBody(body);
+        else if (method instanceof MethodDeclaration)
+            ((MethodDeclaration) method).setBody(body);
         else
             throw new BuildFailedException("Couldn't set method body, as this is neither a classic method nor a constructor");
     }
+
+    /**
+     * Turns the body of a method or a constructor into a try block with a finally block, for code that needs to run
+     * on every exit of the callable. Calls to this() or super() stay the first statement of constructors.
+     * @param method       The callable.
+     * @param prologue     The statements to add before the try block.
+     * @param finallyBlock The finally block.
+     * @throws BuildFailedException If the callable is neither a method nor a constructor.
+     */
+    public static void wrapBodyOfCallable(CallableDeclaration<?> method,
+                                          List<Statement> prologue,
+                                          BlockStmt finallyBlock) throws BuildFailedException {
+        BlockStmt body = (method instanceof ConstructorDeclaration)
+                ? ((ConstructorDeclaration) method).getBody()
+                : ((MethodDeclaration) method).getBody().orElse(new BlockStmt());
+
+        NodeList<Statement> wrappedStmts = new NodeList<>(body.getStatements());
+        BlockStmt newBody = new BlockStmt();
+
+        if (wrappedStmts.isNonEmpty() && wrappedStmts.get(0).isExplicitConstructorInvocationStmt())
+            newBody.addStatement(wrappedStmts.remove(0));
+
+        prologue.forEach(newBody::addStatement);
+        newBody.addStatement(new TryStmt(new BlockStmt(wrappedStmts), new NodeList<>(), finallyBlock));
+        setBodyOfCallable(method, newBody);
+    }
 }
@@ -6,19 +6,30 @@ import com.github.javaparser.ast.body.VariableDeclarator;
 import com.github.javaparser.ast.expr.*;
 import com.github.javaparser.ast.stmt.BlockStmt;
 import com.github.javaparser.ast.stmt.ExpressionStmt;
+import com.github.javaparser.ast.stmt.ForStmt;
 import com.github.javaparser.ast.stmt.ReturnStmt;
 import com.github.javaparser.ast.stmt.Statement;
+import com.github.javaparser.ast.type.PrimitiveType;
 import com.github.javaparser.ast.type.Type;
+import com.github.octavelarose.bootleg.builders.BuildConstants;
 import com.github.octavelarose.bootleg.builders.BuildFailedException;
 import com.github.octavelarose.bootleg.builders.programs.calltraces.asm_types.ASMBytecodeParsingUtils;
 import com.github.octavelarose.bootleg.builders.programs.classes.ClassBuilder;
+import com.github.octavelarose.bootleg.builders.programs.classes.methods.bodies.operations.OperationKernel;
+import com.github.octavelarose.bootleg.builders.programs.classes.methods.bodies.operations.OperationSequenceCompressor;
 import com.github.octavelarose.bootleg.builders.programs.classes.methods.bodies.variables.DummyValueCreator;
 import com.github.octavelarose.bootleg.builders.programs.classes.methods.bodies.variables.LocalVariableFetcher;
 import com.github.octavelarose.bootleg.builders.programs.classes.methods.bodies.variables.visitors.VarInstantiatorVisitor;
+import com.github.octavelarose.bootleg.builders.programs.classes.methods.sizes.BytecodeSizeEstimator;
 import com.github.octavelarose.bootleg.builders.programs.utils.RandomUtils;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 
 /**
  * Creates and manages a method body, i.e a BlockStmt object.
@@ -30,6 +41,18 @@ public abstract class MethodBodyEditor {
     // Used to return values of local variables.
     protected LocalVariableFetcher varFetcher = new LocalVariableFetcher(instrsBlock);
 
+    // How many distinct opaque operand variables of a given type can be created for a method's operations.
+    private static final int MAX_OPAQUE_OPERANDS_PER_TYPE = 4;
+
+    // Estimated bytecode size of writing an accumulator to the sink: getstatic, load, conversion, add, putstatic.
+    private static final int SINK_WRITE_SIZE = 10;
+
+    // Names of the variables modified by arithmetic operations.
+    private final Set<String> opsAccumulators = new LinkedHashSet<>();
+
+    // Names of the opaque operand variables, by type.
+    private final Map<String, List<String>> opsOperands = new HashMap<>();
+
     /**
      * Default constructor, creates a BlockStmt instance.
      */
@@ -52,10 +75,39 @@ public abstract class MethodBodyEditor {
 
     /**
      * Adds a statement to the method body.
-     * @param exprStmt The statement as an ExpressionStmt.
+     * @param stmt The statement, usually an ExpressionStmt.
+     */
+    public void addStatement(Statement stmt) {
+        this.instrsBlock.addStatement(stmt);
+    }
+
+    /**
+     * Adds a statement at the start of the method body.
+     * @param stmt The statement.
+     */
+    public void addStatementFirst(Statement stmt) {
+        this.instrsBlock.getStatements().addFirst(stmt);
+    }
+
+    /**
+     * @return The number of statements in the method body, the return statement excluded.
      */
-    public void addStatement(ExpressionStmt exprStmt) {
-        this.instrsBlock.addStatement(exprStmt);
+    public int getStatementsCount() {
+        return this.instrsBlock.getStatements().size();
+    }
+
+    /**
+     * Removes the statements at the end of the method body, and returns them.
+     * @param firstIdx The index of the first statement to remove.
+     * @return The removed statements, in order.
+     */
+    public NodeList<Statement> extractStatementsFrom(int firstIdx) {
+        NodeList<Statement> extractedStmts = new NodeList<>();
+        NodeList<Statement> stmts = this.instrsBlock.getStatements();
+
+        while (stmts.size() > firstIdx)
+            extractedStmts.add(stmts.remove(firstIdx));
+        return extractedStmts;
     }
 
     /**
@@ -124,34 +176,183 @@ public abstract class MethodBodyEditor {
 
     /**
      * Processes a list of arithmetic operations (ADD, SUB, etc...) and adds them to the method body.
+     * Repeated operations are compressed into counted loops, so that long lists don't generate gigantic methods.
      * @param methodOps The operations list (ex: ["IADD", "DSUB", "DDIV", ...])
      */
     public void processOperationStatements(List<String> methodOps) throws BuildFailedException {
-        for (String opStr: methodOps) {
-            Type opType = ASMBytecodeParsingUtils.getTypeFromBytecodePrefix(opStr.charAt(0));
-            AssignExpr.Operator operator = ASMBytecodeParsingUtils.getAssignOperatorFromBytecodeStr(opStr.substring(1));
-
-            Optional<VariableDeclarator> localVarOpt = this.varFetcher.getLocalVarOrParamOfType(opType);
-            String localVarName;
-
-            if (localVarOpt.isEmpty()) {
-                VariableDeclarator newVar = new VariableDeclarator(opType,
-                        RandomUtils.generateRandomName(5),
-                        new NameExpr(DummyValueCreator.getDummyParamValueFromType(opType)));
-
-                this.addStatement(new ExpressionStmt(new VariableDeclarationExpr(newVar)));
-                localVarName = newVar.getNameAsString();
-            } else {
-                localVarName = localVarOpt.get().getNameAsString();
+        this.processOperationKernels(OperationSequenceCompressor.compress(methodOps), Integer.MAX_VALUE);
+    }
+
+    /**
+     * Adds operation kernels to the method body, until its estimated bytecode size reaches a maximum.
+     * The first kernel is always added, even if it's over the limit by itself.
+     * @param kernels        The kernels, as generated by the OperationSequenceCompressor.
+     * @param maxBytecodeSize The estimated bytecode size the method body shouldn't go over.
+     * @return The kernels that didn't fit in the method body.
+     * @throws BuildFailedException If the format of one of the operations is invalid.
+     */
+    public List<OperationKernel> processOperationKernels(List<OperationKernel> kernels, int maxBytecodeSize) throws BuildFailedException {
+        int nbrAddedKernels = 0;
+
+        for (OperationKernel kernel: kernels) {
+            // Kernels can declare new variables, which need to be removed if the kernel ends up not being added
+            int nbrStmtsBefore = this.instrsBlock.getStatements().size();
+            Statement kernelStmt = this.getKernelStatement(kernel);
+
+            if (nbrAddedKernels > 0 && this.getEstimatedOperationsBodySize(kernelStmt) > maxBytecodeSize) {
+                this.removeStatementsFrom(nbrStmtsBefore);
+                break;
+            }
+
+            this.instrsBlock.addStatement(kernelStmt);
+            nbrAddedKernels++;
+        }
+
+        // The results are written to the class' sink, else the JIT would discard the operations altogether.
+        if (DummyValueCreator.isUsingOpaqueValues()) {
+            for (String accumulatorName: this.opsAccumulators)
+                this.addStatement(new ExpressionStmt(new AssignExpr(
+                        new NameExpr(BuildConstants.SINK_FIELD_NAME),
+                        new CastExpr(PrimitiveType.longType(), new NameExpr(accumulatorName)),
+                        AssignExpr.Operator.PLUS)));
+            this.opsAccumulators.clear();
+        }
+
+        return new ArrayList<>(kernels.subList(nbrAddedKernels, kernels.size()));
+    }
+
+    /**
+     * @param kernelStmt A kernel statement about to be added.
+     * @return The estimated size of the method body once the kernel and the final sink writes are added.
+     */
+    private int getEstimatedOperationsBodySize(Statement kernelStmt) {
+        int size = this.getEstimatedBytecodeSize() + BytecodeSizeEstimator.estimate(kernelStmt);
+        if (DummyValueCreator.isUsingOpaqueValues())
+            size += SINK_WRITE_SIZE * this.opsAccumulators.size();
+        return size;
+    }
+
+    /**
+     * Removes the statements at the end of the method body, starting from a given index.
+     * The variables they declared are forgotten as operation accumulators or operands.
+     * @param firstRemovedIdx The index of the first statement to remove.
+     */
+    private void removeStatementsFrom(int firstRemovedIdx) {
+        NodeList<Statement> stmts = this.instrsBlock.getStatements();
+
+        while (stmts.size() > firstRemovedIdx) {
+            Statement removedStmt = stmts.remove(stmts.size() - 1);
+            for (VariableDeclarator removedVar: removedStmt.findAll(VariableDeclarator.class)) {
+                String removedName = removedVar.getNameAsString();
+                this.opsAccumulators.remove(removedName);
+                this.opsOperands.values().forEach(operandVars -> operandVars.remove(removedName));
             }
+        }
+    }
+
+    /**
+     * @return The estimated size of the bytecode of the method body, return statement included.
+     */
+    public int getEstimatedBytecodeSize() {
+        int size = BytecodeSizeEstimator.estimate(this.instrsBlock);
+        return size + ((this.returnStmt != null) ? BytecodeSizeEstimator.estimate(this.returnStmt) : 1);
+    }
+
+    /**
+     * @param kernel An operation kernel, either a single operation or a loop.
+     * @return The statement executing the kernel's operations.
+     * @throws BuildFailedException If the format of one of the operations is invalid.
+     */
+    private Statement getKernelStatement(OperationKernel kernel) throws BuildFailedException {
+        if (!kernel.isLoop())
+            return this.getOperationStatement(kernel.getOperation());
+
+        BlockStmt loopBody = new BlockStmt();
+        for (OperationKernel bodyKernel: kernel.getBody())
+            loopBody.addStatement(this.getKernelStatement(bodyKernel));
+
+        String counterName = RandomUtils.generateRandomName(BuildConstants.LOCAL_VAR_NAME_LENGTH);
+        return new ForStmt(
+                new NodeList<>(new VariableDeclarationExpr(
+                        new VariableDeclarator(PrimitiveType.intType(), counterName, new IntegerLiteralExpr("0")))),
+                new BinaryExpr(new NameExpr(counterName),
+                        new IntegerLiteralExpr(String.valueOf(kernel.getIterations())),
+                        BinaryExpr.Operator.LESS),
+                new NodeList<>(new UnaryExpr(new NameExpr(counterName), UnaryExpr.Operator.POSTFIX_INCREMENT)),
+                loopBody);
+    }
+
+    /**
+     * Returns a statement applying a single operation to a local variable of the operation's type.
+     * If no such variable exists, one is declared first, at the top level of the method body.
+     * @param opStr The operation, like "IADD".
+     * @return The statement, like "abcde += 3".
+     * @throws BuildFailedException If the format of the operation is invalid.
+     */
+    private Statement getOperationStatement(String opStr) throws BuildFailedException {
+        Type opType = ASMBytecodeParsingUtils.getTypeFromBytecodePrefix(opStr.charAt(0));
+        AssignExpr.Operator operator = ASMBytecodeParsingUtils.getAssignOperatorFromBytecodeStr(opStr.substring(1));
 
-            this.addStatement(new ExpressionStmt(
-                       new AssignExpr(
-                            new NameExpr(localVarName),
-                            new NameExpr(DummyValueCreator.getDummyParamValueFromType(opType)),
-                            operator)
-            ));
+        Optional<VariableDeclarator> localVarOpt = this.varFetcher.getLocalVarOrParamOfType(opType);
+        String localVarName;
+
+        // Opaque operands are meant to stay as they are, so another variable gets modified instead.
+        if (localVarOpt.isPresent() && this.isOpaqueOperand(opType, localVarOpt.get().getNameAsString()))
+            localVarOpt = this.varFetcher.getLocalVarOrParamOfType(opType, this.opsOperands.get(opType.asString()));
+
+        if (localVarOpt.isEmpty()) {
+            VariableDeclarator newVar = new VariableDeclarator(opType,
+                    RandomUtils.generateRandomName(5),
+                    new NameExpr(DummyValueCreator.getDummyParamValueFromType(opType)));
+
+            this.addStatement(new ExpressionStmt(new VariableDeclarationExpr(newVar)));
+            localVarName = newVar.getNameAsString();
+        } else {
+            localVarName = localVarOpt.get().getNameAsString();
         }
+
+        this.opsAccumulators.add(localVarName);
+
+        return new ExpressionStmt(
+                new AssignExpr(
+                        new NameExpr(localVarName),
+                        this.getOperandExpr(opType),
+                        operator)
+        );
+    }
+
+    /**
+     * @param opType  The type of the variable.
+     * @param varName The name of the variable.
+     * @return true if the variable was created as an opaque operand for arithmetic operations.
+     */
+    private boolean isOpaqueOperand(Type opType, String varName) {
+        List<String> operandVars = this.opsOperands.get(opType.asString());
+        return operandVars != null && operandVars.contains(varName);
+    }
+
+    /**
+     * Returns an operand for an arithmetic operation.
+     * With opaque values, operands are local variables initialized from the opaque seed once, at the top level of the method:
+     * operations then only cost as much as with a literal operand, but can't be folded by the JIT.
+     * @param opType The type of the operation.
+     * @return The operand expression.
+     */
+    private Expression getOperandExpr(Type opType) {
+        if (!DummyValueCreator.isUsingOpaqueValues())
+            return new NameExpr(DummyValueCreator.getDummyParamValueFromType(opType));
+
+        List<String> operandVars = this.opsOperands.computeIfAbsent(opType.asString(), k -> new ArrayList<>());
+
+        if (operandVars.size() < MAX_OPAQUE_OPERANDS_PER_TYPE) {
+            VariableDeclarator newVar = new VariableDeclarator(opType,
+                    RandomUtils.generateRandomName(BuildConstants.LOCAL_VAR_NAME_LENGTH),
+                    new NameExpr(DummyValueCreator.getDummyParamValueFromType(opType)));
+            this.addStatement(new ExpressionStmt(new VariableDeclarationExpr(newVar)));
+            operandVars.add(newVar.getNameAsString());
+        }
+
+        return new NameExpr(operandVars.get(RandomUtils.generateRandomInt(operandVars.size())));
     }
 
     /**
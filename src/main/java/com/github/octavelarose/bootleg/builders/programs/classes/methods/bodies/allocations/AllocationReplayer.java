@@ -0,0 +1,221 @@
+package com.github.octavelarose.bootleg.builders.programs.classes.methods.bodies.allocations;
+
+import com.github.javaparser.ast.Modifier;
+import com.github.javaparser.ast.ArrayCreationLevel;
+import com.github.javaparser.ast.NodeList;
+import com.github.javaparser.ast.body.Parameter;
+import com.github.javaparser.ast.body.VariableDeclarator;
+import com.github.javaparser.ast.expr.*;
+import com.github.javaparser.ast.stmt.BlockStmt;
+import com.github.javaparser.ast.stmt.ExpressionStmt;
+import com.github.javaparser.ast.stmt.ForStmt;
+import com.github.javaparser.ast.stmt.Statement;
+import com.github.javaparser.ast.type.ArrayType;
+import com.github.javaparser.ast.type.ClassOrInterfaceType;
+import com.github.javaparser.ast.type.PrimitiveType;
+import com.github.javaparser.ast.type.Type;
+import com.github.javaparser.ast.type.VoidType;
+import com.github.octavelarose.bootleg.builders.BuildConstants;
+import com.github.octavelarose.bootleg.builders.BuildFailedException;
+import com.github.octavelarose.bootleg.builders.programs.classes.ClassBuilder;
+import com.github.octavelarose.bootleg.builders.programs.utils.RandomUtils;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Replays the allocations of an allocation profile in generated methods, so that their allocation rate matches the original's.
+ * Every allocation escapes to a static field of its class so it can't be optimized away,
+ * and a share of them is kept reachable in a per-class ring buffer so that the GC has live objects to deal with.
+ * The ring buffer holds the retained share of all the allocations a run of the traced program makes in the class,
+ * up to a limit past which it only holds the most recent ones, as a window of the program's steady state.
+ */
+public class AllocationReplayer {
+    // The most allocations a single class keeps reachable, past which its ring buffer is a window of the most recent ones.
+    private static final int MAX_RETAINED_ALLOCS_PER_CLASS = 1 << 16;
+
+    // Approximate size of an array's header, used to turn object sizes into array lengths.
+    private static final int ARRAY_HEADER_SIZE = 16;
+
+    private static final String ESCAPE_METHOD_NAME = "escapeAllocation";
+    private static final String RETAIN_COUNTER_FIELD_NAME = "allocsCounter";
+    private static final String RETAINED_IDX_FIELD_NAME = "retainedAllocsIdx";
+
+    // The allocation sites of each method, by method full name.
+    private final Map<String, List<AllocationSite>> allocationSites;
+
+    // One allocation out of this many is kept reachable. 0 if none are.
+    private final int retainEvery;
+
+    // How many times each method gets called in a run of the program, by method full name. Methods missing from it count once.
+    private Map<String, Long> callsCounts = Map.of();
+
+    // The classes to which the allocation fields and method have already been added.
+    // Synchronized, since the methods of different classes get declared concurrently.
+    private final Set<ClassBuilder> classesWithAllocFields = Collections.synchronizedSet(Collections.newSetFromMap(new IdentityHashMap<>()));
+
+    /**
+     * @param allocationSites The allocation sites of each method, by method full name.
+     * @param retainedShare   The share of allocations that stay reachable, between 0 and 1.
+     * @throws BuildFailedException If the retained share is out of bounds.
+     */
+    public AllocationReplayer(Map<String, List<AllocationSite>> allocationSites, double retainedShare) throws BuildFailedException {
+        if (retainedShare < 0 || retainedShare > 1)
+            throw new BuildFailedException("Retained allocations share should be between 0 and 1, not: " + retainedShare);
+
+        this.allocationSites = allocationSites;
+        this.retainEvery = (retainedShare == 0) ? 0 : (int) Math.max(1, Math.round(1 / retainedShare));
+    }
+
+    /**
+     * @param callsCounts How many times each method gets called in a run of the program, by method full name,
+     *                    so that ring buffers can hold the retained share of a whole run's allocations.
+     * @return A this instance.
+     */
+    public AllocationReplayer setCallsCounts(Map<String, Long> callsCounts) {
+        this.callsCounts = callsCounts;
+        return this;
+    }
+
+    /**
+     * @param methodFullName The full name of the method, like "som/Sieve.sieve".
+     * @return The allocation sites of the method, empty if it doesn't allocate anything.
+     */
+    public List<AllocationSite> getMethodAllocationSites(String methodFullName) {
+        return this.allocationSites.getOrDefault(methodFullName, List.of());
+    }
+
+    /**
+     * @return The most common length for each array type, by type string (ex: "int[]" -> 100).
+     */
+    public Map<String, Integer> getMostCommonArrayLengths() {
+        Map<String, Map<Integer, Long>> lengthsCounts = new HashMap<>();
+
+        for (List<AllocationSite> sites: this.allocationSites.values()) {
+            for (AllocationSite site: sites) {
+                if (site.isArray())
+                    lengthsCounts.computeIfAbsent(site.getType().asString(), k -> new HashMap<>())
+                            .merge(site.getSizeOrLength(), site.getCount(), Long::sum);
+            }
+        }
+
+        Map<String, Integer> mostCommonLengths = new HashMap<>();
+        for (Map.Entry<String, Map<Integer, Long>> typeLengths: lengthsCounts.entrySet())
+            mostCommonLengths.put(typeLengths.getKey(),
+                    Collections.max(typeLengths.getValue().entrySet(), Map.Entry.comparingByValue()).getKey());
+        return mostCommonLengths;
+    }
+
+    /**
+     * Returns the statement replaying the allocations of a site: a loop if the site allocates more than once per call.
+     * @param classCb The class the statement is generated in. Gets the allocation fields and method if it doesn't have them.
+     * @param className The name of the class, like "som/Sieve".
+     * @param site      The allocation site.
+     * @return The statement.
+     */
+    public Statement getAllocationStatement(ClassBuilder classCb, String className, AllocationSite site) {
+        if (!this.classesWithAllocFields.contains(classCb))
+            this.addAllocationMembers(classCb, className);
+
+        ExpressionStmt escapeStmt = new ExpressionStmt(new MethodCallExpr(ESCAPE_METHOD_NAME, this.getAllocationExpr(site)));
+        if (site.getCount() <= 1)
+            return escapeStmt;
+
+        String counterName = RandomUtils.generateRandomName(BuildConstants.LOCAL_VAR_NAME_LENGTH);
+        return new ForStmt(
+                new NodeList<>(new VariableDeclarationExpr(
+                        new VariableDeclarator(PrimitiveType.intType(), counterName, new IntegerLiteralExpr("0")))),
+                new BinaryExpr(new NameExpr(counterName),
+                        new IntegerLiteralExpr(String.valueOf(Math.min(site.getCount(), Integer.MAX_VALUE))),
+                        BinaryExpr.Operator.LESS),
+                new NodeList<>(new UnaryExpr(new NameExpr(counterName), UnaryExpr.Operator.POSTFIX_INCREMENT)),
+                new BlockStmt(new NodeList<>(escapeStmt)));
+    }
+
+    /**
+     * Arrays are allocated with their actual length, but arrays of objects are replaced by Object arrays.
+     * Objects are replaced by long arrays of the same size, since the classes from the profile may not be in the program.
+     * @param site The allocation site.
+     * @return An expression allocating an object of the same size as the site's.
+     */
+    private Expression getAllocationExpr(AllocationSite site) {
+        if (site.isArray()) {
+            ArrayType arrayType = site.getType().asArrayType();
+            Type elementType = arrayType.getElementType().isPrimitiveType()
+                    ? arrayType.getElementType()
+                    : new ClassOrInterfaceType(null, "Object");
+
+            NodeList<ArrayCreationLevel> levels = new NodeList<>(new ArrayCreationLevel(site.getSizeOrLength()));
+            for (int i = 1; i < arrayType.getArrayLevel(); i++)
+                levels.add(new ArrayCreationLevel());
+
+            return new ArrayCreationExpr(elementType, levels, null);
+        }
+
+        if (site.getSizeOrLength() <= ARRAY_HEADER_SIZE)
+            return new ObjectCreationExpr().setType("Object");
+
+        int payloadLength = (site.getSizeOrLength() - ARRAY_HEADER_SIZE + Long.BYTES - 1) / Long.BYTES;
+        return new ArrayCreationExpr(PrimitiveType.longType(), new NodeList<>(new ArrayCreationLevel(payloadLength)), null);
+    }
+
+    /**
+     * Adds the allocation sink and the ring buffer of retained allocations to a class,
+     * as well as the method every replayed allocation goes through.
+     * @param classCb   The class.
+     * @param className The name of the class, like "som/Sieve".
+     */
+    private void addAllocationMembers(ClassBuilder classCb, String className) {
+        classCb.addField(BuildConstants.ALLOC_SINK_FIELD_NAME,
+                new ClassOrInterfaceType(null, "Object"),
+                Modifier.Keyword.PUBLIC, Modifier.Keyword.STATIC);
+
+        BlockStmt escapeBody = new BlockStmt().addStatement(BuildConstants.ALLOC_SINK_FIELD_NAME + " = allocation;");
+
+        if (this.retainEvery != 0) {
+            String retainedArr = BuildConstants.RETAINED_ALLOCS_FIELD_NAME;
+            classCb.addField(retainedArr,
+                    new ArrayType(new ClassOrInterfaceType(null, "Object")),
+                    new NameExpr("new Object[" + this.getRetainedAllocsNbr(className) + "]"),
+                    Modifier.Keyword.PRIVATE, Modifier.Keyword.STATIC, Modifier.Keyword.FINAL);
+            classCb.addField(RETAIN_COUNTER_FIELD_NAME, PrimitiveType.intType(), Modifier.Keyword.PRIVATE, Modifier.Keyword.STATIC);
+            classCb.addField(RETAINED_IDX_FIELD_NAME, PrimitiveType.intType(), Modifier.Keyword.PRIVATE, Modifier.Keyword.STATIC);
+
+            escapeBody.addStatement("if (++" + RETAIN_COUNTER_FIELD_NAME + " >= " + this.retainEvery + ") {"
+                    + RETAIN_COUNTER_FIELD_NAME + " = 0;"
+                    + retainedArr + "[" + RETAINED_IDX_FIELD_NAME + "] = allocation;"
+                    + RETAINED_IDX_FIELD_NAME + " = (" + RETAINED_IDX_FIELD_NAME + " + 1) % " + retainedArr + ".length;"
+                    + "}");
+        }
+
+        classCb.addMethod(ESCAPE_METHOD_NAME,
+                new VoidType(),
+                new NodeList<>(new Parameter(new ClassOrInterfaceType(null, "Object"), "allocation")),
+                escapeBody,
+                new NodeList<>(Modifier.privateModifier(), Modifier.staticModifier()));
+
+        this.classesWithAllocFields.add(classCb);
+    }
+
+    /**
+     * @param className The name of the class, like "som/Sieve".
+     * @return How many allocations a run of the program keeps reachable in the class, i.e the ring buffer's size.
+     */
+    private int getRetainedAllocsNbr(String className) {
+        long allocsNbr = 0;
+
+        for (Map.Entry<String, List<AllocationSite>> methodSites: this.allocationSites.entrySet()) {
+            if (!methodSites.getKey().startsWith(className + "."))
+                continue;
+            long callsNbr = this.callsCounts.getOrDefault(methodSites.getKey(), 1L);
+            for (AllocationSite site: methodSites.getValue())
+                allocsNbr += site.getCount() * callsNbr;
+        }
+
+        return (int) Math.max(1, Math.min(allocsNbr / this.retainEvery, MAX_RETAINED_ALLOCS_PER_CLASS));
+    }
+}
@@ -0,0 +1,44 @@
+package com.github.octavelarose.bootleg.builders.programs.classes.methods.bodies.allocations;
+
+import com.github.javaparser.ast.type.Type;
+
+/**
+ * An allocation made by a traced method: what type is allocated, how many times per call, and how big the allocations are.
+ */
+public class AllocationSite {
+    // The allocated type. Can be an array type.
+    private final Type type;
+
+    // How many allocations of this type are made every time the method is called.
+    private final long count;
+
+    // The length of the arrays for array types, the size of the objects in bytes otherwise. 0 if unknown.
+    private final int sizeOrLength;
+
+    /**
+     * @param type         The allocated type.
+     * @param count        How many allocations of this type are made by a single call.
+     * @param sizeOrLength The length of the arrays for array types, the size of the objects in bytes otherwise.
+     */
+    public AllocationSite(Type type, long count, int sizeOrLength) {
+        this.type = type;
+        this.count = count;
+        this.sizeOrLength = sizeOrLength;
+    }
+
+    public Type getType() {
+        return this.type;
+    }
+
+    public long getCount() {
+        return this.count;
+    }
+
+    public int getSizeOrLength() {
+        return this.sizeOrLength;
+    }
+
+    public boolean isArray() {
+        return this.type.isArrayType();
+    }
+}
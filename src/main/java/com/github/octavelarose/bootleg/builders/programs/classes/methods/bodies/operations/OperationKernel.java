@@ -0,0 +1,96 @@
+package com.github.octavelarose.bootleg.builders.programs.classes.methods.bodies.operations;
+
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * A node of a compressed operations sequence: either a single bytecode operation (ex: "DADD"),
+ * or a counted loop repeating a sequence of other kernels a given number of times.
+ */
+public class OperationKernel {
+    // The bytecode operation, if this kernel is a single operation. null for loops.
+    private final String operation;
+
+    // The loop body, if this kernel is a loop. null for single operations.
+    private final List<OperationKernel> body;
+
+    // How many times the body is executed.
+    private final int iterations;
+
+    /**
+     * Creates a kernel made up of a single operation.
+     * @param operation The bytecode operation string, like "IADD".
+     */
+    public OperationKernel(String operation) {
+        this.operation = operation;
+        this.body = null;
+        this.iterations = 1;
+    }
+
+    /**
+     * Creates a kernel that loops over a sequence of other kernels.
+     * @param body       The kernels executed at each iteration.
+     * @param iterations The number of iterations.
+     */
+    public OperationKernel(List<OperationKernel> body, int iterations) {
+        this.operation = null;
+        this.body = body;
+        this.iterations = iterations;
+    }
+
+    /**
+     * @return true if this kernel is a loop, false if it's a single operation.
+     */
+    public boolean isLoop() {
+        return this.body != null;
+    }
+
+    public String getOperation() {
+        return this.operation;
+    }
+
+    public List<OperationKernel> getBody() {
+        return this.body;
+    }
+
+    public int getIterations() {
+        return this.iterations;
+    }
+
+    /**
+     * @return The number of operations executed when running this kernel, i.e as many as in the original sequence.
+     */
+    public long getOperationsCount() {
+        if (!this.isLoop())
+            return 1;
+
+        long bodyOpsCount = 0;
+        for (OperationKernel kernel: this.body)
+            bodyOpsCount += kernel.getOperationsCount();
+        return bodyOpsCount * this.iterations;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o)
+            return true;
+        if (!(o instanceof OperationKernel))
+            return false;
+        OperationKernel other = (OperationKernel) o;
+        return this.iterations == other.iterations
+                && Objects.equals(this.operation, other.operation)
+                && Objects.equals(this.body, other.body);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(this.operation, this.body, this.iterations);
+    }
+
+    @Override
+    public String toString() {
+        if (!this.isLoop())
+            return this.operation;
+        return this.iterations + "x" + this.body;
+    }
+}
@@ -0,0 +1,169 @@
+package com.github.octavelarose.bootleg.builders.programs.classes.methods.bodies.operations;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Turns a list of bytecode operations into compact counted loops, executing the same operations the same number of times.
+ * Emitting one statement per operation makes methods with thousands of operations go over the JIT's huge method limit.
+ */
+public class OperationSequenceCompressor {
+    // Sequences at most this long are kept as straight-line code, since they're small enough as is.
+    private static final int MAX_STRAIGHT_LINE_LENGTH = 64;
+
+    // The longest sequence of kernels that gets looked for when detecting repeats.
+    private static final int MAX_LOOP_BODY_LENGTH = 16;
+
+    // A sequence needs to be repeated at least this many times in a row to be turned into a loop.
+    private static final int MIN_LOOP_ITERATIONS = 4;
+
+    // How many levels of nested loops can be generated.
+    private static final int MAX_NESTING_DEPTH = 3;
+
+    // The most statements the kernels can make up, loop bodies included. Sequences alternating between repeats and
+    // short straight-line runs compress poorly, so past this the whole sequence gets folded into one loop per operation.
+    private static final int MAX_STATEMENTS_NBR = 256;
+
+    /**
+     * Compresses a list of operations into kernels: runs and repeated sequences become loops.
+     * Long sections with no repeats left are folded into one loop per operation, which keeps the operation mix intact.
+     * The kernels never make up more than MAX_STATEMENTS_NBR statements, or one per distinct operation if there are more.
+     * @param ops The operations list (ex: ["IADD", "DSUB", "DDIV", ...])
+     * @return A list of kernels, which executes the same amount of each operation as the input list.
+     */
+    public static List<OperationKernel> compress(List<String> ops) {
+        List<OperationKernel> opKernels = new ArrayList<>();
+        for (String op: ops)
+            opKernels.add(new OperationKernel(op));
+
+        if (opKernels.size() <= MAX_STRAIGHT_LINE_LENGTH)
+            return opKernels;
+
+        List<OperationKernel> kernels = opKernels;
+
+        for (int depth = 0; depth < MAX_NESTING_DEPTH; depth++) {
+            List<OperationKernel> compressedKernels = compressRepeats(kernels);
+            if (compressedKernels.size() == kernels.size())
+                break;
+            kernels = compressedKernels;
+        }
+
+        kernels = foldStraightLineRuns(kernels);
+        if (getStatementsNbr(kernels) > MAX_STATEMENTS_NBR)
+            return foldStraightLineRun(opKernels);
+        return kernels;
+    }
+
+    /**
+     * @param kernels A list of kernels.
+     * @return The number of statements they generate, counting each loop and the statements in its body.
+     */
+    public static int getStatementsNbr(List<OperationKernel> kernels) {
+        int statementsNbr = 0;
+        for (OperationKernel kernel: kernels)
+            statementsNbr += kernel.isLoop() ? 1 + getStatementsNbr(kernel.getBody()) : 1;
+        return statementsNbr;
+    }
+
+    /**
+     * Single pass that replaces consecutive repeats of a sequence of kernels with a loop kernel.
+     * @param kernels The input kernels.
+     * @return The kernels, with repeated sequences replaced by loops.
+     */
+    private static List<OperationKernel> compressRepeats(List<OperationKernel> kernels) {
+        List<OperationKernel> compressedKernels = new ArrayList<>();
+        int i = 0;
+
+        while (i < kernels.size()) {
+            int bestPeriod = 0;
+            int bestIterations = 0;
+
+            for (int period = 1; period <= MAX_LOOP_BODY_LENGTH && i + period * 2 <= kernels.size(); period++) {
+                int iterations = 1;
+                while (i + (iterations + 1) * period <= kernels.size()
+                        && isRepeated(kernels, i, i + iterations * period, period))
+                    iterations++;
+
+                // Smaller periods are favored if they cover as many kernels
+                if (iterations >= MIN_LOOP_ITERATIONS && period * iterations > bestPeriod * bestIterations) {
+                    bestPeriod = period;
+                    bestIterations = iterations;
+                }
+            }
+
+            if (bestPeriod == 0) {
+                compressedKernels.add(kernels.get(i));
+                i++;
+            } else {
+                List<OperationKernel> loopBody = new ArrayList<>(kernels.subList(i, i + bestPeriod));
+                compressedKernels.add(new OperationKernel(loopBody, bestIterations));
+                i += bestPeriod * bestIterations;
+            }
+        }
+
+        return compressedKernels;
+    }
+
+    /**
+     * @return true if the period kernels starting at firstIdx are the same as the ones starting at secondIdx.
+     */
+    private static boolean isRepeated(List<OperationKernel> kernels, int firstIdx, int secondIdx, int period) {
+        for (int j = 0; j < period; j++) {
+            if (!kernels.get(firstIdx + j).equals(kernels.get(secondIdx + j)))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Runs of single operations that couldn't be compressed and are still too long get replaced by one loop per operation.
+     * The order of operations is lost, but the amount of each operation executed is the same.
+     * @param kernels The input kernels.
+     * @return The kernels, with no straight-line runs longer than MAX_STRAIGHT_LINE_LENGTH.
+     */
+    private static List<OperationKernel> foldStraightLineRuns(List<OperationKernel> kernels) {
+        List<OperationKernel> foldedKernels = new ArrayList<>();
+        List<OperationKernel> straightLineRun = new ArrayList<>();
+
+        for (OperationKernel kernel: kernels) {
+            if (!kernel.isLoop()) {
+                straightLineRun.add(kernel);
+                continue;
+            }
+            foldedKernels.addAll(foldStraightLineRun(straightLineRun));
+            straightLineRun.clear();
+            foldedKernels.add(kernel);
+        }
+        foldedKernels.addAll(foldStraightLineRun(straightLineRun));
+
+        return foldedKernels;
+    }
+
+    /**
+     * @param run A list of single operation kernels.
+     * @return The same run if it's short enough, else one loop per operation (in order of first appearance).
+     */
+    private static List<OperationKernel> foldStraightLineRun(List<OperationKernel> run) {
+        if (run.size() <= MAX_STRAIGHT_LINE_LENGTH)
+            return new ArrayList<>(run);
+
+        Map<String, Integer> opsCount = new LinkedHashMap<>();
+        for (OperationKernel kernel: run)
+            opsCount.merge(kernel.getOperation(), 1, Integer::sum);
+
+        List<OperationKernel> foldedRun = new ArrayList<>();
+        for (Map.Entry<String, Integer> opCount: opsCount.entrySet()) {
+            OperationKernel opKernel = new OperationKernel(opCount.getKey());
+            if (opCount.getValue() < MIN_LOOP_ITERATIONS) {
+                for (int i = 0; i < opCount.getValue(); i++)
+                    foldedRun.add(opKernel);
+            } else {
+                foldedRun.add(new OperationKernel(List.of(opKernel), opCount.getValue()));
+            }
+        }
+
+        return foldedRun;
+    }
+}
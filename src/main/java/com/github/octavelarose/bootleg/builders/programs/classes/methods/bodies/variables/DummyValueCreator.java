@@ -5,13 +5,23 @@ import com.github.javaparser.ast.body.Parameter;
 import com.github.javaparser.ast.expr.Expression;
 import com.github.javaparser.ast.expr.NameExpr;
 import com.github.javaparser.ast.type.Type;
+import com.github.octavelarose.bootleg.builders.BuildConstants;
+import com.github.octavelarose.bootleg.builders.GenerationSession;
 import com.github.octavelarose.bootleg.builders.programs.utils.RandomUtils;
 
+
 /**
  * Used to generate dummy values.
  * My definition of a dummy value is an arbitrary value for a given type, not necessarily fully random.
  */
 public class DummyValueCreator {
+    /**
+     * @return true if dummy values are derived from the opaque seed field, which must then be present in every class.
+     */
+    public static boolean isUsingOpaqueValues() {
+        return GenerationSession.current().isUsingOpaqueValues();
+    }
+
     /**
      * Remark: Expression objects are used since this is how JavaParser prefers it when setting parameter values.
      * @param parameters The parameters to get their types from.
@@ -43,8 +53,36 @@ public class DummyValueCreator {
         // JP can parse a NameExpr which is fed this, but it'd be better if we made it return a VariableDeclarationExpr
         // Or a IntegerLiteralExpr / StringLiteralExpr / anything
         if (typeStr.endsWith("[]"))
-            return "new " + typeStr.substring(0, typeStr.length() - 2) + "[]{}";
+            return getArrayValueFromTypeStr(typeStr);
+
+        if (isUsingOpaqueValues())
+            return getOpaqueValueFromTypeStr(typeStr);
+        else
+            return getLiteralValueFromTypeStr(typeStr);
+    }
 
+    /**
+     * @param typeStr The name of the array type, like "int[]" or "double[][]".
+     * @return An array creation, like "new int[100]" if a length is known for the type, or "new int[]{}" otherwise.
+     */
+    private static String getArrayValueFromTypeStr(String typeStr) {
+        String componentTypeStr = typeStr.substring(0, typeStr.length() - 2);
+        Integer length = GenerationSession.current().getArrayLengths().get(typeStr);
+
+        if (length == null)
+            return "new " + componentTypeStr + "[]{}";
+
+        int firstBracketIdx = componentTypeStr.indexOf('[');
+        if (firstBracketIdx == -1)
+            return "new " + componentTypeStr + "[" + length + "]";
+        return "new " + componentTypeStr.substring(0, firstBracketIdx) + "[" + length + "]" + componentTypeStr.substring(firstBracketIdx);
+    }
+
+    /**
+     * @param typeStr The name of the type to get a literal value from.
+     * @return A string representing a literal value, like a random integer.
+     */
+    private static String getLiteralValueFromTypeStr(String typeStr) {
         switch (typeStr) {
             case "":
                 return "";
@@ -64,4 +102,31 @@ public class DummyValueCreator {
                 return "null";
         }
     }
+
+    /**
+     * Returns a value the JIT can't constant fold, since it depends on a volatile field of the current class.
+     * Object types get the same values as in the default mode.
+     * @param typeStr The name of the type to get a value from.
+     * @return A string representing the value, like "(opaqueSeed + 1234)".
+     */
+    private static String getOpaqueValueFromTypeStr(String typeStr) {
+        String seed = BuildConstants.OPAQUE_SEED_FIELD_NAME;
+
+        switch (typeStr) {
+            case "boolean":
+                return "(" + seed + " > " + RandomUtils.generateRandomInt(10000) + ")";
+            case "byte":
+            case "char":
+            case "short":
+                return "((" + typeStr + ") (" + seed + " + " + RandomUtils.generateRandomInt(127) + "))";
+            case "int":
+            case "long":
+                return "(" + seed + " + " + RandomUtils.generateRandomInt(10000) + ")";
+            case "float":
+            case "double":
+                return "(" + seed + " + " + RandomUtils.generateRandomFloat() + "f)";
+            default:
+                return getLiteralValueFromTypeStr(typeStr);
+        }
+    }
 }
@@ -1,7 +1,9 @@
 package com.github.octavelarose.bootleg.builders.programs.classes.methods.bodies.variables;
 
 import com.github.javaparser.ParseException;
+import com.github.javaparser.ast.Node;
 import com.github.javaparser.ast.NodeList;
+import com.github.javaparser.ast.body.CallableDeclaration;
 import com.github.javaparser.ast.body.Parameter;
 import com.github.javaparser.ast.body.VariableDeclarator;
 import com.github.javaparser.ast.expr.Expression;
@@ -10,11 +12,13 @@ import com.github.javaparser.ast.stmt.BlockStmt;
 import com.github.javaparser.ast.stmt.Statement;
 import com.github.javaparser.ast.type.Type;
 import com.github.octavelarose.bootleg.builders.programs.utils.JPTypeUtils;
+import com.github.octavelarose.bootleg.builders.programs.utils.RandomUtils;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
-import java.util.Random;
 
 /**
  * Returns values of local variables. Input method parameters are also local variables.
@@ -23,8 +27,38 @@ public class LocalVariableFetcher {
     private final BlockStmt instrsBlock;
     private NodeList<Parameter> methodParameters;
 
+    // The statements that can declare variables in scope, if they aren't all of the block's.
+    private List<Statement> scopeStmts = null;
+
     public LocalVariableFetcher(BlockStmt instrsBlock) { this.instrsBlock = instrsBlock; }
 
+    /**
+     * @param node A node of a method body, like a call.
+     * @return A fetcher of the variables in scope at the node: the ones declared before it in its enclosing blocks,
+     * and the parameters of its method.
+     */
+    public static LocalVariableFetcher inScopeOf(Node node) {
+        LocalVariableFetcher fetcher = new LocalVariableFetcher(new BlockStmt());
+        fetcher.scopeStmts = new ArrayList<>();
+
+        Node child = node;
+        Optional<Node> parent = node.getParentNode();
+        while (parent.isPresent() && !(parent.get() instanceof CallableDeclaration)) {
+            if (parent.get() instanceof BlockStmt) {
+                for (Statement stmt: ((BlockStmt) parent.get()).getStatements()) {
+                    if (stmt == child)
+                        break;
+                    fetcher.scopeStmts.add(stmt);
+                }
+            }
+            child = parent.get();
+            parent = child.getParentNode();
+        }
+
+        parent.ifPresent(callable -> fetcher.setMethodParameters(((CallableDeclaration<?>) callable).getParameters()));
+        return fetcher;
+    }
+
     /**
      * Sets the method's parameters, which are special local variables.
      * @param methodParameters The method parameters
@@ -38,6 +72,15 @@ public class LocalVariableFetcher {
      * @return The name of a random local variable / parameter of that given type
      */
     public Optional<VariableDeclarator> getLocalVarOrParamOfType(Type wantedType) {
+        return this.getLocalVarOrParamOfType(wantedType, Collections.emptyList());
+    }
+
+    /**
+     * @param wantedType    The type of the variable being queried
+     * @param excludedNames Names of variables that can't be returned.
+     * @return The name of a random local variable / parameter of that given type
+     */
+    public Optional<VariableDeclarator> getLocalVarOrParamOfType(Type wantedType, Collection<String> excludedNames) {
         List<VariableDeclarator> candidateVars = new ArrayList<>();
 
         if (this.methodParameters != null && this.methodParameters.isNonEmpty()) {
@@ -47,19 +90,28 @@ public class LocalVariableFetcher {
             }
         }
 
-        for (Statement stmt: this.instrsBlock.getStatements()) {
+        for (Statement stmt: (this.scopeStmts != null) ? this.scopeStmts : this.instrsBlock.getStatements()) {
+            // Variables declared in nested blocks (like loop bodies) aren't in scope
+            if (!stmt.isExpressionStmt())
+                continue;
+
             Expression stmtExpr = stmt.asExpressionStmt().getExpression();
             if (stmtExpr.isVariableDeclarationExpr()) {
                 VariableDeclarationExpr expr = stmt.asExpressionStmt().getExpression().asVariableDeclarationExpr();
+                // Declarations hoisted out of critical sections have no initializer, and may not be assigned yet at the node
+                if (this.scopeStmts != null && expr.getVariable(0).getInitializer().isEmpty())
+                    continue;
                 if (expr.getVariable(0).getType().equals(wantedType))
                     candidateVars.add(expr.getVariable(0));
             }
         }
 
+        candidateVars.removeIf(v -> excludedNames.contains(v.getNameAsString()));
+
         if (candidateVars.isEmpty())
             return Optional.empty();
         else
-            return Optional.of(candidateVars.get(new Random().nextInt(candidateVars.size())));
+            return Optional.of(candidateVars.get(RandomUtils.generateRandomInt(candidateVars.size())));
     }
 
     /**
@@ -0,0 +1,261 @@
+package com.github.octavelarose.bootleg.builders.programs.classes.methods.bodies.variables;
+
+import com.github.javaparser.StaticJavaParser;
+import com.github.javaparser.ast.Modifier;
+import com.github.javaparser.ast.NodeList;
+import com.github.javaparser.ast.expr.AssignExpr;
+import com.github.javaparser.ast.expr.Expression;
+import com.github.javaparser.ast.expr.MethodCallExpr;
+import com.github.javaparser.ast.expr.NameExpr;
+import com.github.javaparser.ast.expr.ObjectCreationExpr;
+import com.github.javaparser.ast.stmt.BlockStmt;
+import com.github.javaparser.ast.stmt.ExpressionStmt;
+import com.github.javaparser.ast.stmt.Statement;
+import com.github.javaparser.ast.type.ArrayType;
+import com.github.javaparser.ast.type.ClassOrInterfaceType;
+import com.github.javaparser.ast.type.Type;
+import com.github.octavelarose.bootleg.builders.BuildFailedException;
+import com.github.octavelarose.bootleg.builders.programs.classes.ClassBuilder;
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps the objects created by generated constructor calls alive, by storing them in fields of the caller's class.
+ * Every (caller class, callee class) pair gets a field holding the last instance created, and a lazy getter used
+ * by later calls instead of instantiating a new object. Callers constructing the same class many times in the
+ * trace also keep their most recent instances in a collection, so that the live heap grows like the original's.
+ * If the traced threads run concurrently, the getters use double-checked locking on the volatile fields,
+ * and the collections are fixed-size arrays written in turn through an atomic cursor.
+ */
+public class PersistentInstancesManager {
+    // The most instances a collection field keeps, so that the heap doesn't grow indefinitely.
+    private static final int MAX_KEPT_INSTANCES = 1024;
+
+    private static final String COLLECTION_TYPE = "java.util.ArrayDeque";
+    private static final String CURSOR_TYPE = "java.util.concurrent.atomic.AtomicInteger";
+
+    // How many times each class constructs each other class in the trace, by relation key.
+    private final Map<String, Integer> constructionsCounts;
+
+    // The name of the field holding the last instance, by relation key (which includes whether the field is static).
+    // Concurrent, since classes get finalized in parallel: each only ever adds the keys of its own fields.
+    private final Map<String, String> instanceFields = new ConcurrentHashMap<>();
+
+    // The name of the collection field holding the recent instances, by relation key.
+    private final Map<String, String> collectionFields = new ConcurrentHashMap<>();
+
+    // The name of the field holding the position in the collection array, by relation key. Only used if concurrent.
+    private final Map<String, String> cursorFields = new ConcurrentHashMap<>();
+
+    // Whether the fields are shared by several threads of the generated program.
+    private boolean isConcurrent = false;
+
+    /**
+     * @param constructionsCounts How many times each class constructs each other class in the trace,
+     *                            by relation key as returned by getRelationKey.
+     */
+    public PersistentInstancesManager(Map<String, Integer> constructionsCounts) {
+        this.constructionsCounts = constructionsCounts;
+    }
+
+    /**
+     * @param isConcurrent Whether the generated program runs several threads, which may then share the fields.
+     * @return A this instance.
+     */
+    public PersistentInstancesManager setConcurrent(boolean isConcurrent) {
+        this.isConcurrent = isConcurrent;
+        return this;
+    }
+
+    /**
+     * @param callerClassName The name of the caller class, like "som/Run".
+     * @param calleeClassName The name of the constructed class, like "som/Sieve".
+     * @return The key of the relation between the two classes.
+     */
+    public static String getRelationKey(String callerClassName, String calleeClassName) {
+        return callerClassName.replace("/", ".") + ">" + calleeClassName.replace("/", ".");
+    }
+
+    /**
+     * Returns an expression evaluating to a persistent instance of a class, creating the field and getter if needed.
+     * @param callerClass     The class the expression is used in.
+     * @param calleeClass     The class of the instance.
+     * @param isStaticContext Whether the expression is used in a static method, in which case the field is static.
+     * @return A call to the getter of the field, like "getSieve()".
+     * @throws BuildFailedException If the class has no constructors to instantiate it with.
+     */
+    public Expression getInstanceExpr(ClassBuilder callerClass,
+                                      ClassBuilder calleeClass,
+                                      boolean isStaticContext) throws BuildFailedException {
+        String fieldName = this.getOrCreateInstanceField(callerClass, calleeClass, isStaticContext);
+        return new MethodCallExpr(getGetterName(fieldName));
+    }
+
+    /**
+     * Returns the statements storing a newly constructed instance in the caller class' fields.
+     * @param callerClass     The class the instance is constructed in.
+     * @param calleeClass     The class of the instance.
+     * @param isStaticContext Whether the instance is constructed in a static method.
+     * @param instanceVarName The name of the local variable holding the new instance.
+     * @return The statements, like "sieve = abcde;".
+     * @throws BuildFailedException If the class has no constructors to instantiate it with.
+     */
+    public List<Statement> getStoreStatements(ClassBuilder callerClass,
+                                              ClassBuilder calleeClass,
+                                              boolean isStaticContext,
+                                              String instanceVarName) throws BuildFailedException {
+        List<Statement> storeStmts = new ArrayList<>();
+        String fieldName = this.getOrCreateInstanceField(callerClass, calleeClass, isStaticContext);
+        storeStmts.add(new ExpressionStmt(new AssignExpr(new NameExpr(fieldName), new NameExpr(instanceVarName), AssignExpr.Operator.ASSIGN)));
+
+        String relationKey = getRelationKey(callerClass.getImportStr(), calleeClass.getImportStr());
+        int keptInstancesNbr = Math.min(this.constructionsCounts.getOrDefault(relationKey, 1), MAX_KEPT_INSTANCES);
+
+        if (keptInstancesNbr > 1) {
+            String fieldKey = getFieldKey(callerClass, calleeClass, isStaticContext);
+            String collectionName = this.getOrCreateCollectionField(callerClass, calleeClass, isStaticContext, keptInstancesNbr);
+
+            if (this.isConcurrent) {
+                // Checking a concurrent collection's size then removing from it wouldn't be atomic, so the cap wouldn't hold
+                storeStmts.add(StaticJavaParser.parseStatement(collectionName + "[Math.floorMod("
+                        + this.cursorFields.get(fieldKey) + ".getAndIncrement(), " + collectionName + ".length)] = "
+                        + instanceVarName + ";"));
+            } else {
+                storeStmts.add(StaticJavaParser.parseStatement("if (" + collectionName + ".size() >= " + keptInstancesNbr + ") "
+                        + collectionName + ".pollFirst();"));
+                storeStmts.add(new ExpressionStmt(new MethodCallExpr(new NameExpr(collectionName), "addLast",
+                        new NodeList<>(new NameExpr(instanceVarName)))));
+            }
+        }
+
+        return storeStmts;
+    }
+
+    /**
+     * @return The name of the field holding the last instance of the callee class, after creating it and its getter if needed.
+     * @throws BuildFailedException If the callee class has no constructors to instantiate it with.
+     */
+    private String getOrCreateInstanceField(ClassBuilder callerClass,
+                                            ClassBuilder calleeClass,
+                                            boolean isStaticContext) throws BuildFailedException {
+        String fieldKey = getFieldKey(callerClass, calleeClass, isStaticContext);
+        String fieldName = this.instanceFields.get(fieldKey);
+        if (fieldName != null)
+            return fieldName;
+
+        if (calleeClass.getConstructors().isEmpty())
+            throw new BuildFailedException("Can't instantiate a new instance of class "
+                    + calleeClass.getName()
+                    + ", as it has no constructors");
+
+        fieldName = getAvailableMemberName(callerClass,
+                StringUtils.uncapitalize(calleeClass.getName()) + (isStaticContext ? "Shared" : ""));
+        ClassOrInterfaceType calleeType = new ClassOrInterfaceType(null, calleeClass.getImportStr());
+
+        // Volatile if shared by threads, since the stores setting it aren't synchronized with the getter
+        callerClass.addField(fieldName, calleeType, getModifiers(isStaticContext, false, this.isConcurrent));
+
+        ObjectCreationExpr newInstanceExpr = new ObjectCreationExpr().setType(calleeType)
+                .setArguments(DummyValueCreator.getDummyParameterValuesAsExprs(calleeClass.getConstructors().get(0).getParameters()));
+        BlockStmt getterBody = new BlockStmt();
+
+        if (this.isConcurrent) {
+            // Double-checked, so that only the first calls contend for the lock
+            String lockStr = isStaticContext ? callerClass.getImportStr() + ".class" : "this";
+            getterBody.addStatement(calleeType + " instance = " + fieldName + ";");
+            getterBody.addStatement("if (instance == null) {"
+                    + "synchronized (" + lockStr + ") {"
+                    + "instance = " + fieldName + ";"
+                    + "if (instance == null) " + fieldName + " = instance = " + newInstanceExpr + ";"
+                    + "}}");
+            getterBody.addStatement("return instance;");
+        } else {
+            getterBody.addStatement("if (" + fieldName + " == null) " + fieldName + " = " + newInstanceExpr + ";");
+            getterBody.addStatement("return " + fieldName + ";");
+        }
+
+        NodeList<Modifier> getterModifiers = new NodeList<>(Modifier.privateModifier());
+        if (isStaticContext)
+            getterModifiers.add(Modifier.staticModifier());
+        callerClass.addMethod(getGetterName(fieldName), calleeType, new NodeList<>(), getterBody, getterModifiers);
+
+        this.instanceFields.put(fieldKey, fieldName);
+        return fieldName;
+    }
+
+    /**
+     * Creates the collection field if needed: a deque, or if the fields are shared by threads an array and its cursor field.
+     * @param keptInstancesNbr How many instances the collection keeps.
+     * @return The name of the collection field holding the recent instances of the callee class.
+     */
+    private String getOrCreateCollectionField(ClassBuilder callerClass,
+                                              ClassBuilder calleeClass,
+                                              boolean isStaticContext,
+                                              int keptInstancesNbr) {
+        String fieldKey = getFieldKey(callerClass, calleeClass, isStaticContext);
+        String collectionName = this.collectionFields.get(fieldKey);
+        if (collectionName != null)
+            return collectionName;
+
+        collectionName = getAvailableMemberName(callerClass,
+                StringUtils.uncapitalize(calleeClass.getName()) + (isStaticContext ? "Shared" : "") + "Instances");
+
+        if (this.isConcurrent) {
+            callerClass.addField(collectionName, new ArrayType(new ClassOrInterfaceType(null, calleeClass.getImportStr())),
+                    new NameExpr("new " + calleeClass.getImportStr() + "[" + keptInstancesNbr + "]"),
+                    getModifiers(isStaticContext, true, false));
+
+            String cursorName = getAvailableMemberName(callerClass, collectionName + "Cursor");
+            callerClass.addField(cursorName, new ClassOrInterfaceType(null, CURSOR_TYPE),
+                    new ObjectCreationExpr().setType(CURSOR_TYPE),
+                    getModifiers(isStaticContext, true, false));
+            this.cursorFields.put(fieldKey, cursorName);
+        } else {
+            Type collectionType = new ClassOrInterfaceType(null, COLLECTION_TYPE + "<" + calleeClass.getImportStr() + ">");
+            callerClass.addField(collectionName, collectionType,
+                    new NameExpr("new " + COLLECTION_TYPE + "<>()"),
+                    getModifiers(isStaticContext, true, false));
+        }
+
+        this.collectionFields.put(fieldKey, collectionName);
+        return collectionName;
+    }
+
+    /**
+     * @return The key of the fields of a relation, which differ for static methods.
+     */
+    private static String getFieldKey(ClassBuilder callerClass, ClassBuilder calleeClass, boolean isStaticContext) {
+        return getRelationKey(callerClass.getImportStr(), calleeClass.getImportStr()) + (isStaticContext ? "/static" : "");
+    }
+
+    private static Modifier.Keyword[] getModifiers(boolean isStatic, boolean isFinal, boolean isVolatile) {
+        List<Modifier.Keyword> modifiers = new ArrayList<>(List.of(Modifier.Keyword.PRIVATE));
+        if (isStatic)
+            modifiers.add(Modifier.Keyword.STATIC);
+        if (isFinal)
+            modifiers.add(Modifier.Keyword.FINAL);
+        if (isVolatile)
+            modifiers.add(Modifier.Keyword.VOLATILE);
+        return modifiers.toArray(new Modifier.Keyword[0]);
+    }
+
+    /**
+     * @param classCb  The class the member is added to.
+     * @param baseName The wanted name of the member.
+     * @return The name, with a number appended if a field or method with that name already exists (ex: "sieve2").
+     */
+    private static String getAvailableMemberName(ClassBuilder classCb, String baseName) {
+        String name = baseName;
+        for (int i = 2; classCb.hasField(name) || classCb.hasMethod(getGetterName(name)); i++)
+            name = baseName + i;
+        return name;
+    }
+
+    private static String getGetterName(String fieldName) {
+        return "get" + StringUtils.capitalize(fieldName);
+    }
+}
@@ -7,6 +7,7 @@ import com.github.javaparser.ast.body.VariableDeclarator;
 import com.github.javaparser.ast.expr.ObjectCreationExpr;
 import com.github.javaparser.ast.expr.VariableDeclarationExpr;
 import com.github.javaparser.ast.stmt.ExpressionStmt;
+import com.github.javaparser.ast.stmt.Statement;
 import com.github.javaparser.ast.type.ClassOrInterfaceType;
 import com.github.octavelarose.bootleg.builders.BuildConstants;
 import com.github.octavelarose.bootleg.builders.BuildFailedException;
@@ -62,16 +63,22 @@ public class ConstructorCallResultInstVisitor extends VarInstantiatorVisitor {
     private void addConstructorCallToLocalVar(ClassBuilder calleeClass,
                                              NodeList<Parameter> constructorParameters,
                                              HashMap<String, ClassBuilder> classesContext) throws BuildFailedException {
-        var dummyParamVals = this.getParamValuesFromContext(constructorParameters, classesContext);
-
         try {
             ClassOrInterfaceType classWithName = JPTypeUtils.getClassTypeFromName(calleeClass.getImportStr());
 
-            methodBodyEditor.addStatement(new ExpressionStmt(new VariableDeclarationExpr(
-                            new VariableDeclarator(classWithName, RandomUtils.generateRandomName(BuildConstants.LOCAL_VAR_NAME_LENGTH),
-                                    new ObjectCreationExpr().setType(classWithName).setArguments(dummyParamVals))
-                    ))
-            );
+            ObjectCreationExpr objectCreationExpr = new ObjectCreationExpr().setType(classWithName);
+            this.setArgumentsFromContext(objectCreationExpr, constructorParameters, classesContext);
+
+            VariableDeclarator newVar = new VariableDeclarator(classWithName, RandomUtils.generateRandomName(BuildConstants.LOCAL_VAR_NAME_LENGTH),
+                    objectCreationExpr);
+            methodBodyEditor.addStatement(new ExpressionStmt(new VariableDeclarationExpr(newVar)));
+
+            // The new instance is kept alive in the caller's fields, instead of becoming garbage at the end of the method
+            if (this.persistentInstances != null) {
+                for (Statement storeStmt: this.persistentInstances.getStoreStatements(this.callerClass, calleeClass,
+                        this.isStaticContext, newVar.getNameAsString()))
+                    methodBodyEditor.addStatement(storeStmt);
+            }
         } catch (ParseException e) {
             throw new BuildFailedException(e.getMessage());
         }
@@ -2,12 +2,16 @@ package com.github.octavelarose.bootleg.builders.programs.classes.methods.bodies
 
 import com.github.javaparser.ast.NodeList;
 import com.github.javaparser.ast.body.MethodDeclaration;
+import com.github.javaparser.ast.body.Parameter;
 import com.github.javaparser.ast.body.VariableDeclarator;
 import com.github.javaparser.ast.expr.*;
 import com.github.javaparser.ast.stmt.ExpressionStmt;
+import com.github.javaparser.ast.type.ClassOrInterfaceType;
+import com.github.javaparser.ast.type.UnknownType;
 import com.github.octavelarose.bootleg.builders.BuildConstants;
 import com.github.octavelarose.bootleg.builders.BuildFailedException;
 import com.github.octavelarose.bootleg.builders.programs.classes.ClassBuilder;
+import com.github.octavelarose.bootleg.builders.programs.classes.methods.FunctionalInterfacesManager;
 import com.github.octavelarose.bootleg.builders.programs.classes.methods.bodies.MethodBodyEditor;
 import com.github.octavelarose.bootleg.builders.programs.classes.methods.bodies.variables.LocalVariableFetcher;
 import com.github.octavelarose.bootleg.builders.programs.utils.RandomUtils;
@@ -34,6 +38,9 @@ public class MethodCallResultInstVisitor extends VarInstantiatorVisitor {
     // The other classes in our system.
     private HashMap<String, ClassBuilder> classesContext;
 
+    // The functional interface the method gets called through, if it holds the body of a lambda.
+    private String functionalInterfaceName = null;
+
     public MethodCallResultInstVisitor setCalleeMethod(MethodDeclaration calleeMethod) {
         this.calleeMethod = calleeMethod;
         return this;
@@ -59,6 +66,16 @@ public class MethodCallResultInstVisitor extends VarInstantiatorVisitor {
         return this;
     }
 
+    /**
+     * Makes the method get called through a lambda of the given functional interface, instead of directly.
+     * @param functionalInterfaceName The full name of the functional interface, whose method has the same signature.
+     * @return A this instance.
+     */
+    public MethodCallResultInstVisitor setFunctionalInterface(String functionalInterfaceName) {
+        this.functionalInterfaceName = functionalInterfaceName;
+        return this;
+    }
+
     @Override
     public void visit(MethodBodyEditor methodBodyEditor, LocalVariableFetcher localVariableFetcher) throws BuildFailedException {
         super.visit(methodBodyEditor, localVariableFetcher);
@@ -69,14 +86,10 @@ public class MethodCallResultInstVisitor extends VarInstantiatorVisitor {
      * Generates a new statement from a method call, a var. instantiation statement or a regular statement if void is returned
      */
     private void addMethodCallToLocalVar() throws BuildFailedException {
-        String calleeClassName = calleeClass.getName();
-        NodeList<Expression> dummyParamVals = this.getParamValuesFromContext(calleeMethod.getParameters(), classesContext);
-        MethodCallExpr methodCallExpr = new MethodCallExpr()
-                .setName(calleeMethod.getName())
-                .setArguments(dummyParamVals);
+        MethodCallExpr methodCallExpr = new MethodCallExpr().setName(calleeMethod.getName());
 
         if (isCalleeMethodStatic) {
-            methodCallExpr.setScope(new NameExpr(calleeClassName));
+            methodCallExpr.setScope(new NameExpr(calleeClass.getImportStr()));
         } else {
             if (isLocalMethodCall)
                 methodCallExpr.setScope(new ThisExpr());
@@ -85,6 +98,8 @@ public class MethodCallResultInstVisitor extends VarInstantiatorVisitor {
 
                 if (localVarOfType.isPresent())
                     methodCallExpr.setScope(new NameExpr(localVarOfType.get().getName()));
+                else if (this.persistentInstances != null)
+                    methodCallExpr.setScope(this.persistentInstances.getInstanceExpr(this.callerClass, calleeClass, this.isStaticContext));
                 else {
                     // We instantiate a new class of the given type if none is present to access the method from.
                     // This safeguard shouldn't exist, since there should always be an option to find an instance of one in the input real program (else it wouldn't run).
@@ -95,14 +110,42 @@ public class MethodCallResultInstVisitor extends VarInstantiatorVisitor {
             }
         }
 
+        // The arguments are set last, since calls through lambdas only pass them to the lambda
+        MethodCallExpr callExpr = (this.functionalInterfaceName != null) ? this.getCallThroughLambda(methodCallExpr) : methodCallExpr;
+        this.setArgumentsFromContext(callExpr, calleeMethod.getParameters(), classesContext);
+
         if (calleeMethod.getType().isVoidType())
-            methodBodyEditor.addStatement(new ExpressionStmt(methodCallExpr));
+            methodBodyEditor.addStatement(new ExpressionStmt(callExpr));
         else
             methodBodyEditor.addStatement(new ExpressionStmt(new VariableDeclarationExpr(
                     new VariableDeclarator(calleeMethod.getType(),
                             RandomUtils.generateRandomName(BuildConstants.LOCAL_VAR_NAME_LENGTH),
-                            methodCallExpr))
+                            callExpr))
             ));
     }
+
+    /**
+     * Stores a lambda forwarding its arguments to the method in a local variable, i.e "Lambda0 abcde = (a, b) -> m(a, b);",
+     * so that the call site goes through invokedynamic linkage and an interface call like lambdas in the original program.
+     * @param methodCallExpr The direct call to the method, without arguments.
+     * @return The call to the lambda, without arguments either.
+     */
+    private MethodCallExpr getCallThroughLambda(MethodCallExpr methodCallExpr) {
+        NodeList<Parameter> lambdaParams = new NodeList<>();
+        NodeList<Expression> forwardedArgs = new NodeList<>();
+        for (int i = 0; i < calleeMethod.getParameters().size(); i++) {
+            String paramName = RandomUtils.generateRandomName(BuildConstants.PARAM_NAME_LENGTH);
+            lambdaParams.add(new Parameter(new UnknownType(), paramName));
+            forwardedArgs.add(new NameExpr(paramName));
+        }
+
+        LambdaExpr lambdaExpr = new LambdaExpr(lambdaParams, methodCallExpr.clone().setArguments(forwardedArgs));
+
+        String lambdaVarName = RandomUtils.generateRandomName(BuildConstants.LOCAL_VAR_NAME_LENGTH);
+        methodBodyEditor.addStatement(new ExpressionStmt(new VariableDeclarationExpr(
+                new VariableDeclarator(new ClassOrInterfaceType(null, this.functionalInterfaceName), lambdaVarName, lambdaExpr))));
+
+        return new MethodCallExpr(new NameExpr(lambdaVarName), FunctionalInterfacesManager.METHOD_NAME);
+    }
 }
 
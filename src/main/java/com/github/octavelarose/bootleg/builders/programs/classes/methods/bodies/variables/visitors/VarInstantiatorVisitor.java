@@ -1,19 +1,23 @@
 package com.github.octavelarose.bootleg.builders.programs.classes.methods.bodies.variables.visitors;
 
 import com.github.javaparser.ParseException;
+import com.github.javaparser.ast.Node;
 import com.github.javaparser.ast.NodeList;
 import com.github.javaparser.ast.body.ConstructorDeclaration;
 import com.github.javaparser.ast.body.Parameter;
 import com.github.javaparser.ast.body.VariableDeclarator;
 import com.github.javaparser.ast.expr.*;
+import com.github.javaparser.ast.nodeTypes.NodeWithArguments;
 import com.github.javaparser.ast.stmt.ExpressionStmt;
 import com.github.javaparser.ast.type.ClassOrInterfaceType;
 import com.github.octavelarose.bootleg.builders.BuildConstants;
 import com.github.octavelarose.bootleg.builders.BuildFailedException;
 import com.github.octavelarose.bootleg.builders.programs.classes.ClassBuilder;
+import com.github.octavelarose.bootleg.builders.programs.classes.methods.bodies.BodyFinalizer;
 import com.github.octavelarose.bootleg.builders.programs.classes.methods.bodies.MethodBodyEditor;
 import com.github.octavelarose.bootleg.builders.programs.classes.methods.bodies.variables.DummyValueCreator;
 import com.github.octavelarose.bootleg.builders.programs.classes.methods.bodies.variables.LocalVariableFetcher;
+import com.github.octavelarose.bootleg.builders.programs.classes.methods.bodies.variables.PersistentInstancesManager;
 import com.github.octavelarose.bootleg.builders.programs.utils.JPTypeUtils;
 import com.github.octavelarose.bootleg.builders.programs.utils.RandomUtils;
 
@@ -25,6 +29,47 @@ public abstract class VarInstantiatorVisitor {
     protected MethodBodyEditor methodBodyEditor;
     protected LocalVariableFetcher localVariableFetcher;
 
+    // If set, objects are fetched from fields of the caller class instead of being instantiated anew.
+    protected PersistentInstancesManager persistentInstances;
+
+    // The class of the method being modified, which persistent instances are stored in.
+    protected ClassBuilder callerClass;
+
+    // Whether the method being modified is static, in which case persistent instances need to be stored in static fields.
+    protected boolean isStaticContext;
+
+    // If set, the arguments of calls are resolved once the whole trace has been interpreted, instead of right away.
+    protected BodyFinalizer bodyFinalizer;
+
+    /**
+     * Makes the visitor reuse persistent instances stored in the caller class' fields.
+     * @param persistentInstances The persistent instances manager.
+     * @param callerClass         The class of the method being modified.
+     * @param isStaticContext     Whether the method being modified is static.
+     * @return A this instance.
+     */
+    public VarInstantiatorVisitor setPersistentInstances(PersistentInstancesManager persistentInstances,
+                                                         ClassBuilder callerClass,
+                                                         boolean isStaticContext) {
+        this.persistentInstances = persistentInstances;
+        this.callerClass = callerClass;
+        this.isStaticContext = isStaticContext;
+        return this;
+    }
+
+    /**
+     * Makes the visitor defer the resolution of call arguments to a body finalizer: calls get placeholder arguments
+     * until it runs, which it does in parallel across classes.
+     * @param bodyFinalizer The body finalizer.
+     * @param callerClass   The class of the method being modified.
+     * @return A this instance.
+     */
+    public VarInstantiatorVisitor setBodyFinalizer(BodyFinalizer bodyFinalizer, ClassBuilder callerClass) {
+        this.bodyFinalizer = bodyFinalizer;
+        this.callerClass = callerClass;
+        return this;
+    }
+
     /**
      * Main method of the visitor. To be extended by subclasses for them to call their logic.
      * @param methodBodyEditor The MethodBodyEditor object used to manipulate the method's instructions.
@@ -66,13 +111,42 @@ public abstract class VarInstantiatorVisitor {
         }
     }
 
+    /**
+     * Sets the arguments of a call to values inferred from context, or to placeholders (null literals, which weigh as
+     * much as a variable load for size estimates) if resolving them is deferred to the body finalizer.
+     * @param call         The call, which the visitor adds to the method body.
+     * @param parameters   The parameters of the callee.
+     * @param otherClasses The other classes we created so far.
+     * @throws BuildFailedException If fetching a persistent instance fails.
+     */
+    protected void setArgumentsFromContext(NodeWithArguments<?> call,
+                                           NodeList<Parameter> parameters,
+                                           HashMap<String, ClassBuilder> otherClasses) throws BuildFailedException {
+        if (this.bodyFinalizer == null) {
+            call.setArguments(this.getParamValuesFromContext(parameters, otherClasses));
+            return;
+        }
+
+        NodeList<Expression> placeholders = new NodeList<>();
+        for (int i = 0; i < parameters.size(); i++)
+            placeholders.add(new NullLiteralExpr());
+        call.setArguments(placeholders);
+
+        // Resolved with the variables in scope once the body is complete, rather than the ones declared so far
+        this.bodyFinalizer.addStep(this.callerClass, () -> {
+            this.localVariableFetcher = LocalVariableFetcher.inScopeOf((Node) call);
+            call.setArguments(this.getParamValuesFromContext(parameters, otherClasses));
+        });
+    }
+
     /**
      * Returns a list of filled parameter values inferred from context, i.e local variable/parameter names where possible.
      * @param parameters The input parameters
      * @param otherClasses The other classes we created so far.
      * @return A list of Expression objects containing values, like local variable names.
+     * @throws BuildFailedException If fetching a persistent instance fails.
      */
-    protected NodeList<Expression> getParamValuesFromContext(NodeList<Parameter> parameters, HashMap<String, ClassBuilder> otherClasses) {
+    protected NodeList<Expression> getParamValuesFromContext(NodeList<Parameter> parameters, HashMap<String, ClassBuilder> otherClasses) throws BuildFailedException {
         NodeList<Expression> paramValues = new NodeList<>();
 
         for (Parameter param: parameters) {
@@ -89,12 +163,15 @@ public abstract class VarInstantiatorVisitor {
                 else if (param.getType().asString().startsWith("java.")) {
                     paramValues.add(new NullLiteralExpr());
                 } else {
-                    ClassOrInterfaceType classType = param.getType().asClassOrInterfaceType();
+                    // Cloned, since the parameter belongs to the callee's class
+                    ClassOrInterfaceType classType = param.getType().asClassOrInterfaceType().clone();
                     ClassBuilder cb = otherClasses.get(classType.getNameWithScope().replace(".", "/"));
 
                     // A bit rough imo, needs more looking into: in which cases would this condition be met?
                     if (cb == null || cb.getConstructors().size() == 0)
                         paramValues.add(new NullLiteralExpr());
+                    else if (this.persistentInstances != null)
+                        paramValues.add(this.persistentInstances.getInstanceExpr(this.callerClass, cb, this.isStaticContext));
                     else {
                         var dummyParamVals = DummyValueCreator.getDummyParameterValuesAsExprs(cb.getConstructors().get(0).getParameters());
                         paramValues.add(new ObjectCreationExpr().setType(classType).setArguments(dummyParamVals));
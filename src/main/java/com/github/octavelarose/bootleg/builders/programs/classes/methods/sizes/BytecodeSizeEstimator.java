@@ -0,0 +1,159 @@
+package com.github.octavelarose.bootleg.builders.programs.classes.methods.sizes;
+
+import com.github.javaparser.ParseProblemException;
+import com.github.javaparser.StaticJavaParser;
+import com.github.javaparser.ast.Node;
+import com.github.javaparser.ast.body.CallableDeclaration;
+import com.github.javaparser.ast.body.ConstructorDeclaration;
+import com.github.javaparser.ast.body.MethodDeclaration;
+import com.github.javaparser.ast.expr.*;
+import com.github.javaparser.ast.stmt.*;
+import com.github.octavelarose.bootleg.builders.GenerationSession;
+
+import java.util.Map;
+
+/**
+ * Estimates the size in bytes of the bytecode javac would generate for a piece of code.
+ * It's a rough estimate (local variable slots, constant pool indexes and such aren't accounted for precisely),
+ * but good enough to tell apart methods the JIT will inline, only inline when hot, or refuse to compile at all.
+ */
+public class BytecodeSizeEstimator {
+    // Some expressions are stored as NameExpr objects containing raw code, like "(opaqueSeed + 3)": their sizes are cached in the session.
+    private static final int MAX_RAW_EXPRS_CACHE_SIZE = 10000;
+
+    /**
+     * @param callable A method or a constructor.
+     * @return The estimated size of its body's bytecode.
+     */
+    public static int estimateCallableSize(CallableDeclaration<?> callable) {
+        if (callable instanceof MethodDeclaration)
+            return ((MethodDeclaration) callable).getBody().map(BytecodeSizeEstimator::estimate).orElse(0);
+        if (callable instanceof ConstructorDeclaration)
+            return estimate(((ConstructorDeclaration) callable).getBody()) + 4; // aload_0 + invokespecial Object.<init>
+        return 0;
+    }
+
+    /**
+     * @param callee The method or constructor being called.
+     * @return The estimated size of a statement calling it, including loading its arguments and storing its result.
+     */
+    public static int estimateCallSize(CallableDeclaration<?> callee) {
+        // Invocation, argument loads, receiver load or instantiation, result store
+        return 3 + 3 * callee.getParameters().size() + 7 + 2;
+    }
+
+    /**
+     * @param node Any AST node, usually a statement or a block.
+     * @return The estimated size of the node's bytecode, including its children.
+     */
+    public static int estimate(Node node) {
+        if (node instanceof NameExpr)
+            return estimateNameExpr((NameExpr) node);
+
+        int size = getOwnSize(node);
+        for (Node child: node.getChildNodes())
+            size += estimate(child);
+        return size;
+    }
+
+    /**
+     * @param node An AST node.
+     * @return The estimated size of the bytecode of the node itself, its children excluded.
+     */
+    private static int getOwnSize(Node node) {
+        if (node instanceof MethodCallExpr)
+            return ((MethodCallExpr) node).getScope().isPresent() ? 3 : 4; // invoke (+ aload_0 if implicit this)
+        if (node instanceof ObjectCreationExpr)
+            return 7; // new + dup + invokespecial
+        if (node instanceof FieldAccessExpr)
+            return 3;
+        if (node instanceof IntegerLiteralExpr || node instanceof LongLiteralExpr
+                || node instanceof DoubleLiteralExpr || node instanceof CharLiteralExpr)
+            return 2;
+        if (node instanceof StringLiteralExpr || node instanceof BooleanLiteralExpr
+                || node instanceof NullLiteralExpr || node instanceof ThisExpr)
+            return 1;
+        if (node instanceof AssignExpr)
+            return ((AssignExpr) node).getOperator() == AssignExpr.Operator.ASSIGN ? 2 : 3;
+        if (node instanceof BinaryExpr)
+            return isComparison(((BinaryExpr) node).getOperator()) ? 3 : 1;
+        if (node instanceof UnaryExpr || node instanceof CastExpr || node instanceof ArrayAccessExpr)
+            return 2;
+        if (node instanceof ArrayCreationExpr || node instanceof ArrayInitializerExpr)
+            return 4;
+        if (node instanceof LambdaExpr || node instanceof MethodReferenceExpr)
+            return 5; // invokedynamic
+        if (node instanceof VariableDeclarationExpr) {
+            int initializedVars = 0;
+            for (var declarator: ((VariableDeclarationExpr) node).getVariables())
+                initializedVars += declarator.getInitializer().isPresent() ? 1 : 0;
+            return 2 * initializedVars;
+        }
+        if (node instanceof ForStmt || node instanceof WhileStmt || node instanceof DoStmt)
+            return 6; // conditional branch + goto
+        if (node instanceof IfStmt || node instanceof ConditionalExpr)
+            return 3;
+        if (node instanceof SwitchStmt)
+            return 16;
+        if (node instanceof SynchronizedStmt)
+            return 16; // monitorenter/exit, and the exception handler releasing the monitor
+        if (node instanceof TryStmt)
+            return 8;
+        if (node instanceof ReturnStmt || node instanceof ThrowStmt)
+            return 1;
+        return 0;
+    }
+
+    private static boolean isComparison(BinaryExpr.Operator operator) {
+        switch (operator) {
+            case LESS:
+            case LESS_EQUALS:
+            case GREATER:
+            case GREATER_EQUALS:
+            case EQUALS:
+            case NOT_EQUALS:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * NameExpr objects are either variable names, or raw code put in a NameExpr (see DummyValueCreator).
+     * @param nameExpr The NameExpr object.
+     * @return The estimated size of the variable load, or of the raw code.
+     */
+    private static int estimateNameExpr(NameExpr nameExpr) {
+        String name = nameExpr.getNameAsString();
+
+        if (isIdentifier(name))
+            return 2;
+
+        Map<String, Integer> rawExprsSizeCache = GenerationSession.current().getRawExprsSizeCache();
+        Integer cachedSize = rawExprsSizeCache.get(name);
+        if (cachedSize != null)
+            return cachedSize;
+
+        int size;
+        try {
+            size = estimate(StaticJavaParser.parseExpression(name));
+        } catch (ParseProblemException e) {
+            size = Math.max(2, name.length() / 3);
+        }
+
+        if (rawExprsSizeCache.size() >= MAX_RAW_EXPRS_CACHE_SIZE)
+            rawExprsSizeCache.clear();
+        rawExprsSizeCache.put(name, size);
+        return size;
+    }
+
+    private static boolean isIdentifier(String name) {
+        if (name.isEmpty() || !Character.isJavaIdentifierStart(name.charAt(0)))
+            return false;
+        for (int i = 1; i < name.length(); i++) {
+            if (!Character.isJavaIdentifierPart(name.charAt(i)))
+                return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,216 @@
+package com.github.octavelarose.bootleg.builders.programs.classes.methods.sizes;
+
+import com.github.javaparser.ast.Modifier;
+import com.github.javaparser.ast.NodeList;
+import com.github.javaparser.ast.body.CallableDeclaration;
+import com.github.javaparser.ast.body.ConstructorDeclaration;
+import com.github.javaparser.ast.body.MethodDeclaration;
+import com.github.javaparser.ast.body.Parameter;
+import com.github.javaparser.ast.expr.Expression;
+import com.github.javaparser.ast.expr.MethodCallExpr;
+import com.github.javaparser.ast.expr.NameExpr;
+import com.github.javaparser.ast.stmt.BlockStmt;
+import com.github.javaparser.ast.stmt.ExpressionStmt;
+import com.github.javaparser.ast.type.VoidType;
+import com.github.octavelarose.bootleg.builders.BuildFailedException;
+import com.github.octavelarose.bootleg.builders.programs.classes.ClassBuilder;
+import com.github.octavelarose.bootleg.builders.programs.classes.methods.bodies.CallableMethodBodyEditor;
+import com.github.octavelarose.bootleg.builders.programs.utils.RandomUtils;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Keeps the estimated bytecode sizes of generated methods around the thresholds HotSpot uses for its JIT decisions.
+ * Each method gets assigned a target size picked from a distribution, and code that would make it go over that size
+ * gets moved to continuation methods instead, which the original method calls at the end of its body.
+ */
+public class MethodSizeController {
+    // Methods up to this size get inlined regardless of how often they're called (-XX:MaxInlineSize)
+    public static final int MAX_INLINE_SIZE = 35;
+
+    // Hot methods up to this size get inlined (-XX:FreqInlineSize)
+    public static final int FREQ_INLINE_SIZE = 325;
+
+    // Methods over this size don't get JIT compiled at all (-XX:HugeMethodLimit)
+    public static final int HUGE_METHOD_LIMIT = 8000;
+
+    private static final int[] TARGET_SIZES = {MAX_INLINE_SIZE, FREQ_INLINE_SIZE, HUGE_METHOD_LIMIT};
+
+    private static final String CONTINUATION_SUFFIX = "Part";
+
+    // Relative weights of each target size, in the same order as TARGET_SIZES.
+    private final double[] targetSizesWeights;
+
+    // Target sizes of each original method, assigned when they're first needed.
+    // Synchronized, since the methods of different classes get declared concurrently.
+    private final Map<CallableDeclaration<?>, Integer> targetSizes = Collections.synchronizedMap(new IdentityHashMap<>());
+
+    // The continuation of a method (which may itself have a continuation, and so on), if it has one.
+    private final Map<CallableDeclaration<?>, MethodDeclaration> continuations = Collections.synchronizedMap(new IdentityHashMap<>());
+
+    // The original method of every continuation.
+    private final Map<CallableDeclaration<?>, CallableDeclaration<?>> rootMethods = Collections.synchronizedMap(new IdentityHashMap<>());
+
+    /**
+     * @param smallWeight  How many methods should fit under MaxInlineSize, relative to the other weights.
+     * @param mediumWeight How many methods should fit under FreqInlineSize, relative to the other weights.
+     * @param largeWeight  How many methods should fit under HugeMethodLimit, relative to the other weights.
+     */
+    public MethodSizeController(double smallWeight, double mediumWeight, double largeWeight) {
+        this.targetSizesWeights = new double[]{smallWeight, mediumWeight, largeWeight};
+    }
+
+    /**
+     * @param distributionStr The distribution as a string, like "0.3,0.5,0.2" (small, medium, large methods).
+     * @return A new MethodSizeController object.
+     * @throws BuildFailedException If the distribution string is invalid.
+     */
+    public static MethodSizeController fromDistributionStr(String distributionStr) throws BuildFailedException {
+        String[] splitStr = distributionStr.split(",");
+        if (splitStr.length != TARGET_SIZES.length)
+            throw new BuildFailedException("Method size distribution should have " + TARGET_SIZES.length + " values, not: " + distributionStr);
+
+        double[] weights = new double[TARGET_SIZES.length];
+        double weightsSum = 0;
+        try {
+            for (int i = 0; i < splitStr.length; i++) {
+                weights[i] = Double.parseDouble(splitStr[i].trim());
+                if (weights[i] < 0)
+                    throw new BuildFailedException("Negative weight in method size distribution: " + distributionStr);
+                weightsSum += weights[i];
+            }
+        } catch (NumberFormatException e) {
+            throw new BuildFailedException("Invalid method size distribution: " + distributionStr);
+        }
+
+        if (weightsSum == 0)
+            throw new BuildFailedException("Method size distribution weights can't all be zero: " + distributionStr);
+
+        return new MethodSizeController(weights[0], weights[1], weights[2]);
+    }
+
+    /**
+     * @param method A method, or one of its continuations.
+     * @return The size that the method (and each of its continuations) shouldn't go over.
+     */
+    public int getTargetSize(CallableDeclaration<?> method) {
+        return this.targetSizes.computeIfAbsent(this.rootMethods.getOrDefault(method, method), m -> this.pickTargetSize());
+    }
+
+    /**
+     * @return A target size, picked randomly according to the distribution.
+     */
+    private int pickTargetSize() {
+        double weightsSum = 0;
+        for (double weight: this.targetSizesWeights)
+            weightsSum += weight;
+
+        double pick = RandomUtils.generateRandomFloat() * weightsSum;
+        for (int i = 0; i < TARGET_SIZES.length; i++) {
+            pick -= this.targetSizesWeights[i];
+            if (pick < 0)
+                return TARGET_SIZES[i];
+        }
+
+        return TARGET_SIZES[TARGET_SIZES.length - 1];
+    }
+
+    /**
+     * Returns the method code of a given size should be added to: the original method if it still has room,
+     * else its last continuation, which gets created if it doesn't exist or doesn't have room either.
+     * @param methodClass The class of the method.
+     * @param method      The original method.
+     * @param addedSize   The estimated bytecode size of the code that needs to be added.
+     * @return The method the code should be written in.
+     * @throws BuildFailedException If creating a continuation fails.
+     */
+    public CallableDeclaration<?> getMethodToWriteTo(ClassBuilder methodClass,
+                                                     CallableDeclaration<?> method,
+                                                     int addedSize) throws BuildFailedException {
+        CallableDeclaration<?> lastPart = this.getLastPart(method);
+        int lastPartSize = BytecodeSizeEstimator.estimateCallableSize(lastPart);
+
+        // An empty continuation always gets written to, else code bigger than the target size would never be written anywhere
+        if (lastPart != method && lastPartSize == 0)
+            return lastPart;
+
+        // Room is left for the call to a continuation, which every part but the last one ends with
+        if (lastPartSize + addedSize + this.getContinuationCallSize(method) <= this.getTargetSize(method))
+            return lastPart;
+
+        return this.addContinuation(methodClass, lastPart);
+    }
+
+    /**
+     * @param method A method, or one of its continuations.
+     * @return The estimated size of the statement calling a continuation of the method.
+     */
+    public int getContinuationCallSize(CallableDeclaration<?> method) {
+        CallableDeclaration<?> rootMethod = this.rootMethods.getOrDefault(method, method);
+        return BytecodeSizeEstimator.estimate(new ExpressionStmt(getContinuationCall(CONTINUATION_SUFFIX, rootMethod)));
+    }
+
+    /**
+     * @param method A method.
+     * @return Its last continuation, or the method itself if it has none.
+     */
+    public CallableDeclaration<?> getLastPart(CallableDeclaration<?> method) {
+        CallableDeclaration<?> lastPart = method;
+        while (this.continuations.containsKey(lastPart))
+            lastPart = this.continuations.get(lastPart);
+        return lastPart;
+    }
+
+    /**
+     * Adds a continuation to a method: an empty method with the same parameters, called at the end of its body.
+     * @param methodClass The class of the method.
+     * @param method      The method, which shouldn't already have a continuation.
+     * @return The continuation method.
+     * @throws BuildFailedException If the method already has a continuation, or modifying its body fails.
+     */
+    public MethodDeclaration addContinuation(ClassBuilder methodClass, CallableDeclaration<?> method) throws BuildFailedException {
+        if (this.continuations.containsKey(method))
+            throw new BuildFailedException("Method " + method.getNameAsString() + " already has a continuation.");
+
+        CallableDeclaration<?> rootMethod = this.rootMethods.getOrDefault(method, method);
+
+        int partNbr = 1;
+        for (CallableDeclaration<?> m = rootMethod; this.continuations.containsKey(m); m = this.continuations.get(m))
+            partNbr++;
+
+        String rootName = (rootMethod instanceof ConstructorDeclaration) ? "init" : rootMethod.getNameAsString();
+        String continuationName = rootName + CONTINUATION_SUFFIX + partNbr;
+
+        NodeList<Parameter> parameters = new NodeList<>();
+        for (Parameter param: rootMethod.getParameters())
+            parameters.add(param.clone());
+
+        NodeList<Modifier> modifiers = new NodeList<>(Modifier.privateModifier());
+        if (rootMethod.isStatic())
+            modifiers.add(Modifier.staticModifier());
+
+        MethodDeclaration continuation = methodClass.addMethod(continuationName, new VoidType(), parameters, new BlockStmt(), modifiers);
+
+        CallableMethodBodyEditor cmbe = new CallableMethodBodyEditor(method, methodClass);
+        cmbe.addStatement(new ExpressionStmt(getContinuationCall(continuationName, rootMethod)));
+        cmbe.setBodyToCallable();
+
+        this.continuations.put(method, continuation);
+        this.rootMethods.put(continuation, rootMethod);
+        return continuation;
+    }
+
+    /**
+     * @param continuationName The name of the continuation.
+     * @param rootMethod       The original method, whose parameters get passed on.
+     * @return The call to the continuation.
+     */
+    private static MethodCallExpr getContinuationCall(String continuationName, CallableDeclaration<?> rootMethod) {
+        NodeList<Expression> arguments = new NodeList<>();
+        for (Parameter param: rootMethod.getParameters())
+            arguments.add(new NameExpr(param.getNameAsString()));
+        return new MethodCallExpr(null, continuationName, arguments);
+    }
+}
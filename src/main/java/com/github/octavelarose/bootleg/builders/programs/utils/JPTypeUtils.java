@@ -3,7 +3,9 @@ package com.github.octavelarose.bootleg.builders.programs.utils;
 import com.github.javaparser.JavaParser;
 import com.github.javaparser.ParseException;
 import com.github.javaparser.ast.type.ClassOrInterfaceType;
+import com.github.octavelarose.bootleg.builders.GenerationSession;
 
+import java.util.Map;
 import java.util.Optional;
 
 /**
@@ -13,10 +15,20 @@ public class JPTypeUtils {
     /**
      * Returns a ClassOrInterfaceType from a string.
      * @param className The name of the class.
-     * @return The type of the class, from its name.
+     * @return The type of the class, from its name. A new node every time, since nodes can only have one parent.
      * @throws ParseException If JP failed to parse the class. I believe this only happens if the string has a bad format.
      */
     static public ClassOrInterfaceType getClassTypeFromName(String className) throws ParseException {
+        // Parsed types are cached per session, and cloned since nodes can only have one parent
+        GenerationSession session = GenerationSession.current();
+        Map<String, ClassOrInterfaceType> classTypesCache = session.getClassTypesCache();
+        ClassOrInterfaceType cachedType = classTypesCache.get(className);
+        if (cachedType != null) {
+            session.getTypeCacheHits().increment();
+            return cachedType.clone();
+        }
+
+        session.getTypeCacheMisses().increment();
         Optional<ClassOrInterfaceType> classWithName = new JavaParser()
                 .parseClassOrInterfaceType(className)
                 .getResult();
@@ -24,6 +36,7 @@ public class JPTypeUtils {
         if (classWithName.isEmpty())
             throw new ParseException("Couldn't parse class " + classWithName);
 
-        return classWithName.get();
+        classTypesCache.put(className, classWithName.get());
+        return classWithName.get().clone();
     }
 }
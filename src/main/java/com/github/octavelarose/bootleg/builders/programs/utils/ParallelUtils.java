@@ -0,0 +1,80 @@
+package com.github.octavelarose.bootleg.builders.programs.utils;
+
+import com.github.octavelarose.bootleg.builders.BuildFailedException;
+import com.github.octavelarose.bootleg.builders.GenerationSession;
+import com.github.octavelarose.bootleg.metrics.BuildMetrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Future;
+
+/**
+ * Utils for running the independent parts of a program generation on all cores.
+ * Tasks run on the common fork-join pool, or on the pool the generation itself runs in, if it runs in one.
+ */
+public class ParallelUtils {
+    /**
+     * @return How many tasks can run at the same time.
+     */
+    public static int getParallelism() {
+        return getPool().getParallelism();
+    }
+
+    /**
+     * @return The pool the current thread is a worker of, or the common pool if it isn't one.
+     */
+    private static ForkJoinPool getPool() {
+        ForkJoinPool pool = ForkJoinTask.getPool();
+        return pool != null ? pool : ForkJoinPool.commonPool();
+    }
+
+    /**
+     * Runs tasks on the fork-join pool, and waits for all of them to be done.
+     * The bytes the tasks allocate on the pool's threads get added to the metrics of the calling thread's session.
+     * @param tasks The tasks to run.
+     * @return The results of the tasks, in the same order as the tasks.
+     * @throws BuildFailedException If a task fails, the first failed task's exception.
+     */
+    public static <T> List<T> invokeAll(List<Callable<T>> tasks) throws BuildFailedException {
+        List<T> results = new ArrayList<>(tasks.size());
+        BuildMetrics metrics = GenerationSession.current().getMetrics();
+        Thread callerThread = Thread.currentThread();
+
+        List<Callable<T>> measuredTasks = new ArrayList<>(tasks.size());
+        for (Callable<T> task: tasks) {
+            measuredTasks.add(() -> {
+                // The caller may run some of the tasks itself while waiting, its allocations are already measured then
+                if (Thread.currentThread() == callerThread)
+                    return task.call();
+
+                long startAllocatedBytes = BuildMetrics.getAllocatedBytes();
+                try {
+                    return task.call();
+                } finally {
+                    metrics.addWorkerAllocatedBytes(BuildMetrics.getAllocatedBytes() - startAllocatedBytes);
+                }
+            });
+        }
+
+        for (Future<T> future: getPool().invokeAll(measuredTasks)) {
+            try {
+                results.add(future.get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new BuildFailedException("Interrupted while waiting for parallel tasks");
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof BuildFailedException)
+                    throw (BuildFailedException) e.getCause();
+                if (e.getCause() instanceof RuntimeException)
+                    throw (RuntimeException) e.getCause();
+                throw new BuildFailedException("Parallel task failed: " + e.getCause());
+            }
+        }
+
+        return results;
+    }
+}
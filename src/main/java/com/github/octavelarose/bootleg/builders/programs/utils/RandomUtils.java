@@ -1,9 +1,12 @@
 package com.github.octavelarose.bootleg.builders.programs.utils;
 
+import com.github.octavelarose.bootleg.builders.GenerationSession;
+
 import java.util.Random;
 
 /**
  * Literally utils for randomness related operations, not a mess of utils for random classes, because we have (debatable) standards
+ * Random numbers come from the current generation session, so that a session's seed determines the program it generates.
  */
 public class RandomUtils {
     /**
@@ -12,7 +15,7 @@ public class RandomUtils {
      * @return A string made up of nbrCharacters random characters.
      */
     static public String generateRandomName(int nbrCharacters) {
-        Random random = new Random();
+        Random random = GenerationSession.current().getRandom();
         StringBuilder buffer = new StringBuilder(nbrCharacters);
         for (int i = 0; i < nbrCharacters; i++) {
             int randomLimitedInt = 'a' + (int) (random.nextFloat() * ('z' - 'a' + 1));
@@ -23,14 +26,14 @@ public class RandomUtils {
     }
 
     public static int generateRandomInt(int maxValue) {
-        return new Random().nextInt(maxValue);
+        return GenerationSession.current().getRandom().nextInt(maxValue);
     }
 
     public static boolean generateRandomBool() {
-        return new Random().nextBoolean();
+        return GenerationSession.current().getRandom().nextBoolean();
     }
 
     public static float generateRandomFloat() {
-        return new Random().nextFloat();
+        return GenerationSession.current().getRandom().nextFloat();
     }
 }
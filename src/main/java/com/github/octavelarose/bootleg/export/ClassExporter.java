@@ -30,6 +30,15 @@ public class ClassExporter {
         this.outputPath = outputPath;
     }
 
+    /**
+     * @param cuToExport The compilation unit of the class, for classes that don't have a class builder.
+     * @param outputPath The file output path when building the package.
+     */
+    public ClassExporter(CompilationUnit cuToExport, String outputPath) {
+        this.cuToExport = cuToExport;
+        this.outputPath = outputPath;
+    }
+
     /**
      * Exports the class to stdout, printing its contents.
      */
@@ -0,0 +1,180 @@
+package com.github.octavelarose.bootleg.export;
+
+import com.github.javaparser.StaticJavaParser;
+import com.github.javaparser.ast.CompilationUnit;
+import com.github.javaparser.ast.ImportDeclaration;
+import com.github.javaparser.ast.Node;
+import com.github.javaparser.ast.body.Parameter;
+import com.github.javaparser.ast.body.VariableDeclarator;
+import com.github.javaparser.ast.expr.Expression;
+import com.github.javaparser.ast.expr.FieldAccessExpr;
+import com.github.javaparser.ast.expr.NameExpr;
+import com.github.javaparser.ast.type.ClassOrInterfaceType;
+import com.github.octavelarose.bootleg.builders.programs.classes.ClassBuilder;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiFunction;
+
+/**
+ * Finds the references to the classes of a generated program in the ASTs of its classes: types, imports, and the names
+ * expressions start with, like "som.Sieve" in "som.Sieve.run(...)". String literals and member names are left alone.
+ * Generated code refers to other classes by their full names and only rarely by their simple names, so matching names
+ * is enough, and much cheaper than resolving symbols.
+ */
+class ClassReferencesIndex {
+    // The package of each class, by full name ("som.Sieve" -> "som"). Default package classes have an empty package.
+    private final Map<String, String> classesPkgs = new HashMap<>();
+
+    // The full name of each class, by simple name, for the simple names only one class has.
+    private final Map<String, String> uniqueSimpleNames = new HashMap<>();
+
+    /**
+     * @param classBuilders The classes of the program.
+     */
+    ClassReferencesIndex(Collection<ClassBuilder> classBuilders) {
+        Set<String> ambiguousSimpleNames = new HashSet<>();
+
+        for (ClassBuilder cb: classBuilders) {
+            String fullName = cb.getImportStr();
+            this.classesPkgs.put(fullName, getPkgName(cb.getCompilationUnit()));
+
+            if (this.uniqueSimpleNames.containsKey(cb.getName()) || ambiguousSimpleNames.contains(cb.getName())) {
+                this.uniqueSimpleNames.remove(cb.getName());
+                ambiguousSimpleNames.add(cb.getName());
+            } else {
+                this.uniqueSimpleNames.put(cb.getName(), fullName);
+            }
+        }
+    }
+
+    /**
+     * @param classFullName The full name of a class of the program.
+     * @return The package of the class, empty for the default package.
+     */
+    String getPkgName(String classFullName) {
+        return this.classesPkgs.get(classFullName);
+    }
+
+    /**
+     * @param node A class as parsed by parseAsWritten, or any part of one.
+     * @return The full names of the classes it refers to.
+     */
+    Set<String> findReferencedClasses(Node node) {
+        Set<String> referencedClasses = new LinkedHashSet<>();
+        this.rewriteReferences(node, (reference, classFullName) -> {
+            referencedClasses.add(classFullName);
+            return reference;
+        });
+        return referencedClasses;
+    }
+
+    /**
+     * Replaces the references to classes in place. Names declared as variables are never taken for classes, since
+     * variables hide the classes of the same name.
+     * @param node     A class as parsed by parseAsWritten, or any part of one.
+     * @param rewriter Gives the new reference to a class, given the reference as found in the code and the class' full name.
+     */
+    void rewriteReferences(Node node, BiFunction<String, String, String> rewriter) {
+        for (ImportDeclaration importDecl: node.findAll(ImportDeclaration.class)) {
+            String newName = this.rewriteName(importDecl.getNameAsString(), rewriter);
+            if (!newName.equals(importDecl.getNameAsString()))
+                importDecl.setName(newName);
+        }
+
+        // Only whole types, like "som.Sieve", and not their scopes, like "som"
+        for (ClassOrInterfaceType type: node.findAll(ClassOrInterfaceType.class, t -> !isTypeScope(t))) {
+            String name = type.getNameWithScope();
+            String newName = this.rewriteName(name, rewriter);
+            if (!newName.equals(name)) {
+                ClassOrInterfaceType newType = StaticJavaParser.parseClassOrInterfaceType(newName);
+                type.setName(newType.getName());
+                type.setScope(newType.getScope().orElse(null));
+            }
+        }
+
+        Set<String> variablesNames = new HashSet<>();
+        node.findAll(VariableDeclarator.class).forEach(v -> variablesNames.add(v.getNameAsString()));
+        node.findAll(Parameter.class).forEach(p -> variablesNames.add(p.getNameAsString()));
+
+        for (NameExpr nameExpr: node.findAll(NameExpr.class, n -> !variablesNames.contains(n.getNameAsString()))) {
+            // The chain of field accesses the name starts, like "som", "som.Sieve" then "som.Sieve.count"
+            List<Expression> chain = new ArrayList<>();
+            List<String> chainNames = new ArrayList<>();
+            Expression expr = nameExpr;
+            String name = nameExpr.getNameAsString();
+            while (true) {
+                chain.add(expr);
+                chainNames.add(name);
+                Node parent = expr.getParentNode().orElse(null);
+                if (!(parent instanceof FieldAccessExpr) || ((FieldAccessExpr) parent).getScope() != expr)
+                    break;
+                expr = (FieldAccessExpr) parent;
+                name += "." + ((FieldAccessExpr) parent).getNameAsString();
+            }
+
+            // The longest one which is a class name, like "som.Sieve"
+            for (int i = chain.size() - 1; i >= 0; i--) {
+                String classFullName = this.getClassFullName(chainNames.get(i));
+                if (classFullName != null) {
+                    String newReference = rewriter.apply(chainNames.get(i), classFullName);
+                    if (!newReference.equals(chainNames.get(i)))
+                        chain.get(i).replace(StaticJavaParser.parseExpression(newReference));
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * @param name     A dotted name, like "som.Sieve.run".
+     * @param rewriter Gives the new reference to a class, given the reference as found in the code and the class' full name.
+     * @return The name, with its longest prefix which is a class name rewritten.
+     */
+    private String rewriteName(String name, BiFunction<String, String, String> rewriter) {
+        for (int endIdx = name.length(); endIdx > 0; endIdx = name.lastIndexOf('.', endIdx - 1)) {
+            String prefix = name.substring(0, endIdx);
+            String classFullName = this.getClassFullName(prefix);
+            if (classFullName != null)
+                return rewriter.apply(prefix, classFullName) + name.substring(endIdx);
+        }
+        return name;
+    }
+
+    /**
+     * @param reference A full or simple class name.
+     * @return The full name of the class of the program it refers to, or null if it refers to none.
+     */
+    private String getClassFullName(String reference) {
+        return this.classesPkgs.containsKey(reference) ? reference : this.uniqueSimpleNames.get(reference);
+    }
+
+    private static boolean isTypeScope(ClassOrInterfaceType type) {
+        Node parent = type.getParentNode().orElse(null);
+        return parent instanceof ClassOrInterfaceType && ((ClassOrInterfaceType) parent).getScope().orElse(null) == type;
+    }
+
+    /**
+     * Generated classes hold some of their code as raw text in NameExprs, like "new som.Sieve[8]" for dummy values,
+     * so their references can only be found once their source code is parsed back.
+     * @param cu The compilation unit of a generated class.
+     * @return A new compilation unit, parsed from the source code of the class.
+     */
+    static CompilationUnit parseAsWritten(CompilationUnit cu) {
+        return StaticJavaParser.parse(cu.toString());
+    }
+
+    /**
+     * @param cu The compilation unit of a class.
+     * @return Its package, empty for the default package.
+     */
+    static String getPkgName(CompilationUnit cu) {
+        return cu.getPackageDeclaration().map(pd -> pd.getNameAsString()).orElse("");
+    }
+}
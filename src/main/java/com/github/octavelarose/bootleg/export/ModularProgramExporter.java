@@ -0,0 +1,319 @@
+package com.github.octavelarose.bootleg.export;
+
+import com.github.octavelarose.bootleg.builders.GenerationSession;
+import com.github.octavelarose.bootleg.builders.programs.classes.BootlegHarnessBuilder;
+import com.github.octavelarose.bootleg.builders.programs.classes.ClassBuilder;
+import com.github.octavelarose.bootleg.builders.programs.classes.JmhBenchmarkBuilder;
+import com.github.octavelarose.bootleg.metrics.BuildMetrics;
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+/**
+ * Exports a program as a multi-project Gradle build, so that its classes can be compiled in parallel and cached.
+ * Packages are kept whole, since their classes may use each other's package-private members, and packages depending on
+ * each other in a cycle are kept in the same module, since Gradle projects can't depend on each other cyclically.
+ * The resulting groups of packages form a DAG, cut into modules of similar sizes following its levels, so that modules only
+ * depend on the modules before them. An "app" project depends on all the modules and runs the entry point.
+ */
+public class ModularProgramExporter {
+    private static final String MODULE_NAME_PREFIX = "module";
+    private static final String APP_PROJECT_NAME = "app";
+    private static final String MODULE_SRC_PATH = "src/main/java";
+
+    private final int modulesNbr;
+
+    /**
+     * A group of packages depending on each other in a cycle, or a single package.
+     */
+    private static class PackageGroup {
+        final List<String> pkgNames = new ArrayList<>();
+        final Set<Integer> dependencies = new TreeSet<>();
+        int classesNbr = 0;
+
+        // 0 for groups depending on no other group, 1 + the highest level of their dependencies otherwise.
+        int level = 0;
+
+        int moduleIdx;
+    }
+
+    /**
+     * @param modulesNbr The number of modules to spread the classes over, at most. Fewer are generated if the packages
+     *                   can't be split further.
+     */
+    public ModularProgramExporter(int modulesNbr) {
+        this.modulesNbr = Math.max(modulesNbr, 1);
+    }
+
+    public void export(HashMap<String, ClassBuilder> classBuilders) {
+        this.export(classBuilders, GenerationSession.current().getModulesOutputPath());
+    }
+
+    /**
+     * @param classBuilders The classes of the program.
+     * @param outputPath    The directory of the Gradle build, emptied beforehand.
+     */
+    public void export(HashMap<String, ClassBuilder> classBuilders, String outputPath) {
+        BuildMetrics.Phase exportPhase = GenerationSession.current().getMetrics().startPhase("export");
+        try {
+            FileUtils.deleteDirectory(new File(outputPath));
+        } catch (IOException e) {
+            System.err.println("Emptying the output directory failed. Exporting anyway.");
+        }
+
+        if (classBuilders.values().stream().anyMatch(cb -> cb instanceof JmhBenchmarkBuilder))
+            System.err.println("JMH benchmarks can't be exported as modules yet, skipping them.");
+
+        Map<String, List<ClassBuilder>> pkgsClasses = new LinkedHashMap<>();
+        for (ClassBuilder cb: classBuilders.values())
+            if (!(cb instanceof JmhBenchmarkBuilder))
+                pkgsClasses.computeIfAbsent(ClassReferencesIndex.getPkgName(cb.getCompilationUnit()), k -> new ArrayList<>()).add(cb);
+
+        List<PackageGroup> pkgGroups = this.getPackageGroups(pkgsClasses,
+                new ClassReferencesIndex(pkgsClasses.values().stream().flatMap(List::stream).collect(Collectors.toList())));
+        List<List<PackageGroup>> modules = this.splitIntoModules(pkgGroups);
+
+        for (int moduleIdx = 0; moduleIdx < modules.size(); moduleIdx++)
+            for (PackageGroup pkgGroup: modules.get(moduleIdx))
+                pkgGroup.moduleIdx = moduleIdx;
+
+        int nbrClassesExported = 0;
+        List<String> modulesSizes = new ArrayList<>();
+        try {
+            for (int moduleIdx = 0; moduleIdx < modules.size(); moduleIdx++) {
+                String moduleName = MODULE_NAME_PREFIX + moduleIdx;
+                Set<Integer> moduleDependencies = new TreeSet<>();
+                int moduleClassesNbr = nbrClassesExported;
+
+                for (PackageGroup pkgGroup: modules.get(moduleIdx)) {
+                    for (int dependencyIdx: pkgGroup.dependencies)
+                        moduleDependencies.add(pkgGroups.get(dependencyIdx).moduleIdx);
+
+                    for (String pkgName: pkgGroup.pkgNames) {
+                        for (ClassBuilder cb: pkgsClasses.get(pkgName)) {
+                            new ClassExporter(cb, outputPath + "/" + moduleName + "/" + MODULE_SRC_PATH).exportToFile();
+                            nbrClassesExported++;
+                        }
+                    }
+                }
+
+                modulesSizes.add(moduleName + ": " + (nbrClassesExported - moduleClassesNbr));
+                moduleDependencies.remove(moduleIdx);
+                writeFile(outputPath + "/" + moduleName + "/build.gradle", getModuleBuildStr(moduleDependencies));
+            }
+
+            Optional<ClassBuilder> entryClass = classBuilders.containsKey(BootlegHarnessBuilder.CLASS_NAME)
+                    ? Optional.of(classBuilders.get(BootlegHarnessBuilder.CLASS_NAME))
+                    : ProgramExporter.findEntryClass(classBuilders);
+            writeFile(outputPath + "/" + APP_PROJECT_NAME + "/build.gradle",
+                    getAppBuildStr(modules.size(), entryClass.map(ClassBuilder::getImportStr).orElse(null)));
+            writeFile(outputPath + "/settings.gradle", getSettingsStr(modules.size()));
+            writeFile(outputPath + "/build.gradle", getRootBuildStr());
+            writeFile(outputPath + "/gradle.properties", "org.gradle.parallel=true\norg.gradle.caching=true\n");
+        } catch (ExportFailedException e) {
+            System.err.println("Export failed: " + e.getMessage());
+        }
+
+        exportPhase.close();
+        System.out.println("Successfully exported " + nbrClassesExported + " classes in " + modules.size() + " modules.");
+        System.out.println("Classes per module: " + String.join(", ", modulesSizes));
+        if (modules.size() < this.modulesNbr)
+            System.out.println("Only " + modules.size() + " of the " + this.modulesNbr + " modules asked for could be used, "
+                    + "since packages depending on each other in a cycle share a module.");
+    }
+
+    /**
+     * Groups the packages depending on each other in a cycle, i.e the strongly connected components of the packages'
+     * dependency graph, using Tarjan's algorithm. Iterative, since package chains can be deeper than the call stack.
+     * @param pkgsClasses     The classes of each package.
+     * @param classReferences The index used to find which classes each class refers to.
+     * @return The package groups, each one after all the groups it depends on.
+     */
+    private List<PackageGroup> getPackageGroups(Map<String, List<ClassBuilder>> pkgsClasses,
+                                                ClassReferencesIndex classReferences) {
+        List<String> pkgNames = new ArrayList<>(pkgsClasses.keySet());
+        Map<String, Integer> pkgsIdx = new HashMap<>();
+        for (int i = 0; i < pkgNames.size(); i++)
+            pkgsIdx.put(pkgNames.get(i), i);
+
+        List<List<Integer>> pkgsDependencies = new ArrayList<>();
+        for (String pkgName: pkgNames) {
+            Set<Integer> dependencies = new TreeSet<>();
+            for (ClassBuilder cb: pkgsClasses.get(pkgName))
+                for (String classFullName: classReferences.findReferencedClasses(ClassReferencesIndex.parseAsWritten(cb.getCompilationUnit())))
+                    dependencies.add(pkgsIdx.get(classReferences.getPkgName(classFullName)));
+            dependencies.remove(pkgsIdx.get(pkgName));
+            pkgsDependencies.add(new ArrayList<>(dependencies));
+        }
+
+        int[] pkgsOrder = new int[pkgNames.size()];
+        int[] pkgsLowLink = new int[pkgNames.size()];
+        int[] pkgsGroup = new int[pkgNames.size()];
+        boolean[] isOnStack = new boolean[pkgNames.size()];
+        Arrays.fill(pkgsOrder, -1);
+
+        List<PackageGroup> pkgGroups = new ArrayList<>();
+        Deque<Integer> sccStack = new ArrayDeque<>();
+        int nextOrder = 0;
+
+        for (int rootIdx = 0; rootIdx < pkgNames.size(); rootIdx++) {
+            if (pkgsOrder[rootIdx] != -1)
+                continue;
+
+            // Each frame is a package and the index of the next dependency to visit
+            Deque<int[]> dfsStack = new ArrayDeque<>();
+            dfsStack.push(new int[]{rootIdx, 0});
+            pkgsOrder[rootIdx] = pkgsLowLink[rootIdx] = nextOrder++;
+            sccStack.push(rootIdx);
+            isOnStack[rootIdx] = true;
+
+            while (!dfsStack.isEmpty()) {
+                int[] frame = dfsStack.peek();
+                int pkgIdx = frame[0];
+                List<Integer> dependencies = pkgsDependencies.get(pkgIdx);
+
+                if (frame[1] < dependencies.size()) {
+                    int depIdx = dependencies.get(frame[1]++);
+                    if (pkgsOrder[depIdx] == -1) {
+                        pkgsOrder[depIdx] = pkgsLowLink[depIdx] = nextOrder++;
+                        sccStack.push(depIdx);
+                        isOnStack[depIdx] = true;
+                        dfsStack.push(new int[]{depIdx, 0});
+                    } else if (isOnStack[depIdx]) {
+                        pkgsLowLink[pkgIdx] = Math.min(pkgsLowLink[pkgIdx], pkgsOrder[depIdx]);
+                    }
+                    continue;
+                }
+
+                dfsStack.pop();
+                if (!dfsStack.isEmpty())
+                    pkgsLowLink[dfsStack.peek()[0]] = Math.min(pkgsLowLink[dfsStack.peek()[0]], pkgsLowLink[pkgIdx]);
+
+                if (pkgsLowLink[pkgIdx] != pkgsOrder[pkgIdx])
+                    continue;
+
+                // Groups are completed after all the groups they depend on, so their levels are known by then
+                PackageGroup pkgGroup = new PackageGroup();
+                int memberIdx;
+                do {
+                    memberIdx = sccStack.pop();
+                    isOnStack[memberIdx] = false;
+                    pkgsGroup[memberIdx] = pkgGroups.size();
+                    pkgGroup.pkgNames.add(pkgNames.get(memberIdx));
+                    pkgGroup.classesNbr += pkgsClasses.get(pkgNames.get(memberIdx)).size();
+                } while (memberIdx != pkgIdx);
+
+                for (String pkgName: pkgGroup.pkgNames) {
+                    for (int depIdx: pkgsDependencies.get(pkgsIdx.get(pkgName))) {
+                        if (pkgsGroup[depIdx] != pkgGroups.size()) {
+                            pkgGroup.dependencies.add(pkgsGroup[depIdx]);
+                            pkgGroup.level = Math.max(pkgGroup.level, pkgGroups.get(pkgsGroup[depIdx]).level + 1);
+                        }
+                    }
+                }
+
+                pkgGroups.add(pkgGroup);
+            }
+        }
+
+        return pkgGroups;
+    }
+
+    /**
+     * Splits the package groups into modules of similar sizes, in the order of their levels. A group only depends on groups
+     * of lower levels, so a module only ever depends on the modules before it.
+     * @param pkgGroups The package groups.
+     * @return The package groups of each module.
+     */
+    private List<List<PackageGroup>> splitIntoModules(List<PackageGroup> pkgGroups) {
+        int classesNbr = pkgGroups.stream().mapToInt(g -> g.classesNbr).sum();
+        int moduleTargetSize = (classesNbr + this.modulesNbr - 1) / this.modulesNbr;
+
+        List<PackageGroup> groupsByLevel = pkgGroups.stream()
+                .sorted(Comparator.comparingInt(g -> g.level))
+                .collect(Collectors.toList());
+
+        List<List<PackageGroup>> modules = new ArrayList<>();
+        List<PackageGroup> currentModule = new ArrayList<>();
+        int currentModuleSize = 0;
+
+        for (PackageGroup pkgGroup: groupsByLevel) {
+            currentModule.add(pkgGroup);
+            currentModuleSize += pkgGroup.classesNbr;
+
+            if (currentModuleSize >= moduleTargetSize) {
+                modules.add(currentModule);
+                currentModule = new ArrayList<>();
+                currentModuleSize = 0;
+            }
+        }
+
+        if (!currentModule.isEmpty())
+            modules.add(currentModule);
+        return modules;
+    }
+
+    private static String getSettingsStr(int modulesNbr) {
+        StringBuilder settingsStr = new StringBuilder("rootProject.name = 'code_output_modules'\n\n");
+        for (int moduleIdx = 0; moduleIdx < modulesNbr; moduleIdx++)
+            settingsStr.append("include '").append(MODULE_NAME_PREFIX).append(moduleIdx).append("'\n");
+        return settingsStr.append("include '").append(APP_PROJECT_NAME).append("'\n").toString();
+    }
+
+    private static String getRootBuildStr() {
+        return "subprojects {\n"
+                + "    apply plugin: 'java'\n\n"
+                + "    description = 'Generated code output.'\n\n"
+                + "    compileJava {\n"
+                + "        sourceCompatibility = '1.8'\n"
+                + "        targetCompatibility = '1.8'\n"
+                + "    }\n\n"
+                + "    tasks.withType(JavaCompile) {\n"
+                + "        options.encoding = 'UTF-8'\n"
+                + "    }\n"
+                + "}\n";
+    }
+
+    private static String getModuleBuildStr(Set<Integer> moduleDependencies) {
+        // Generated classes expose the classes of other modules in their signatures, hence "api"
+        StringBuilder buildStr = new StringBuilder("apply plugin: 'java-library'\n\ndependencies {\n");
+        for (int dependencyIdx: moduleDependencies)
+            buildStr.append("    api project(':").append(MODULE_NAME_PREFIX).append(dependencyIdx).append("')\n");
+        return buildStr.append("}\n").toString();
+    }
+
+    private static String getAppBuildStr(int modulesNbr, String mainClassName) {
+        // Depends on every module, since some classes are only loaded through reflection
+        StringBuilder buildStr = new StringBuilder("apply plugin: 'application'\n\ndependencies {\n");
+        for (int moduleIdx = 0; moduleIdx < modulesNbr; moduleIdx++)
+            buildStr.append("    implementation project(':").append(MODULE_NAME_PREFIX).append(moduleIdx).append("')\n");
+        buildStr.append("}\n");
+
+        if (mainClassName != null)
+            buildStr.append("\napplication {\n    mainClass = '").append(mainClassName).append("'\n}\n");
+        return buildStr.toString();
+    }
+
+    private static void writeFile(String path, String contents) throws ExportFailedException {
+        try {
+            FileUtils.writeStringToFile(new File(path), contents, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new ExportFailedException("IOException: " + e.getMessage());
+        }
+    }
+}
@@ -1,28 +1,53 @@
 package com.github.octavelarose.bootleg.export;
 
+import com.github.octavelarose.bootleg.builders.GenerationSession;
 import com.github.octavelarose.bootleg.builders.programs.classes.ClassBuilder;
+import com.github.octavelarose.bootleg.builders.programs.classes.JmhBenchmarkBuilder;
+import com.github.octavelarose.bootleg.metrics.BuildMetrics;
 import org.apache.commons.io.FileUtils;
 
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Optional;
 
 public class ProgramExporter {
-    static String DEFAULT_PKG_OUTPUT_PATH = "./code_output/src/main/java";
+    private final String outputPath;
+    private final String jmhOutputPath;
+
+    /**
+     * Exports to the output location of the current generation session.
+     */
+    public ProgramExporter() {
+        this(GenerationSession.current().getOutputPath(), GenerationSession.current().getJmhOutputPath());
+    }
+
+    /**
+     * @param outputPath    The directory to export the program to. Its content gets deleted beforehand.
+     * @param jmhOutputPath The directory to export the JMH benchmarks to. Its content gets deleted beforehand.
+     */
+    public ProgramExporter(String outputPath, String jmhOutputPath) {
+        this.outputPath = outputPath;
+        this.jmhOutputPath = jmhOutputPath;
+    }
 
     public void export(HashMap<String, ClassBuilder> classBuilders) {
+        BuildMetrics.Phase exportPhase = GenerationSession.current().getMetrics().startPhase("export");
         ArrayList<ClassExporter> classExporters = new ArrayList<>();
         int nbrClassesExported = 0;
 
         try {
-            FileUtils.deleteDirectory(new File(DEFAULT_PKG_OUTPUT_PATH));
+            FileUtils.deleteDirectory(new File(this.outputPath));
+            FileUtils.deleteDirectory(new File(this.jmhOutputPath));
         } catch (IOException e) {
             System.err.println("Emptying the output directory failed. Exporting anyway.");
         }
 
+        // JMH benchmarks go to the source set of the JMH plugin, so that the program itself doesn't depend on JMH
         for (ClassBuilder builder : classBuilders.values())
-            classExporters.add(new ClassExporter(builder, DEFAULT_PKG_OUTPUT_PATH));
+            classExporters.add(new ClassExporter(builder,
+                    builder instanceof JmhBenchmarkBuilder ? this.jmhOutputPath : this.outputPath));
 
         try {
             for (ClassExporter exporter : classExporters) {
@@ -34,6 +59,17 @@ public class ProgramExporter {
             System.err.println("Export failed: " + e.getMessage());
         }
 
+        exportPhase.close();
         System.out.println("Successfully exported " + nbrClassesExported + " classes.");
     }
+
+    /**
+     * @param classBuilders The classes of a program.
+     * @return The first class with a main method, i.e the program's entry point.
+     */
+    static Optional<ClassBuilder> findEntryClass(HashMap<String, ClassBuilder> classBuilders) {
+        return classBuilders.values().stream()
+                .filter(cb -> cb.getMethods().stream().anyMatch(m -> m.getNameAsString().equals("main") && m.isStatic()))
+                .findFirst();
+    }
 }
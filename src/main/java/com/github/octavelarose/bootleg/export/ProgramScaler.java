@@ -0,0 +1,356 @@
+package com.github.octavelarose.bootleg.export;
+
+import com.github.javaparser.ParseProblemException;
+import com.github.javaparser.StaticJavaParser;
+import com.github.javaparser.ast.CompilationUnit;
+import com.github.javaparser.ast.Node;
+import com.github.javaparser.ast.body.BodyDeclaration;
+import com.github.javaparser.ast.body.CallableDeclaration;
+import com.github.javaparser.ast.body.ClassOrInterfaceDeclaration;
+import com.github.javaparser.ast.body.FieldDeclaration;
+import com.github.javaparser.ast.body.TypeDeclaration;
+import com.github.javaparser.ast.body.VariableDeclarator;
+import com.github.javaparser.ast.expr.AssignExpr;
+import com.github.javaparser.ast.expr.BinaryExpr;
+import com.github.javaparser.ast.expr.IntegerLiteralExpr;
+import com.github.javaparser.ast.expr.MethodCallExpr;
+import com.github.javaparser.ast.expr.ObjectCreationExpr;
+import com.github.javaparser.ast.stmt.BlockStmt;
+import com.github.octavelarose.bootleg.builders.GenerationSession;
+import com.github.octavelarose.bootleg.builders.programs.classes.ClassBuilder;
+import com.github.octavelarose.bootleg.builders.programs.classes.EntryPointBuilder;
+import com.github.octavelarose.bootleg.builders.programs.classes.JmhBenchmarkBuilder;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.SplittableRandom;
+
+/**
+ * Scales a generated program up to a chosen size, by exporting perturbed copies of all of its classes next to the originals.
+ * Copy K of a class "pkg.Foo" is "copyK.pkg.Foo_K", with its integer constants varied a little, and a share of its
+ * references to other classes rewired to other copies, so that the copies form one program with a call structure like
+ * the original's rather than N disjoint ones.
+ * Only the classes whose copies are interchangeable get rewired to: public classes of named packages, whose members are
+ * all public or private and whose signatures use no class of the program, so that no value has to be passed from one
+ * copy's classes to another's, and no package-private member is used across copies.
+ * Each copy is parsed back from the original's source code, and its references to classes renamed in the AST, so that
+ * string literals and member names are left alone.
+ * Copies are generated and written one class at a time, so memory use doesn't grow with the number of copies.
+ */
+public class ProgramScaler {
+    public static final String ENTRY_POINT_NAME = "ScaledHarness";
+
+    private static final String COPY_PKG_PREFIX = "copy";
+    private static final String COPY_CLASS_SUFFIX = "_";
+
+    // How much integer constants can vary in copies, relative to their original value.
+    private static final double CONSTANTS_VARIATION = 0.1;
+
+    // Literals under this value may be passed as bytes, so their copies are kept under it.
+    private static final int BYTE_LITERAL_LIMIT = 127;
+
+    private final int scaleFactor;
+    private double rewiredShare = 0.1;
+    private long seed = 0;
+
+    private ClassReferencesIndex classReferences;
+
+    // The full names of the classes references can be rewired to.
+    private Set<String> rewirableClasses;
+
+    /**
+     * @param scaleFactor The size of the scaled program, as a multiple of the original one. The original counts as one copy.
+     */
+    public ProgramScaler(int scaleFactor) {
+        this.scaleFactor = Math.max(scaleFactor, 1);
+    }
+
+    /**
+     * @param targetLoc     The number of lines of code the scaled program should have, at least.
+     * @param classBuilders The classes of the original program.
+     * @return A program scaler reaching the target size.
+     */
+    public static ProgramScaler fromTargetLoc(long targetLoc, HashMap<String, ClassBuilder> classBuilders) {
+        long originalLoc = 0;
+        for (ClassBuilder cb: classBuilders.values())
+            originalLoc += cb.getCompilationUnit().toString().split("\n").length;
+
+        int scaleFactor = (int) Math.min(Integer.MAX_VALUE, (targetLoc + originalLoc - 1) / Math.max(originalLoc, 1));
+        System.out.println("Original program: " + originalLoc + " lines, scaling it by " + scaleFactor + ".");
+        return new ProgramScaler(scaleFactor);
+    }
+
+    /**
+     * @param rewiredShare The share of references to classes of other packages that target another copy, between 0 and 1.
+     * @return A this instance.
+     */
+    public ProgramScaler setRewiredShare(double rewiredShare) {
+        this.rewiredShare = Math.max(0, Math.min(rewiredShare, 1));
+        return this;
+    }
+
+    /**
+     * @param seed The seed the perturbations are derived from, so that a scaled program can be generated again identically.
+     * @return A this instance.
+     */
+    public ProgramScaler setSeed(long seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    /**
+     * Exports the copies of the program, and an entry point running the original one then every copy in turn.
+     * Expects the original program to be exported already.
+     * @param classBuilders The classes of the original program.
+     */
+    public void export(HashMap<String, ClassBuilder> classBuilders) {
+        this.export(classBuilders, GenerationSession.current().getOutputPath());
+    }
+
+    /**
+     * @param classBuilders The classes of the original program.
+     * @param outputPath    The directory the original program was exported to.
+     */
+    public void export(HashMap<String, ClassBuilder> classBuilders, String outputPath) {
+        if (this.scaleFactor == 1)
+            return;
+
+        this.classReferences = new ClassReferencesIndex(classBuilders.values());
+        int nbrClassesExported = 0;
+
+        try {
+            this.rewirableClasses = new HashSet<>();
+            for (ClassBuilder cb: classBuilders.values())
+                if (this.isRewirable(cb))
+                    this.rewirableClasses.add(cb.getImportStr());
+
+            for (int copyIdx = 1; copyIdx < this.scaleFactor; copyIdx++) {
+                for (ClassBuilder cb: classBuilders.values()) {
+                    // Benchmarking the original program's roots is enough
+                    if (cb instanceof JmhBenchmarkBuilder)
+                        continue;
+                    this.exportCopy(cb, copyIdx, outputPath);
+                    nbrClassesExported++;
+                }
+            }
+
+            Optional<ClassBuilder> entryClass = ProgramExporter.findEntryClass(classBuilders);
+            if (entryClass.isPresent()) {
+                new ClassExporter(this.getEntryPoint(entryClass.get()), outputPath).exportToFile();
+                nbrClassesExported++;
+            }
+        } catch (ExportFailedException e) {
+            System.err.println("Export failed: " + e.getMessage());
+        }
+
+        System.out.println("Successfully exported " + nbrClassesExported + " classes for "
+                + (this.scaleFactor - 1) + " copies of the program.");
+    }
+
+    /**
+     * Writes one copy of a class, whose CompilationUnit is discarded right after.
+     * @param cb         The original class.
+     * @param copyIdx    The index of the copy, from 1 on.
+     * @param outputPath The directory the program is exported to.
+     * @throws ExportFailedException If writing the class fails.
+     */
+    private void exportCopy(ClassBuilder cb, int copyIdx, String outputPath) throws ExportFailedException {
+        CompilationUnit copyCu = parseAsWritten(cb);
+        String pkgName = ClassReferencesIndex.getPkgName(copyCu);
+
+        copyCu.setPackageDeclaration(getCopyPkgName(pkgName, copyIdx));
+        TypeDeclaration<?> copyType = copyCu.getType(0);
+        String copyName = getCopyClassName(copyType.getNameAsString(), copyIdx);
+        copyType.setName(copyName);
+        copyType.getConstructors().forEach(c -> c.setName(copyName));
+
+        this.perturbConstants(copyCu, new SplittableRandom(Objects.hash(this.seed, copyIdx, cb.getImportStr())));
+        this.classReferences.rewriteReferences(copyCu,
+                (reference, classFullName) -> this.getCopyReference(reference, classFullName, cb.getImportStr(), copyIdx));
+
+        new ClassExporter(copyCu, outputPath).exportToFile();
+    }
+
+    /**
+     * @param cb The original class.
+     * @return A copy of its compilation unit, parsed from its source code.
+     * @throws ExportFailedException If the source code of the class can't be parsed back.
+     */
+    private static CompilationUnit parseAsWritten(ClassBuilder cb) throws ExportFailedException {
+        try {
+            return ClassReferencesIndex.parseAsWritten(cb.getCompilationUnit());
+        } catch (ParseProblemException e) {
+            throw new ExportFailedException("Parsing back " + cb.getImportStr() + " failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * @param cb An original class.
+     * @return Whether the references to the class can point to any copy of it, see the class' Javadoc.
+     * @throws ExportFailedException If the source code of the class can't be parsed back.
+     */
+    private boolean isRewirable(ClassBuilder cb) throws ExportFailedException {
+        if (cb instanceof JmhBenchmarkBuilder)
+            return false;
+
+        // Classes of the default package can't be referred to from the copies' packages
+        CompilationUnit cu = parseAsWritten(cb);
+        if (ClassReferencesIndex.getPkgName(cu).isEmpty() || !cu.getType(0).isClassOrInterfaceDeclaration())
+            return false;
+
+        ClassOrInterfaceDeclaration classDecl = cu.getType(0).asClassOrInterfaceDeclaration();
+        if (!classDecl.isPublic() || classDecl.isInterface())
+            return false;
+
+        List<Node> signatureNodes = new ArrayList<>();
+        signatureNodes.addAll(classDecl.getExtendedTypes());
+        signatureNodes.addAll(classDecl.getImplementedTypes());
+
+        for (BodyDeclaration<?> member: classDecl.getMembers()) {
+            if (member.isInitializerDeclaration())
+                continue;
+            if (member.isFieldDeclaration()) {
+                FieldDeclaration field = member.asFieldDeclaration();
+                if (field.isPrivate())
+                    continue;
+                if (!field.isPublic())
+                    return false;
+                field.getVariables().forEach(v -> signatureNodes.add(v.getType()));
+            } else if (member.isCallableDeclaration()) {
+                CallableDeclaration<?> callable = member.asCallableDeclaration();
+                if (callable.isPrivate())
+                    continue;
+                if (!callable.isPublic())
+                    return false;
+                callable.getParameters().forEach(p -> signatureNodes.add(p.getType()));
+                signatureNodes.addAll(callable.getThrownExceptions());
+                if (callable.isMethodDeclaration())
+                    signatureNodes.add(callable.asMethodDeclaration().getType());
+            } else {
+                return false;
+            }
+        }
+
+        for (Node signatureNode: signatureNodes)
+            if (!this.classReferences.findReferencedClasses(signatureNode).isEmpty())
+                return false;
+        return true;
+    }
+
+    /**
+     * Varies the integer constants used as arguments and arithmetic operands. Array lengths, loop bounds, comparisons,
+     * divisors and shift distances are left as they are, as changing them could change the program's behaviour and not
+     * just its values.
+     * @param cu  The class to modify.
+     * @param rnd The source of the variations.
+     */
+    private void perturbConstants(CompilationUnit cu, SplittableRandom rnd) {
+        for (IntegerLiteralExpr literal: cu.findAll(IntegerLiteralExpr.class, ProgramScaler::isPerturbable))
+            literal.setValue(String.valueOf(perturbValue(Integer.parseInt(literal.getValue()), rnd)));
+    }
+
+    private static boolean isPerturbable(IntegerLiteralExpr literal) {
+        if (!literal.getValue().matches("\\d{1,9}"))
+            return false;
+
+        Optional<Node> parent = literal.getParentNode();
+        if (parent.isEmpty())
+            return false;
+
+        if (parent.get() instanceof MethodCallExpr)
+            return ((MethodCallExpr) parent.get()).getArguments().contains(literal);
+        if (parent.get() instanceof ObjectCreationExpr || parent.get() instanceof VariableDeclarator)
+            return true;
+        if (parent.get() instanceof AssignExpr) {
+            // Compound assignments like "x /= 3" and "x <<= 2" have divisors and shift distances too
+            switch (((AssignExpr) parent.get()).getOperator()) {
+                case DIVIDE: case REMAINDER: case LEFT_SHIFT: case SIGNED_RIGHT_SHIFT: case UNSIGNED_RIGHT_SHIFT:
+                    return false;
+                default:
+                    return true;
+            }
+        }
+        if (parent.get() instanceof BinaryExpr) {
+            switch (((BinaryExpr) parent.get()).getOperator()) {
+                case PLUS: case MINUS: case MULTIPLY: case XOR: case BINARY_OR:
+                    return true;
+                default:
+                    return false;
+            }
+        }
+        return false;
+    }
+
+    private static int perturbValue(int value, SplittableRandom rnd) {
+        if (value == 0)
+            return value;
+
+        int maxDelta = (int) (value * CONSTANTS_VARIATION);
+        int newValue = Math.max(1, value + rnd.nextInt(2 * maxDelta + 1) - maxDelta);
+        return value < BYTE_LITERAL_LIMIT ? Math.min(newValue, BYTE_LITERAL_LIMIT - 1) : newValue;
+    }
+
+    /**
+     * Makes a reference to another class in a copy point to a copy too. Every reference to a class from a copy points
+     * to the same copy of it, so that the types the copy's classes pass values as agree, and references from a class to
+     * itself always stay in its own copy, since they may use private members.
+     * @param reference         The reference to the class, either its full name or its simple name.
+     * @param classFullName     The full name of the class.
+     * @param fromClassFullName The full name of the original class the reference is in.
+     * @param fromCopyIdx       The copy the reference is in.
+     * @return The reference to the class in the copy it should point to.
+     */
+    private String getCopyReference(String reference, String classFullName, String fromClassFullName, int fromCopyIdx) {
+        int toCopyIdx = fromCopyIdx;
+
+        if (!classFullName.equals(fromClassFullName) && this.rewirableClasses.contains(classFullName)) {
+            SplittableRandom rnd = new SplittableRandom(Objects.hash(this.seed, fromCopyIdx, classFullName));
+            if (rnd.nextDouble() < this.rewiredShare)
+                toCopyIdx = (fromCopyIdx + 1 + rnd.nextInt(this.scaleFactor - 1)) % this.scaleFactor;
+        }
+
+        String toPkgName = this.classReferences.getPkgName(classFullName);
+        String fromPkgName = this.classReferences.getPkgName(fromClassFullName);
+
+        // Simple names only stay simple within the same package and copy
+        if (!reference.equals(classFullName) && (!toPkgName.equals(fromPkgName) || toCopyIdx != fromCopyIdx))
+            reference = classFullName;
+
+        if (toCopyIdx == 0)
+            return reference;
+
+        String simpleName = classFullName.substring(classFullName.lastIndexOf('.') + 1);
+        String copySimpleName = getCopyClassName(simpleName, toCopyIdx);
+        return reference.equals(classFullName) ? getCopyPkgName(toPkgName, toCopyIdx) + "." + copySimpleName : copySimpleName;
+    }
+
+    /**
+     * @param entryClass The class of the original entry point.
+     * @return An entry point running the original program, then each of its copies.
+     */
+    private ClassBuilder getEntryPoint(ClassBuilder entryClass) {
+        String pkgName = ClassReferencesIndex.getPkgName(entryClass.getCompilationUnit());
+        BlockStmt mainBody = new BlockStmt().addStatement(entryClass.getImportStr() + ".main(args);");
+
+        for (int copyIdx = 1; copyIdx < this.scaleFactor; copyIdx++)
+            mainBody.addStatement(getCopyPkgName(pkgName, copyIdx) + "."
+                    + getCopyClassName(entryClass.getName(), copyIdx) + ".main(args);");
+
+        EntryPointBuilder entryPoint = new EntryPointBuilder(ENTRY_POINT_NAME, null, mainBody);
+        entryPoint.getMethods().get(0).addThrownException(StaticJavaParser.parseClassOrInterfaceType("Exception"));
+        return entryPoint;
+    }
+
+    private static String getCopyPkgName(String pkgName, int copyIdx) {
+        return COPY_PKG_PREFIX + copyIdx + (pkgName.isEmpty() ? "" : "." + pkgName);
+    }
+
+    private static String getCopyClassName(String className, int copyIdx) {
+        return className + COPY_CLASS_SUFFIX + copyIdx;
+    }
+}
@@ -0,0 +1,181 @@
+package com.github.octavelarose.bootleg.metrics;
+
+import com.github.javaparser.ast.stmt.BlockStmt;
+import com.github.javaparser.ast.stmt.Statement;
+import com.github.octavelarose.bootleg.builders.GenerationSession;
+import com.github.octavelarose.bootleg.builders.programs.classes.ClassBuilder;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Records how long each phase of the program generation takes and how much it allocates, along with counts about the
+ * generated program, and writes them to a JSON report. Each phase is also recorded as a JFR event.
+ * The allocations of a phase include those of the tasks it runs in parallel, which report them with addWorkerAllocatedBytes.
+ * Each generation session has its own metrics.
+ * Usage: "try (BuildMetrics.Phase phase = GenerationSession.current().getMetrics().startPhase("parse")) { ... }".
+ */
+public class BuildMetrics {
+    private final GenerationSession session;
+    private final List<Phase> phases = new ArrayList<>();
+    private final Map<String, Long> counts = new LinkedHashMap<>();
+
+    // The bytes allocated by parallel tasks run on other threads than the session's.
+    private final LongAdder workersAllocatedBytes = new LongAdder();
+
+    // Only HotSpot's ThreadMXBean can give the bytes allocated by a thread
+    private static final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+
+    /**
+     * A phase of the program generation, recorded when closed.
+     */
+    public static class Phase implements AutoCloseable {
+        private final BuildMetrics metrics;
+        private final String name;
+        private final BuildPhaseEvent event = new BuildPhaseEvent();
+        private final long startNs;
+        private final long startAllocatedBytes;
+        private long wallTimeNs;
+        private long allocatedBytes;
+        private long eventsNbr = 0;
+
+        private Phase(BuildMetrics metrics, String name) {
+            this.metrics = metrics;
+            this.name = name;
+            this.event.begin();
+            this.startAllocatedBytes = metrics.getSessionAllocatedBytes();
+            this.startNs = System.nanoTime();
+        }
+
+        /**
+         * @param eventsNbr The number of calltrace events processed during the phase, to compute a throughput.
+         */
+        public void setEventsNbr(long eventsNbr) {
+            this.eventsNbr = eventsNbr;
+        }
+
+        @Override
+        public void close() {
+            this.wallTimeNs = System.nanoTime() - this.startNs;
+            this.allocatedBytes = this.metrics.getSessionAllocatedBytes() - this.startAllocatedBytes;
+
+            this.event.phase = this.name;
+            this.event.allocatedBytes = this.allocatedBytes;
+            this.event.eventsNbr = this.eventsNbr;
+            this.event.commit();
+
+            synchronized (this.metrics.phases) {
+                this.metrics.phases.add(this);
+            }
+        }
+    }
+
+    /**
+     * @param session The session whose program generation gets measured.
+     */
+    public BuildMetrics(GenerationSession session) {
+        this.session = session;
+    }
+
+    /**
+     * @param name The name of the phase, like "parse".
+     * @return The started phase, to close once it's over.
+     */
+    public Phase startPhase(String name) {
+        return new Phase(this, name);
+    }
+
+    /**
+     * @param bytes The bytes allocated by a task of the session run on another thread.
+     */
+    public void addWorkerAllocatedBytes(long bytes) {
+        this.workersAllocatedBytes.add(bytes);
+    }
+
+    /**
+     * @return The bytes allocated by the current thread and the session's parallel tasks so far.
+     */
+    private long getSessionAllocatedBytes() {
+        return getAllocatedBytes() + this.workersAllocatedBytes.sum();
+    }
+
+    /**
+     * @param name  The name of the count, like "classes".
+     * @param value Its value.
+     */
+    public synchronized void setCount(String name, long value) {
+        counts.put(name, value);
+    }
+
+    /**
+     * Counts the classes, methods and statements of a generated program.
+     * @param classBuilders The classes of the program.
+     */
+    public void countProgram(HashMap<String, ClassBuilder> classBuilders) {
+        long methodsNbr = 0;
+        long statementsNbr = 0;
+
+        for (ClassBuilder classBuilder: classBuilders.values()) {
+            methodsNbr += classBuilder.getMethods().size() + classBuilder.getConstructors().size();
+            // Blocks only group other statements
+            statementsNbr += classBuilder.getCompilationUnit().findAll(Statement.class, s -> !(s instanceof BlockStmt)).size();
+        }
+
+        setCount("classes", classBuilders.size());
+        setCount("methods", methodsNbr);
+        setCount("statements", statementsNbr);
+    }
+
+    /**
+     * Writes the report of the program generation, i.e its phases and counts.
+     * @param filename The name of the JSON file to write.
+     * @throws IOException If writing the file fails.
+     */
+    public synchronized void writeReport(String filename) throws IOException {
+        setCount("seed", this.session.getSeed());
+        setCount("typeCacheHits", this.session.getTypeCacheHits().sum());
+        setCount("typeCacheMisses", this.session.getTypeCacheMisses().sum());
+
+        try (PrintWriter writer = new PrintWriter(filename)) {
+            writer.println("{");
+            writer.println("  \"phases\": [");
+            for (int i = 0; i < phases.size(); i++) {
+                Phase phase = phases.get(i);
+                double wallTimeS = phase.wallTimeNs / 1e9;
+                writer.print("    {\"name\": \"" + phase.name + "\""
+                        + ", \"wallTimeMs\": " + phase.wallTimeNs / 1_000_000
+                        + ", \"allocatedBytes\": " + phase.allocatedBytes
+                        + ", \"events\": " + phase.eventsNbr
+                        + ", \"eventsPerSecond\": " + (wallTimeS > 0 ? Math.round(phase.eventsNbr / wallTimeS) : 0) + "}");
+                writer.println(i < phases.size() - 1 ? "," : "");
+            }
+            writer.println("  ],");
+
+            writer.println("  \"counts\": {");
+            int countIdx = 0;
+            for (Map.Entry<String, Long> count: counts.entrySet())
+                writer.println("    \"" + count.getKey() + "\": " + count.getValue() + (++countIdx < counts.size() ? "," : ""));
+            writer.println("  }");
+            writer.println("}");
+        }
+
+        System.out.println("Wrote build report to " + filename);
+    }
+
+    /**
+     * @return The bytes allocated by the current thread so far, or 0 if the JVM can't measure them.
+     */
+    public static long getAllocatedBytes() {
+        if (threadMXBean instanceof com.sun.management.ThreadMXBean)
+            return ((com.sun.management.ThreadMXBean) threadMXBean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        return 0;
+    }
+}
@@ -0,0 +1,27 @@
+package com.github.octavelarose.bootleg.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JFR event spanning a phase of the program generation, so that recordings of the generator show its phases.
+ */
+@Name("bootleg.BuildPhase")
+@Label("Build Phase")
+@Category("Bootleg")
+@Description("A phase of the program generation, like parsing the calltrace or exporting the program")
+class BuildPhaseEvent extends Event {
+    @Label("Phase")
+    String phase;
+
+    @Label("Allocated")
+    @DataAmount
+    long allocatedBytes;
+
+    @Label("Calltrace Events")
+    long eventsNbr;
+}
@@ -0,0 +1,304 @@
+package com.github.octavelarose.bootleg.metrics;
+
+import com.github.octavelarose.bootleg.builders.BuildFailedException;
+import org.apache.commons.io.FileUtils;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Runs an exported program under a matrix of JVM configurations, and compares them: runtime of each iteration,
+ * GC pauses from the GC log, and JIT compilations and deoptimizations from -XX:+PrintCompilation.
+ * The matrix file gives one axis per line, with its alternatives separated by "|", and every combination gets run:
+ * "-XX:+UseSerialGC | -XX:+UseG1GC" then "-Xmx256m | -Xmx2g" gives 4 configurations. An empty alternative keeps the
+ * JVM's default, and lines starting with "#" are comments.
+ * Each configuration gets its own JVM, started from the JDK running the generator, which needs to be JDK 9+ for GC logs.
+ * The output directory gets the GC log and output of each configuration, the runtime of every iteration in
+ * "iterations.csv", and the comparison table in "report.md".
+ */
+public class JvmMatrixRunner {
+    private static final String COMMENT_PREFIX = "#";
+    private static final String ALTERNATIVES_SEPARATOR = "\\|";
+    private static final String DEFAULT_CONFIG_NAME = "(defaults)";
+
+    // Entry points in order of preference, BootlegHarness for programs generated from calltraces, Harness for synthetic ones
+    private static final List<String> ENTRY_POINTS = Arrays.asList("BootlegHarness", "Harness");
+
+    // "Sieve: iterations=1 runtime: 1234us" for BootlegHarness, "Iteration 0 (us): 1234" for Harness
+    private static final Pattern ITERATION_PATTERN = Pattern.compile("iterations=1 runtime: (\\d+)us|^Iteration \\d+ \\(us\\): (\\d+)");
+    // "     52    4       3       java.lang.String::hashCode (60 bytes)"
+    private static final Pattern COMPILATION_PATTERN = Pattern.compile("^\\s*\\d+\\s+\\d+\\s.*::");
+    // "[0.024s][info][gc] GC(0) Pause Young (Normal) (G1 Evacuation Pause) 23M->2M(256M) 1.734ms"
+    private static final Pattern GC_PAUSE_PATTERN = Pattern.compile("Pause.* (\\d+(?:\\.\\d+)?)ms$");
+
+    private final String matrixFilename;
+    private final String programPath;
+    private final String outputPath;
+    private int iterationsNbr = 10;
+
+    /**
+     * The results of running the program with a configuration.
+     */
+    private static class ConfigResult {
+        private final String name;
+        private final List<Long> iterationTimesUs = new ArrayList<>();
+        private int exitCode;
+        private int gcPausesNbr = 0;
+        private double gcPausesMs = 0;
+        private int compilationsNbr = 0;
+        private int deoptimizationsNbr = 0;
+
+        private ConfigResult(String name) {
+            this.name = name;
+        }
+
+        private boolean hasSucceeded() {
+            return this.exitCode == 0 && !this.iterationTimesUs.isEmpty();
+        }
+
+        private long getMedianUs() {
+            List<Long> sortedTimes = new ArrayList<>(this.iterationTimesUs);
+            Collections.sort(sortedTimes);
+            return sortedTimes.get(sortedTimes.size() / 2);
+        }
+    }
+
+    /**
+     * @param matrixFilename The matrix file.
+     * @param programPath    The directory the sources of the program were exported to.
+     * @param outputPath     The directory to write the results to. Its content gets deleted beforehand.
+     */
+    public JvmMatrixRunner(String matrixFilename, String programPath, String outputPath) {
+        this.matrixFilename = matrixFilename;
+        this.programPath = programPath;
+        this.outputPath = outputPath;
+    }
+
+    /**
+     * @param iterationsNbr How many measured iterations the program runs with each configuration. None are warmup ones,
+     *                      since warmup is part of what JVM options change.
+     */
+    public JvmMatrixRunner setIterationsNbr(int iterationsNbr) {
+        this.iterationsNbr = iterationsNbr;
+        return this;
+    }
+
+    /**
+     * Compiles the program, runs it with every configuration, and writes the results.
+     * @throws BuildFailedException If the matrix file can't be read, or the program can't be compiled.
+     */
+    public void run() throws BuildFailedException {
+        List<List<String>> configs = this.parseMatrix();
+        File classesDir = new File(this.outputPath, "classes");
+
+        try {
+            FileUtils.deleteDirectory(new File(this.outputPath));
+        } catch (IOException e) {
+            System.err.println("Emptying the output directory failed. Running anyway.");
+        }
+
+        String entryPoint = this.compileProgram(classesDir);
+        System.out.println("Running " + entryPoint + " with " + configs.size() + " JVM configurations, "
+                + this.iterationsNbr + " iterations each.");
+
+        List<ConfigResult> results = new ArrayList<>();
+        for (int i = 0; i < configs.size(); i++)
+            results.add(this.runConfig(i, configs.get(i), classesDir, entryPoint));
+
+        try {
+            this.writeIterationTimes(results);
+            String table = getComparisonTable(results);
+            Files.write(Paths.get(this.outputPath, "report.md"), table.getBytes(StandardCharsets.UTF_8));
+            System.out.println("\n" + table);
+        } catch (IOException e) {
+            throw new BuildFailedException("Couldn't write the results: " + e.getMessage());
+        }
+    }
+
+    /**
+     * @return Every combination of the alternatives of each axis of the matrix, as lists of JVM options.
+     */
+    private List<List<String>> parseMatrix() throws BuildFailedException {
+        List<String> lines;
+        try {
+            lines = Files.readAllLines(Paths.get(this.matrixFilename));
+        } catch (IOException e) {
+            throw new BuildFailedException("Couldn't read matrix file: " + e.getMessage());
+        }
+
+        List<List<String>> configs = new ArrayList<>();
+        configs.add(new ArrayList<>());
+
+        for (String line: lines) {
+            if (line.isBlank() || line.trim().startsWith(COMMENT_PREFIX))
+                continue;
+
+            List<List<String>> combinedConfigs = new ArrayList<>();
+            for (List<String> config: configs) {
+                for (String alternative: line.split(ALTERNATIVES_SEPARATOR, -1)) {
+                    List<String> combinedConfig = new ArrayList<>(config);
+                    if (!alternative.isBlank())
+                        combinedConfig.addAll(Arrays.asList(alternative.trim().split("\\s+")));
+                    combinedConfigs.add(combinedConfig);
+                }
+            }
+            configs = combinedConfigs;
+        }
+
+        return configs;
+    }
+
+    /**
+     * @param classesDir The directory to compile the program to.
+     * @return The entry point of the program.
+     */
+    private String compileProgram(File classesDir) throws BuildFailedException {
+        File programDir = new File(this.programPath);
+        String entryPoint = ENTRY_POINTS.stream()
+                .filter(name -> new File(programDir, name + ".java").exists())
+                .findFirst()
+                .orElseThrow(() -> new BuildFailedException("No entry point in " + this.programPath + ", expected one of " + ENTRY_POINTS));
+
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        if (compiler == null)
+            throw new BuildFailedException("No Java compiler available, the generator needs to run on a JDK.");
+
+        Collection<File> sourceFiles = FileUtils.listFiles(programDir, new String[]{"java"}, true);
+        List<String> compilerArgs = new ArrayList<>(Arrays.asList("-nowarn", "-d", classesDir.getPath()));
+        sourceFiles.forEach(file -> compilerArgs.add(file.getPath()));
+
+        System.out.println("Compiling " + sourceFiles.size() + " classes from " + this.programPath + "...");
+        if (!classesDir.mkdirs() || compiler.run(null, null, null, compilerArgs.toArray(new String[0])) != 0)
+            throw new BuildFailedException("Couldn't compile the program in " + this.programPath);
+
+        return entryPoint;
+    }
+
+    private ConfigResult runConfig(int configIdx, List<String> jvmOptions, File classesDir, String entryPoint) throws BuildFailedException {
+        ConfigResult result = new ConfigResult(jvmOptions.isEmpty() ? DEFAULT_CONFIG_NAME : String.join(" ", jvmOptions));
+        File gcLogFile = new File(this.outputPath, "config" + configIdx + "_gc.log");
+        File outputFile = new File(this.outputPath, "config" + configIdx + "_output.txt");
+
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        command.addAll(jvmOptions);
+        command.add("-XX:+PrintCompilation");
+        command.add("-Xlog:gc:file=" + gcLogFile.getPath());
+        command.addAll(Arrays.asList("-cp", classesDir.getPath(), entryPoint));
+        // Both harnesses take the number of iterations first, and BootlegHarness the number of warmup iterations second
+        command.addAll(Arrays.asList(String.valueOf(this.iterationsNbr), "0"));
+
+        System.out.println("[config" + configIdx + "] " + result.name);
+        try {
+            Process process = new ProcessBuilder(command).redirectErrorStream(true).redirectOutput(outputFile).start();
+            result.exitCode = process.waitFor();
+        } catch (IOException e) {
+            throw new BuildFailedException("Couldn't start the JVM: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new BuildFailedException("Interrupted while running configuration " + result.name);
+        }
+
+        this.parseOutput(result, outputFile);
+        if (gcLogFile.exists())
+            this.parseGcLog(result, gcLogFile);
+
+        if (!result.hasSucceeded())
+            System.err.println("Configuration \"" + result.name + "\" failed with exit code " + result.exitCode + ", see " + outputFile.getPath());
+        return result;
+    }
+
+    private void parseOutput(ConfigResult result, File outputFile) throws BuildFailedException {
+        try {
+            for (String line: Files.readAllLines(outputFile.toPath(), StandardCharsets.UTF_8)) {
+                Matcher iterationMatcher = ITERATION_PATTERN.matcher(line);
+                if (iterationMatcher.find())
+                    result.iterationTimesUs.add(Long.parseLong(iterationMatcher.group(1) != null
+                            ? iterationMatcher.group(1) : iterationMatcher.group(2)));
+                else if (COMPILATION_PATTERN.matcher(line).find()) {
+                    if (line.contains("made not entrant"))
+                        result.deoptimizationsNbr++;
+                    else if (!line.contains("made zombie"))
+                        result.compilationsNbr++;
+                }
+            }
+        } catch (IOException e) {
+            throw new BuildFailedException("Couldn't read the output of configuration " + result.name + ": " + e.getMessage());
+        }
+    }
+
+    private void parseGcLog(ConfigResult result, File gcLogFile) throws BuildFailedException {
+        try {
+            for (String line: Files.readAllLines(gcLogFile.toPath(), StandardCharsets.UTF_8)) {
+                Matcher pauseMatcher = GC_PAUSE_PATTERN.matcher(line);
+                if (pauseMatcher.find()) {
+                    result.gcPausesNbr++;
+                    result.gcPausesMs += Double.parseDouble(pauseMatcher.group(1));
+                }
+            }
+        } catch (IOException e) {
+            throw new BuildFailedException("Couldn't read the GC log of configuration " + result.name + ": " + e.getMessage());
+        }
+    }
+
+    private void writeIterationTimes(List<ConfigResult> results) throws IOException {
+        try (PrintWriter writer = new PrintWriter(new File(this.outputPath, "iterations.csv"), StandardCharsets.UTF_8)) {
+            writer.println("configuration,iteration,runtime_us");
+            for (ConfigResult result: results) {
+                for (int i = 0; i < result.iterationTimesUs.size(); i++)
+                    writer.println("\"" + result.name + "\"," + i + "," + result.iterationTimesUs.get(i));
+            }
+        }
+    }
+
+    /**
+     * @param results The results of each configuration, the first one being the baseline.
+     * @return A Markdown table comparing the configurations, their median runtimes being relative to the baseline's.
+     */
+    private static String getComparisonTable(List<ConfigResult> results) {
+        StringBuilder table = new StringBuilder();
+        table.append("| Configuration | First (us) | Median (us) | Min (us) | Mean (us) | vs. baseline | GC pauses | GC pause time (ms) | JIT compilations | Deoptimizations |\n");
+        table.append("|---|---:|---:|---:|---:|---:|---:|---:|---:|---:|\n");
+
+        Long baselineMedianUs = results.get(0).hasSucceeded() ? results.get(0).getMedianUs() : null;
+
+        for (ConfigResult result: results) {
+            table.append("| `").append(result.name).append("` | ");
+            if (!result.hasSucceeded()) {
+                table.append("failed (exit code ").append(result.exitCode).append(") | | | | | | | | |\n");
+                continue;
+            }
+
+            List<Long> times = result.iterationTimesUs;
+            long medianUs = result.getMedianUs();
+            table.append(Arrays.stream(new Object[]{
+                    times.get(0),
+                    medianUs,
+                    Collections.min(times),
+                    Math.round(times.stream().mapToLong(Long::longValue).average().orElse(0)),
+                    baselineMedianUs == null || baselineMedianUs == 0
+                            ? "-" : String.format("%.2fx", (double) medianUs / baselineMedianUs),
+                    result.gcPausesNbr,
+                    String.format("%.2f", result.gcPausesMs),
+                    result.compilationsNbr,
+                    result.deoptimizationsNbr
+            }).map(String::valueOf).collect(Collectors.joining(" | "))).append(" |\n");
+        }
+
+        return table.toString();
+    }
+}
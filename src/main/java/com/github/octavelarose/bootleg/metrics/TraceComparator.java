@@ -0,0 +1,272 @@
+package com.github.octavelarose.bootleg.metrics;
+
+import com.github.octavelarose.bootleg.builders.BuildFailedException;
+import com.github.octavelarose.bootleg.builders.programs.calltraces.CTMethodInfo;
+import com.github.octavelarose.bootleg.builders.programs.calltraces.fileparsers.CTFileParser;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Compares the calltrace of a program with the one recorded by the program generated from it (see CallRecorderClassBuilder),
+ * to tell how faithful the generated program is: how often each method calls each other one, which methods are missing
+ * or extra, and how the time spent in each method itself (its self time) compares between both.
+ * Since the generated program's harness runs the traced entry point several times, call counts are divided by the
+ * number of calls to the first method of each trace.
+ * Usage: "new TraceComparator(originalFilename, recordedFilename).compare().printReport(20)".
+ */
+public class TraceComparator {
+    private static final String ROOT_CALLER = "<root>";
+
+    private final String originalFilename;
+    private final String recordedFilename;
+
+    private TraceProfile original;
+    private TraceProfile recorded;
+
+    /**
+     * The call counts and self times of a calltrace.
+     */
+    private static class TraceProfile {
+        // Method keys are their full name and descriptor, like "som/Sieve.sieve(I)V", so that overloads aren't merged
+        private final Map<String, Long> callCounts = new HashMap<>();
+        private final Map<String, Long> edgeCounts = new HashMap<>();
+        private final Map<String, Long> selfTimes = new HashMap<>();
+        private String rootMethod = null;
+        private long rootCallsNbr = 0;
+        private long unmatchedExitsNbr = 0;
+        private long totalSelfTime = 0;
+
+        /**
+         * A call in progress.
+         */
+        private static class Frame {
+            private final String method;
+            private final long entryTime;
+            private long childrenTime = 0;
+
+            private Frame(String method, long entryTime) {
+                this.method = method;
+                this.entryTime = entryTime;
+            }
+        }
+
+        /**
+         * @param filename The calltrace file.
+         * @return The profile of the calltrace.
+         * @throws BuildFailedException If the file can't be read, or has no calls.
+         */
+        private static TraceProfile fromFile(String filename) throws BuildFailedException {
+            TraceProfile profile = new TraceProfile();
+            Map<String, Deque<Frame>> threadStacks = new HashMap<>();
+
+            for (List<String> ctLine: new CTFileParser(filename).parse().getParsedCT()) {
+                CTMethodInfo ctMethodInfo = new CTMethodInfo(ctLine);
+
+                // Neither are generated as methods
+                if (ctMethodInfo.isLambdaProxy() || ctMethodInfo.isLockEvent())
+                    continue;
+
+                String method = ctMethodInfo.get(CTMethodInfo.FULLNAME) + ctMethodInfo.get(CTMethodInfo.DESCRIPTOR);
+                Deque<Frame> stack = threadStacks.computeIfAbsent(ctMethodInfo.getThreadId(), k -> new ArrayDeque<>());
+
+                if (ctMethodInfo.isFunctionEntry())
+                    profile.addEntry(stack, method, ctMethodInfo.getTimeNs());
+                else
+                    profile.addExit(stack, method, ctMethodInfo.getTimeNs());
+            }
+
+            if (profile.rootMethod == null)
+                throw new BuildFailedException("No calls in calltrace file " + filename);
+            return profile;
+        }
+
+        private void addEntry(Deque<Frame> stack, String method, long time) {
+            if (this.rootMethod == null)
+                this.rootMethod = method;
+            if (stack.isEmpty() && method.equals(this.rootMethod))
+                this.rootCallsNbr++;
+
+            String caller = stack.isEmpty() ? ROOT_CALLER : stack.peek().method;
+            this.edgeCounts.merge(caller + " -> " + method, 1L, Long::sum);
+            this.callCounts.merge(method, 1L, Long::sum);
+            stack.push(new Frame(method, time));
+        }
+
+        private void addExit(Deque<Frame> stack, String method, long time) {
+            // A recorded trace may start in the middle of calls, if its ring buffer wrapped around
+            if (stack.stream().noneMatch(frame -> frame.method.equals(method))) {
+                this.unmatchedExitsNbr++;
+                return;
+            }
+
+            // Calls exited by an exception have no exit of their own, so their time counts as their caller's
+            Frame frame;
+            do {
+                frame = stack.pop();
+            } while (!frame.method.equals(method));
+
+            long duration = Math.max(0, time - frame.entryTime);
+            long selfTime = Math.max(0, duration - frame.childrenTime);
+            this.selfTimes.merge(method, selfTime, Long::sum);
+            this.totalSelfTime += selfTime;
+            if (!stack.isEmpty())
+                stack.peek().childrenTime += duration;
+        }
+
+        private double getRunsNbr() {
+            return Math.max(1, this.rootCallsNbr);
+        }
+
+        /**
+         * @param method A method of the trace.
+         * @return The share of the total self time spent in the method, between 0 and 1.
+         */
+        private double getSelfTimeShare(String method) {
+            return this.totalSelfTime == 0 ? 0 : (double) this.selfTimes.getOrDefault(method, 0L) / this.totalSelfTime;
+        }
+    }
+
+    /**
+     * @param originalFilename The calltrace of the original program.
+     * @param recordedFilename The calltrace recorded by the generated program.
+     */
+    public TraceComparator(String originalFilename, String recordedFilename) {
+        this.originalFilename = originalFilename;
+        this.recordedFilename = recordedFilename;
+    }
+
+    /**
+     * Parses both calltraces.
+     * @return The instance of the TraceComparator calling.
+     * @throws BuildFailedException If a calltrace can't be read.
+     */
+    public TraceComparator compare() throws BuildFailedException {
+        this.original = TraceProfile.fromFile(this.originalFilename);
+        this.recorded = TraceProfile.fromFile(this.recordedFilename);
+        return this;
+    }
+
+    /**
+     * @return The sum of the differences between the number of calls per run of each caller/callee pair of both traces,
+     * relative to the number of calls per run of the original trace. 0 if the generated program makes the same calls.
+     */
+    public double getEdgeCountError() {
+        Set<String> edges = new HashSet<>(this.original.edgeCounts.keySet());
+        edges.addAll(this.recorded.edgeCounts.keySet());
+
+        double errorSum = 0;
+        double originalSum = 0;
+        for (String edge: edges) {
+            double originalCount = this.original.edgeCounts.getOrDefault(edge, 0L) / this.original.getRunsNbr();
+            double recordedCount = this.recorded.edgeCounts.getOrDefault(edge, 0L) / this.recorded.getRunsNbr();
+            errorSum += Math.abs(originalCount - recordedCount);
+            originalSum += originalCount;
+        }
+
+        return originalSum == 0 ? 0 : errorSum / originalSum;
+    }
+
+    /**
+     * @return The methods of the original trace that the generated program never called.
+     */
+    public List<String> getMissingMethods() {
+        return getMethodsNotIn(this.original, this.recorded);
+    }
+
+    /**
+     * @return The methods the generated program called that aren't in the original trace.
+     */
+    public List<String> getExtraMethods() {
+        return getMethodsNotIn(this.recorded, this.original);
+    }
+
+    /**
+     * @return The share of the methods of the original trace that the generated program called, between 0 and 1.
+     */
+    public double getMethodCoverage() {
+        int originalMethodsNbr = this.original.callCounts.size();
+        return (double) (originalMethodsNbr - this.getMissingMethods().size()) / originalMethodsNbr;
+    }
+
+    /**
+     * @return How similar the distributions of self time over methods are, between 0 and 1: 1 minus their total variation distance.
+     */
+    public double getSelfTimeSimilarity() {
+        Set<String> methods = new HashSet<>(this.original.callCounts.keySet());
+        methods.addAll(this.recorded.callCounts.keySet());
+
+        double distance = 0;
+        for (String method: methods)
+            distance += Math.abs(this.original.getSelfTimeShare(method) - this.recorded.getSelfTimeShare(method));
+
+        return 1 - distance / 2;
+    }
+
+    /**
+     * @return The number of exits of the recorded trace without an entry, i.e of calls started before it was recorded.
+     */
+    public long getUnmatchedExitsNbr() {
+        return this.recorded.unmatchedExitsNbr;
+    }
+
+    /**
+     * Prints the comparison of the methods taking the most self time in the original trace, then the scores.
+     * @param maxMethodsNbr The maximum number of methods to print.
+     */
+    public void printReport(int maxMethodsNbr) {
+        System.out.println("Original runs: " + this.original.rootCallsNbr + " (" + this.original.rootMethod + "), recorded runs: "
+                + this.recorded.rootCallsNbr);
+        if (this.recorded.unmatchedExitsNbr > 0)
+            System.out.println("Ignored " + this.recorded.unmatchedExitsNbr + " exits without entries in the recorded trace.");
+
+        List<String> methods = new ArrayList<>(this.original.callCounts.keySet());
+        methods.sort((a, b) -> Long.compare(this.original.selfTimes.getOrDefault(b, 0L), this.original.selfTimes.getOrDefault(a, 0L)));
+
+        System.out.printf("%n%-60s %12s %12s %8s %8s %7s%n", "Method", "Calls/run", "Regen", "Self%", "Regen", "Ratio");
+        for (String method: methods.subList(0, Math.min(maxMethodsNbr, methods.size()))) {
+            double originalShare = this.original.getSelfTimeShare(method);
+            double recordedShare = this.recorded.getSelfTimeShare(method);
+            System.out.printf("%-60s %12.1f %12.1f %7.2f%% %7.2f%% %7s%n",
+                    method,
+                    this.original.callCounts.get(method) / this.original.getRunsNbr(),
+                    this.recorded.callCounts.getOrDefault(method, 0L) / this.recorded.getRunsNbr(),
+                    originalShare * 100,
+                    recordedShare * 100,
+                    originalShare == 0 ? "-" : String.format("%.2f", recordedShare / originalShare));
+        }
+
+        printMethods("Missing methods", this.getMissingMethods(), maxMethodsNbr);
+        printMethods("Extra methods", this.getExtraMethods(), maxMethodsNbr);
+
+        System.out.printf("%nCall edge count error: %.2f%%%n", this.getEdgeCountError() * 100);
+        System.out.printf("Method coverage: %.2f%%%n", this.getMethodCoverage() * 100);
+        System.out.printf("Self time similarity: %.2f%%%n", this.getSelfTimeSimilarity() * 100);
+    }
+
+    private static List<String> getMethodsNotIn(TraceProfile profile, TraceProfile otherProfile) {
+        List<String> methods = new ArrayList<>();
+        for (String method: profile.callCounts.keySet()) {
+            if (!otherProfile.callCounts.containsKey(method))
+                methods.add(method);
+        }
+        methods.sort(String::compareTo);
+        return methods;
+    }
+
+    private static void printMethods(String title, List<String> methods, int maxMethodsNbr) {
+        if (methods.isEmpty())
+            return;
+        System.out.println("\n" + title + " (" + methods.size() + "):");
+        for (String method: methods.subList(0, Math.min(maxMethodsNbr, methods.size())))
+            System.out.println("  " + method);
+        if (methods.size() > maxMethodsNbr)
+            System.out.println("  ...");
+    }
+}
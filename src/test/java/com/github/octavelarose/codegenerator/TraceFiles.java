@@ -0,0 +1,40 @@
+package com.github.octavelarose.codegenerator;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Writes handwritten traces and profiles to temporary files, for the parsers and builders which take file names.
+ */
+public final class TraceFiles {
+
+    /**
+     * A task reading a temporary file.
+     * @param <T> The result of the task.
+     * @param <E> The exception the task can throw, besides IOExceptions.
+     */
+    @FunctionalInterface
+    public interface FileTask<T, E extends Exception> {
+        T call(String fileName) throws IOException, E;
+    }
+
+    private TraceFiles() {
+    }
+
+    /**
+     * @param lines The content of the file.
+     * @param task  Reads the file, given its name.
+     * @return The result of the task. The file gets deleted once it's done.
+     */
+    public static <T, E extends Exception> T withTempFile(List<String> lines, FileTask<T, E> task) throws IOException, E {
+        Path file = Files.createTempFile("bootleg_trace", ".txt");
+        try {
+            Files.write(file, lines);
+            return task.call(file.toString());
+        } finally {
+            Files.delete(file);
+        }
+    }
+}
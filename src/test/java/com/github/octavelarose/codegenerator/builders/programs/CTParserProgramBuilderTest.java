@@ -1,5 +1,6 @@
 package com.github.octavelarose.codegenerator.builders.programs;
 
+import com.github.octavelarose.bootleg.builders.GenerationSession;
 import com.github.octavelarose.bootleg.builders.programs.calltraces.CTParserProgramBuilder;
 import org.junit.Test;
 
@@ -35,7 +36,8 @@ public class CTParserProgramBuilderTest {
 
         for (String fn: ctFiles) {
             try {
-                new CTParserProgramBuilder(fn).build();
+                // A session each, so that traces don't share any state
+                new GenerationSession().call(() -> new CTParserProgramBuilder(fn).build());
                 nbrSuccessful++;
             } catch (Exception e) {
                 System.err.println(e.getMessage());
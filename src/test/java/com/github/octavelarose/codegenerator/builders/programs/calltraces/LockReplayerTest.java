@@ -0,0 +1,68 @@
+package com.github.octavelarose.codegenerator.builders.programs.calltraces;
+
+import com.github.javaparser.ast.stmt.SynchronizedStmt;
+import com.github.octavelarose.bootleg.builders.BuildFailedException;
+import com.github.octavelarose.bootleg.builders.GenerationSession;
+import com.github.octavelarose.bootleg.builders.programs.calltraces.CTParserProgramBuilder;
+import com.github.octavelarose.bootleg.builders.programs.classes.ClassBuilder;
+import com.github.octavelarose.codegenerator.TraceFiles;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LockReplayerTest {
+
+    private HashMap<String, ClassBuilder> buildFromTrace(List<String> lines) throws IOException, BuildFailedException {
+        return TraceFiles.withTempFile(lines,
+                fileName -> new GenerationSession().setSeed(1).call(() -> new CTParserProgramBuilder(fileName).build()));
+    }
+
+    private List<SynchronizedStmt> getCriticalSections(HashMap<String, ClassBuilder> classBuilders) {
+        return classBuilders.get("som/Worker").getCompilationUnit().findAll(SynchronizedStmt.class);
+    }
+
+    @Test
+    public void holdsMonitorForItsSelfTime() throws IOException, BuildFailedException {
+        HashMap<String, ClassBuilder> classBuilders = buildFromTrace(List.of(
+                "> pub/sta ([Ljava/lang/String;)V Harness.main (0ns)",
+                "> pub/con ()V som/Worker.<init> (0ns)",
+                "< pub/con ()V som/Worker.<init> (0ns)",
+                "> pub ()V som/Worker.run (0ns)",
+                "> mon ()V som/Worker.<monitor> (1000ns) l=aa",
+                "< mon ()V som/Worker.<monitor> (6000ns) l=aa",
+                "< pub ()V som/Worker.run (7000ns)",
+                "< pub/sta ([Ljava/lang/String;)V Harness.main (8000ns)"));
+
+        List<SynchronizedStmt> criticalSections = getCriticalSections(classBuilders);
+        assertEquals(1, criticalSections.size());
+        assertTrue(criticalSections.get(0).toString().contains("hold(5000L)"));
+    }
+
+    @Test
+    public void subtractsCalleesTimeFromMonitorHoldTime() throws IOException, BuildFailedException {
+        HashMap<String, ClassBuilder> classBuilders = buildFromTrace(List.of(
+                "> pub/sta ([Ljava/lang/String;)V Harness.main (0ns)",
+                "> pub/con ()V som/Worker.<init> (0ns)",
+                "< pub/con ()V som/Worker.<init> (0ns)",
+                "> pub ()V som/Worker.run (0ns)",
+                "> mon ()V som/Worker.<monitor> (1000ns) l=aa",
+                "> pub ()I som/Worker.count (2000ns)",
+                "> pub ()V som/Worker.step (2500ns)",
+                "< pub ()V som/Worker.step (3000ns)",
+                "< pub ()I som/Worker.count (4000ns)",
+                "< mon ()V som/Worker.<monitor> (6000ns) l=aa",
+                "< pub ()V som/Worker.run (7000ns)",
+                "< pub/sta ([Ljava/lang/String;)V Harness.main (8000ns)"));
+
+        // 5000ns held, 2000ns of which in count(), including step()
+        List<SynchronizedStmt> criticalSections = getCriticalSections(classBuilders);
+        assertEquals(1, criticalSections.size());
+        assertTrue(criticalSections.get(0).toString().contains("hold(3000L)"));
+        assertTrue(criticalSections.get(0).toString().contains("count("));
+    }
+}
@@ -0,0 +1,66 @@
+package com.github.octavelarose.codegenerator.builders.programs.calltraces;
+
+import com.github.octavelarose.bootleg.builders.GenerationSession;
+import com.github.octavelarose.bootleg.builders.programs.calltraces.CTParserProgramBuilder;
+import com.github.octavelarose.bootleg.builders.programs.calltraces.filewriters.SyntheticCalltraceWriter;
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ParallelGenerationTest {
+
+    /**
+     * Generates and exports a program in a pool of the given size, so that its parallel phases run in that pool.
+     * @return The exported sources, by path relative to the output directory.
+     */
+    private Map<String, String> generateInPool(String ctFileName, int parallelism) throws Exception {
+        Path outputDir = Files.createTempDirectory("bootleg_test");
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+
+        try {
+            GenerationSession session = new GenerationSession()
+                    .setSeed(42)
+                    .setOutputPaths(outputDir.resolve("main").toString(), outputDir.resolve("jmh").toString());
+            pool.submit(() -> {
+                session.export(session.call(() -> new CTParserProgramBuilder(ctFileName).build()));
+                return null;
+            }).get();
+
+            Map<String, String> sources = new TreeMap<>();
+            for (File file: FileUtils.listFiles(outputDir.toFile(), new String[]{"java"}, true))
+                sources.put(outputDir.relativize(file.toPath()).toString(), FileUtils.readFileToString(file, "UTF-8"));
+            return sources;
+        } finally {
+            pool.shutdown();
+            FileUtils.deleteDirectory(outputDir.toFile());
+        }
+    }
+
+    @Test
+    public void sameProgramWhateverThePoolSize() throws Exception {
+        Path ctFile = Files.createTempFile("calltrace", ".txt");
+
+        try {
+            new SyntheticCalltraceWriter(20000, 40, 6, 8, 3).write(ctFile.toString(), null);
+
+            Map<String, String> sequentialSources = generateInPool(ctFile.toString(), 1);
+            Map<String, String> parallelSources = generateInPool(ctFile.toString(), 8);
+
+            assertTrue(sequentialSources.size() > 40);
+            assertEquals(sequentialSources.keySet(), parallelSources.keySet());
+            for (String fileName: sequentialSources.keySet())
+                assertEquals(fileName, sequentialSources.get(fileName), parallelSources.get(fileName));
+        } finally {
+            Files.delete(ctFile);
+        }
+    }
+}
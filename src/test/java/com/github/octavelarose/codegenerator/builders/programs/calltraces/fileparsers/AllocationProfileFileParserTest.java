@@ -0,0 +1,76 @@
+package com.github.octavelarose.codegenerator.builders.programs.calltraces.fileparsers;
+
+import com.github.octavelarose.bootleg.builders.BuildFailedException;
+import com.github.octavelarose.bootleg.builders.GenerationSession;
+import com.github.octavelarose.bootleg.builders.programs.calltraces.fileparsers.AllocationProfileFileParser;
+import com.github.octavelarose.bootleg.builders.programs.classes.methods.bodies.allocations.AllocationSite;
+import com.github.octavelarose.codegenerator.TraceFiles;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+public class AllocationProfileFileParserTest {
+
+    private HashMap<String, List<AllocationSite>> parse(String... lines) throws IOException, BuildFailedException {
+        // Object types get parsed with the session's types cache
+        return TraceFiles.withTempFile(List.of(lines), fileName -> new GenerationSession().call(() ->
+                new AllocationProfileFileParser(fileName).parse().getParsedAllocationSites()));
+    }
+
+    @Test
+    public void sitesAreParsed() throws IOException, BuildFailedException {
+        HashMap<String, List<AllocationSite>> sites = parse(
+                "som/Sieve.sieve [Z 1 5001",
+                "som/Sieve.sieve Lsom/Sieve; 3 24",
+                "som/Run.run [[D 2 10");
+
+        List<AllocationSite> sieveSites = sites.get("som/Sieve.sieve");
+        assertEquals(2, sieveSites.size());
+
+        assertEquals("boolean[]", sieveSites.get(0).getType().asString());
+        assertTrue(sieveSites.get(0).isArray());
+        assertEquals(1, sieveSites.get(0).getCount());
+        assertEquals(5001, sieveSites.get(0).getSizeOrLength());
+
+        assertEquals("som.Sieve", sieveSites.get(1).getType().asString());
+        assertFalse(sieveSites.get(1).isArray());
+        assertEquals(3, sieveSites.get(1).getCount());
+        assertEquals(24, sieveSites.get(1).getSizeOrLength());
+
+        assertEquals("double[][]", sites.get("som/Run.run").get(0).getType().asString());
+        assertEquals(2, sites.get("som/Run.run").get(0).getCount());
+    }
+
+    @Test
+    public void sizeIsOptional() throws IOException, BuildFailedException {
+        AllocationSite site = parse("som/Run.run I 4").get("som/Run.run").get(0);
+
+        assertEquals(4, site.getCount());
+        assertEquals(0, site.getSizeOrLength());
+    }
+
+    @Test
+    public void blankLinesAreSkipped() throws IOException, BuildFailedException {
+        HashMap<String, List<AllocationSite>> sites = parse("", "  som/Run.run [I 1 8  ", "   ", "som/Run.run [I 2 16");
+
+        assertEquals(1, sites.size());
+        assertEquals(2, sites.get("som/Run.run").size());
+        assertEquals(8, sites.get("som/Run.run").get(0).getSizeOrLength());
+    }
+
+    @Test
+    public void malformedLinesFail() {
+        assertThrows(BuildFailedException.class, () -> parse("som/Run.run [I"));
+        assertThrows(BuildFailedException.class, () -> parse("som/Run.run [I many"));
+        assertThrows(BuildFailedException.class, () -> parse("som/Run.run [I 1 big"));
+        assertThrows(BuildFailedException.class, () -> parse("som/Run.run [ 1 8"));
+        assertThrows(BuildFailedException.class, () -> parse("som/Run.run X 1 8"));
+    }
+}
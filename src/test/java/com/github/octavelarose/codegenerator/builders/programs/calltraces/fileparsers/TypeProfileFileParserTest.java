@@ -0,0 +1,57 @@
+package com.github.octavelarose.codegenerator.builders.programs.calltraces.fileparsers;
+
+import com.github.octavelarose.bootleg.builders.BuildFailedException;
+import com.github.octavelarose.bootleg.builders.programs.calltraces.fileparsers.TypeProfileFileParser;
+import com.github.octavelarose.codegenerator.TraceFiles;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+
+public class TypeProfileFileParserTest {
+
+    private HashMap<String, List<Integer>> parse(String... lines) throws IOException, BuildFailedException {
+        return TraceFiles.withTempFile(List.of(lines),
+                fileName -> new TypeProfileFileParser(fileName).parse().getParsedReceiverWeights());
+    }
+
+    @Test
+    public void weightsAreParsed() throws IOException, BuildFailedException {
+        HashMap<String, List<Integer>> weights = parse("som/Sieve 3 70,20,10", "som/Run 2 1,1");
+
+        assertEquals(2, weights.size());
+        assertEquals(List.of(70, 20, 10), weights.get("som/Sieve"));
+        assertEquals(List.of(1, 1), weights.get("som/Run"));
+    }
+
+    @Test
+    public void missingWeightsAreEqual() throws IOException, BuildFailedException {
+        assertEquals(List.of(1, 1, 1, 1), parse("som/Sieve 4").get("som/Sieve"));
+    }
+
+    @Test
+    public void blankLinesAreSkipped() throws IOException, BuildFailedException {
+        HashMap<String, List<Integer>> weights = parse("", "som/Sieve 2 3,1", "   ", "  som/Run 1  ");
+
+        assertEquals(2, weights.size());
+        assertEquals(List.of(3, 1), weights.get("som/Sieve"));
+        assertEquals(List.of(1), weights.get("som/Run"));
+    }
+
+    @Test
+    public void malformedLinesFail() {
+        assertThrows(BuildFailedException.class, () -> parse("som/Sieve"));
+        assertThrows(BuildFailedException.class, () -> parse("som/Sieve three"));
+        assertThrows(BuildFailedException.class, () -> parse("som/Sieve 0"));
+        assertThrows(BuildFailedException.class, () -> parse("som/Sieve 2 70,x"));
+    }
+
+    @Test
+    public void weightsMustMatchReceiverTypes() {
+        assertThrows(BuildFailedException.class, () -> parse("som/Sieve 3 70,30"));
+    }
+}
@@ -0,0 +1,105 @@
+package com.github.octavelarose.codegenerator.builders.programs.classes.methods.bodies.operations;
+
+import com.github.octavelarose.bootleg.builders.programs.classes.methods.bodies.operations.OperationKernel;
+import com.github.octavelarose.bootleg.builders.programs.classes.methods.bodies.operations.OperationSequenceCompressor;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class OperationSequenceCompressorTest {
+
+    private void countOps(List<OperationKernel> kernels, long multiplier, Map<String, Long> opsCount) {
+        for (OperationKernel kernel: kernels) {
+            if (kernel.isLoop())
+                countOps(kernel.getBody(), multiplier * kernel.getIterations(), opsCount);
+            else
+                opsCount.merge(kernel.getOperation(), multiplier, Long::sum);
+        }
+    }
+
+    private Map<String, Long> countOps(List<String> ops) {
+        Map<String, Long> opsCount = new HashMap<>();
+        for (String op: ops)
+            opsCount.merge(op, 1L, Long::sum);
+        return opsCount;
+    }
+
+    @Test
+    public void shortSequencesAreKeptAsIs() {
+        List<String> ops = List.of("IADD", "DMUL", "IADD", "IADD");
+        List<OperationKernel> kernels = OperationSequenceCompressor.compress(ops);
+
+        assertEquals(ops.size(), kernels.size());
+        for (OperationKernel kernel: kernels)
+            assertTrue(!kernel.isLoop());
+    }
+
+    @Test
+    public void longRunBecomesSingleLoop() {
+        List<String> ops = Collections.nCopies(50000, "DADD");
+        List<OperationKernel> kernels = OperationSequenceCompressor.compress(ops);
+
+        assertEquals(1, kernels.size());
+        assertEquals(50000, kernels.get(0).getOperationsCount());
+    }
+
+    @Test
+    public void repeatedSequencesKeepOperationMix() {
+        List<String> ops = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            ops.addAll(Collections.nCopies(500, "IADD"));
+            ops.addAll(List.of("DMUL", "LSUB"));
+        }
+        for (int i = 0; i < 200; i++)
+            ops.add(i % 3 == 0 ? "FDIV" : (i % 7 == 0 ? "IMUL" : "DADD"));
+
+        List<OperationKernel> kernels = OperationSequenceCompressor.compress(ops);
+        Map<String, Long> opsCount = new HashMap<>();
+        countOps(kernels, 1, opsCount);
+
+        assertTrue(kernels.size() < 80);
+        assertEquals(countOps(ops), opsCount);
+    }
+
+    @Test
+    public void longNonRepeatingSequencesStayBounded() {
+        String[] opsNames = {"IADD", "ISUB", "IMUL", "LADD", "LMUL", "DADD", "DMUL", "FDIV"};
+        Random random = new Random(42);
+        List<String> ops = new ArrayList<>();
+        for (int i = 0; i < 100000; i++)
+            ops.add(opsNames[random.nextInt(opsNames.length)]);
+
+        List<OperationKernel> kernels = OperationSequenceCompressor.compress(ops);
+        Map<String, Long> opsCount = new HashMap<>();
+        countOps(kernels, 1, opsCount);
+
+        assertTrue(OperationSequenceCompressor.getStatementsNbr(kernels) <= 256);
+        assertEquals(countOps(ops), opsCount);
+    }
+
+    @Test
+    public void alternatingRepeatsAndShortRunsStayBounded() {
+        // Runs short enough to be kept as straight-line code, each followed by a repeat that becomes a loop
+        List<String> ops = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            for (int j = 0; j < 40; j++)
+                ops.add(j % 2 == 0 ? "IADD" : (j % 3 == 0 ? "DMUL" : "LSUB"));
+            ops.addAll(Collections.nCopies(8, "FADD"));
+        }
+
+        List<OperationKernel> kernels = OperationSequenceCompressor.compress(ops);
+        Map<String, Long> opsCount = new HashMap<>();
+        countOps(kernels, 1, opsCount);
+
+        assertTrue(OperationSequenceCompressor.getStatementsNbr(kernels) <= 256);
+        assertEquals(countOps(ops), opsCount);
+    }
+}
@@ -0,0 +1,48 @@
+package com.github.octavelarose.codegenerator.builders.programs.classes.methods.sizes;
+
+import com.github.javaparser.StaticJavaParser;
+import com.github.javaparser.ast.body.ConstructorDeclaration;
+import com.github.javaparser.ast.body.MethodDeclaration;
+import com.github.javaparser.ast.expr.NameExpr;
+import com.github.octavelarose.bootleg.builders.BuildFailedException;
+import com.github.octavelarose.bootleg.builders.GenerationSession;
+import com.github.octavelarose.bootleg.builders.programs.classes.methods.sizes.BytecodeSizeEstimator;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class BytecodeSizeEstimatorTest {
+
+    @Test
+    public void knownBodyIsEstimated() {
+        // int a = 1: store 2 + literal 2. a = a + 2: assignment 2 + two loads 4 + addition 1 + literal 2. return: 1
+        MethodDeclaration method = StaticJavaParser.parseMethodDeclaration("void foo() { int a = 1; a = a + 2; return; }");
+
+        assertEquals(14, BytecodeSizeEstimator.estimateCallableSize(method));
+    }
+
+    @Test
+    public void loopsAndCallsAreEstimated() {
+        // Loop 6, i = 0 4, i < 10 7, i++ 4, unqualified call 4 (implicit this)
+        assertEquals(25, BytecodeSizeEstimator.estimate(StaticJavaParser.parseStatement("for (int i = 0; i < 10; i++) foo();")));
+
+        // Qualified call 3, receiver load 2, two arguments 4
+        assertEquals(9, BytecodeSizeEstimator.estimate(StaticJavaParser.parseExpression("sieve.run(1, x)")));
+    }
+
+    @Test
+    public void constructorsCallTheirSuperConstructor() {
+        ConstructorDeclaration constructor = new ConstructorDeclaration("Foo");
+
+        assertEquals(4, BytecodeSizeEstimator.estimateCallableSize(constructor));
+    }
+
+    @Test
+    public void rawCodeIsEstimatedLikeParsedCode() throws BuildFailedException {
+        // Raw code sizes are cached in the session
+        int rawSize = new GenerationSession().call(() -> BytecodeSizeEstimator.estimate(new NameExpr("(opaqueSeed + 3)")));
+
+        assertEquals(BytecodeSizeEstimator.estimate(StaticJavaParser.parseExpression("(opaqueSeed + 3)")), rawSize);
+        assertEquals(5, rawSize);
+    }
+}
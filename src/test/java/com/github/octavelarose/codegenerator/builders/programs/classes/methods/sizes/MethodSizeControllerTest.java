@@ -0,0 +1,123 @@
+package com.github.octavelarose.codegenerator.builders.programs.classes.methods.sizes;
+
+import com.github.javaparser.StaticJavaParser;
+import com.github.javaparser.ast.Modifier;
+import com.github.javaparser.ast.NodeList;
+import com.github.javaparser.ast.body.CallableDeclaration;
+import com.github.javaparser.ast.body.MethodDeclaration;
+import com.github.javaparser.ast.body.Parameter;
+import com.github.javaparser.ast.expr.MethodCallExpr;
+import com.github.javaparser.ast.stmt.BlockStmt;
+import com.github.javaparser.ast.stmt.Statement;
+import com.github.javaparser.ast.type.PrimitiveType;
+import com.github.javaparser.ast.type.VoidType;
+import com.github.octavelarose.bootleg.builders.BuildFailedException;
+import com.github.octavelarose.bootleg.builders.GenerationSession;
+import com.github.octavelarose.bootleg.builders.programs.classes.BasicClassBuilder;
+import com.github.octavelarose.bootleg.builders.programs.classes.ClassBuilder;
+import com.github.octavelarose.bootleg.builders.programs.classes.methods.bodies.CallableMethodBodyEditor;
+import com.github.octavelarose.bootleg.builders.programs.classes.methods.sizes.BytecodeSizeEstimator;
+import com.github.octavelarose.bootleg.builders.programs.classes.methods.sizes.MethodSizeController;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class MethodSizeControllerTest {
+
+    /**
+     * Writes statements to a method the way generated calls are, through the size controller.
+     * @return The parts of the method, in the order they call each other.
+     */
+    private List<CallableDeclaration<?>> writeStatements(MethodSizeController sizeController, ClassBuilder cb,
+                                                         MethodDeclaration method, int stmtsNbr) throws BuildFailedException {
+        for (int i = 0; i < stmtsNbr; i++) {
+            Statement stmt = StaticJavaParser.parseStatement("sieve.run(" + i + ");");
+            CallableDeclaration<?> part = sizeController.getMethodToWriteTo(cb, method, BytecodeSizeEstimator.estimate(stmt));
+
+            CallableMethodBodyEditor cmbe = new CallableMethodBodyEditor(part, cb);
+            cmbe.addStatement(stmt);
+            cmbe.setBodyToCallable();
+        }
+
+        return getParts(cb, method);
+    }
+
+    private List<CallableDeclaration<?>> getParts(ClassBuilder cb, MethodDeclaration method) {
+        List<CallableDeclaration<?>> parts = new ArrayList<>();
+        CallableDeclaration<?> part = method;
+
+        while (part != null) {
+            parts.add(part);
+            List<Statement> stmts = ((MethodDeclaration) part).getBody().orElseThrow().getStatements();
+            Statement lastStmt = stmts.get(stmts.size() - 1);
+
+            part = null;
+            if (lastStmt.isExpressionStmt() && lastStmt.asExpressionStmt().getExpression().isMethodCallExpr()) {
+                MethodCallExpr lastCall = lastStmt.asExpressionStmt().getExpression().asMethodCallExpr();
+                if (lastCall.getScope().isEmpty() && lastCall.getNameAsString().startsWith(method.getNameAsString() + "Part"))
+                    part = cb.getMethodFromName(lastCall.getNameAsString());
+            }
+        }
+
+        return parts;
+    }
+
+    @Test
+    public void partsStayUnderTheirTarget() throws BuildFailedException {
+        new GenerationSession().setSeed(1).call(() -> {
+            // Every method targets MaxInlineSize
+            MethodSizeController sizeController = new MethodSizeController(1, 0, 0);
+            BasicClassBuilder cb = new BasicClassBuilder("Foo");
+            MethodDeclaration method = cb.addMethod("run", new VoidType(), new NodeList<>(), new BlockStmt(),
+                    new NodeList<>(Modifier.publicModifier()));
+
+            List<CallableDeclaration<?>> parts = writeStatements(sizeController, cb, method, 40);
+
+            assertEquals(MethodSizeController.MAX_INLINE_SIZE, sizeController.getTargetSize(method));
+            assertTrue(parts.size() >= 10);
+            for (CallableDeclaration<?> part: parts) {
+                assertTrue(part.getNameAsString(), BytecodeSizeEstimator.estimateCallableSize(part) <= MethodSizeController.MAX_INLINE_SIZE);
+                assertEquals(MethodSizeController.MAX_INLINE_SIZE, sizeController.getTargetSize(part));
+            }
+            return null;
+        });
+    }
+
+    @Test
+    public void continuationsChainInOrder() throws BuildFailedException {
+        new GenerationSession().setSeed(1).call(() -> {
+            MethodSizeController sizeController = new MethodSizeController(1, 0, 0);
+            BasicClassBuilder cb = new BasicClassBuilder("Foo");
+            MethodDeclaration method = cb.addMethod("run", new VoidType(),
+                    new NodeList<>(new Parameter(PrimitiveType.intType(), "n")), new BlockStmt(),
+                    new NodeList<>(Modifier.publicModifier()));
+
+            List<CallableDeclaration<?>> parts = writeStatements(sizeController, cb, method, 20);
+
+            // Every statement is written once, in order, the continuations being called with the original's parameters
+            List<String> writtenStmts = new ArrayList<>();
+            for (int i = 1; i < parts.size(); i++) {
+                assertEquals("runPart" + i, parts.get(i).getNameAsString());
+                assertEquals("runPart" + i + "(n);", ((MethodDeclaration) parts.get(i - 1)).getBody().orElseThrow()
+                        .getStatements().getLast().orElseThrow().toString());
+            }
+            for (CallableDeclaration<?> part: parts) {
+                for (Statement stmt: ((MethodDeclaration) part).getBody().orElseThrow().getStatements()) {
+                    if (stmt.toString().startsWith("sieve.run("))
+                        writtenStmts.add(stmt.toString());
+                }
+            }
+
+            assertEquals(20, writtenStmts.size());
+            for (int i = 0; i < writtenStmts.size(); i++)
+                assertEquals("sieve.run(" + i + ");", writtenStmts.get(i));
+            assertSame(parts.get(parts.size() - 1), sizeController.getLastPart(method));
+            return null;
+        });
+    }
+}
@@ -0,0 +1,177 @@
+package com.github.octavelarose.codegenerator.export;
+
+import com.github.javaparser.StaticJavaParser;
+import com.github.javaparser.ast.CompilationUnit;
+import com.github.javaparser.ast.Modifier;
+import com.github.javaparser.ast.NodeList;
+import com.github.javaparser.ast.expr.AssignExpr;
+import com.github.javaparser.ast.expr.MethodCallExpr;
+import com.github.javaparser.ast.expr.StringLiteralExpr;
+import com.github.javaparser.ast.type.ClassOrInterfaceType;
+import com.github.javaparser.ast.type.PrimitiveType;
+import com.github.octavelarose.bootleg.builders.GenerationSession;
+import com.github.octavelarose.bootleg.builders.programs.calltraces.CTParserProgramBuilder;
+import com.github.octavelarose.bootleg.builders.programs.classes.BasicClassBuilder;
+import com.github.octavelarose.bootleg.builders.programs.classes.ClassBuilder;
+import com.github.octavelarose.bootleg.export.ProgramExporter;
+import com.github.octavelarose.bootleg.export.ProgramScaler;
+import com.github.octavelarose.codegenerator.TraceFiles;
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+
+import javax.tools.ToolProvider;
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ProgramScalerTest {
+
+    private static final List<String> TRACE = List.of(
+            "> pub/sta ([Ljava/lang/String;)V Harness.main (0ns)",
+            "> pub/con ()V som/Sieve.<init> (0ns)",
+            "< pub/con ()V som/Sieve.<init> (10ns)",
+            "> pub ()I som/Sieve.run (10ns)",
+            "> pub/sta (I)I som/Util.twice (20ns)",
+            "< pub/sta (I)I som/Util.twice (30ns)",
+            "< pub ()I som/Sieve.run (40ns)",
+            "< pub/sta ([Ljava/lang/String;)V Harness.main (50ns)");
+
+    private static final List<String> ORIGINAL_CLASSES = List.of("Harness", "som.Sieve", "som.Util");
+
+    /**
+     * Exports the original program and its copies, and checks that they compile together.
+     * @return The exported classes, parsed back, by path relative to the output directory.
+     */
+    private Map<String, CompilationUnit> scale(HashMap<String, ClassBuilder> classBuilders, ProgramScaler scaler) throws Exception {
+        Path outputDir = Files.createTempDirectory("bootleg_test");
+        Path srcDir = outputDir.resolve("src");
+
+        try {
+            new GenerationSession().run(() -> {
+                new ProgramExporter(srcDir.toString(), outputDir.resolve("jmh").toString()).export(classBuilders);
+                scaler.export(classBuilders, srcDir.toString());
+            });
+
+            Map<String, CompilationUnit> classes = new TreeMap<>();
+            List<String> javacArgs = new ArrayList<>(List.of("-nowarn", "-d", outputDir.resolve("classes").toString()));
+            for (File file: FileUtils.listFiles(srcDir.toFile(), new String[]{"java"}, true)) {
+                classes.put(srcDir.relativize(file.toPath()).toString(), StaticJavaParser.parse(file));
+                javacArgs.add(file.getPath());
+            }
+
+            assertEquals(0, ToolProvider.getSystemJavaCompiler().run(null, null, null, javacArgs.toArray(new String[0])));
+            return classes;
+        } finally {
+            FileUtils.deleteDirectory(outputDir.toFile());
+        }
+    }
+
+    private HashMap<String, ClassBuilder> build() throws Exception {
+        return TraceFiles.withTempFile(TRACE,
+                fileName -> new GenerationSession().setSeed(1).call(() -> new CTParserProgramBuilder(fileName).build()));
+    }
+
+    /**
+     * @return The names of the classes a copy refers to, as types or as the scopes of method calls.
+     */
+    private List<String> getReferencedNames(CompilationUnit cu) {
+        List<String> names = new ArrayList<>();
+        cu.findAll(ClassOrInterfaceType.class).forEach(t -> names.add(t.getNameWithScope()));
+        cu.findAll(MethodCallExpr.class).forEach(c -> c.getScope().ifPresent(s -> names.add(s.toString())));
+        return names;
+    }
+
+    private List<String> getStringLiterals(CompilationUnit cu) {
+        return cu.findAll(StringLiteralExpr.class).stream().map(StringLiteralExpr::getValue).collect(Collectors.toList());
+    }
+
+    @Test
+    public void copiesReferToThemselves() throws Exception {
+        Map<String, CompilationUnit> copies = scale(build(), new ProgramScaler(3).setRewiredShare(0));
+
+        assertTrue(copies.containsKey("copy2/som/Util_2.java"));
+        assertTrue(copies.containsKey("ScaledHarness.java"));
+
+        for (Map.Entry<String, CompilationUnit> copy: copies.entrySet()) {
+            if (!copy.getKey().startsWith("copy"))
+                continue;
+            String copyPkg = copy.getKey().substring(0, copy.getKey().indexOf('/'));
+
+            for (String name: getReferencedNames(copy.getValue())) {
+                assertFalse(copy.getKey() + " refers to " + name, ORIGINAL_CLASSES.contains(name));
+                if (name.startsWith("copy"))
+                    assertTrue(copy.getKey() + " refers to " + name, name.equals(copyPkg) || name.startsWith(copyPkg + "."));
+            }
+        }
+
+        assertTrue(getReferencedNames(copies.get("copy1/som/Sieve_1.java")).contains("copy1.som.Util_1"));
+    }
+
+    @Test
+    public void referencesAreRewiredAcrossCopies() throws Exception {
+        Map<String, CompilationUnit> copies = scale(build(), new ProgramScaler(4).setRewiredShare(1));
+
+        for (int copyIdx = 1; copyIdx < 4; copyIdx++) {
+            for (String classPath: List.of("/Harness_", "/som/Sieve_")) {
+                Set<String> sieveOrUtilCopies = new HashSet<>();
+                for (String name: getReferencedNames(copies.get("copy" + copyIdx + classPath + copyIdx + ".java")))
+                    if (name.matches("(copy\\d+\\.)?som\\.(Sieve|Util)(_\\d+)?"))
+                        sieveOrUtilCopies.add(name);
+
+                // Every reference to a class goes to the same copy, which isn't the one it's from
+                assertEquals(1, sieveOrUtilCopies.size());
+                assertFalse(sieveOrUtilCopies.iterator().next().startsWith("copy" + copyIdx + "."));
+            }
+        }
+    }
+
+    @Test
+    public void stringLiteralsAreKept() throws Exception {
+        HashMap<String, ClassBuilder> classBuilders = build();
+        List<String> originalLiterals = getStringLiterals(StaticJavaParser.parse(classBuilders.get("som/Sieve").getCompilationUnit().toString()));
+        Map<String, CompilationUnit> copies = scale(classBuilders, new ProgramScaler(2));
+
+        assertFalse(originalLiterals.isEmpty());
+        assertEquals(originalLiterals, getStringLiterals(copies.get("copy1/som/Sieve_1.java")));
+    }
+
+    @Test
+    public void divisorsAndShiftDistancesAreKept() throws Exception {
+        ClassBuilder calc = new BasicClassBuilder("Calc");
+        calc.setPackageDeclaration("som");
+        calc.addMethod("compute", PrimitiveType.intType(), new NodeList<>(),
+                StaticJavaParser.parseBlock("{ int x = 1000; x /= 700; x %= 500; x <<= 20; x >>= 20; x >>>= 20; x *= 1000; return x; }"),
+                new NodeList<>(Modifier.publicModifier()));
+        HashMap<String, ClassBuilder> classBuilders = new HashMap<>();
+        classBuilders.put("som/Calc", calc);
+
+        Map<String, CompilationUnit> copies = scale(classBuilders, new ProgramScaler(10));
+
+        Set<String> multipliers = new HashSet<>();
+        for (int copyIdx = 1; copyIdx < 10; copyIdx++) {
+            List<String> assignments = new ArrayList<>();
+            for (AssignExpr assignExpr: copies.get("copy" + copyIdx + "/som/Calc_" + copyIdx + ".java").findAll(AssignExpr.class)) {
+                if (assignExpr.getOperator() == AssignExpr.Operator.MULTIPLY)
+                    multipliers.add(assignExpr.getValue().toString());
+                else
+                    assignments.add(assignExpr.toString());
+            }
+            assertEquals(List.of("x /= 700", "x %= 500", "x <<= 20", "x >>= 20", "x >>>= 20"), assignments);
+        }
+
+        // Other operands still vary
+        assertTrue(multipliers.size() > 1);
+    }
+}
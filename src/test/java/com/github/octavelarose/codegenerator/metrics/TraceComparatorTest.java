@@ -0,0 +1,113 @@
+package com.github.octavelarose.codegenerator.metrics;
+
+import com.github.octavelarose.bootleg.builders.BuildFailedException;
+import com.github.octavelarose.bootleg.metrics.TraceComparator;
+import com.github.octavelarose.codegenerator.TraceFiles;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class TraceComparatorTest {
+
+    private static final List<String> ORIGINAL_TRACE = List.of(
+            "> pub/sta ()V som/Run.main (0ns)",
+            "> pub ()V som/Run.a (10ns)",
+            "< pub ()V som/Run.a (60ns)",
+            "> pub ()V som/Run.b (60ns)",
+            "< pub ()V som/Run.b (60ns)",
+            "< pub/sta ()V som/Run.main (100ns)");
+
+    private TraceComparator compare(List<String> original, List<String> recorded) throws IOException, BuildFailedException {
+        return TraceFiles.withTempFile(original, originalFileName -> TraceFiles.withTempFile(recorded,
+                recordedFileName -> new TraceComparator(originalFileName, recordedFileName).compare()));
+    }
+
+    @Test
+    public void identicalTracesMatch() throws IOException, BuildFailedException {
+        TraceComparator comparator = compare(ORIGINAL_TRACE, ORIGINAL_TRACE);
+
+        assertEquals(0, comparator.getEdgeCountError(), 1e-9);
+        assertEquals(1, comparator.getMethodCoverage(), 1e-9);
+        assertEquals(1, comparator.getSelfTimeSimilarity(), 1e-9);
+        assertEquals(List.of(), comparator.getMissingMethods());
+        assertEquals(List.of(), comparator.getExtraMethods());
+    }
+
+    @Test
+    public void callCountsAreComparedPerRun() throws IOException, BuildFailedException {
+        List<String> recorded = List.of(
+                "> pub/sta ()V som/Run.main (0ns)",
+                "> pub ()V som/Run.a (10ns)",
+                "< pub ()V som/Run.a (60ns)",
+                "> pub ()V som/Run.b (60ns)",
+                "< pub ()V som/Run.b (60ns)",
+                "< pub/sta ()V som/Run.main (100ns)",
+                "> pub/sta ()V som/Run.main (100ns)",
+                "> pub ()V som/Run.a (110ns)",
+                "< pub ()V som/Run.a (160ns)",
+                "> pub ()V som/Run.b (160ns)",
+                "< pub ()V som/Run.b (160ns)",
+                "< pub/sta ()V som/Run.main (200ns)");
+
+        assertEquals(0, compare(ORIGINAL_TRACE, recorded).getEdgeCountError(), 1e-9);
+    }
+
+    @Test
+    public void missingCallsCountAsEdgeErrorsAndMissingMethods() throws IOException, BuildFailedException {
+        List<String> recorded = List.of(
+                "> pub/sta ()V som/Run.main (0ns)",
+                "> pub ()V som/Run.a (10ns)",
+                "< pub ()V som/Run.a (60ns)",
+                "> pub ()V som/Run.c (60ns)",
+                "< pub ()V som/Run.c (60ns)",
+                "< pub/sta ()V som/Run.main (100ns)");
+
+        TraceComparator comparator = compare(ORIGINAL_TRACE, recorded);
+
+        // Out of 3 original calls per run, main -> b is missing and main -> c is extra
+        assertEquals(2.0 / 3, comparator.getEdgeCountError(), 1e-9);
+        assertEquals(2.0 / 3, comparator.getMethodCoverage(), 1e-9);
+        assertEquals(List.of("som/Run.b()V"), comparator.getMissingMethods());
+        assertEquals(List.of("som/Run.c()V"), comparator.getExtraMethods());
+    }
+
+    @Test
+    public void selfTimeExcludesCallees() throws IOException, BuildFailedException {
+        // a takes 25ns instead of 50ns, so main's self time goes from 50% to 75%
+        List<String> recorded = List.of(
+                "> pub/sta ()V som/Run.main (0ns)",
+                "> pub ()V som/Run.a (10ns)",
+                "< pub ()V som/Run.a (35ns)",
+                "> pub ()V som/Run.b (60ns)",
+                "< pub ()V som/Run.b (60ns)",
+                "< pub/sta ()V som/Run.main (100ns)");
+
+        TraceComparator comparator = compare(ORIGINAL_TRACE, recorded);
+
+        assertEquals(0.75, comparator.getSelfTimeSimilarity(), 1e-9);
+        assertEquals(0, comparator.getEdgeCountError(), 1e-9);
+    }
+
+    @Test
+    public void exitsWithoutEntriesAreIgnored() throws IOException, BuildFailedException {
+        // Recorded traces can start in the middle of calls, when the recorder's ring buffer wrapped around
+        List<String> recorded = List.of(
+                "< pub ()V som/Run.a (5ns)",
+                "< pub/sta ()V som/Run.main (5ns)",
+                "> pub/sta ()V som/Run.main (10ns)",
+                "> pub ()V som/Run.a (20ns)",
+                "< pub ()V som/Run.a (70ns)",
+                "> pub ()V som/Run.b (70ns)",
+                "< pub ()V som/Run.b (70ns)",
+                "< pub/sta ()V som/Run.main (110ns)");
+
+        TraceComparator comparator = compare(ORIGINAL_TRACE, recorded);
+
+        assertEquals(2, comparator.getUnmatchedExitsNbr());
+        assertEquals(0, comparator.getEdgeCountError(), 1e-9);
+        assertEquals(1, comparator.getSelfTimeSimilarity(), 1e-9);
+    }
+}